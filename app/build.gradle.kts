@@ -58,4 +58,69 @@ dependencies {
     testImplementation(libs.junit)
     androidTestImplementation(libs.ext.junit)
     androidTestImplementation(libs.espresso.core)
-}
\ No newline at end of file
+}
+
+// Host build of librnnoise.so (JNI bridge + RNNoise, Android logging shimmed to stderr) so the
+// unit tests exercise the native engine on the JVM. Linux only; needs a C compiler and make.
+//
+//   ./gradlew :app:testDebugUnitTest -PrnnoiseSrc=/path/to/rnnoise
+//   ./gradlew :app:testDebugUnitTest -PrnnoiseSrc=/path/to/rnnoise -PhostSanitize=address,undefined
+//
+// rnnoiseSrc (or the RNNOISE_SRC environment variable) is an xiph/rnnoise checkout with its
+// model downloaded. Without it the native tests are skipped and only the Java engine is tested;
+// the SIMD kernel check needs no RNNoise and runs on every Linux host.
+val rnnoiseSrc = providers.gradleProperty("rnnoiseSrc")
+    .orElse(providers.environmentVariable("RNNOISE_SRC")).orNull
+val hostSanitize = providers.gradleProperty("hostSanitize").orNull
+val hostNativeDir = layout.buildDirectory.dir("host-native").get().asFile
+val hostIsLinux = System.getProperty("os.name").startsWith("Linux")
+
+val buildHostNative by tasks.registering(Exec::class) {
+    group = "verification"
+    description = "Builds librnnoise.so for the host JVM with src/test/cpp/Makefile."
+    onlyIf { rnnoiseSrc != null && hostIsLinux }
+    inputs.dir("src/main/cpp")
+    inputs.dir("src/test/cpp")
+    if (rnnoiseSrc != null) inputs.dir(rnnoiseSrc)
+    inputs.property("hostSanitize", hostSanitize ?: "")
+    outputs.dir(hostNativeDir)
+    workingDir("src/test/cpp")
+    commandLine(
+        "make", "-j${Runtime.getRuntime().availableProcessors()}",
+        "RNNOISE_SRC=$rnnoiseSrc", "OUT=$hostNativeDir", "SANITIZE=${hostSanitize ?: ""}"
+    )
+}
+
+// Checks the SIMD kernels the host CPU supports against the scalar reference
+val checkNativeKernels by tasks.registering(Exec::class) {
+    group = "verification"
+    description = "Builds and runs src/test/cpp/kernels_check.c."
+    onlyIf { hostIsLinux }
+    inputs.dir("src/main/cpp")
+    inputs.dir("src/test/cpp")
+    outputs.upToDateWhen { false }
+    workingDir("src/test/cpp")
+    commandLine("make", "OUT=$hostNativeDir", "SANITIZE=${hostSanitize ?: ""}", "check-kernels")
+}
+
+tasks.named("check") {
+    dependsOn(checkNativeKernels)
+}
+
+tasks.withType<Test>().configureEach {
+    dependsOn(checkNativeKernels)
+    if (rnnoiseSrc != null && hostIsLinux) {
+        dependsOn(buildHostNative)
+        systemProperty("java.library.path", hostNativeDir.absolutePath)
+        // Fail rather than skip if the freshly built library doesn't load
+        systemProperty("rnnoise.requireNative", "true")
+        if (hostSanitize?.contains("address") == true) {
+            // The JVM isn't built with ASan, so the runtime has to be preloaded; the JVM's own
+            // SIGSEGV use and its allocations must not be reported
+            val libasan = providers.exec { commandLine("cc", "-print-file-name=libasan.so") }
+                .standardOutput.asText.get().trim()
+            environment("LD_PRELOAD", libasan)
+            environment("ASAN_OPTIONS", "handle_segv=0:detect_leaks=0:allow_user_segv_handler=1")
+        }
+    }
+}
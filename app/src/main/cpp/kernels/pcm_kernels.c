@@ -0,0 +1,62 @@
+#include "pcm_kernels.h"
+
+#include <pthread.h>
+
+#include "pcm_convert.h"
+
+/* ------------------------------------------------------------------------- */
+/* Scalar reference                                                          */
+/* ------------------------------------------------------------------------- */
+
+static void scalar_s16_to_f32(const int16_t *src, float *dst, size_t n) {
+    for (size_t i = 0; i < n; ++i) dst[i] = pcm16_to_float(src[i]);
+}
+
+static void scalar_f32_to_s16(const float *src, int16_t *dst, size_t n) {
+    for (size_t i = 0; i < n; ++i) dst[i] = float_to_pcm16(src[i]);
+}
+
+static float scalar_dot(const float *h, const float *x, size_t n) {
+    float acc = 0.0f;
+    for (size_t k = n; k-- > 0;) {
+        acc += h[k] * x[k];
+    }
+    return acc;
+}
+
+static const PcmKernels kScalar = {
+    "scalar", scalar_s16_to_f32, scalar_f32_to_s16, scalar_dot
+};
+
+const PcmKernels *pcm_kernels_scalar(void) {
+    return &kScalar;
+}
+
+/* ------------------------------------------------------------------------- */
+/* Dispatch                                                                  */
+/* ------------------------------------------------------------------------- */
+
+size_t pcm_kernels_available(const PcmKernels **out, size_t max) {
+    const PcmKernels *candidates[] = {
+        &kScalar, pcm_kernels_sse2(), pcm_kernels_neon(), pcm_kernels_avx2()
+    };
+    size_t count = 0;
+    for (size_t i = 0; i < sizeof(candidates) / sizeof(candidates[0]) && count < max; ++i) {
+        if (candidates[i]) out[count++] = candidates[i];
+    }
+    return count;
+}
+
+static const PcmKernels *g_selected = &kScalar;
+static pthread_once_t g_select_once = PTHREAD_ONCE_INIT;
+
+static void select_kernels(void) {
+    const PcmKernels *all[4];
+    size_t count = pcm_kernels_available(all, sizeof(all) / sizeof(all[0]));
+    g_selected = all[count - 1];
+}
+
+const PcmKernels *pcm_kernels(void) {
+    pthread_once(&g_select_once, select_kernels);
+    return g_selected;
+}
@@ -0,0 +1,55 @@
+#ifndef PCM_KERNELS_H_
+#define PCM_KERNELS_H_
+
+#include <stddef.h>
+#include <stdint.h>
+
+#ifdef __cplusplus
+extern "C" {
+#endif
+
+/*
+ * Inner loops of the native pipeline, in a scalar reference version and SIMD versions for the
+ * CPU at hand: NEON on arm64, SSE2 and AVX2+FMA on x86_64.
+ *
+ * pcm_kernels() picks the best variant once, at first use, from the CPU's features; callers
+ * keep the returned table with their state so the hot loops make one indirect call per block.
+ * The conversions are exact in every variant: int16 -> float is lossless, and float -> int16
+ * clamps to the int16 range and rounds to nearest-even like lrintf. The dot product only
+ * matches the reference within float rounding, since the SIMD versions sum in another order.
+ */
+
+typedef struct {
+    const char *name;
+    void (*s16_to_f32)(const int16_t *src, float *dst, size_t n);
+    void (*f32_to_s16)(const float *src, int16_t *dst, size_t n);
+    /*
+     * Sum of h[k] * x[k] for k < n. The scalar reference accumulates from k = n-1 down to 0, so a
+     * FIR that stores its taps reversed (h[0] applying to the oldest sample) keeps the
+     * newest-sample-first rounding of a direct-form loop.
+     */
+    float (*dot)(const float *h, const float *x, size_t n);
+} PcmKernels;
+
+/* Best variant for this CPU, chosen on the first call. Never NULL. */
+const PcmKernels *pcm_kernels(void);
+
+/* The scalar reference every other variant is checked against. */
+const PcmKernels *pcm_kernels_scalar(void);
+
+/*
+ * Writes up to max variants that run on this CPU to out, the scalar reference first and the
+ * one pcm_kernels() picks last. Returns how many were written.
+ */
+size_t pcm_kernels_available(const PcmKernels **out, size_t max);
+
+/* SIMD variants, or NULL when not built for this architecture or not supported by the CPU. */
+const PcmKernels *pcm_kernels_sse2(void);
+const PcmKernels *pcm_kernels_avx2(void);
+const PcmKernels *pcm_kernels_neon(void);
+
+#ifdef __cplusplus
+}
+#endif
+
+#endif  // PCM_KERNELS_H_
@@ -0,0 +1,75 @@
+/*
+ * NEON kernels for arm64, where Advanced SIMD is part of the base ISA and needs no runtime
+ * check. 32-bit ARM builds use the scalar reference: ARMv7 NEON has no round-to-nearest
+ * float conversion, and those devices are the minority of the ones this app targets.
+ *
+ * float -> int16 clamps with min/max, then vcvtnq rounds to nearest-even like lrintf in the
+ * default rounding mode.
+ */
+
+#include "pcm_kernels.h"
+
+#if defined(__aarch64__)
+
+#include <arm_neon.h>
+
+#include "pcm_convert.h"
+
+static void neon_s16_to_f32(const int16_t *src, float *dst, size_t n) {
+    size_t i = 0;
+    for (; i + 8 <= n; i += 8) {
+        int16x8_t v = vld1q_s16(src + i);
+        vst1q_f32(dst + i, vcvtq_f32_s32(vmovl_s16(vget_low_s16(v))));
+        vst1q_f32(dst + i + 4, vcvtq_f32_s32(vmovl_s16(vget_high_s16(v))));
+    }
+    for (; i < n; ++i) dst[i] = pcm16_to_float(src[i]);
+}
+
+static void neon_f32_to_s16(const float *src, int16_t *dst, size_t n) {
+    const float32x4_t max = vdupq_n_f32(32767.0f);
+    const float32x4_t min = vdupq_n_f32(-32768.0f);
+    size_t i = 0;
+    for (; i + 8 <= n; i += 8) {
+        float32x4_t a = vmaxq_f32(vminq_f32(vld1q_f32(src + i), max), min);
+        float32x4_t b = vmaxq_f32(vminq_f32(vld1q_f32(src + i + 4), max), min);
+        int16x8_t packed = vcombine_s16(vqmovn_s32(vcvtnq_s32_f32(a)), vqmovn_s32(vcvtnq_s32_f32(b)));
+        vst1q_s16(dst + i, packed);
+    }
+    for (; i < n; ++i) dst[i] = float_to_pcm16(src[i]);
+}
+
+static float neon_dot(const float *h, const float *x, size_t n) {
+    float32x4_t acc0 = vdupq_n_f32(0.0f);
+    float32x4_t acc1 = vdupq_n_f32(0.0f);
+    float32x4_t acc2 = vdupq_n_f32(0.0f);
+    float32x4_t acc3 = vdupq_n_f32(0.0f);
+    size_t k = 0;
+    for (; k + 16 <= n; k += 16) {
+        acc0 = vfmaq_f32(acc0, vld1q_f32(h + k), vld1q_f32(x + k));
+        acc1 = vfmaq_f32(acc1, vld1q_f32(h + k + 4), vld1q_f32(x + k + 4));
+        acc2 = vfmaq_f32(acc2, vld1q_f32(h + k + 8), vld1q_f32(x + k + 8));
+        acc3 = vfmaq_f32(acc3, vld1q_f32(h + k + 12), vld1q_f32(x + k + 12));
+    }
+    for (; k + 4 <= n; k += 4) {
+        acc0 = vfmaq_f32(acc0, vld1q_f32(h + k), vld1q_f32(x + k));
+    }
+    float sum = vaddvq_f32(vaddq_f32(vaddq_f32(acc0, acc1), vaddq_f32(acc2, acc3)));
+    for (; k < n; ++k) sum += h[k] * x[k];
+    return sum;
+}
+
+static const PcmKernels kNeon = {
+    "neon", neon_s16_to_f32, neon_f32_to_s16, neon_dot
+};
+
+const PcmKernels *pcm_kernels_neon(void) {
+    return &kNeon;
+}
+
+#else
+
+const PcmKernels *pcm_kernels_neon(void) {
+    return NULL;
+}
+
+#endif
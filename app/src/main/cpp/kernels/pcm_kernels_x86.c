@@ -0,0 +1,147 @@
+/*
+ * SSE2 and AVX2+FMA kernels for x86_64. SSE2 is part of the base ISA; the AVX2 functions are
+ * compiled with target attributes, so the library still loads on CPUs without AVX2 and
+ * pcm_kernels_avx2() checks the CPU before handing them out.
+ *
+ * float -> int16 clamps with min/max before converting, so out-of-range and huge values
+ * saturate exactly like the scalar clamp, and cvtps rounds with the MXCSR mode, the same one
+ * lrintf uses.
+ */
+
+#include "pcm_kernels.h"
+
+#if defined(__x86_64__) && defined(__SSE2__)
+
+#include <immintrin.h>
+
+#include "pcm_convert.h"
+
+#define AVX2_TARGET __attribute__((target("avx2,fma")))
+
+/* ------------------------------------------------------------------------- */
+/* SSE2                                                                      */
+/* ------------------------------------------------------------------------- */
+
+static void sse2_s16_to_f32(const int16_t *src, float *dst, size_t n) {
+    size_t i = 0;
+    for (; i + 8 <= n; i += 8) {
+        __m128i v = _mm_loadu_si128((const __m128i *)(src + i));
+        /* Sign-extend by placing each sample in the top half of a lane and shifting it down */
+        __m128i lo = _mm_srai_epi32(_mm_unpacklo_epi16(v, v), 16);
+        __m128i hi = _mm_srai_epi32(_mm_unpackhi_epi16(v, v), 16);
+        _mm_storeu_ps(dst + i, _mm_cvtepi32_ps(lo));
+        _mm_storeu_ps(dst + i + 4, _mm_cvtepi32_ps(hi));
+    }
+    for (; i < n; ++i) dst[i] = pcm16_to_float(src[i]);
+}
+
+static void sse2_f32_to_s16(const float *src, int16_t *dst, size_t n) {
+    const __m128 max = _mm_set1_ps(32767.0f);
+    const __m128 min = _mm_set1_ps(-32768.0f);
+    size_t i = 0;
+    for (; i + 8 <= n; i += 8) {
+        __m128 a = _mm_max_ps(_mm_min_ps(_mm_loadu_ps(src + i), max), min);
+        __m128 b = _mm_max_ps(_mm_min_ps(_mm_loadu_ps(src + i + 4), max), min);
+        __m128i packed = _mm_packs_epi32(_mm_cvtps_epi32(a), _mm_cvtps_epi32(b));
+        _mm_storeu_si128((__m128i *)(dst + i), packed);
+    }
+    for (; i < n; ++i) dst[i] = float_to_pcm16(src[i]);
+}
+
+static float sse2_dot(const float *h, const float *x, size_t n) {
+    __m128 acc0 = _mm_setzero_ps();
+    __m128 acc1 = _mm_setzero_ps();
+    size_t k = 0;
+    for (; k + 8 <= n; k += 8) {
+        acc0 = _mm_add_ps(acc0, _mm_mul_ps(_mm_loadu_ps(h + k), _mm_loadu_ps(x + k)));
+        acc1 = _mm_add_ps(acc1, _mm_mul_ps(_mm_loadu_ps(h + k + 4), _mm_loadu_ps(x + k + 4)));
+    }
+    __m128 acc = _mm_add_ps(acc0, acc1);
+    acc = _mm_add_ps(acc, _mm_movehl_ps(acc, acc));
+    acc = _mm_add_ss(acc, _mm_shuffle_ps(acc, acc, 1));
+    float sum = _mm_cvtss_f32(acc);
+    for (; k < n; ++k) sum += h[k] * x[k];
+    return sum;
+}
+
+static const PcmKernels kSse2 = {
+    "sse2", sse2_s16_to_f32, sse2_f32_to_s16, sse2_dot
+};
+
+const PcmKernels *pcm_kernels_sse2(void) {
+    return &kSse2;
+}
+
+/* ------------------------------------------------------------------------- */
+/* AVX2 + FMA                                                                */
+/* ------------------------------------------------------------------------- */
+
+AVX2_TARGET static void avx2_s16_to_f32(const int16_t *src, float *dst, size_t n) {
+    size_t i = 0;
+    for (; i + 16 <= n; i += 16) {
+        __m256i lo = _mm256_cvtepi16_epi32(_mm_loadu_si128((const __m128i *)(src + i)));
+        __m256i hi = _mm256_cvtepi16_epi32(_mm_loadu_si128((const __m128i *)(src + i + 8)));
+        _mm256_storeu_ps(dst + i, _mm256_cvtepi32_ps(lo));
+        _mm256_storeu_ps(dst + i + 8, _mm256_cvtepi32_ps(hi));
+    }
+    for (; i < n; ++i) dst[i] = pcm16_to_float(src[i]);
+}
+
+AVX2_TARGET static void avx2_f32_to_s16(const float *src, int16_t *dst, size_t n) {
+    const __m256 max = _mm256_set1_ps(32767.0f);
+    const __m256 min = _mm256_set1_ps(-32768.0f);
+    size_t i = 0;
+    for (; i + 16 <= n; i += 16) {
+        __m256 a = _mm256_max_ps(_mm256_min_ps(_mm256_loadu_ps(src + i), max), min);
+        __m256 b = _mm256_max_ps(_mm256_min_ps(_mm256_loadu_ps(src + i + 8), max), min);
+        /* packs works per 128-bit lane: a0-3 b0-3 a4-7 b4-7, put back in order */
+        __m256i packed = _mm256_packs_epi32(_mm256_cvtps_epi32(a), _mm256_cvtps_epi32(b));
+        _mm256_storeu_si256((__m256i *)(dst + i), _mm256_permute4x64_epi64(packed, 0xD8));
+    }
+    for (; i < n; ++i) dst[i] = float_to_pcm16(src[i]);
+}
+
+AVX2_TARGET static float avx2_dot(const float *h, const float *x, size_t n) {
+    __m256 acc0 = _mm256_setzero_ps();
+    __m256 acc1 = _mm256_setzero_ps();
+    size_t k = 0;
+    for (; k + 16 <= n; k += 16) {
+        acc0 = _mm256_fmadd_ps(_mm256_loadu_ps(h + k), _mm256_loadu_ps(x + k), acc0);
+        acc1 = _mm256_fmadd_ps(_mm256_loadu_ps(h + k + 8), _mm256_loadu_ps(x + k + 8), acc1);
+    }
+    if (k + 8 <= n) {
+        acc0 = _mm256_fmadd_ps(_mm256_loadu_ps(h + k), _mm256_loadu_ps(x + k), acc0);
+        k += 8;
+    }
+    __m256 acc8 = _mm256_add_ps(acc0, acc1);
+    __m128 acc = _mm_add_ps(_mm256_castps256_ps128(acc8), _mm256_extractf128_ps(acc8, 1));
+    acc = _mm_add_ps(acc, _mm_movehl_ps(acc, acc));
+    acc = _mm_add_ss(acc, _mm_shuffle_ps(acc, acc, 1));
+    float sum = _mm_cvtss_f32(acc);
+    for (; k < n; ++k) sum += h[k] * x[k];
+    return sum;
+}
+
+static const PcmKernels kAvx2 = {
+    "avx2", avx2_s16_to_f32, avx2_f32_to_s16, avx2_dot
+};
+
+const PcmKernels *pcm_kernels_avx2(void) {
+    __builtin_cpu_init();
+    if (__builtin_cpu_supports("avx2") && __builtin_cpu_supports("fma")) {
+        return &kAvx2;
+    }
+    return NULL;
+}
+
+#else
+
+const PcmKernels *pcm_kernels_sse2(void) {
+    return NULL;
+}
+
+const PcmKernels *pcm_kernels_avx2(void) {
+    return NULL;
+}
+
+#endif
@@ -0,0 +1,33 @@
+#ifndef PCM_CONVERT_H_
+#define PCM_CONVERT_H_
+
+#include <math.h>
+
+/* RNNoise demo treats samples as float in int16 range, so no scaling is applied. */
+
+static inline short float_to_pcm16(float v) {
+    /* Clamp and round. */
+    if (v > 32767.0f) v = 32767.0f;
+    if (v < -32768.0f) v = -32768.0f;
+    return (short) lrintf(v);
+}
+
+static inline float pcm16_to_float(short s) {
+    return (float)s;
+}
+
+/*
+ * ENCODING_PCM_FLOAT samples are nominally in [-1, 1]. Scaling by a power of two is exact and
+ * nothing is clamped, so peaks above full scale survive for later gain stages.
+ */
+#define PCM_FLOAT_SCALE 32768.0f
+
+static inline float pcm_float_to_float(float v) {
+    return v * PCM_FLOAT_SCALE;
+}
+
+static inline float float_to_pcm_float(float v) {
+    return v * (1.0f / PCM_FLOAT_SCALE);
+}
+
+#endif  // PCM_CONVERT_H_
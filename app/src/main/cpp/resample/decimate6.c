@@ -29,10 +29,18 @@ static const float kDecimate6Taps[DECIMATE6_TAPS] = {
     1.095869039881e-04f, 9.387411113475e-05f, 6.171985885610e-05f, 2.988596105778e-05f
 };
 
+const float *decimate6_taps(void) {
+    return kDecimate6Taps;
+}
+
 void decimate6_init(Decimate6State *state) {
     if (!state) {
         return;
     }
+    for (size_t tap = 0; tap < DECIMATE6_TAPS; ++tap) {
+        state->taps_reversed[tap] = kDecimate6Taps[DECIMATE6_TAPS - 1 - tap];
+    }
+    state->kernels = pcm_kernels();
     decimate6_reset(state);
 }
 
@@ -41,30 +49,47 @@ void decimate6_reset(Decimate6State *state) {
         return;
     }
     memset(state->history, 0, sizeof(state->history));
-    state->index = 0;
     state->phase = 0;
 }
 
+void decimate6_set_kernels(Decimate6State *state, const PcmKernels *kernels) {
+    if (!state || !kernels) {
+        return;
+    }
+    state->kernels = kernels;
+}
+
+/*
+ * Linear-buffer polyphase implementation. Input is appended after the last TAPS-1 samples
+ * in blocks of DECIMATE6_BLOCK, so every dot product reads a contiguous window and only the
+ * outputs that survive decimation are computed. Each output is one dot product of the
+ * reversed taps with the window ending at the newest sample, on the state's kernels: the
+ * scalar reference accumulates newest-sample-first, in the same order as the original
+ * ring-buffer version, so its results are bit-identical; the SIMD kernels agree to float
+ * rounding.
+ */
 size_t decimate6_process(Decimate6State *state, const float *input, size_t input_len, float *output) {
     if (!state || !input || !output) {
         return 0;
     }
 
+    const size_t hist = DECIMATE6_TAPS - 1;
+    float (*const dot)(const float *, const float *, size_t) = state->kernels->dot;
     size_t produced = 0;
-    for (size_t i = 0; i < input_len; ++i) {
-        state->history[state->index] = input[i];
-        state->index = (state->index + 1) % DECIMATE6_TAPS;
-        state->phase = (state->phase + 1) % DECIMATE6_FACTOR;
 
-        if (state->phase == 0) {
-            float acc = 0.0f;
-            size_t idx = state->index;
-            for (size_t tap = 0; tap < DECIMATE6_TAPS; ++tap) {
-                idx = (idx == 0) ? (DECIMATE6_TAPS - 1) : (idx - 1);
-                acc += kDecimate6Taps[tap] * state->history[idx];
-            }
-            output[produced++] = acc;
+    while (input_len > 0) {
+        size_t chunk = (input_len < DECIMATE6_BLOCK) ? input_len : DECIMATE6_BLOCK;
+        memcpy(state->history + hist, input, chunk * sizeof(float));
+
+        /* Output is due once the input sample that completes a 6-sample period arrives. */
+        for (size_t n = hist + (DECIMATE6_FACTOR - 1 - state->phase); n < hist + chunk; n += DECIMATE6_FACTOR) {
+            output[produced++] = dot(state->taps_reversed, state->history + n - hist, DECIMATE6_TAPS);
         }
+
+        state->phase = (state->phase + chunk) % DECIMATE6_FACTOR;
+        memmove(state->history, state->history + chunk, hist * sizeof(float));
+        input += chunk;
+        input_len -= chunk;
     }
 
     return produced;
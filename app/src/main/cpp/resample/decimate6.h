@@ -3,21 +3,31 @@
 
 #include <stddef.h>
 
+#include "kernels/pcm_kernels.h"
+
 #ifdef __cplusplus
 extern "C" {
 #endif
 
 #define DECIMATE6_TAPS 96
 #define DECIMATE6_FACTOR 6
+#define DECIMATE6_BLOCK 480  /* input samples appended to the linear buffer per pass */
 
 typedef struct {
-    float history[DECIMATE6_TAPS];
-    size_t index;
-    size_t phase;
+    /* Last TAPS-1 input samples followed by room for one block of new input. */
+    float history[DECIMATE6_TAPS - 1 + DECIMATE6_BLOCK];
+    size_t phase;  /* input samples consumed since the last output, 0..FACTOR-1 */
+    float taps_reversed[DECIMATE6_TAPS];  /* oldest-sample tap first, for a forward dot product */
+    const PcmKernels *kernels;            /* pcm_kernels() unless overridden */
 } Decimate6State;
 
+/* Prototype low-pass filter (DECIMATE6_TAPS coefficients) shared with the generic resampler. */
+const float *decimate6_taps(void);
+
 void decimate6_init(Decimate6State *state);
 void decimate6_reset(Decimate6State *state);
+/* Runs the filter on the given kernels from now on, e.g. the scalar reference for comparisons. */
+void decimate6_set_kernels(Decimate6State *state, const PcmKernels *kernels);
 size_t decimate6_process(Decimate6State *state, const float *input, size_t input_len, float *output);
 
 #ifdef __cplusplus
@@ -0,0 +1,200 @@
+#include "resampler.h"
+
+#include <math.h>
+#include <stdlib.h>
+#include <string.h>
+
+#include "decimate6.h"
+
+#ifndef M_PI
+#define M_PI 3.14159265358979323846
+#endif
+
+#define RESAMPLER_TAPS_PER_RATIO 16  /* taps per phase for every unit of down/up */
+#define RESAMPLER_KAISER_BETA 8.0
+#define RESAMPLER_PASSBAND 0.9       /* fraction of the output Nyquist kept flat */
+
+struct Resampler {
+    int up;                 /* L */
+    int down;               /* M */
+    size_t taps_per_phase;  /* K */
+    float *phases;          /* L rows of K taps, row p holds h[p + (K-1-k)*L] for k = 0..K-1 */
+    const PcmKernels *kernels;
+
+    float *history;         /* K-1 samples of history followed by one block of new input */
+    size_t phase;           /* current output position modulo L in the upsampled domain */
+    size_t next_input;      /* input samples to consume before the next output, relative to the block */
+};
+
+static int gcd_int(int a, int b) {
+    while (b != 0) {
+        int t = a % b;
+        a = b;
+        b = t;
+    }
+    return a;
+}
+
+static double bessel_i0(double x) {
+    double sum = 1.0;
+    double term = 1.0;
+    double q = x * x / 4.0;
+    for (int k = 1; k < 64; ++k) {
+        term *= q / ((double)k * (double)k);
+        sum += term;
+        if (term < sum * 1e-12) break;
+    }
+    return sum;
+}
+
+/* Kaiser-windowed sinc low-pass at the upsampled rate with DC gain `up`. */
+static void design_lowpass(float *taps, size_t n, int up, int down) {
+    int max_ratio = (up > down) ? up : down;
+    double cutoff = RESAMPLER_PASSBAND * 0.5 / (double)max_ratio;  /* cycles per upsampled sample */
+    double center = (double)(n - 1) / 2.0;
+    double norm = bessel_i0(RESAMPLER_KAISER_BETA);
+    double sum = 0.0;
+    for (size_t i = 0; i < n; ++i) {
+        double t = (double)i - center;
+        double sinc = (t == 0.0) ? 2.0 * cutoff : sin(2.0 * M_PI * cutoff * t) / (M_PI * t);
+        double r = t / (center > 0.0 ? center : 1.0);
+        double w = bessel_i0(RESAMPLER_KAISER_BETA * sqrt(fmax(0.0, 1.0 - r * r))) / norm;
+        taps[i] = (float)(sinc * w);
+        sum += taps[i];
+    }
+    for (size_t i = 0; i < n; ++i) {
+        taps[i] = (float)(taps[i] * (double)up / sum);
+    }
+}
+
+Resampler *resampler_create(int up, int down, const float *taps, size_t num_taps) {
+    if (up <= 0 || down <= 0) {
+        return NULL;
+    }
+    int g = gcd_int(up, down);
+    up /= g;
+    down /= g;
+
+    float *proto = NULL;
+    const float *src = taps;
+    if (!src) {
+        if (up == 1 && down == DECIMATE6_FACTOR) {
+            src = decimate6_taps();
+            num_taps = DECIMATE6_TAPS;
+        } else {
+            int per_phase_ratio = (down + up - 1) / up;
+            num_taps = (size_t)RESAMPLER_TAPS_PER_RATIO * (size_t)per_phase_ratio * (size_t)up;
+            proto = (float *)malloc(num_taps * sizeof(float));
+            if (!proto) return NULL;
+            design_lowpass(proto, num_taps, up, down);
+            src = proto;
+        }
+    }
+    if (num_taps == 0) {
+        free(proto);
+        return NULL;
+    }
+
+    Resampler *rs = (Resampler *)calloc(1, sizeof(Resampler));
+    if (!rs) {
+        free(proto);
+        return NULL;
+    }
+    rs->up = up;
+    rs->down = down;
+    rs->taps_per_phase = (num_taps + (size_t)up - 1) / (size_t)up;
+    rs->phases = (float *)calloc((size_t)up * rs->taps_per_phase, sizeof(float));
+    rs->history = (float *)calloc(rs->taps_per_phase - 1 + RESAMPLER_BLOCK, sizeof(float));
+    if (!rs->phases || !rs->history) {
+        free(proto);
+        resampler_destroy(rs);
+        return NULL;
+    }
+    /* Rows are stored reversed, oldest-sample tap first, so each output is a forward dot product */
+    for (size_t i = 0; i < num_taps; ++i) {
+        rs->phases[(i % (size_t)up) * rs->taps_per_phase + rs->taps_per_phase - 1 - i / (size_t)up] = src[i];
+    }
+    rs->kernels = pcm_kernels();
+    free(proto);
+
+    resampler_reset(rs);
+    return rs;
+}
+
+void resampler_destroy(Resampler *rs) {
+    if (!rs) return;
+    free(rs->phases);
+    free(rs->history);
+    free(rs);
+}
+
+void resampler_reset(Resampler *rs) {
+    if (!rs) return;
+    memset(rs->history, 0, (rs->taps_per_phase - 1 + RESAMPLER_BLOCK) * sizeof(float));
+    /*
+     * The first output lands on upsampled index M-1, i.e. once a full decimation period of
+     * input has arrived. For 1:M this matches decimate6's output timing exactly.
+     */
+    rs->phase = (size_t)(rs->down - 1) % (size_t)rs->up;
+    rs->next_input = (size_t)(rs->down - 1) / (size_t)rs->up;
+}
+
+void resampler_set_kernels(Resampler *rs, const PcmKernels *kernels) {
+    if (!rs || !kernels) return;
+    rs->kernels = kernels;
+}
+
+int resampler_up(const Resampler *rs) {
+    return rs ? rs->up : 0;
+}
+
+int resampler_down(const Resampler *rs) {
+    return rs ? rs->down : 0;
+}
+
+size_t resampler_max_output(const Resampler *rs, size_t input_len) {
+    if (!rs) return 0;
+    return (input_len * (size_t)rs->up) / (size_t)rs->down + 1;
+}
+
+size_t resampler_process(Resampler *rs, const float *input, size_t input_len, float *output) {
+    if (!rs || !input || !output) {
+        return 0;
+    }
+
+    const size_t K = rs->taps_per_phase;
+    const size_t hist = K - 1;
+    const size_t L = (size_t)rs->up;
+    const size_t M = (size_t)rs->down;
+    /* Advance per output: M/L whole input samples plus M%L phase steps. */
+    const size_t step_int = M / L;
+    const size_t step_frac = M % L;
+    float (*const dot)(const float *, const float *, size_t) = rs->kernels->dot;
+    size_t produced = 0;
+
+    while (input_len > 0) {
+        size_t chunk = (input_len < RESAMPLER_BLOCK) ? input_len : RESAMPLER_BLOCK;
+        memcpy(rs->history + hist, input, chunk * sizeof(float));
+
+        size_t n = rs->next_input;
+        size_t phase = rs->phase;
+        while (n < chunk) {
+            output[produced++] = dot(rs->phases + phase * K, rs->history + n, K);
+
+            n += step_int;
+            phase += step_frac;
+            if (phase >= L) {
+                phase -= L;
+                n += 1;
+            }
+        }
+        rs->next_input = n - chunk;
+        rs->phase = phase;
+
+        memmove(rs->history, rs->history + chunk, hist * sizeof(float));
+        input += chunk;
+        input_len -= chunk;
+    }
+
+    return produced;
+}
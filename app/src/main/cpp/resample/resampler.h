@@ -0,0 +1,51 @@
+#ifndef RESAMPLER_H_
+#define RESAMPLER_H_
+
+#include <stddef.h>
+
+#include "kernels/pcm_kernels.h"
+
+#ifdef __cplusplus
+extern "C" {
+#endif
+
+/*
+ * Streaming rational resampler (up by L, down by M) built on a polyphase FIR.
+ *
+ * Input is kept in a linear buffer, so the inner loop is a contiguous dot product with no
+ * per-sample modulo, and only the output samples that are actually kept get computed.
+ * The 1:6 case uses the decimate6 prototype filter and is bit-identical to decimate6_process
+ * on the same kernels.
+ */
+
+#define RESAMPLER_BLOCK 480  /* input samples appended to the linear buffer per pass */
+
+typedef struct Resampler Resampler;
+
+/*
+ * Creates a resampler for the ratio up/down (reduced internally by their gcd).
+ * Pass taps == NULL to use the built-in prototype: decimate6 for 1:6, otherwise a
+ * Kaiser-windowed sinc designed for the ratio. Custom taps are expressed at the
+ * upsampled rate and should carry a DC gain of `up`.
+ * Returns NULL on invalid arguments or allocation failure.
+ */
+Resampler *resampler_create(int up, int down, const float *taps, size_t num_taps);
+void resampler_destroy(Resampler *rs);
+void resampler_reset(Resampler *rs);
+/* Runs the filter on the given kernels from now on; pcm_kernels() is used by default. */
+void resampler_set_kernels(Resampler *rs, const PcmKernels *kernels);
+
+int resampler_up(const Resampler *rs);
+int resampler_down(const Resampler *rs);
+
+/* Upper bound on the samples produced by the next resampler_process call for input_len samples. */
+size_t resampler_max_output(const Resampler *rs, size_t input_len);
+
+/* Consumes all input_len samples; writes at most resampler_max_output() samples. Returns the count. */
+size_t resampler_process(Resampler *rs, const float *input, size_t input_len, float *output);
+
+#ifdef __cplusplus
+}
+#endif
+
+#endif  // RESAMPLER_H_
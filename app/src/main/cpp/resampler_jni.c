@@ -0,0 +1,124 @@
+/*
+ * JNI bridge for the streaming rational resampler (com.zgo.recordplayer.audio.Resampler).
+ *
+ * Entry points: nativeCreate, nativeProcessFloat, nativeProcessShort, nativeReset, nativeDestroy.
+ * Array bounds are validated by the Java wrapper before any call reaches native code.
+ */
+
+#include <jni.h>
+
+#include <android/log.h>
+#include <stdint.h>
+#include <stdlib.h>
+
+#include "kernels/pcm_kernels.h"
+#include "resample/resampler.h"
+
+#define LOG_TAG "ResamplerJNI"
+#define LOGE(...) __android_log_print(ANDROID_LOG_ERROR, LOG_TAG, __VA_ARGS__)
+
+typedef struct {
+    Resampler *rs;
+    const PcmKernels *kernels;
+    /* Scratch for the PCM16 entry point, sized for one RESAMPLER_BLOCK of input. */
+    float in_scratch[RESAMPLER_BLOCK];
+    float *out_scratch;
+} ResamplerHandle;
+
+static ResamplerHandle *resampler_handle_from_jlong(jlong h) {
+    return (ResamplerHandle *)(uintptr_t)h;
+}
+
+JNIEXPORT jlong JNICALL
+Java_com_zgo_recordplayer_audio_Resampler_nativeCreate(JNIEnv *env, jclass clazz, jint up, jint down) {
+    (void)env; (void)clazz;
+
+    ResamplerHandle *handle = (ResamplerHandle *)calloc(1, sizeof(ResamplerHandle));
+    if (!handle) {
+        LOGE("Failed to allocate ResamplerHandle");
+        return (jlong)0;
+    }
+    handle->rs = resampler_create(up, down, NULL, 0);
+    if (!handle->rs) {
+        LOGE("resampler_create(%d, %d) failed", (int)up, (int)down);
+        free(handle);
+        return (jlong)0;
+    }
+    handle->kernels = pcm_kernels();
+    handle->out_scratch = (float *)malloc(resampler_max_output(handle->rs, RESAMPLER_BLOCK) * sizeof(float));
+    if (!handle->out_scratch) {
+        LOGE("Failed to allocate resampler scratch");
+        resampler_destroy(handle->rs);
+        free(handle);
+        return (jlong)0;
+    }
+    return (jlong)(uintptr_t)handle;
+}
+
+JNIEXPORT jint JNICALL
+Java_com_zgo_recordplayer_audio_Resampler_nativeProcessFloat(JNIEnv *env, jclass clazz, jlong h,
+                                                             jfloatArray input, jint inOffset, jint length,
+                                                             jfloatArray output, jint outOffset) {
+    (void)clazz;
+    ResamplerHandle *handle = resampler_handle_from_jlong(h);
+    if (!handle) return (jint)-1;
+
+    jfloat *in_ptr = (jfloat *)(*env)->GetPrimitiveArrayCritical(env, input, NULL);
+    jfloat *out_ptr = (jfloat *)(*env)->GetPrimitiveArrayCritical(env, output, NULL);
+    jint produced = (jint)-4;
+    if (in_ptr && out_ptr) {
+        produced = (jint)resampler_process(handle->rs, in_ptr + inOffset, (size_t)length, out_ptr + outOffset);
+    }
+    if (out_ptr) (*env)->ReleasePrimitiveArrayCritical(env, output, out_ptr, 0);
+    if (in_ptr) (*env)->ReleasePrimitiveArrayCritical(env, input, in_ptr, JNI_ABORT);
+    return produced;
+}
+
+JNIEXPORT jint JNICALL
+Java_com_zgo_recordplayer_audio_Resampler_nativeProcessShort(JNIEnv *env, jclass clazz, jlong h,
+                                                             jshortArray input, jint inOffset, jint length,
+                                                             jshortArray output, jint outOffset) {
+    (void)clazz;
+    ResamplerHandle *handle = resampler_handle_from_jlong(h);
+    if (!handle) return (jint)-1;
+
+    jshort *in_ptr = (jshort *)(*env)->GetPrimitiveArrayCritical(env, input, NULL);
+    jshort *out_ptr = (jshort *)(*env)->GetPrimitiveArrayCritical(env, output, NULL);
+    jint produced = (jint)-4;
+    if (in_ptr && out_ptr) {
+        const jshort *src = in_ptr + inOffset;
+        jshort *dst = out_ptr + outOffset;
+        size_t remaining = (size_t)length;
+        size_t total = 0;
+        while (remaining > 0) {
+            size_t chunk = (remaining < RESAMPLER_BLOCK) ? remaining : RESAMPLER_BLOCK;
+            handle->kernels->s16_to_f32(src, handle->in_scratch, chunk);
+            size_t n = resampler_process(handle->rs, handle->in_scratch, chunk, handle->out_scratch);
+            handle->kernels->f32_to_s16(handle->out_scratch, dst + total, n);
+            total += n;
+            src += chunk;
+            remaining -= chunk;
+        }
+        produced = (jint)total;
+    }
+    if (out_ptr) (*env)->ReleasePrimitiveArrayCritical(env, output, out_ptr, 0);
+    if (in_ptr) (*env)->ReleasePrimitiveArrayCritical(env, input, in_ptr, JNI_ABORT);
+    return produced;
+}
+
+JNIEXPORT void JNICALL
+Java_com_zgo_recordplayer_audio_Resampler_nativeReset(JNIEnv *env, jclass clazz, jlong h) {
+    (void)env; (void)clazz;
+    ResamplerHandle *handle = resampler_handle_from_jlong(h);
+    if (handle) resampler_reset(handle->rs);
+}
+
+JNIEXPORT void JNICALL
+Java_com_zgo_recordplayer_audio_Resampler_nativeDestroy(JNIEnv *env, jclass clazz, jlong h) {
+    (void)env; (void)clazz;
+    ResamplerHandle *handle = resampler_handle_from_jlong(h);
+    if (!handle) return;
+    resampler_destroy(handle->rs);
+    free(handle->out_scratch);
+    free(handle);
+}
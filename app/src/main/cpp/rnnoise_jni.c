@@ -2,10 +2,31 @@
  * RNNoise JNI bridge implemented in C.
  *
  * Processing chain (48 kHz mono PCM16 input -> 8 kHz mono PCM16 output):
- *   int16 (480) -> float (480) -> [optional] rnnoise -> decimate by 6 -> int16 (160 every 2 calls)
+ *   int16 (480) -> float (480) -> declared stages -> [output tap] -> declared stages
+ *       -> [optional] decimate by 6 -> int16 (160 every 2 calls)
  *
- * The JNI surface maintains backwards-compatible entry points used by the Java wrapper:
- *   nativeCreate, nativeProcessFrame, nativeDestroy.
+ * The float entry points take and return ENCODING_PCM_FLOAT samples instead: a power-of-two
+ * scale on the way in and out, with no rounding and no clamping at either output.
+ *
+ * The stages (high-pass, gain, rnnoise, AGC, limiter) come from an AudioProcessingChain
+ * compiled once by nativeCreateChain into a flat list; every stage runs in place on one float
+ * frame buffer, so a declared stage costs one pass over 480 floats in L1 and an undeclared one
+ * costs nothing.
+ *
+ * Entry points: nativeCreateChain, nativeProcessFrame, nativeReset, nativeDestroy.
+ * nativeReset returns a handle to its just-created state without reallocating anything, so
+ * a pooled handle can start a new stream at no setup cost.
+ * nativeProcessFrames / nativeProcessFramesDirect run the same chain over a batch of
+ * consecutive frames in a single crossing; the direct variant works on ByteBuffer memory
+ * without any copies across the JNI boundary. All three can also return RNNoise's
+ * voice activity probability for each frame. nativeProcessFramesFloat and
+ * nativeProcessFramesFloatDirect are the float32 counterparts of the batch entry points.
+ * nativeDenoiseNanos reports the handle's total
+ * time inside rnnoise_process_frame, timed per frame with the vDSO monotonic clock.
+ *
+ * PCM16 conversion and the decimator's FIR run on the SIMD kernels pcm_kernels() picks for
+ * the CPU (kernels/pcm_kernels.h); the conversions are exact, so only the decimated output
+ * can differ from the scalar reference, by float rounding.
  */
 
 #include <jni.h>
@@ -16,8 +37,11 @@
 #include <stdint.h>
 #include <stdlib.h>
 #include <string.h>
+#include <time.h>
 #include <stdbool.h>
 
+#include "kernels/pcm_kernels.h"
+#include "pcm_convert.h"
 #include "resample/decimate6.h"
 #include "rnnoise/include/rnnoise.h"
 
@@ -31,24 +55,42 @@
 
 #define FRAME_SIZE 480
 #define DECIMATED_FRAME_TARGET 160  /* 20 ms of 8 kHz samples; produced every 2 frames */
+#define VAD_UNAVAILABLE (-1.0f)     /* FrameProcessor.VAD_UNAVAILABLE: denoiser disabled */
+
+/* Sample format of the caller's memory */
+#define FORMAT_PCM16 0              /* int16 */
+#define FORMAT_FLOAT 1              /* float32 in [-1, 1] (AudioFormat.ENCODING_PCM_FLOAT) */
+
+/* Stage opcodes, kept in sync with AudioProcessingChain.STAGE_* */
+#define STAGE_HIGH_PASS 1
+#define STAGE_GAIN 2
+#define STAGE_DENOISE 3
+#define STAGE_AGC 4
+#define STAGE_LIMITER 5
+#define STAGE_OUTPUT 6
+#define STAGE_DECIMATE 7
+#define MAX_STAGES 16               /* AudioProcessingChain.MAX_STAGES */
+#define MAX_STAGE_PARAMS 5
 
-static inline short float_to_pcm16(float v) {
-    /* RNNoise demo treats samples as float in int16 range. Clamp and round. */
-    if (v > 32767.0f) v = 32767.0f;
-    if (v < -32768.0f) v = -32768.0f;
-    return (short) lrintf(v);
-}
-
-static inline float pcm16_to_float(short s) {
-    return (float)s;
-}
+typedef struct {
+    int type;
+    float p[MAX_STAGE_PARAMS];  /* coefficients from AudioProcessingChain */
+    float z1, z2;               /* biquad state, or the running gain of AGC / limiter */
+} ChainStage;
 
 /* Per-instance native handle stored as a jlong on the Java side */
 typedef struct {
-    DenoiseState *st;           /* NULL when denoiser disabled */
-    int denoiser_enabled;       /* boolean flag */
+    DenoiseState *st;           /* NULL when the chain has no denoise stage */
+
+    ChainStage stages[MAX_STAGES];
+    int stage_count;
+    int output_index;           /* denoised output is written before stages[output_index] */
+    int decimate;               /* chain ends with the decimator */
 
     Decimate6State decimator;   /* stateful decimator (x6) */
+    const PcmKernels *kernels;  /* PCM16 conversion, chosen for the CPU at creation */
+
+    uint64_t denoise_ns;        /* time spent in rnnoise_process_frame; survives nativeReset */
 
     /* Accumulator for returning 160 8 kHz samples every two 10 ms frames */
     float decim_accum[DECIMATED_FRAME_TARGET];
@@ -63,13 +105,293 @@ static RNHandle *handle_from_jlong(jlong h) {
     return (RNHandle *)(uintptr_t)h;
 }
 
+/* Returns the address of a direct buffer advanced by byte_offset, or NULL when not direct. */
+static void *direct_ptr(JNIEnv *env, jobject buffer, jint byte_offset) {
+    if (buffer == NULL) return NULL;
+    uint8_t *base = (uint8_t *)(*env)->GetDirectBufferAddress(env, buffer);
+    if (!base) return NULL;
+    return base + byte_offset;
+}
+
+static size_t sample_bytes(int format) {
+    return (format == FORMAT_FLOAT) ? sizeof(jfloat) : sizeof(jshort);
+}
+
+/* Loads n caller samples into a chain frame (int16-range floats), zero-padding to a full frame. */
+static void load_frame(const PcmKernels *kernels, float *frame, const void *in, jsize n, int format) {
+    if (format == FORMAT_FLOAT) {
+        const jfloat *src = (const jfloat *)in;
+        for (jsize i = 0; i < n; ++i) frame[i] = pcm_float_to_float(src[i]);
+    } else {
+        kernels->s16_to_f32((const int16_t *)in, frame, (size_t)n);
+    }
+    for (jsize i = n; i < FRAME_SIZE; ++i) frame[i] = 0.0f;
+}
+
+/* Stores n chain samples into caller memory; only PCM16 rounds and clamps. */
+static void store_samples(const PcmKernels *kernels, void *out, const float *src, jsize n, int format) {
+    if (format == FORMAT_FLOAT) {
+        jfloat *dst = (jfloat *)out;
+        for (jsize i = 0; i < n; ++i) dst[i] = float_to_pcm_float(src[i]);
+    } else {
+        kernels->f32_to_s16(src, (int16_t *)out, (size_t)n);
+    }
+}
+
+/* ------------------------------------------------------------------------- */
+/* Chain stages (mirrored by FrameStages.java)                               */
+/* ------------------------------------------------------------------------- */
+
+/* Multiplies frame by a gain moving linearly from `from` to reach `to` on the last sample. */
+static void ramp_gain(float *frame, float from, float to) {
+    float step = (to - from) / FRAME_SIZE;
+    float g = from;
+    for (int i = 0; i < FRAME_SIZE; ++i) {
+        g += step;
+        frame[i] *= g;
+    }
+}
+
+/* Biquad in transposed direct form II; p = b0, b1, b2, a1, a2. */
+static void stage_high_pass(ChainStage *s, float *frame) {
+    const float b0 = s->p[0], b1 = s->p[1], b2 = s->p[2], a1 = s->p[3], a2 = s->p[4];
+    float s1 = s->z1, s2 = s->z2;
+    for (int i = 0; i < FRAME_SIZE; ++i) {
+        float x = frame[i];
+        float y = b0 * x + s1;
+        s1 = b1 * x - a1 * y + s2;
+        s2 = b2 * x - a2 * y;
+        frame[i] = y;
+    }
+    s->z1 = s1;
+    s->z2 = s2;
+}
+
+static void stage_gain(const ChainStage *s, float *frame) {
+    const float gain = s->p[0];
+    for (int i = 0; i < FRAME_SIZE; ++i) frame[i] *= gain;
+}
+
+/* Frame-RMS gain control; p = target RMS, max gain, attack, release; z1 = current gain. */
+static void stage_agc(ChainStage *s, float *frame) {
+    const float target = s->p[0], max_gain = s->p[1];
+    float sum = 0.0f;
+    for (int i = 0; i < FRAME_SIZE; ++i) sum += frame[i] * frame[i];
+    float rms = sqrtf(sum / FRAME_SIZE);
+    float desired = (rms * max_gain > target) ? target / rms : max_gain;
+    float gain = s->z1;
+    float next = gain + ((desired < gain) ? s->p[2] : s->p[3]) * (desired - gain);
+    ramp_gain(frame, gain, next);
+    s->z1 = next;
+}
+
+/* Peak limiter; p = ceiling, release; z1 = current gain. Drops at once, recovers gradually. */
+static void stage_limiter(ChainStage *s, float *frame) {
+    const float ceiling = s->p[0];
+    float peak = 0.0f;
+    for (int i = 0; i < FRAME_SIZE; ++i) peak = fmaxf(peak, fabsf(frame[i]));
+    float target = (peak > ceiling) ? ceiling / peak : 1.0f;
+    if (target < s->z1) {
+        s->z1 = target;
+        ramp_gain(frame, target, target);
+    } else {
+        float next = s->z1 + s->p[1] * (target - s->z1);
+        ramp_gain(frame, s->z1, next);
+        s->z1 = next;
+    }
+}
+
+/* Clears a stage's running state; AGC and limiter start at unity gain. */
+static void reset_stage(ChainStage *s) {
+    s->z1 = (s->type == STAGE_AGC || s->type == STAGE_LIMITER) ? 1.0f : 0.0f;
+    s->z2 = 0.0f;
+}
+
+static uint64_t monotonic_ns(void) {
+    struct timespec ts;
+    clock_gettime(CLOCK_MONOTONIC, &ts);
+    return (uint64_t)ts.tv_sec * 1000000000u + (uint64_t)ts.tv_nsec;
+}
+
+/* Runs stages [from, to) in place; the denoise stage reports RNNoise's voice probability. */
+static void run_stages(RNHandle *handle, int from, int to, float *frame, float *vad) {
+    for (int i = from; i < to; ++i) {
+        ChainStage *s = &handle->stages[i];
+        switch (s->type) {
+            case STAGE_HIGH_PASS: stage_high_pass(s, frame); break;
+            case STAGE_GAIN: stage_gain(s, frame); break;
+            case STAGE_DENOISE: {
+                uint64_t begin = monotonic_ns();
+                *vad = rnnoise_process_frame(handle->st, frame, frame);
+                handle->denoise_ns += monotonic_ns() - begin;
+                break;
+            }
+            case STAGE_AGC: stage_agc(s, frame); break;
+            case STAGE_LIMITER: stage_limiter(s, frame); break;
+            default: break;
+        }
+    }
+}
+
+/*
+ * Compiles the opcode/parameter lists of an AudioProcessingChain into handle.
+ * Returns 0 on success, -1 if the description is malformed.
+ */
+static int compile_chain(RNHandle *handle, const jint *ops, jsize op_count,
+                         const jfloat *params, jsize param_count) {
+    jsize p = 0;
+    handle->stage_count = 0;
+    handle->output_index = -1;
+    handle->decimate = 0;
+    for (jsize i = 0; i < op_count; ++i) {
+        int op = ops[i];
+        if (handle->decimate) return -1;  /* decimator must be last */
+        if (op == STAGE_OUTPUT) {
+            if (handle->output_index >= 0) return -1;
+            handle->output_index = handle->stage_count;
+            continue;
+        }
+        if (op == STAGE_DECIMATE) {
+            handle->decimate = 1;
+            continue;
+        }
+        int n;
+        switch (op) {
+            case STAGE_HIGH_PASS: n = 5; break;
+            case STAGE_GAIN: n = 1; break;
+            case STAGE_DENOISE: n = 0; break;
+            case STAGE_AGC: n = 4; break;
+            case STAGE_LIMITER: n = 2; break;
+            default: return -1;
+        }
+        if (handle->stage_count == MAX_STAGES || p + n > param_count) return -1;
+        if (op == STAGE_DENOISE && handle->st != NULL) return -1;
+        ChainStage *s = &handle->stages[handle->stage_count++];
+        s->type = op;
+        for (int k = 0; k < n; ++k) s->p[k] = params[p + k];
+        p += n;
+        reset_stage(s);
+        if (op == STAGE_DENOISE) {
+            handle->st = rnnoise_create(NULL);
+            if (!handle->st) {
+                LOGE("rnnoise_create returned NULL");
+                return -1;
+            }
+        }
+    }
+    if (handle->output_index < 0) handle->output_index = handle->stage_count;
+    return 0;
+}
+
+/* ------------------------------------------------------------------------- */
+/* Frame processing                                                          */
+/* ------------------------------------------------------------------------- */
+
+/*
+ * Runs one 10 ms frame through the chain, reading and writing caller-owned memory in the given
+ * sample format (lengths in samples). Shared by the array and direct-buffer entry points so
+ * both produce identical output. vad_out (optional) receives RNNoise's voice probability, or
+ * VAD_UNAVAILABLE.
+ *
+ * Returns DECIMATED_FRAME_TARGET when decimated_out received a full 8 kHz block, 0 otherwise.
+ */
+static jint process_frame(RNHandle *handle, int format,
+                          const void *in, jsize in_len,
+                          void *denoised_out, jsize denoised_len,
+                          void *decimated_out, jsize decimated_len,
+                          float *vad_out) {
+    const jsize frame_len = FRAME_SIZE;
+
+    float outF[FRAME_SIZE];
+
+    /* Convert input to float. If input shorter than frame, zero-pad. */
+    load_frame(handle->kernels, outF, in, (in_len < frame_len) ? in_len : frame_len, format);
+
+    /* All declared stages run in place on the one frame buffer */
+    float vad = VAD_UNAVAILABLE;
+    run_stages(handle, 0, handle->output_index, outF, &vad);
+
+    /* Optional denoised 48 kHz output, taken at the chain's output tap */
+    if (denoised_out != NULL) {
+        store_samples(handle->kernels, denoised_out, outF, (denoised_len < frame_len) ? denoised_len : frame_len, format);
+    }
+
+    run_stages(handle, handle->output_index, handle->stage_count, outF, &vad);
+    if (vad_out != NULL) *vad_out = vad;
+
+    if (!handle->decimate) {
+        return (jint)0;
+    }
+
+    /* Decimate to 8 kHz and buffer until we have 160 samples */
+    float decim_tmp[FRAME_SIZE]; /* upper bound; function will produce floor(N/6) */
+    size_t produced = decimate6_process(&handle->decimator, outF, FRAME_SIZE, decim_tmp);
+
+    if (produced > 0) {
+        size_t to_copy = produced;
+        if (to_copy > DECIMATED_FRAME_TARGET - handle->decim_count) {
+            to_copy = DECIMATED_FRAME_TARGET - handle->decim_count;
+        }
+        memcpy(handle->decim_accum + handle->decim_count, decim_tmp, to_copy * sizeof(float));
+        handle->decim_count += to_copy;
+    }
+
+    if (handle->decim_count < DECIMATED_FRAME_TARGET) {
+        return (jint)0;
+    }
+
+    /* We have 160 samples ready */
+    if (decimated_out != NULL) {
+        if (decimated_len >= DECIMATED_FRAME_TARGET) {
+            store_samples(handle->kernels, decimated_out, handle->decim_accum, DECIMATED_FRAME_TARGET, format);
+        } else {
+            LOGE("decimatedOutput length too small: %d", (int)decimated_len);
+        }
+    }
+    /* Reset accumulator (drop any excess) */
+    handle->decim_count = 0;
+    return (jint)DECIMATED_FRAME_TARGET;
+}
+
+/*
+ * Runs frame_count consecutive frames. Denoised output (optional) mirrors the input layout;
+ * decimated blocks are packed back to back, frame_results (optional) receives the
+ * per-frame 8 kHz sample count and vad_out (optional) the per-frame voice probability.
+ * Returns the total number of 8 kHz samples written.
+ */
+static jint process_frames(RNHandle *handle, int format,
+                           const void *in, jint frame_count,
+                           void *denoised_out,
+                           void *decimated_out,
+                           jint *frame_results,
+                           jfloat *vad_out) {
+    const size_t frame_bytes = FRAME_SIZE * sample_bytes(format);
+    const uint8_t *in_bytes = (const uint8_t *)in;
+    uint8_t *denoised_bytes = (uint8_t *)denoised_out;
+    uint8_t *decimated_bytes = (uint8_t *)decimated_out;
+    jint total = 0;
+    for (jint f = 0; f < frame_count; ++f) {
+        jint produced = process_frame(handle, format,
+                                      in_bytes + (size_t)f * frame_bytes, FRAME_SIZE,
+                                      (denoised_bytes != NULL) ? denoised_bytes + (size_t)f * frame_bytes : NULL,
+                                      FRAME_SIZE,
+                                      decimated_bytes + (size_t)total * sample_bytes(format),
+                                      DECIMATED_FRAME_TARGET,
+                                      (vad_out != NULL) ? vad_out + f : NULL);
+        if (frame_results != NULL) frame_results[f] = produced;
+        total += produced;
+    }
+    return total;
+}
+
 /* ------------------------------------------------------------------------- */
 /* JNI methods                                                               */
 /* ------------------------------------------------------------------------- */
 
 JNIEXPORT jlong JNICALL
-Java_com_zgo_recordplayer_audio_RnnoiseProcessor_nativeCreate(JNIEnv *env, jclass clazz, jboolean enableDenoiser) {
-    (void)env; (void)clazz;  /* unused */
+Java_com_zgo_recordplayer_audio_RnnoiseProcessor_nativeCreateChain(JNIEnv *env, jclass clazz,
+                                                                   jintArray ops, jfloatArray params) {
+    (void)clazz;
 
     RNHandle *handle = (RNHandle *)calloc(1, sizeof(RNHandle));
     if (!handle) {
@@ -77,23 +399,31 @@ Java_com_zgo_recordplayer_audio_RnnoiseProcessor_nativeCreate(JNIEnv *env, jclas
         return (jlong)0;
     }
 
-    handle->denoiser_enabled = (enableDenoiser == JNI_TRUE) ? 1 : 0;
-
-    if (handle->denoiser_enabled) {
-        handle->st = rnnoise_create(NULL);
-        if (!handle->st) {
-            LOGE("rnnoise_create returned NULL");
-            free(handle);
-            return (jlong)0;
-        }
-    } else {
-        handle->st = NULL;
+    jsize op_count = (*env)->GetArrayLength(env, ops);
+    jsize param_count = (*env)->GetArrayLength(env, params);
+    jint op_buf[2 * MAX_STAGES + 2];
+    jfloat param_buf[MAX_STAGES * MAX_STAGE_PARAMS];
+    int rc = -1;
+    if (op_count <= (jsize)(sizeof(op_buf) / sizeof(op_buf[0]))
+            && param_count <= (jsize)(sizeof(param_buf) / sizeof(param_buf[0]))) {
+        (*env)->GetIntArrayRegion(env, ops, 0, op_count, op_buf);
+        (*env)->GetFloatArrayRegion(env, params, 0, param_count, param_buf);
+        rc = compile_chain(handle, op_buf, op_count, param_buf, param_count);
+    }
+    if (rc != 0) {
+        LOGE("nativeCreateChain: invalid chain (%d ops, %d params)", (int)op_count, (int)param_count);
+        if (handle->st) rnnoise_destroy(handle->st);
+        free(handle);
+        return (jlong)0;
     }
 
     decimate6_init(&handle->decimator);
+    handle->kernels = pcm_kernels();
     handle->decim_count = 0;
 
-    LOGI("nativeCreate: denoiser %s", handle->denoiser_enabled ? "enabled" : "disabled");
+    LOGI("nativeCreateChain: %d stages, denoiser %s, decimator %s, %s kernels", handle->stage_count,
+         handle->st ? "enabled" : "disabled", handle->decimate ? "enabled" : "disabled",
+         handle->kernels->name);
     return (jlong)(uintptr_t)handle;
 }
 
@@ -103,7 +433,8 @@ Java_com_zgo_recordplayer_audio_RnnoiseProcessor_nativeProcessFrame(JNIEnv *env,
                                                                     jlong h,
                                                                     jshortArray inputFrame,
                                                                     jshortArray denoisedOutput,
-                                                                    jshortArray decimatedOutput) {
+                                                                    jshortArray decimatedOutput,
+                                                                    jfloatArray vadOutput) {
     (void)clazz;
 
     RNHandle *handle = handle_from_jlong(h);
@@ -123,8 +454,6 @@ Java_com_zgo_recordplayer_audio_RnnoiseProcessor_nativeProcessFrame(JNIEnv *env,
         return (jint)-3;
     }
 
-    const jsize frame_len = FRAME_SIZE;
-
     jboolean is_copy_in = JNI_FALSE;
     jshort *in_ptr = (*env)->GetShortArrayElements(env, inputFrame, &is_copy_in);
     if (!in_ptr) {
@@ -132,72 +461,270 @@ Java_com_zgo_recordplayer_audio_RnnoiseProcessor_nativeProcessFrame(JNIEnv *env,
         return (jint)-4;
     }
 
-    float inF[FRAME_SIZE];
-    float outF[FRAME_SIZE];
+    jshort denoised_tmp[FRAME_SIZE];
+    jshort decimated_tmp[DECIMATED_FRAME_TARGET];
+    jfloat vad = VAD_UNAVAILABLE;
+    jsize out_len = (denoisedOutput != NULL) ? (*env)->GetArrayLength(env, denoisedOutput) : 0;
+    jsize decim_out_len = (decimatedOutput != NULL) ? (*env)->GetArrayLength(env, decimatedOutput) : 0;
 
-    /* Convert input to float. If input shorter than frame, zero-pad. */
-    jsize copy = (in_len < frame_len) ? in_len : frame_len;
-    for (jsize i = 0; i < copy; ++i) inF[i] = pcm16_to_float(in_ptr[i]);
-    for (jsize i = copy; i < frame_len; ++i) inF[i] = 0.0f;
+    jint result = process_frame(handle, FORMAT_PCM16,
+                                in_ptr, in_len,
+                                (denoisedOutput != NULL) ? denoised_tmp : NULL, out_len,
+                                (decimatedOutput != NULL) ? decimated_tmp : NULL, decim_out_len,
+                                &vad);
 
-    /* Process through RNNoise if enabled, otherwise passthrough. */
-    if (handle->st) {
-        (void)rnnoise_process_frame(handle->st, outF, inF);
+    /* Release input (no need to copy back) */
+    (*env)->ReleaseShortArrayElements(env, inputFrame, in_ptr, JNI_ABORT);
+
+    if (denoisedOutput != NULL && out_len > 0) {
+        jsize out_copy = (out_len < FRAME_SIZE) ? out_len : FRAME_SIZE;
+        (*env)->SetShortArrayRegion(env, denoisedOutput, 0, out_copy, denoised_tmp);
+    }
+    if (result == DECIMATED_FRAME_TARGET && decimatedOutput != NULL && decim_out_len >= DECIMATED_FRAME_TARGET) {
+        (*env)->SetShortArrayRegion(env, decimatedOutput, 0, DECIMATED_FRAME_TARGET, decimated_tmp);
+    }
+    if (result >= 0 && vadOutput != NULL) {
+        (*env)->SetFloatArrayRegion(env, vadOutput, 0, 1, &vad);
+    }
+    return result;
+}
+
+/* Frames of per-frame results and VAD gathered on the stack before they are copied out */
+#define FRAME_INFO_CHUNK 32
+
+/* Copies n samples of a short[] / float[] (per format) starting at sample start into dst. */
+static void get_samples(JNIEnv *env, jarray array, int format, jsize start, jsize n, void *dst) {
+    if (format == FORMAT_FLOAT) {
+        (*env)->GetFloatArrayRegion(env, (jfloatArray)array, start, n, (jfloat *)dst);
     } else {
-        memcpy(outF, inF, sizeof(outF));
+        (*env)->GetShortArrayRegion(env, (jshortArray)array, start, n, (jshort *)dst);
     }
+}
 
-    /* Optional denoised 48 kHz output */
-    if (denoisedOutput != NULL) {
-        jsize out_len = (*env)->GetArrayLength(env, denoisedOutput);
-        jsize out_copy = (out_len < frame_len) ? out_len : frame_len;
-        if (out_copy > 0) {
-            jshort tmp[FRAME_SIZE];
-            for (jsize i = 0; i < out_copy; ++i) tmp[i] = float_to_pcm16(outF[i]);
-            (*env)->SetShortArrayRegion(env, denoisedOutput, 0, out_copy, tmp);
-        }
+/* Copies n samples from src into a short[] / float[] (per format) starting at sample start. */
+static void set_samples(JNIEnv *env, jarray array, int format, jsize start, jsize n, const void *src) {
+    if (format == FORMAT_FLOAT) {
+        (*env)->SetFloatArrayRegion(env, (jfloatArray)array, start, n, (const jfloat *)src);
+    } else {
+        (*env)->SetShortArrayRegion(env, (jshortArray)array, start, n, (const jshort *)src);
     }
+}
 
-    /* Decimate to 8 kHz and buffer until we have 160 samples */
-    float decim_tmp[FRAME_SIZE]; /* upper bound; function will produce floor(N/6) */
-    size_t produced = decimate6_process(&handle->decimator, outF, FRAME_SIZE, decim_tmp);
+/* Copies the results and VAD of frames [first, first + n) out; false if an exception is pending. */
+static bool set_frame_info(JNIEnv *env, jintArray frameResults, jfloatArray vadOutput,
+                           jint first, jint n, const jint *results, const jfloat *vad) {
+    if (frameResults != NULL) (*env)->SetIntArrayRegion(env, frameResults, first, n, results);
+    if (vadOutput != NULL) (*env)->SetFloatArrayRegion(env, vadOutput, first, n, vad);
+    return !(*env)->ExceptionCheck(env);
+}
 
-    if (produced > 0) {
-        size_t to_copy = produced;
-        if (to_copy > DECIMATED_FRAME_TARGET - handle->decim_count) {
-            to_copy = DECIMATED_FRAME_TARGET - handle->decim_count;
+/*
+ * Array batch entry: bounds were validated by the Java wrapper; offset is in samples. Each
+ * frame is copied in and out with Get/Set<Type>ArrayRegion around the processing instead of
+ * pinning the arrays, so the batch never holds a critical region (and with it the GC) for
+ * longer than one copy.
+ */
+static jint process_array_batch(JNIEnv *env, const char *name, jlong h, int format,
+                                jarray input, jint offset, jint frameCount,
+                                jarray denoisedOutput, jarray decimatedOutput,
+                                jintArray frameResults, jfloatArray vadOutput) {
+    RNHandle *handle = handle_from_jlong(h);
+    if (!handle) {
+        LOGE("%s called with null handle", name);
+        return (jint)-1;
+    }
+
+    /* Float-sized scratch, large enough for a frame in either format */
+    jfloat in_buf[FRAME_SIZE];
+    jfloat denoised_buf[FRAME_SIZE];
+    jfloat decimated_buf[DECIMATED_FRAME_TARGET];
+    jint results[FRAME_INFO_CHUNK];
+    jfloat vad[FRAME_INFO_CHUNK];
+
+    jint total = 0;
+    for (jint f = 0; f < frameCount; ++f) {
+        jsize at = offset + f * FRAME_SIZE;
+        int slot = f % FRAME_INFO_CHUNK;
+        get_samples(env, input, format, at, FRAME_SIZE, in_buf);
+        if ((*env)->ExceptionCheck(env)) break;
+
+        jint produced = process_frame(handle, format, in_buf, FRAME_SIZE,
+                                      (denoisedOutput != NULL) ? denoised_buf : NULL, FRAME_SIZE,
+                                      decimated_buf, DECIMATED_FRAME_TARGET, &vad[slot]);
+        if (denoisedOutput != NULL) set_samples(env, denoisedOutput, format, at, FRAME_SIZE, denoised_buf);
+        if (produced > 0) set_samples(env, decimatedOutput, format, total, produced, decimated_buf);
+        results[slot] = produced;
+        total += produced;
+
+        if ((slot == FRAME_INFO_CHUNK - 1 || f == frameCount - 1)
+                && !set_frame_info(env, frameResults, vadOutput, f - slot, slot + 1, results, vad)) {
+            break;
         }
-        memcpy(handle->decim_accum + handle->decim_count, decim_tmp, to_copy * sizeof(float));
-        handle->decim_count += to_copy;
+        if ((*env)->ExceptionCheck(env)) break;
+    }
+    if ((*env)->ExceptionCheck(env)) {
+        LOGE("%s: failed to copy array contents", name);
+        return (jint)-4;
     }
+    return total;
+}
 
-    if (handle->decim_count >= DECIMATED_FRAME_TARGET) {
-        /* We have 160 samples ready */
-        if (decimatedOutput != NULL) {
-            jsize decim_out_len = (*env)->GetArrayLength(env, decimatedOutput);
-            if (decim_out_len >= DECIMATED_FRAME_TARGET) {
-                jshort out_short[DECIMATED_FRAME_TARGET];
-                for (int i = 0; i < DECIMATED_FRAME_TARGET; ++i) {
-                    out_short[i] = float_to_pcm16(handle->decim_accum[i]);
-                }
-                (*env)->SetShortArrayRegion(env, decimatedOutput, 0, DECIMATED_FRAME_TARGET, out_short);
-            } else {
-                LOGE("decimatedOutput length too small: %d", (int)decim_out_len);
-            }
+/*
+ * Direct-buffer batch entry. The Java wrapper has already validated that every buffer is
+ * direct, large enough and sample-aligned at the given byte offsets, so we work straight on
+ * the backing memory. Per-frame results and VAD are gathered on the stack and copied out every
+ * FRAME_INFO_CHUNK frames rather than pinning those arrays for the whole batch.
+ */
+static jint process_direct_batch(JNIEnv *env, const char *name, jlong h, int format,
+                                 jobject inputBuffer, jint inputOffset, jint frameCount,
+                                 jobject denoisedBuffer, jint denoisedOffset,
+                                 jobject decimatedBuffer, jint decimatedOffset,
+                                 jintArray frameResults, jfloatArray vadOutput) {
+    RNHandle *handle = handle_from_jlong(h);
+    if (!handle) {
+        LOGE("%s called with null handle", name);
+        return (jint)-1;
+    }
+
+    uint8_t *in_ptr = (uint8_t *)direct_ptr(env, inputBuffer, inputOffset);
+    if (!in_ptr) {
+        LOGE("%s: input buffer is not direct", name);
+        return (jint)-2;
+    }
+    uint8_t *denoised_ptr = NULL;
+    if (denoisedBuffer != NULL) {
+        denoised_ptr = (uint8_t *)direct_ptr(env, denoisedBuffer, denoisedOffset);
+        if (!denoised_ptr) {
+            LOGE("%s: denoised buffer is not direct", name);
+            return (jint)-5;
         }
-        /* Reset accumulator (drop any excess) */
-        handle->decim_count = 0;
+    }
+    uint8_t *decimated_ptr = (uint8_t *)direct_ptr(env, decimatedBuffer, decimatedOffset);
+    if (!decimated_ptr) {
+        LOGE("%s: decimated buffer is not direct", name);
+        return (jint)-6;
+    }
 
-        /* Release input (no need to copy back) */
-        (*env)->ReleaseShortArrayElements(env, inputFrame, in_ptr, JNI_ABORT);
-        return (jint)DECIMATED_FRAME_TARGET;
+    const size_t frame_bytes = FRAME_SIZE * sample_bytes(format);
+    jint results[FRAME_INFO_CHUNK];
+    jfloat vad[FRAME_INFO_CHUNK];
+    jint total = 0;
+    for (jint first = 0; first < frameCount; first += FRAME_INFO_CHUNK) {
+        jint n = (frameCount - first < FRAME_INFO_CHUNK) ? frameCount - first : FRAME_INFO_CHUNK;
+        total += process_frames(handle, format, in_ptr + (size_t)first * frame_bytes, n,
+                                (denoised_ptr != NULL) ? denoised_ptr + (size_t)first * frame_bytes : NULL,
+                                decimated_ptr + (size_t)total * sample_bytes(format),
+                                (frameResults != NULL) ? results : NULL,
+                                (vadOutput != NULL) ? vad : NULL);
+        if (!set_frame_info(env, frameResults, vadOutput, first, n, results, vad)) {
+            LOGE("%s: failed to copy frame results", name);
+            return (jint)-4;
+        }
     }
+    return total;
+}
 
-    /* Release input (no need to copy back) */
-    (*env)->ReleaseShortArrayElements(env, inputFrame, in_ptr, JNI_ABORT);
+JNIEXPORT jint JNICALL
+Java_com_zgo_recordplayer_audio_RnnoiseProcessor_nativeProcessFrames(JNIEnv *env,
+                                                                     jclass clazz,
+                                                                     jlong h,
+                                                                     jshortArray input,
+                                                                     jint offset,
+                                                                     jint frameCount,
+                                                                     jshortArray denoisedOutput,
+                                                                     jshortArray decimatedOutput,
+                                                                     jintArray frameResults,
+                                                                     jfloatArray vadOutput) {
+    (void)clazz;
+    return process_array_batch(env, "nativeProcessFrames", h, FORMAT_PCM16, input, offset, frameCount,
+                               denoisedOutput, decimatedOutput, frameResults, vadOutput);
+}
+
+JNIEXPORT jint JNICALL
+Java_com_zgo_recordplayer_audio_RnnoiseProcessor_nativeProcessFramesFloat(JNIEnv *env,
+                                                                          jclass clazz,
+                                                                          jlong h,
+                                                                          jfloatArray input,
+                                                                          jint offset,
+                                                                          jint frameCount,
+                                                                          jfloatArray denoisedOutput,
+                                                                          jfloatArray decimatedOutput,
+                                                                          jintArray frameResults,
+                                                                          jfloatArray vadOutput) {
+    (void)clazz;
+    return process_array_batch(env, "nativeProcessFramesFloat", h, FORMAT_FLOAT, input, offset, frameCount,
+                               denoisedOutput, decimatedOutput, frameResults, vadOutput);
+}
+
+JNIEXPORT jint JNICALL
+Java_com_zgo_recordplayer_audio_RnnoiseProcessor_nativeProcessFramesDirect(JNIEnv *env,
+                                                                           jclass clazz,
+                                                                           jlong h,
+                                                                           jobject inputBuffer,
+                                                                           jint inputOffset,
+                                                                           jint frameCount,
+                                                                           jobject denoisedBuffer,
+                                                                           jint denoisedOffset,
+                                                                           jobject decimatedBuffer,
+                                                                           jint decimatedOffset,
+                                                                           jintArray frameResults,
+                                                                           jfloatArray vadOutput) {
+    (void)clazz;
+    return process_direct_batch(env, "nativeProcessFramesDirect", h, FORMAT_PCM16,
+                                inputBuffer, inputOffset, frameCount, denoisedBuffer, denoisedOffset,
+                                decimatedBuffer, decimatedOffset, frameResults, vadOutput);
+}
+
+JNIEXPORT jint JNICALL
+Java_com_zgo_recordplayer_audio_RnnoiseProcessor_nativeProcessFramesFloatDirect(JNIEnv *env,
+                                                                                jclass clazz,
+                                                                                jlong h,
+                                                                                jobject inputBuffer,
+                                                                                jint inputOffset,
+                                                                                jint frameCount,
+                                                                                jobject denoisedBuffer,
+                                                                                jint denoisedOffset,
+                                                                                jobject decimatedBuffer,
+                                                                                jint decimatedOffset,
+                                                                                jintArray frameResults,
+                                                                                jfloatArray vadOutput) {
+    (void)clazz;
+    return process_direct_batch(env, "nativeProcessFramesFloatDirect", h, FORMAT_FLOAT,
+                                inputBuffer, inputOffset, frameCount, denoisedBuffer, denoisedOffset,
+                                decimatedBuffer, decimatedOffset, frameResults, vadOutput);
+}
+
+/*
+ * Clears every piece of stream state: the RNNoise DenoiseState (re-initialized in place with
+ * the built-in model, which allocates nothing), the stage filters and gains, the decimator
+ * history and the 8 kHz accumulator.
+ */
+JNIEXPORT jint JNICALL
+Java_com_zgo_recordplayer_audio_RnnoiseProcessor_nativeReset(JNIEnv *env, jclass clazz, jlong h) {
+    (void)env; (void)clazz;
+    RNHandle *handle = handle_from_jlong(h);
+    if (!handle) {
+        LOGE("nativeReset called with null handle");
+        return (jint)-1;
+    }
+    if (handle->st && rnnoise_init(handle->st, NULL) != 0) {
+        LOGE("nativeReset: rnnoise_init failed");
+        return (jint)-2;
+    }
+    for (int i = 0; i < handle->stage_count; ++i) reset_stage(&handle->stages[i]);
+    decimate6_reset(&handle->decimator);
+    memset(handle->decim_accum, 0, sizeof(handle->decim_accum));
+    handle->decim_count = 0;
     return (jint)0;
 }
 
+JNIEXPORT jlong JNICALL
+Java_com_zgo_recordplayer_audio_RnnoiseProcessor_nativeDenoiseNanos(JNIEnv *env, jclass clazz, jlong h) {
+    (void)env; (void)clazz;
+    RNHandle *handle = handle_from_jlong(h);
+    return handle ? (jlong)handle->denoise_ns : (jlong)-1;
+}
+
 JNIEXPORT void JNICALL
 Java_com_zgo_recordplayer_audio_RnnoiseProcessor_nativeDestroy(JNIEnv *env, jclass clazz, jlong h) {
     (void)env; (void)clazz;
@@ -0,0 +1,413 @@
+package com.zgo.arecordplaypcm;
+
+import android.media.AudioAttributes;
+import android.media.AudioFormat;
+import android.media.AudioManager;
+import android.media.AudioRecord;
+import android.media.AudioTimestamp;
+import android.media.AudioTrack;
+import android.media.MediaRecorder;
+import android.os.Build;
+import android.os.Handler;
+import android.os.Process;
+import android.util.Log;
+
+import androidx.annotation.Nullable;
+
+import com.zgo.recordplayer.audio.CompressedPcmSink;
+import com.zgo.recordplayer.audio.CompressedPcmSource;
+import com.zgo.recordplayer.audio.DuplexLatencyMeter;
+import com.zgo.recordplayer.audio.FrameProcessor;
+import com.zgo.recordplayer.audio.FrameRing;
+import com.zgo.recordplayer.audio.LatencyHistogram;
+import com.zgo.recordplayer.audio.LatencyProfile;
+import com.zgo.recordplayer.audio.PcmFileSink;
+import com.zgo.recordplayer.audio.PcmSink;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+
+/**
+ * Full-duplex live monitor: AudioRecord -> frame processor (denoise) -> AudioTrack, one 10 ms
+ * frame at a time on a single urgent-audio thread, optionally teeing the processed audio to a
+ * file.
+ *
+ * <p>Latency is bounded rather than best-effort: the track is written without blocking, and a
+ * frame is dropped whenever the audio queued in the track already covers the latency budget,
+ * which absorbs scheduling hiccups and capture/playback clock drift alike. The tee goes through a
+ * {@link FrameRing} to its own writer thread, so storage never stalls the loop; if the writer
+ * falls 2 s behind, tee frames are dropped, never monitor frames.
+ *
+ * <p>A {@link DuplexLatencyMeter} fed from both devices' timestamps reports the true
+ * ADC-to-DAC latency and the drift between the two clocks.
+ */
+public class LiveMonitor {
+
+    public interface Listener {
+        /** Called once when monitoring stops; {@code error} is null after a normal {@link #stop()}. */
+        void onFinished(@Nullable File teeFile, @Nullable Exception error);
+    }
+
+    private static final String TAG = "LiveMonitor";
+
+    private static final int SAMPLE_RATE = 48000; // the frame processor's rate
+    private static final int FRAME = FrameProcessor.FRAME_SIZE;
+    private static final int FRAME_BYTES = FrameProcessor.FRAME_BYTES;
+    // Capture-to-tee queue depth, as in PCMRecorder
+    private static final int TEE_RING_FRAMES = 200;
+    // Device timestamps are polled every 200 ms
+    private static final int TIMESTAMP_INTERVAL_FRAMES = 20;
+    private static final long TEE_PARK_NANOS = 20_000_000L;
+
+    private final boolean enableNoiseSuppression;
+    private final Handler callbackHandler;
+
+    private volatile int latencyBudgetFrames = 4 * FRAME; // 40 ms queued in the track at most
+    private volatile boolean running;
+    private Thread loopThread;
+
+    // Current or last session
+    private volatile DuplexLatencyMeter meter = new DuplexLatencyMeter(SAMPLE_RATE);
+    private volatile long routedFrames;
+    private volatile long droppedFrames;
+    private volatile int underruns;
+    private volatile FrameRing teeRing;
+
+    public LiveMonitor(boolean enableNoiseSuppression, Handler callbackHandler) {
+        this.enableNoiseSuppression = enableNoiseSuppression;
+        this.callbackHandler = callbackHandler;
+    }
+
+    /**
+     * Most audio the loop keeps queued in the track, and with it the output part of the latency.
+     * Lower is tighter but drops more frames on a busy device. Takes effect at the next start.
+     */
+    public void setLatencyBudgetMs(int millis) {
+        if (millis < 10) {
+            throw new IllegalArgumentException("latency budget must be >= 10 ms");
+        }
+        latencyBudgetFrames = millis * SAMPLE_RATE / 1000;
+    }
+
+    public boolean isRunning() {
+        return running;
+    }
+
+    /** Latest measured ADC-to-DAC latency in milliseconds, or -1 before the first measurement. */
+    public double getLatencyMillis() {
+        long nanos = meter.lastLatencyNanos();
+        return nanos < 0 ? -1 : nanos / 1e6;
+    }
+
+    /** Distribution of the latency measurements of the current or last session. */
+    public LatencyHistogram.Snapshot getLatencyStats() {
+        return meter.latency();
+    }
+
+    /** Output clock speed relative to the input clock in ppm; NaN for the first second. */
+    public double getDriftPpm() {
+        return meter.driftPpm();
+    }
+
+    /** 10 ms frames played. */
+    public long getRoutedFrames() {
+        return routedFrames;
+    }
+
+    /** Frames not played because the track already held the latency budget. */
+    public long getDroppedFrames() {
+        return droppedFrames;
+    }
+
+    /** Times the track ran dry ({@code AudioTrack.getUnderrunCount()}). */
+    public int getUnderruns() {
+        return underruns;
+    }
+
+    /** Frames the file tee dropped because its writer fell behind. */
+    public long getTeeOverrunFrames() {
+        FrameRing ring = teeRing;
+        return ring != null ? ring.overrunFrames() : 0L;
+    }
+
+    /**
+     * Starts monitoring, mono 48 kHz. With a {@code teeFile} the processed audio is also recorded:
+     * raw PCM, or compressed when the name ends in {@link CompressedPcmSource#FILE_SUFFIX}.
+     */
+    public synchronized boolean start(@Nullable File teeFile, Listener listener) {
+        if (running) return false;
+        final int channelIn = AudioFormat.CHANNEL_IN_MONO;
+        final int channelOut = AudioFormat.CHANNEL_OUT_MONO;
+        final int encoding = AudioFormat.ENCODING_PCM_16BIT;
+        final int budget = latencyBudgetFrames;
+
+        int minIn = AudioRecord.getMinBufferSize(SAMPLE_RATE, channelIn, encoding);
+        int minOut = AudioTrack.getMinBufferSize(SAMPLE_RATE, channelOut, encoding);
+        if (minIn <= 0 || minOut <= 0) {
+            notifyFinish(listener, teeFile, new IOException("Unsupported monitoring configuration"));
+            return false;
+        }
+        // Room for a couple of frames beyond the device minimum, so one late read never overruns
+        int recordBytes = Math.max(LatencyProfile.LOW_LATENCY.bufferBytes(minIn, SAMPLE_RATE, 2), 4 * FRAME_BYTES);
+        AudioRecord record;
+        try {
+            record = new AudioRecord(MediaRecorder.AudioSource.MIC, SAMPLE_RATE, channelIn, encoding, recordBytes);
+        } catch (IllegalArgumentException | SecurityException e) {
+            notifyFinish(listener, teeFile, new IOException("AudioRecord init failed", e));
+            return false;
+        }
+        if (record.getState() != AudioRecord.STATE_INITIALIZED) {
+            record.release();
+            notifyFinish(listener, teeFile, new IOException("AudioRecord init failed"));
+            return false;
+        }
+
+        AudioTrack track = buildTrack(minOut, budget, channelOut, encoding);
+        if (track == null) {
+            record.release();
+            notifyFinish(listener, teeFile, new IOException("AudioTrack init failed"));
+            return false;
+        }
+
+        meter = new DuplexLatencyMeter(SAMPLE_RATE);
+        routedFrames = 0L;
+        droppedFrames = 0L;
+        underruns = 0;
+        teeRing = teeFile != null ? new FrameRing(TEE_RING_FRAMES, FRAME_BYTES) : null;
+        running = true;
+        loopThread = new Thread(() -> runLoop(record, track, budget, teeFile, listener), "LiveMonitor");
+        loopThread.start();
+        return true;
+    }
+
+    /** Stops the loop and waits for it (and the tee) to finish. */
+    public void stop() {
+        if (!running) return;
+        running = false;
+        Thread t = loopThread;
+        if (t != null) {
+            try {
+                t.join();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+        loopThread = null;
+    }
+
+    @Nullable
+    private static AudioTrack buildTrack(int minOutBytes, int budgetFrames, int channelOut, int encoding) {
+        // The buffer in use covers the budget (or the device minimum); capacity leaves headroom
+        int bufferFrames = Math.max(LatencyProfile.LOW_LATENCY.bufferBytes(minOutBytes, SAMPLE_RATE, 2) / 2,
+                budgetFrames);
+        AudioTrack.Builder builder = new AudioTrack.Builder()
+                .setAudioAttributes(new AudioAttributes.Builder()
+                        .setUsage(AudioAttributes.USAGE_MEDIA)
+                        .setContentType(AudioAttributes.CONTENT_TYPE_SPEECH)
+                        .build())
+                .setAudioFormat(new AudioFormat.Builder()
+                        .setEncoding(encoding)
+                        .setSampleRate(SAMPLE_RATE)
+                        .setChannelMask(channelOut)
+                        .build())
+                .setBufferSizeInBytes(bufferFrames * 2 * LatencyProfile.LOW_LATENCY.trackHeadroom())
+                .setTransferMode(AudioTrack.MODE_STREAM)
+                .setSessionId(AudioManager.AUDIO_SESSION_ID_GENERATE);
+        if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.O) {
+            builder.setPerformanceMode(AudioTrack.PERFORMANCE_MODE_LOW_LATENCY);
+        }
+        AudioTrack track;
+        try {
+            track = builder.build();
+        } catch (UnsupportedOperationException e) {
+            Log.e(TAG, "AudioTrack init failed", e);
+            return null;
+        }
+        if (track.getState() != AudioTrack.STATE_INITIALIZED) {
+            track.release();
+            return null;
+        }
+        track.setBufferSizeInFrames(bufferFrames);
+        return track;
+    }
+
+    /** Monitor thread: capture, process and play one frame at a time. */
+    private void runLoop(AudioRecord record, AudioTrack track, int budgetFrames,
+                         @Nullable File teeFile, Listener listener) {
+        Process.setThreadPriority(Process.THREAD_PRIORITY_URGENT_AUDIO);
+        final DuplexLatencyMeter meter = this.meter;
+        final FrameRing ring = teeRing;
+        final ByteBuffer in = ByteBuffer.allocateDirect(FRAME_BYTES).order(ByteOrder.nativeOrder());
+        final ByteBuffer out = ByteBuffer.allocateDirect(FRAME_BYTES).order(ByteOrder.nativeOrder());
+        final ByteBuffer decimated = ByteBuffer.allocateDirect(FrameProcessor.maxDecimatedSamples(1) * 2)
+                .order(ByteOrder.nativeOrder());
+        final AudioTimestamp timestamp = new AudioTimestamp();
+
+        Exception failure = null;
+        FrameProcessor processor = null;
+        Thread teeThread = null;
+        final Exception[] teeFailure = new Exception[1];
+        long inputFrames = 0; // sample frames read from the record
+        long outputFrames = 0; // sample frames written to the track
+        try {
+            if (enableNoiseSuppression) {
+                try {
+                    processor = PCMRecorder.PROCESSOR_POOL.acquire();
+                } catch (RuntimeException e) {
+                    Log.e(TAG, "Failed to initialize denoiser; monitoring raw audio", e);
+                }
+            }
+            if (ring != null) {
+                teeThread = new Thread(() -> teeFailure[0] = runTee(teeFile, ring), "LiveMonitor-tee");
+                teeThread.start();
+            }
+
+            record.startRecording();
+            track.play();
+            long frameIndex = 0;
+            while (running) {
+                // One whole frame, however the record splits it (AudioRecord writes at the
+                // buffer's start, so a partial frame is continued through a slice)
+                in.clear();
+                while (in.hasRemaining() && running) {
+                    int read = record.read(in.position() == 0 ? in : in.slice(), in.remaining());
+                    if (read < 0) {
+                        throw new IOException("AudioRecord read failed: " + read);
+                    }
+                    in.position(in.position() + read);
+                }
+                if (in.hasRemaining()) break;
+                in.clear();
+                inputFrames += FRAME;
+
+                ByteBuffer frame = in;
+                if (processor != null) {
+                    try {
+                        out.clear();
+                        decimated.clear();
+                        processor.processFrames(in, 1, out, decimated, null);
+                        frame = out;
+                    } catch (RuntimeException e) {
+                        Log.e(TAG, "Denoise processing failed, monitoring raw audio", e);
+                        processor.close();
+                        processor = null;
+                    }
+                }
+
+                // Keep the track's queue within the budget: drop the frame rather than add latency
+                long queued = outputFrames - (track.getPlaybackHeadPosition() & 0xFFFFFFFFL);
+                if (queued + FRAME > budgetFrames) {
+                    droppedFrames++;
+                } else {
+                    int written = track.write(frame, FRAME_BYTES, AudioTrack.WRITE_NON_BLOCKING);
+                    if (written < 0) {
+                        throw new IOException("AudioTrack write error: " + written);
+                    }
+                    meter.onRouted(inputFrames - FRAME, outputFrames);
+                    outputFrames += written / 2;
+                    if (written < FRAME_BYTES) {
+                        droppedFrames++;
+                    } else {
+                        routedFrames++;
+                    }
+                }
+
+                if (ring != null) {
+                    tee(ring, frame);
+                }
+
+                if (++frameIndex % TIMESTAMP_INTERVAL_FRAMES == 0) {
+                    if (record.getTimestamp(timestamp, AudioTimestamp.TIMEBASE_MONOTONIC) == AudioRecord.SUCCESS) {
+                        meter.onInputTimestamp(timestamp.framePosition, timestamp.nanoTime);
+                    }
+                    if (track.getTimestamp(timestamp)) {
+                        meter.onOutputTimestamp(timestamp.framePosition, timestamp.nanoTime);
+                    }
+                    meter.sample();
+                    underruns = track.getUnderrunCount();
+                }
+            }
+        } catch (IOException | IllegalStateException e) {
+            failure = e;
+            Log.e(TAG, "Monitoring failed", e);
+        } finally {
+            running = false;
+            try { record.stop(); } catch (IllegalStateException ignored) {}
+            record.release();
+            try { track.stop(); } catch (IllegalStateException ignored) {}
+            track.release();
+            if (processor != null) {
+                PCMRecorder.PROCESSOR_POOL.release(processor);
+            }
+            if (ring != null) {
+                ring.finish();
+            }
+        }
+
+        if (teeThread != null) {
+            try {
+                teeThread.join();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            if (failure == null) {
+                failure = teeFailure[0];
+            }
+        }
+        Log.i(TAG, "Monitored " + routedFrames + " frames, dropped " + droppedFrames + ", underruns " + underruns
+                + ", latency [" + meter.latency() + "], drift " + meter.driftPpm() + " ppm"
+                + (ring != null ? ", tee overruns " + ring.overrunFrames() : ""));
+        notifyFinish(listener, teeFile, failure);
+    }
+
+    /** Copies one frame into the tee ring, or counts it dropped when the ring is full. */
+    private static void tee(FrameRing ring, ByteBuffer frame) {
+        if (ring.writableFrames() == 0) {
+            ring.recordOverrun(1);
+            return;
+        }
+        ByteBuffer region = ring.writeRegion();
+        frame.clear();
+        region.put(frame);
+        ring.publish(1);
+    }
+
+    /** Tee writer thread: drains the ring into the file. Returns the failure, if any. */
+    @Nullable
+    private static Exception runTee(File file, FrameRing ring) {
+        final ByteBuffer[] regions = new ByteBuffer[2];
+        try (PcmSink sink = file.getName().endsWith(CompressedPcmSource.FILE_SUFFIX)
+                ? new CompressedPcmSink(file, SAMPLE_RATE, 1)
+                : new PcmFileSink(file)) {
+            while (true) {
+                if (ring.awaitReadable(TEE_PARK_NANOS) == 0) {
+                    if (ring.isDrained()) break;
+                    continue;
+                }
+                int frames = ring.readRegions(regions, TEE_RING_FRAMES);
+                sink.write(regions[0], regions[1]);
+                ring.release(frames);
+            }
+            return null;
+        } catch (IOException | IllegalStateException e) {
+            Log.e(TAG, "Writing the monitor tee failed", e);
+            // Keep draining so the loop never sees a full ring because of a dead writer
+            while (!ring.isDrained()) {
+                int frames = ring.awaitReadable(TEE_PARK_NANOS);
+                if (frames > 0) ring.release(frames);
+            }
+            return e;
+        }
+    }
+
+    private void notifyFinish(Listener listener, @Nullable File teeFile, @Nullable Exception error) {
+        if (listener == null) return;
+        if (callbackHandler != null) {
+            callbackHandler.post(() -> listener.onFinished(teeFile, error));
+        } else {
+            listener.onFinished(teeFile, error);
+        }
+    }
+}
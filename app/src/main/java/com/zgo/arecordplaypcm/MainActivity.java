@@ -24,18 +24,29 @@ import androidx.appcompat.app.AppCompatActivity;
 import androidx.core.app.ActivityCompat;
 import androidx.core.content.ContextCompat;
 
+import com.zgo.recordplayer.audio.CompressedPcmSource;
+import com.zgo.recordplayer.audio.LatencyHistogram;
+import com.zgo.recordplayer.audio.LatencyProfile;
+import com.zgo.recordplayer.audio.MappedPcmSource;
+import com.zgo.recordplayer.audio.RecorderStats;
+import com.zgo.recordplayer.audio.RecordingProgress;
+import com.zgo.recordplayer.audio.WaveformIndex;
+
 import java.io.File;
 import java.io.IOException;
 import java.text.SimpleDateFormat;
 import java.util.Date;
 import java.util.Locale;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
 
 public class MainActivity extends AppCompatActivity {
 
-    private enum State { IDLE, RECORDING, PLAYING }
+    private enum State { IDLE, RECORDING, PLAYING, MONITORING }
 
     private static final String TAG = "MainActivity";
 
+    // MODE_8K records and plays 8 kHz files; PCMRecorder still denoises them at 48 kHz in between
     public static final int MODE_48K = 0;
     public static final int MODE_8K = 1;
     private static final int SAMPLE_RATE_MODE = MODE_48K;
@@ -45,26 +56,53 @@ public class MainActivity extends AppCompatActivity {
     private static final int CHANNEL_CONFIG_IN = AudioFormat.CHANNEL_IN_MONO;
     private static final int CHANNEL_CONFIG_OUT = AudioFormat.CHANNEL_OUT_MONO;
     private static final int AUDIO_ENCODING = AudioFormat.ENCODING_PCM_16BIT;
+    // Float capture keeps headroom above full scale and stores raw float32 (.f32, twice the size)
+    private static final boolean FLOAT_PIPELINE = false;
+    private static final int RECORD_ENCODING = FLOAT_PIPELINE ? AudioFormat.ENCODING_PCM_FLOAT : AUDIO_ENCODING;
     private static final long MIN_FREE_SPACE_BYTES = 1_000_000L;
     private static final String RECORDING_FILE_PREFIX = "rec_";
-    private static final String RECORDING_FILE_EXT = ".pcm";
+    private static final String RAW_FILE_EXT = ".pcm";
+    // Lossless compressed recordings (.zlac) take about a half to a third of the raw size; opt-in
+    private static final boolean COMPRESS_RECORDINGS = false;
+    private static final String RECORDING_FILE_EXT = FLOAT_PIPELINE ? MappedPcmSource.FLOAT_FILE_SUFFIX
+            : COMPRESS_RECORDINGS ? CompressedPcmSource.FILE_SUFFIX : RAW_FILE_EXT;
 
     private static final int REQ_RECORD_AUDIO = 1001;
     private static final boolean RNNOISE_ENABLED = true;
+    // Voice-gated recording: DROP cuts non-speech out, MARK stores it as compact silence
+    private static final PCMRecorder.SilenceMode SILENCE_MODE = PCMRecorder.SilenceMode.KEEP;
+    private static final int SILENCE_HANGOVER_MS = 300;
+    private static final int SILENCE_PRE_ROLL_MS = 200;
+    // All-day sessions: roll over to a new file every N ms, listed by a .segments manifest (0 = one file)
+    private static final long SEGMENT_MILLIS = 0L;
+    // Keep the recorder armed while the activity is visible so "start" captures within ~10 ms
+    private static final boolean STANDBY_ENABLED = true;
+    // LOW_LATENCY for live monitoring, POWER_SAVING for long recordings on battery
+    private static final LatencyProfile RECORD_LATENCY_PROFILE = LatencyProfile.BALANCED;
+    private static final LatencyProfile PLAYBACK_LATENCY_PROFILE = LatencyProfile.BALANCED;
+    // Live monitoring: most audio queued for playback, and whether to also record what is heard
+    private static final int MONITOR_LATENCY_BUDGET_MS = 40;
+    private static final boolean MONITOR_TEE_TO_FILE = false;
 
     private TextView tvStatus;
     private Button btnStart;
     private Button btnStop;
     private Button btnPlay;
     private Button btnOpenSettings;
+    private Button btnMonitor;
 
     private final Handler mainHandler = new Handler(Looper.getMainLooper());
+    // Engine prewarm and standby arming block, and must run in the order they were requested
+    private final ExecutorService recorderExecutor = Executors.newSingleThreadExecutor();
 
     private volatile File lastFile;
     private File currentRecordingFile;
 
     private PCMRecorder pcmRecorder;
     private PCMPlayer pcmPlayer;
+    // Plays the recording in progress from its start; becomes pcmPlayer if it outlives the recording
+    private PCMPlayer reviewPlayer;
+    private LiveMonitor liveMonitor;
 
     private State state = State.IDLE;
     private long startTimeMs;
@@ -75,12 +113,42 @@ public class MainActivity extends AppCompatActivity {
         @Override public void run() {
             if (state == State.RECORDING) {
                 long sec = (System.currentTimeMillis() - startTimeMs) / 1000L;
-                setStatus("录音中... " + sec + "s");
+                RecorderStats.Snapshot stats = pcmRecorder.getStats();
+                String review = reviewPlayer != null
+                        ? "  回放 " + reviewPlayer.getPositionMillis() / 1000L + "s" : "";
+                setStatus(String.format(Locale.ROOT, "录音中... %ds  DSP %.0f%% (p99 %.0f%%)  丢帧 %d%s", sec,
+                        stats.dspLoad() * 100, stats.dspLoadP99() * 100, stats.overrunFrames, review));
                 mainHandler.postDelayed(this, 1000);
             }
         }
     };
 
+    private final Runnable monitorRunnable = new Runnable() {
+        @Override public void run() {
+            if (state == State.MONITORING) {
+                double latency = liveMonitor.getLatencyMillis();
+                double drift = liveMonitor.getDriftPpm();
+                setStatus(String.format(Locale.ROOT, "实时监听中... 延迟 %s  漂移 %s  丢帧 %d  欠载 %d",
+                        latency < 0 ? "-" : String.format(Locale.ROOT, "%.1f ms", latency),
+                        Double.isNaN(drift) ? "-" : String.format(Locale.ROOT, "%.0f ppm", drift),
+                        liveMonitor.getDroppedFrames(), liveMonitor.getUnderruns()));
+                mainHandler.postDelayed(this, 500);
+            }
+        }
+    };
+
+    private final Runnable playbackProgressRunnable = new Runnable() {
+        @Override public void run() {
+            if (state == State.PLAYING && pcmPlayer != null) {
+                long sec = pcmPlayer.getPositionMillis() / 1000L;
+                long total = pcmPlayer.getDurationMillis() / 1000L;
+                int underruns = pcmPlayer.getStats().underruns;
+                setStatus("正在播放... " + sec + "s / " + total + "s" + (underruns > 0 ? "  欠载 " + underruns : ""));
+                mainHandler.postDelayed(this, 500);
+            }
+        }
+    };
+
     @Override
     protected void onCreate(Bundle savedInstanceState) {
         super.onCreate(savedInstanceState);
@@ -95,6 +163,7 @@ public class MainActivity extends AppCompatActivity {
         btnStop = findViewById(R.id.btnStopRecord);
         btnPlay = findViewById(R.id.btnPlay);
         btnOpenSettings = findViewById(R.id.btnOpenSettings);
+        btnMonitor = findViewById(R.id.btnMonitor);
 
         btnStart.setOnClickListener(v -> {
             if (!checkPerm()) requestPerm();
@@ -103,16 +172,36 @@ public class MainActivity extends AppCompatActivity {
         btnStop.setOnClickListener(v -> handleStop());
         btnPlay.setOnClickListener(v -> playLast());
         btnOpenSettings.setOnClickListener(v -> openAppSettings());
+        btnMonitor.setOnClickListener(v -> {
+            if (state == State.MONITORING) stopMonitoring();
+            else if (!checkPerm()) requestPerm();
+            else startMonitoring();
+        });
+
+        pcmRecorder = new PCMRecorder(RECORD_SAMPLE_RATE, CHANNEL_CONFIG_IN, RECORD_ENCODING, RNNOISE_ENABLED, mainHandler);
+        pcmRecorder.setSilenceMode(SILENCE_MODE, SILENCE_HANGOVER_MS, SILENCE_PRE_ROLL_MS);
+        pcmRecorder.setLatencyProfile(RECORD_LATENCY_PROFILE);
+        pcmRecorder.setSegmentation(SEGMENT_MILLIS, 0L,
+                (segment, info) -> Log.i(TAG, "Segment finished: " + info + ", " + info.bytes + " bytes"));
+        liveMonitor = new LiveMonitor(RNNOISE_ENABLED, mainHandler);
+        liveMonitor.setLatencyBudgetMs(MONITOR_LATENCY_BUDGET_MS);
 
         updateFeatureAvailability();
         updateUi();
 
+        if (RNNOISE_ENABLED) {
+            // Load the denoiser ahead of the first tap on "start" so capture begins immediately
+            recorderExecutor.execute(PCMRecorder::prewarmProcessors);
+        }
+
         // Handle system back using OnBackPressedDispatcher for predictive back
         getOnBackPressedDispatcher().addCallback(this, new OnBackPressedCallback(true) {
             @Override
             public void handleOnBackPressed() {
                 if (state == State.RECORDING) {
                     stopRecording();
+                } else if (state == State.MONITORING) {
+                    stopMonitoring();
                 } else if (state == State.PLAYING || pcmPlayer.isPlaying()) {
                     pcmPlayer.stop();
                     state = State.IDLE;
@@ -201,7 +290,6 @@ public class MainActivity extends AppCompatActivity {
 
         currentRecordingFile = outFile;
 
-        pcmRecorder = new PCMRecorder(RECORD_SAMPLE_RATE, CHANNEL_CONFIG_IN, AUDIO_ENCODING, RNNOISE_ENABLED, mainHandler);
         boolean started = pcmRecorder.start(outFile, (file, error) -> finalizeRecording(file, error));
         if (!started) {
             // finalizeRecording will update UI and status via callback if needed
@@ -228,6 +316,70 @@ public class MainActivity extends AppCompatActivity {
         // finalizeRecording will be invoked via callback
     }
 
+    private void startMonitoring() {
+        if (state != State.IDLE) {
+            return;
+        }
+        File teeFile = null;
+        if (MONITOR_TEE_TO_FILE) {
+            File dir = getRecordingDirectory();
+            if (dir != null && (dir.exists() || dir.mkdirs()) && dir.getUsableSpace() >= MIN_FREE_SPACE_BYTES) {
+                String time = new SimpleDateFormat("yyyyMMdd_HHmmss", Locale.getDefault()).format(new Date());
+                teeFile = new File(dir, RECORDING_FILE_PREFIX + time + RECORDING_FILE_EXT);
+            }
+        }
+        applyRecordingAudioMode();
+        if (!liveMonitor.start(teeFile, this::finalizeMonitoring)) {
+            resetAudioMode();
+            return;
+        }
+        state = State.MONITORING;
+        setStatus("实时监听中...");
+        updateUi();
+        mainHandler.removeCallbacks(monitorRunnable);
+        mainHandler.postDelayed(monitorRunnable, 500);
+        try { getWindow().addFlags(WindowManager.LayoutParams.FLAG_KEEP_SCREEN_ON); } catch (Throwable ignored) {}
+    }
+
+    private void stopMonitoring() {
+        if (state != State.MONITORING) {
+            return;
+        }
+        liveMonitor.stop();
+        // finalizeMonitoring will be invoked via callback
+    }
+
+    private void finalizeMonitoring(File teeFile, Exception error) {
+        mainHandler.removeCallbacks(monitorRunnable);
+        resetAudioMode();
+        try { getWindow().clearFlags(WindowManager.LayoutParams.FLAG_KEEP_SCREEN_ON); } catch (Throwable ignored) {}
+        if (state == State.MONITORING) {
+            state = State.IDLE;
+        }
+        if (teeFile != null && teeFile.exists() && teeFile.length() > 0) {
+            lastFile = teeFile;
+        }
+        updateUi();
+        if (error != null) {
+            setStatus("监听失败: " + formatErrorMessage(error));
+        } else {
+            LatencyHistogram.Snapshot latency = liveMonitor.getLatencyStats();
+            setStatus(String.format(Locale.ROOT, "监听已停止 (延迟 p50 %.1f ms / p99 %.1f ms)",
+                    latency.percentileNanos(50) / 1e6, latency.percentileNanos(99) / 1e6));
+        }
+    }
+
+    /** Deletes a recording together with its waveform index sidecar. */
+    private static void deleteRecording(File file, String reason) {
+        if (!file.delete()) {
+            Log.w(TAG, "Failed to delete " + reason + " recording: " + file.getAbsolutePath());
+        }
+        File index = WaveformIndex.sidecarFor(file);
+        if (index.exists() && !index.delete()) {
+            Log.w(TAG, "Failed to delete waveform index: " + index.getAbsolutePath());
+        }
+    }
+
     private void finalizeRecording(File file, Exception error) {
         mainHandler.removeCallbacks(timerRunnable);
         currentRecordingFile = null;
@@ -237,29 +389,37 @@ public class MainActivity extends AppCompatActivity {
         String status;
         if (error != null) {
             if (file != null && file.exists() && file.length() == 0) {
-                if (!file.delete()) {
-                    Log.w(TAG, "Failed to delete empty recording: " + file.getAbsolutePath());
-                }
+                deleteRecording(file, "empty");
             }
             status = "录音失败: " + formatErrorMessage(error);
         } else if (file != null && file.exists() && file.length() > 0) {
             lastFile = file;
-            status = "已保存: " + file.getName();
+            status = "已保存: " + file.getName() + " (首帧 " + pcmRecorder.getTimeToFirstSampleMillis() + " ms)";
         } else {
             if (file != null && file.exists()) {
-                if (!file.delete()) {
-                    Log.w(TAG, "Failed to delete incomplete recording: " + file.getAbsolutePath());
-                }
+                deleteRecording(file, "incomplete");
             }
             status = "录音失败: 未捕获到音频";
         }
 
         state = State.IDLE;
+        if (reviewPlayer != null && reviewPlayer.isPlaying()) {
+            // Keep reviewing the finished recording as ordinary playback
+            pcmPlayer = reviewPlayer;
+            reviewPlayer = null;
+            state = State.PLAYING;
+            mainHandler.removeCallbacks(playbackProgressRunnable);
+            mainHandler.postDelayed(playbackProgressRunnable, 500);
+        }
         updateUi();
         setStatus(status);
     }
 
     private void playLast() {
+        if (state == State.RECORDING) {
+            toggleReview();
+            return;
+        }
         if (state != State.IDLE) {
             return;
         }
@@ -274,6 +434,7 @@ public class MainActivity extends AppCompatActivity {
         }
 
         pcmPlayer = new PCMPlayer(OUTPUT_SAMPLE_RATE, CHANNEL_CONFIG_OUT, AUDIO_ENCODING, mainHandler);
+        pcmPlayer.setLatencyProfile(PLAYBACK_LATENCY_PROFILE);
         boolean started = pcmPlayer.start(file, (error, completed) -> finalizePlayback(error, completed));
         if (!started) {
             // finalizePlayback will update UI if needed
@@ -283,6 +444,44 @@ public class MainActivity extends AppCompatActivity {
         state = State.PLAYING;
         updateUi();
         setStatus("正在播放...");
+        mainHandler.removeCallbacks(playbackProgressRunnable);
+        mainHandler.postDelayed(playbackProgressRunnable, 500);
+    }
+
+    /** Starts or stops playing the recording in progress from its start. */
+    private void toggleReview() {
+        if (reviewPlayer != null) {
+            reviewPlayer.stop();
+            // finalizeReview will be invoked via callback
+            return;
+        }
+        File file = currentRecordingFile;
+        RecordingProgress progress = pcmRecorder.getProgress();
+        if (file == null || progress == null) {
+            return;
+        }
+        final PCMPlayer player = new PCMPlayer(OUTPUT_SAMPLE_RATE, CHANNEL_CONFIG_OUT, AUDIO_ENCODING, mainHandler);
+        player.setLatencyProfile(PLAYBACK_LATENCY_PROFILE);
+        if (player.startTailing(file, progress, (error, completed) -> finalizeReview(player, error, completed))) {
+            reviewPlayer = player;
+            updateUi();
+        }
+    }
+
+    private void finalizeReview(PCMPlayer player, Exception error, boolean completed) {
+        if (player == pcmPlayer) {
+            // Handed over when the recording ended
+            finalizePlayback(error, completed);
+            return;
+        }
+        if (player != reviewPlayer) {
+            return;
+        }
+        reviewPlayer = null;
+        updateUi();
+        if (error != null) {
+            setStatus("回放失败: " + formatErrorMessage(error));
+        }
     }
 
     private void stopPlayback() {
@@ -296,6 +495,7 @@ public class MainActivity extends AppCompatActivity {
     }
 
     private void finalizePlayback(Exception error, boolean completed) {
+        mainHandler.removeCallbacks(playbackProgressRunnable);
         if (state == State.PLAYING) {
             state = State.IDLE;
         }
@@ -356,7 +556,9 @@ public class MainActivity extends AppCompatActivity {
         File dir = getRecordingDirectory();
         File latest = null;
         if (dir != null && dir.exists()) {
-            File[] files = dir.listFiles((d, name) -> name != null && name.endsWith(RECORDING_FILE_EXT));
+            File[] files = dir.listFiles((d, name) -> name != null
+                    && (name.endsWith(RAW_FILE_EXT) || name.endsWith(CompressedPcmSource.FILE_SUFFIX)
+                    || name.endsWith(MappedPcmSource.FLOAT_FILE_SUFFIX)));
             if (files != null && files.length > 0) {
                 latest = files[0];
                 for (File f : files) {
@@ -391,12 +593,18 @@ public class MainActivity extends AppCompatActivity {
 
         boolean canStart = state == State.IDLE;
         boolean canStop = state == State.RECORDING || state == State.PLAYING;
-        boolean canPlay = state == State.IDLE && getLatestRecording() != null;
+        // Segmented recordings have no single growing file to review while recording
+        boolean canPlay = (state == State.IDLE && getLatestRecording() != null)
+                || (state == State.RECORDING && SEGMENT_MILLIS == 0L);
+        boolean canMonitor = state == State.IDLE || state == State.MONITORING;
 
         btnStart.setEnabled(canStart);
         btnStop.setEnabled(canStop);
         btnPlay.setEnabled(canPlay);
+        btnMonitor.setEnabled(canMonitor);
+        btnMonitor.setText(state == State.MONITORING ? "停止监听" : "实时监听");
         btnStop.setText(state == State.PLAYING ? "停止播放" : "停止录音");
+        btnPlay.setText(state != State.RECORDING ? "播放最近录音" : reviewPlayer != null ? "停止回放" : "边录边放");
 
         // Focus first available item for DPAD
         focusFirstAvailable();
@@ -406,6 +614,7 @@ public class MainActivity extends AppCompatActivity {
         if (btnStart.isEnabled()) { btnStart.requestFocus(); return; }
         if (btnStop.isEnabled()) { btnStop.requestFocus(); return; }
         if (btnPlay.isEnabled()) { btnPlay.requestFocus(); return; }
+        if (btnMonitor.isEnabled()) { btnMonitor.requestFocus(); return; }
         if (btnOpenSettings.getVisibility() == View.VISIBLE) { btnOpenSettings.requestFocus(); }
     }
 
@@ -414,19 +623,45 @@ public class MainActivity extends AppCompatActivity {
         super.onResume();
         // If we return from settings, update permission-dependent UI
         updateUi();
+        if (STANDBY_ENABLED && checkPerm()) {
+            final PCMRecorder recorder = pcmRecorder;
+            recorderExecutor.execute(() -> recorder.setStandby(true));
+        }
     }
 
     @Override
     protected void onStop() {
         super.onStop();
+        if (reviewPlayer != null) {
+            reviewPlayer.stop();
+        }
         if (state == State.RECORDING) {
             stopRecording();
         } else if (state == State.PLAYING) {
             stopPlayback();
+        } else if (state == State.MONITORING) {
+            stopMonitoring();
         }
+        // Don't hold an AudioRecord while in the background
+        final PCMRecorder recorder = pcmRecorder;
+        recorderExecutor.execute(() -> recorder.setStandby(false));
         try { getWindow().clearFlags(WindowManager.LayoutParams.FLAG_KEEP_SCREEN_ON); } catch (Throwable ignored) {}
     }
 
+    @Override
+    protected void onDestroy() {
+        super.onDestroy();
+        recorderExecutor.shutdown();
+    }
+
+    @Override
+    public void onTrimMemory(int level) {
+        super.onTrimMemory(level);
+        if (level >= TRIM_MEMORY_UI_HIDDEN) {
+            PCMRecorder.trimProcessors();
+        }
+    }
+
     @Override
     public boolean onKeyDown(int keyCode, KeyEvent event) {
         // Debounce long-press repeats
@@ -4,16 +4,45 @@ import android.media.AudioAttributes;
 import android.media.AudioFormat;
 import android.media.AudioManager;
 import android.media.AudioTrack;
+import android.os.Build;
 import android.os.Handler;
 import android.util.Log;
 
-import java.io.BufferedInputStream;
+import com.zgo.recordplayer.audio.CompressedPcmSource;
+import com.zgo.recordplayer.audio.LatencyProfile;
+import com.zgo.recordplayer.audio.MappedPcmSource;
+import com.zgo.recordplayer.audio.PcmSource;
+import com.zgo.recordplayer.audio.PlayerStats;
+import com.zgo.recordplayer.audio.RecordingProgress;
+import com.zgo.recordplayer.audio.TailingCompressedSource;
+import com.zgo.recordplayer.audio.TailingPcmSource;
+import com.zgo.recordplayer.audio.TrackBufferTuner;
+
 import java.io.File;
-import java.io.FileInputStream;
 import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.concurrent.atomic.AtomicLong;
 
 /**
  * Encapsulates PCM playback using AudioTrack.
+ *
+ * <p>The file is memory-mapped ({@link MappedPcmSource}) and mapped slices are written straight
+ * to the track, so no bytes are copied through the Java heap, and seeking is O(1) at any length.
+ * Compressed recordings ({@link CompressedPcmSource}) are decoded one block at a time into a
+ * direct buffer on the playback thread, and seek to the containing block. Float recordings
+ * ({@link MappedPcmSource#FLOAT_FILE_SUFFIX}) are played through an {@code ENCODING_PCM_FLOAT}
+ * track whatever encoding the player was created with, so their samples reach the mixer
+ * without being quantized.
+ *
+ * <p>The track is sized by a {@link LatencyProfile}. It starts with the profile's buffer in use
+ * and spare capacity behind it; a {@link TrackBufferTuner} grows the buffer into that capacity
+ * whenever the track underruns, so a low-latency session only gives up latency on devices that
+ * cannot sustain it.
+ *
+ * <p>{@link #startTailing} plays a recording that {@link PCMRecorder} is still writing, from its
+ * start: the source follows the recorder's {@link RecordingProgress} and waits for it whenever
+ * playback catches up, and the session completes once the recording has ended and been played
+ * to its last frame.
  */
 public class PCMPlayer {
 
@@ -23,6 +52,8 @@ public class PCMPlayer {
 
     private static final String TAG = "PCMPlayer";
 
+    private static final long NO_SEEK = -1L;
+
     private final int sampleRate;
     private final int channelConfig;
     private final int audioEncoding;
@@ -32,6 +63,17 @@ public class PCMPlayer {
 
     private AudioTrack audioTrack;
     private Thread playbackThread;
+    private boolean tailing;
+
+    // Seek requested by any thread, applied by the playback thread between writes
+    private final AtomicLong pendingSeekFrame = new AtomicLong(NO_SEEK);
+    // File frame at which the track's playback head was last reset to 0 (start or seek)
+    private volatile long positionBaseFrame;
+    private volatile long durationFrames;
+    private volatile long lastPositionFrame;
+
+    private volatile PlayerStats stats = new PlayerStats();
+    private volatile LatencyProfile latencyProfile = LatencyProfile.BALANCED;
 
     public PCMPlayer(int sampleRate,
                      int channelConfig,
@@ -43,48 +85,154 @@ public class PCMPlayer {
         this.callbackHandler = callbackHandler;
     }
 
+    /**
+     * Counters and timing histograms of the current or last session, including AudioTrack
+     * underruns. Cheap enough to poll from a UI timer.
+     */
+    public PlayerStats.Snapshot getStats() {
+        return stats.snapshot();
+    }
+
+    /** Buffer sizing and track performance mode of the next sessions; {@link LatencyProfile#BALANCED} by default. */
+    public void setLatencyProfile(LatencyProfile profile) {
+        if (profile == null) {
+            throw new IllegalArgumentException("profile must be non-null");
+        }
+        latencyProfile = profile;
+    }
+
+    public LatencyProfile getLatencyProfile() {
+        return latencyProfile;
+    }
+
     public boolean isPlaying() {
         return isPlaying;
     }
 
+    /** Length of the current (or last) file in frames; grows with the recording while tailing. */
+    public long getDurationFrames() {
+        return durationFrames;
+    }
+
+    public long getDurationMillis() {
+        return durationFrames * 1000L / sampleRate;
+    }
+
+    /** Frame currently being heard, derived from the track's playback head. */
+    public long getPositionFrames() {
+        AudioTrack track = audioTrack;
+        if (track == null || !isPlaying) {
+            return lastPositionFrame;
+        }
+        long head;
+        try {
+            head = track.getPlaybackHeadPosition() & 0xFFFFFFFFL; // unsigned 32-bit counter
+        } catch (IllegalStateException e) {
+            return lastPositionFrame;
+        }
+        long position = Math.min(positionBaseFrame + head, durationFrames);
+        lastPositionFrame = position;
+        return position;
+    }
+
+    public long getPositionMillis() {
+        return getPositionFrames() * 1000L / sampleRate;
+    }
+
+    /**
+     * Jumps to {@code frame} (clamped to the file). Takes effect on the playback thread after the
+     * chunk being written; audio already queued in the track is discarded.
+     */
+    public void seekToFrame(long frame) {
+        if (!isPlaying) return;
+        pendingSeekFrame.set(Math.max(0L, frame));
+    }
+
+    public void seekToMillis(long millis) {
+        seekToFrame(millis * sampleRate / 1000L);
+    }
+
     /**
-     * Start playback for the given PCM file. The listener will be invoked once when finished.
+     * Start playback for the given PCM, float ({@link MappedPcmSource#FLOAT_FILE_SUFFIX}) or
+     * compressed ({@link CompressedPcmSource#FILE_SUFFIX}) file. The listener will be invoked
+     * once when finished.
      */
     public boolean start(File file, Listener listener) {
+        return start(file, null, listener);
+    }
+
+    /**
+     * Start playing {@code file} from its start while the recorder is still writing it, following
+     * {@code progress} ({@link PCMRecorder#getProgress()}). Seeks are limited to what has been
+     * recorded so far. The listener will be invoked once when playback reaches the end of the
+     * finished recording, or is stopped.
+     */
+    public boolean startTailing(File file, RecordingProgress progress, Listener listener) {
+        if (progress == null) {
+            throw new IllegalArgumentException("progress must be non-null");
+        }
+        return start(file, progress, listener);
+    }
+
+    private boolean start(File file, RecordingProgress progress, Listener listener) {
         if (isPlaying) return false;
 
-        int minBufferSize = AudioTrack.getMinBufferSize(sampleRate, channelConfig, audioEncoding);
+        final int encoding = encodingFor(file);
+        int minBufferSize = AudioTrack.getMinBufferSize(sampleRate, channelConfig, encoding);
         if (minBufferSize <= 0) {
             notifyFinish(listener, new IOException("Unsupported playback configuration"), false);
             return false;
         }
-        int calculatedBufferSize = Math.max(minBufferSize, sampleRate / 2);
-        if ((calculatedBufferSize & 1) != 0) calculatedBufferSize++;
-        final int bufferSize = calculatedBufferSize;
+        final LatencyProfile profile = latencyProfile;
+        final int frameSize = bytesPerFrame(encoding);
+        final int bufferSize = profile.bufferBytes(minBufferSize, sampleRate, frameSize);
 
-        AudioTrack track = new AudioTrack(
-                new AudioAttributes.Builder()
+        AudioTrack.Builder builder = new AudioTrack.Builder()
+                .setAudioAttributes(new AudioAttributes.Builder()
                         .setUsage(AudioAttributes.USAGE_MEDIA)
                         .setContentType(AudioAttributes.CONTENT_TYPE_SPEECH)
-                        .build(),
-                new AudioFormat.Builder()
-                        .setEncoding(audioEncoding)
+                        .build())
+                .setAudioFormat(new AudioFormat.Builder()
+                        .setEncoding(encoding)
                         .setSampleRate(sampleRate)
                         .setChannelMask(channelConfig)
-                        .build(),
-                bufferSize,
-                AudioTrack.MODE_STREAM,
-                AudioManager.AUDIO_SESSION_ID_GENERATE
-        );
+                        .build())
+                .setBufferSizeInBytes(bufferSize * profile.trackHeadroom())
+                .setTransferMode(AudioTrack.MODE_STREAM)
+                .setSessionId(AudioManager.AUDIO_SESSION_ID_GENERATE);
+        if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.O) {
+            builder.setPerformanceMode(performanceMode(profile));
+        }
+        AudioTrack track;
+        try {
+            track = builder.build();
+        } catch (UnsupportedOperationException e) {
+            notifyFinish(listener, new IOException("AudioTrack init failed", e), false);
+            return false;
+        }
         if (track.getState() != AudioTrack.STATE_INITIALIZED) {
             track.release();
             notifyFinish(listener, new IOException("AudioTrack init failed"), false);
             return false;
         }
+        // Start with the profile's buffer in use; the rest of the capacity is room to grow
+        int initialFrames = bufferSize / frameSize;
+        int applied = track.setBufferSizeInFrames(initialFrames);
+        if (applied > 0) initialFrames = applied;
+        int capacityFrames = Math.max(initialFrames, track.getBufferCapacityInFrames());
+        final TrackBufferTuner tuner = new TrackBufferTuner(initialFrames, bufferSize / frameSize, capacityFrames);
         audioTrack = track;
 
+        pendingSeekFrame.set(NO_SEEK);
+        positionBaseFrame = 0L;
+        lastPositionFrame = 0L;
+        durationFrames = 0L;
+        stats = new PlayerStats();
+        stats.recordBufferSize(initialFrames);
         isPlaying = true;
-        playbackThread = new Thread(() -> doPlayback(file, bufferSize, listener), "PCMPlayer");
+        tailing = progress != null;
+        playbackThread = new Thread(() -> doPlayback(file, progress, frameSize, bufferSize, tuner, listener),
+                "PCMPlayer");
         playbackThread.start();
         return true;
     }
@@ -96,6 +244,9 @@ public class PCMPlayer {
         safeStopAudioTrack();
         Thread t = playbackThread;
         if (t != null) {
+            if (tailing) {
+                t.interrupt(); // it may be waiting for the recorder
+            }
             try {
                 t.join();
             } catch (InterruptedException e) {
@@ -105,30 +256,57 @@ public class PCMPlayer {
         playbackThread = null;
     }
 
-    private void doPlayback(File file, int bufferSize, Listener listener) {
+    private void doPlayback(File file, RecordingProgress progress, int frameSize, int bufferSize,
+                            TrackBufferTuner tuner, Listener listener) {
         Exception failure = null;
         boolean completed = false;
-        try (BufferedInputStream bis = new BufferedInputStream(new FileInputStream(file))) {
-            byte[] buffer = new byte[bufferSize];
+        final PlayerStats stats = this.stats;
+        try (PcmSource source = progress != null ? openTailingSource(file, progress, frameSize)
+                : openSource(file, frameSize)) {
+            durationFrames = source.totalFrames();
             audioTrack.play();
+            playback:
             while (isPlaying) {
-                int read = bis.read(buffer);
-                if (read == -1) {
+                long seek = pendingSeekFrame.getAndSet(NO_SEEK);
+                if (seek != NO_SEEK) {
+                    applySeek(source, seek);
+                }
+                long begin = System.nanoTime();
+                ByteBuffer chunk = source.next(bufferSize);
+                stats.recordSourceRead(System.nanoTime() - begin);
+                durationFrames = source.totalFrames();
+                if (!chunk.hasRemaining()) {
                     completed = true;
                     break;
                 }
-                if (read > 0) {
-                    int written = audioTrack.write(buffer, 0, read);
+                while (chunk.hasRemaining() && isPlaying) {
+                    begin = System.nanoTime();
+                    int written = audioTrack.write(chunk, chunk.remaining(), AudioTrack.WRITE_BLOCKING);
+                    stats.recordTrackWrite(written, System.nanoTime() - begin);
                     if (written < 0) {
                         failure = new IOException("AudioTrack write error: " + written);
-                        break;
+                        break playback;
                     }
                 }
+                int underruns = audioTrack.getUnderrunCount();
+                stats.recordUnderrunCount(underruns);
+                int grown = tuner.onUnderrunCount(underruns);
+                if (grown != TrackBufferTuner.UNCHANGED) {
+                    tuner.onSizeApplied(audioTrack.setBufferSizeInFrames(grown));
+                    stats.recordBufferSize(tuner.sizeFrames());
+                    Log.w(TAG, "Track underran (" + underruns + "), buffer grown to " + tuner.sizeFrames() + " frames");
+                }
             }
         } catch (IOException | IllegalStateException e) {
-            failure = e;
-            Log.e(TAG, "Playback failed", e);
+            // While tailing, stop() interrupts the thread: a wait for the recorder or a file read
+            // then fails, which is not an error
+            if (progress == null || isPlaying) {
+                failure = e;
+                Log.e(TAG, "Playback failed", e);
+            }
         } finally {
+            getPositionFrames(); // keep the last position readable after the track is gone
+            Log.i(TAG, "Session stats: " + stats.snapshot());
             safeStopAudioTrack();
             safeReleaseAudioTrack();
             isPlaying = false;
@@ -136,6 +314,77 @@ public class PCMPlayer {
         }
     }
 
+    private PcmSource openSource(File file, int frameSize) throws IOException {
+        if (!file.getName().endsWith(CompressedPcmSource.FILE_SUFFIX)) {
+            return new MappedPcmSource(file, frameSize);
+        }
+        CompressedPcmSource source = new CompressedPcmSource(file);
+        if (source.frameBytes() != frameSize || source.sampleRate() != sampleRate) {
+            int channels = source.channelCount();
+            int rate = source.sampleRate();
+            source.close();
+            throw new IOException("Recording is " + channels + " ch at " + rate + " Hz, player expects "
+                    + Integer.bitCount(channelConfig) + " ch at " + sampleRate + " Hz");
+        }
+        return source;
+    }
+
+    /**
+     * Waits for the recorder to commit its first bytes (the file may not exist before that), then
+     * opens the tailing reader for its format.
+     */
+    private PcmSource openTailingSource(File file, RecordingProgress progress, int frameSize) throws IOException {
+        if (progress.awaitBeyond(0L) == 0L) {
+            throw new IOException("Recording ended without audio");
+        }
+        if (file.getName().endsWith(CompressedPcmSource.FILE_SUFFIX)) {
+            return new TailingCompressedSource(file, sampleRate, Integer.bitCount(channelConfig), progress);
+        }
+        return new TailingPcmSource(file, frameSize, progress);
+    }
+
+    /** Drops queued audio and restarts the track from {@code frame}; the playback head restarts at 0. */
+    private void applySeek(PcmSource source, long frame) {
+        audioTrack.pause();
+        audioTrack.flush();
+        source.seek(frame);
+        positionBaseFrame = source.positionFrames();
+        audioTrack.play();
+    }
+
+    private static int performanceMode(LatencyProfile profile) {
+        switch (profile) {
+            case LOW_LATENCY:
+                return AudioTrack.PERFORMANCE_MODE_LOW_LATENCY;
+            case POWER_SAVING:
+                return AudioTrack.PERFORMANCE_MODE_POWER_SAVING;
+            default:
+                return AudioTrack.PERFORMANCE_MODE_NONE;
+        }
+    }
+
+    /** Float recordings always play as float; everything else in the player's encoding. */
+    private int encodingFor(File file) {
+        return file.getName().endsWith(MappedPcmSource.FLOAT_FILE_SUFFIX)
+                ? AudioFormat.ENCODING_PCM_FLOAT : audioEncoding;
+    }
+
+    private int bytesPerFrame(int encoding) {
+        int bytesPerSample;
+        switch (encoding) {
+            case AudioFormat.ENCODING_PCM_8BIT:
+                bytesPerSample = 1;
+                break;
+            case AudioFormat.ENCODING_PCM_FLOAT:
+                bytesPerSample = 4;
+                break;
+            default:
+                bytesPerSample = 2;
+                break;
+        }
+        return Integer.bitCount(channelConfig) * bytesPerSample;
+    }
+
     private void notifyFinish(Listener listener, Exception error, boolean completed) {
         if (listener == null) return;
         if (callbackHandler != null) {
@@ -4,17 +4,47 @@ import android.media.AudioFormat;
 import android.media.AudioRecord;
 import android.media.MediaRecorder;
 import android.os.Handler;
+import android.os.Process;
+import android.system.ErrnoException;
+import android.system.Os;
 import android.util.Log;
 
+import com.zgo.recordplayer.audio.AudioProcessingChain;
+import com.zgo.recordplayer.audio.CompressedPcmSink;
+import com.zgo.recordplayer.audio.CompressedPcmSource;
+import com.zgo.recordplayer.audio.FrameProcessor;
+import com.zgo.recordplayer.audio.FrameProcessorPool;
+import com.zgo.recordplayer.audio.FrameRing;
+import com.zgo.recordplayer.audio.LatencyProfile;
+import com.zgo.recordplayer.audio.MappedPcmSource;
+import com.zgo.recordplayer.audio.MultiChannelDenoiser;
+import com.zgo.recordplayer.audio.PcmFileSink;
+import com.zgo.recordplayer.audio.PcmSink;
+import com.zgo.recordplayer.audio.RecorderStats;
+import com.zgo.recordplayer.audio.RecordingProgress;
+import com.zgo.recordplayer.audio.Resampler;
 import com.zgo.recordplayer.audio.RnnoiseProcessor;
+import com.zgo.recordplayer.audio.SegmentManifest;
+import com.zgo.recordplayer.audio.SegmentedPcmSink;
+import com.zgo.recordplayer.audio.VoiceGate;
+import com.zgo.recordplayer.audio.WaveformIndex;
+import com.zgo.recordplayer.audio.WaveformIndexWriter;
 
-import java.io.BufferedOutputStream;
 import java.io.File;
-import java.io.FileOutputStream;
 import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.FloatBuffer;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.LockSupport;
 
 /**
  * Encapsulates PCM audio recording using AudioRecord.
+ *
+ * <p>A capture thread only reads AudioRecord into a lock-free {@link FrameRing}; a writer thread
+ * denoises the frames in batches and writes them, with a {@link WaveformIndex} sidecar, so slow
+ * storage or DSP never delays the next read.
  */
 public class PCMRecorder {
 
@@ -22,63 +52,345 @@ public class PCMRecorder {
         void onFinished(File outputFile, Exception error);
     }
 
+    /** Told about each finished segment of a segmented recording, while the recording goes on. */
+    public interface SegmentListener {
+        void onSegmentFinished(File segment, SegmentManifest.Segment info);
+    }
+
+    /** What happens to the non-speech stretches found by the voice gate. */
+    public enum SilenceMode {
+        /** Record everything (the default). */
+        KEEP,
+        /** Cut them out of the recording; the take gets shorter. */
+        DROP,
+        /**
+         * Keep the timeline but store them as digital silence: a sparse hole in a raw file, a
+         * few bytes per block in a compressed one.
+         */
+        MARK
+    }
+
     private static final String TAG = "PCMRecorder";
 
+    // Capture-to-writer queue depth: 2 s of 10 ms frames absorbs slow flash writes and GC pauses
+    private static final int RING_FRAMES = 200;
+    // Upper bound on a writer park; publish() normally wakes it much sooner
+    private static final long WRITER_PARK_NANOS = 20_000_000L;
+    private static final long FRAME_NANOS = 10_000_000L;
+    // Tried in order when the device cannot capture at the recording rate
+    private static final int[] FALLBACK_CAPTURE_RATES = {48000, 44100, 16000, 8000};
+    // Only the 48 kHz output is recorded, so the chain skips the 8 kHz decimator entirely
+    private static final AudioProcessingChain RECORDING_CHAIN = AudioProcessingChain.builder().denoise().build();
+    // Warm processors for RECORDING_CHAIN, so starting a recording doesn't pay for library load
+    // and RNNoise state allocation; two cover back-to-back recorders (or a recorder and the
+    // LiveMonitor, or a stereo recording), idle ones go after a minute
+    static final FrameProcessorPool PROCESSOR_POOL =
+            new FrameProcessorPool(RECORDING_CHAIN, 2, TimeUnit.MINUTES.toNanos(1));
+
+    // Per-channel denoise workers run at the writer's audio priority
+    private static final ThreadFactory DENOISE_THREADS = task -> new Thread(() -> {
+        Process.setThreadPriority(Process.THREAD_PRIORITY_URGENT_AUDIO);
+        task.run();
+    }, "PCMRecorder-denoise");
+
+    // Opening and finalizing segments never competes with capture
+    private static final ThreadFactory SEGMENT_THREADS = task -> new Thread(() -> {
+        Process.setThreadPriority(Process.THREAD_PRIORITY_BACKGROUND);
+        task.run();
+    }, "PCMRecorder-segments");
+
+    // Reserve real extents up front so the filesystem isn't extended on every write
+    private static final PcmFileSink.Preallocator FALLOCATE = (fd, offset, length) -> {
+        try {
+            Os.posix_fallocate(fd, offset, length);
+        } catch (ErrnoException e) {
+            throw e.rethrowAsIOException();
+        }
+    };
+
     private final int sampleRate;
     private final int channelConfig;
     private final int audioEncoding;
+    private final int channels;
+    private final boolean floatSamples; // ENCODING_PCM_FLOAT capture and storage
+    private final int frameBytes;       // one 10 ms frame of every channel at the recording rate
     private final boolean enableNoiseSuppression; // RNNoise integration toggle
     private final Handler callbackHandler; // Post callbacks on this handler if not null
 
+    private volatile SilenceMode silenceMode = SilenceMode.KEEP;
+    private volatile int hangoverFrames;
+    private volatile int preRollFrames;
+
+    private volatile long segmentMillis;
+    private volatile long segmentBytes;
+    private volatile SegmentListener segmentListener;
+
     private volatile boolean isRecording;
 
+    private LatencyProfile latencyProfile = LatencyProfile.BALANCED;
+
+    // Standby: an AudioRecord constructed ahead of start() and re-armed after every session
+    private boolean standby;
+    private AudioRecord armedRecord;
+    private int armedBufferSize;
+    private int armedCaptureRate;
+
+    // Start latency of the current or last session, System.nanoTime() based; 0 = not reached yet
+    private volatile long startNanos;
+    private volatile long firstSampleNanos;
+    private volatile long firstWriteNanos;
+    private volatile boolean startedArmed;
+
+    private volatile RecorderStats stats = new RecorderStats();
+    private volatile RecordingProgress progress;
+
     private AudioRecord audioRecord;
     private Thread recordingThread;
+    private volatile FrameRing frameRing;
+    private int captureRate; // of the current or last session
+    private volatile Exception writerFailure;
 
-    // RNNoise processor instance; created when recording starts if enabled
-    private RnnoiseProcessor rnnoiseProcessor;
+    // Frame processor (native RNNoise, or the Java engine when librnnoise is unavailable);
+    // taken from PROCESSOR_POOL when recording starts if enabled. Multi-channel recordings and
+    // rates other than 48 kHz use channelDenoiser instead, with one pooled processor per channel
+    // (or none, to only convert the rate).
+    private FrameProcessor frameProcessor;
+    private MultiChannelDenoiser channelDenoiser;
 
+    /**
+     * Multi-channel recordings are denoised per channel, each channel with its own processor and
+     * thread. RNNoise runs at 48 kHz, so at other rates, or when the device can't capture at
+     * {@code sampleRate} and falls back to a rate it can, the audio is resampled around the
+     * denoiser. With {@code ENCODING_PCM_FLOAT} the samples stay float from AudioRecord to disk.
+     *
+     * <p>Recording works in 10 ms frames, so {@code sampleRate} has to hold a whole number of
+     * samples per frame: 8, 16, 44.1 and 48 kHz do, 11.025 and 22.05 kHz don't.
+     *
+     * @throws IllegalArgumentException if {@code sampleRate} is not a positive multiple of 100 Hz,
+     *                                  or {@code audioEncoding} is neither
+     *                                  {@code ENCODING_PCM_16BIT} nor {@code ENCODING_PCM_FLOAT}
+     */
     public PCMRecorder(int sampleRate,
                        int channelConfig,
                        int audioEncoding,
                        boolean enableNoiseSuppression,
                        Handler callbackHandler) {
+        if (sampleRate <= 0 || sampleRate % 100 != 0) {
+            throw new IllegalArgumentException("Sample rate must be a positive multiple of 100 Hz, got " + sampleRate);
+        }
         this.sampleRate = sampleRate;
         this.channelConfig = channelConfig;
+        if (audioEncoding != AudioFormat.ENCODING_PCM_16BIT && audioEncoding != AudioFormat.ENCODING_PCM_FLOAT) {
+            throw new IllegalArgumentException("Only PCM16 and float capture are supported, got encoding " + audioEncoding);
+        }
         this.audioEncoding = audioEncoding;
+        this.floatSamples = audioEncoding == AudioFormat.ENCODING_PCM_FLOAT;
+        this.channels = Integer.bitCount(channelConfig);
+        this.frameBytes = frameBytesAt(sampleRate);
         this.enableNoiseSuppression = enableNoiseSuppression;
         this.callbackHandler = callbackHandler;
     }
 
+    /** Bytes of one 10 ms frame of every channel at {@code rate} Hz. */
+    private int frameBytesAt(int rate) {
+        return channels * (rate / 100) * (floatSamples ? 4 : 2);
+    }
+
+    /**
+     * Loads the processing engine and parks a ready processor, so the next recording with noise
+     * suppression starts without that cost. Blocking; call it off the main thread, e.g. at app start.
+     */
+    public static void prewarmProcessors() {
+        PROCESSOR_POOL.prewarm(1);
+    }
+
+    /** Frees the idle pooled processors, e.g. from {@code onTrimMemory}. */
+    public static void trimProcessors() {
+        PROCESSOR_POOL.trim();
+    }
+
     public boolean isRecording() {
         return isRecording;
     }
 
     /**
-     * Start recording into the provided PCM file. The listener will be invoked once when
-     * recording finishes or fails.
+     * Gates the next recordings on voice activity. Speech is kept from {@code preRollMs} before
+     * it starts until {@code hangoverMs} after it ends; everything else is handled per
+     * {@code mode}. Needs noise suppression, whose denoiser supplies the voice estimate to the
+     * {@link VoiceGate}; without it everything is recorded. Takes effect at the next {@link #start}.
      */
-    public boolean start(File outFile, Listener listener) {
-        if (isRecording) return false;
+    public void setSilenceMode(SilenceMode mode, int hangoverMs, int preRollMs) {
+        if (mode == null || hangoverMs < 0 || preRollMs < 0) {
+            throw new IllegalArgumentException("mode must be non-null, hangoverMs and preRollMs >= 0");
+        }
+        this.hangoverFrames = hangoverMs / 10;
+        this.preRollFrames = preRollMs / 10;
+        this.silenceMode = mode;
+    }
 
-        int minBufferSize = AudioRecord.getMinBufferSize(sampleRate, channelConfig, audioEncoding);
-        if (minBufferSize <= 0) {
-            notifyFinish(listener, outFile, new IOException("Unsupported recording configuration"));
-            return false;
+    /**
+     * Splits the next recordings into segments of at most {@code maxSegmentMillis} of audio or
+     * {@code maxSegmentBytes} on disk, whichever is reached first (0 disables either; both 0
+     * turns segmentation off, the default). The file passed to {@link #start} then only names
+     * the take: it is recorded as {@code name-0001.ext}, {@code name-0002.ext}, ... listed by the
+     * manifest {@link SegmentedPcmSink#manifestFor}, which the {@link Listener} receives instead.
+     * {@code listener}, if given, hears about every finished segment on the callback handler.
+     * Segments roll over at batch boundaries, so they run over their limit by less than one
+     * batch. The next segment is always opened ahead and finished ones are closed, indexed and
+     * reported on a background thread, so rolling over costs the writer nothing.
+     * Segmented sessions publish no {@link #getProgress()}.
+     */
+    public void setSegmentation(long maxSegmentMillis, long maxSegmentBytes, SegmentListener listener) {
+        if (maxSegmentMillis < 0 || maxSegmentBytes < 0) {
+            throw new IllegalArgumentException("maxSegmentMillis and maxSegmentBytes must be >= 0");
         }
-        int calculatedBufferSize = Math.max(minBufferSize, sampleRate / 2);
-        if ((calculatedBufferSize & 1) != 0) calculatedBufferSize++;
-        final int bufferSize = calculatedBufferSize;
+        this.segmentListener = listener;
+        this.segmentMillis = maxSegmentMillis;
+        this.segmentBytes = maxSegmentBytes;
+    }
 
-        audioRecord = new AudioRecord(MediaRecorder.AudioSource.MIC, sampleRate, channelConfig, audioEncoding, bufferSize);
-        if (audioRecord.getState() != AudioRecord.STATE_INITIALIZED) {
-            safeReleaseAudioRecord();
-            notifyFinish(listener, outFile, new IOException("AudioRecord init failed"));
+    /** Frames dropped by the capture thread because the writer fell 2 s behind (current or last session). */
+    public long getOverrunFrames() {
+        FrameRing ring = frameRing;
+        return ring != null ? ring.overrunFrames() : 0L;
+    }
+
+    /**
+     * Counters and timing histograms of the current or last session: DSP time per frame, write
+     * latency, read shortfalls, overruns. Cheap enough to poll from a UI timer.
+     */
+    public RecorderStats.Snapshot getStats() {
+        return stats.snapshot();
+    }
+
+    /**
+     * Committed write position of the current or last session's file, published after every
+     * batch, for playing it back while it is still being recorded
+     * ({@link com.zgo.recordplayer.audio.TailingPcmSource},
+     * {@link com.zgo.recordplayer.audio.TailingCompressedSource}); finished when the file is
+     * closed. Null before the first session and for segmented sessions, which have no single
+     * file to tail.
+     */
+    public RecordingProgress getProgress() {
+        return progress;
+    }
+
+    /** Highest capture-to-writer queue depth in frames (current or last session). */
+    public int getQueueHighWaterMark() {
+        FrameRing ring = frameRing;
+        return ring != null ? ring.highWaterMark() : 0;
+    }
+
+    /**
+     * Keeps the recorder armed between sessions: an initialized AudioRecord (not yet capturing,
+     * so the microphone stays off) and, with noise suppression, a warm frame processor. Arms
+     * right away when idle and re-arms after every session until turned off. Arming blocks for
+     * the AudioRecord construction and, the first time, the library load; call it off the main
+     * thread. Needs the RECORD_AUDIO permission. Meant for push-to-talk: {@link #start} then only
+     * has to start capture.
+     *
+     * @return false if arming failed; {@link #start} then falls back to building everything on demand
+     */
+    public synchronized boolean setStandby(boolean enabled) {
+        standby = enabled;
+        if (!enabled) {
+            releaseArmedRecord();
+            return true;
+        }
+        return isRecording || arm();
+    }
+
+    /**
+     * Buffer size, read size and writer batching of the next sessions; {@link LatencyProfile#BALANCED}
+     * by default. An armed AudioRecord of another profile is rebuilt (blocking, like arming).
+     */
+    public synchronized void setLatencyProfile(LatencyProfile profile) {
+        if (profile == null) {
+            throw new IllegalArgumentException("profile must be non-null");
+        }
+        if (profile == latencyProfile) return;
+        latencyProfile = profile;
+        if (armedRecord != null) {
+            releaseArmedRecord();
+            arm();
+        }
+    }
+
+    public synchronized LatencyProfile getLatencyProfile() {
+        return latencyProfile;
+    }
+
+    /** Whether an AudioRecord is constructed and waiting for the next {@link #start}. */
+    public synchronized boolean isArmed() {
+        return armedRecord != null;
+    }
+
+    /**
+     * Milliseconds from {@link #start} to the first captured audio of the current or last
+     * session, or -1 if none arrived (yet).
+     */
+    public long getTimeToFirstSampleMillis() {
+        return sinceStartMillis(firstSampleNanos);
+    }
+
+    /**
+     * Milliseconds from {@link #start} until the writer had handled its first frame (processed
+     * and written, or gated) in the current or last session, or -1 if none (yet).
+     */
+    public long getTimeToFirstWriteMillis() {
+        return sinceStartMillis(firstWriteNanos);
+    }
+
+    /** Whether the current or last session started from an armed AudioRecord. */
+    public boolean wasStartedArmed() {
+        return startedArmed;
+    }
+
+    /**
+     * Start recording into the provided file: raw PCM, or the lossless compressed format when
+     * its name ends in {@link CompressedPcmSource#FILE_SUFFIX}. A float recorder writes raw
+     * float32 and needs a name ending in {@link MappedPcmSource#FLOAT_FILE_SUFFIX}, which a
+     * PCM16 recorder does not accept; a mismatched name fails the start. The listener will be
+     * invoked once when recording finishes or fails.
+     */
+    public synchronized boolean start(File outFile, Listener listener) {
+        if (isRecording) return false;
+        if (floatSamples != outFile.getName().endsWith(MappedPcmSource.FLOAT_FILE_SUFFIX)) {
+            notifyFinish(listener, outFile, new IOException(floatSamples
+                    ? "Float recordings are stored as " + MappedPcmSource.FLOAT_FILE_SUFFIX + " files"
+                    : MappedPcmSource.FLOAT_FILE_SUFFIX + " files need a float recorder"));
             return false;
         }
+        startNanos = System.nanoTime();
+        firstSampleNanos = 0L;
+        firstWriteNanos = 0L;
+
+        startedArmed = armedRecord != null;
+        if (startedArmed) {
+            audioRecord = armedRecord;
+            armedRecord = null;
+        } else {
+            IOException failure = createAudioRecord();
+            if (failure != null) {
+                notifyFinish(listener, outFile, failure);
+                return false;
+            }
+        }
+        final int bufferSize = armedBufferSize;
+        final LatencyProfile profile = latencyProfile;
+        final long segmentMillis = this.segmentMillis;
+        final long segmentBytes = this.segmentBytes;
+        final boolean segmented = segmentMillis > 0 || segmentBytes > 0;
 
+        captureRate = armedCaptureRate;
+        frameRing = new FrameRing(RING_FRAMES, frameBytesAt(captureRate));
+        stats = new RecorderStats();
+        // The byte count of a segmented session spans every segment and matches no one file
+        progress = segmented ? null : new RecordingProgress();
+        writerFailure = null;
         isRecording = true;
-        recordingThread = new Thread(() -> doRecord(outFile, bufferSize, listener), "PCMRecorder");
+        recordingThread = new Thread(() -> doRecord(outFile, bufferSize, profile, segmentMillis, segmentBytes, listener),
+                "PCMRecorder");
         recordingThread.start();
         return true;
     }
@@ -101,125 +413,538 @@ public class PCMRecorder {
         recordingThread = null;
     }
 
-    private void doRecord(File file, int bufferSize, Listener listener) {
-        Exception failure = null;
-        try (BufferedOutputStream bos = new BufferedOutputStream(new FileOutputStream(file))) {
-            // Prepare buffers. We read shorts (PCM16) from AudioRecord.
-            final int shortsPerBuffer = Math.max(1, bufferSize / 2);
-            short[] readBuffer = new short[shortsPerBuffer];
-
-            // Frame-based processing for RNNoise (480-sample frames at 48 kHz)
-            short[] frameBuffer = new short[RnnoiseProcessor.FRAME_SIZE];
-            int frameFill = 0;
-            short[] denoisedFrame = null; // allocated lazily when RNNoise is active
-            short[] decimatedOut = null;  // required by JNI; contents unused here
-
-            // Reusable byte buffers for writing to file
-            byte[] rawWriteBuffer = new byte[shortsPerBuffer * 2];
-            byte[] frameWriteBuffer = new byte[RnnoiseProcessor.FRAME_SIZE * 2];
-
-            // Initialize RNNoise if requested
-            boolean useRnnoise = false;
-            if (enableNoiseSuppression) {
-                try {
-                    rnnoiseProcessor = new RnnoiseProcessor(true);
-                    useRnnoise = true;
-                    Log.i(TAG, "RNNoise enabled");
-                } catch (Throwable e) {
-                    rnnoiseProcessor = null;
-                    useRnnoise = false;
-                    Log.e(TAG, "Failed to initialize RNNoise; falling back to raw audio", e);
+    /**
+     * Constructs {@link #audioRecord} at the recording rate or, if the device cannot capture at
+     * it, the first of {@link #FALLBACK_CAPTURE_RATES} that works, and sets {@link #armedBufferSize}
+     * and {@link #armedCaptureRate}; returns the failure, if any.
+     */
+    private IOException createAudioRecord() {
+        IOException failure = null;
+        for (int i = -1; i < FALLBACK_CAPTURE_RATES.length; i++) {
+            int rate = i < 0 ? sampleRate : FALLBACK_CAPTURE_RATES[i];
+            if (i >= 0 && rate == sampleRate) continue;
+            failure = createAudioRecord(rate);
+            if (failure == null) {
+                if (rate != sampleRate) {
+                    Log.w(TAG, "Cannot capture at " + sampleRate + " Hz; capturing at " + rate + " Hz and resampling");
                 }
+                return null;
+            }
+        }
+        return failure;
+    }
+
+    private IOException createAudioRecord(int rate) {
+        int minBufferSize = AudioRecord.getMinBufferSize(rate, channelConfig, audioEncoding);
+        if (minBufferSize <= 0) {
+            return new IOException("Unsupported recording configuration");
+        }
+        int bufferSize = latencyProfile.bufferBytes(minBufferSize, rate, channels * (floatSamples ? 4 : 2));
+
+        audioRecord = new AudioRecord(MediaRecorder.AudioSource.MIC, rate, channelConfig, audioEncoding, bufferSize);
+        if (audioRecord.getState() != AudioRecord.STATE_INITIALIZED) {
+            safeReleaseAudioRecord();
+            return new IOException("AudioRecord init failed");
+        }
+        armedBufferSize = bufferSize;
+        armedCaptureRate = rate;
+        return null;
+    }
+
+    /** Builds the AudioRecord and parks a warm processor for the next start. Caller holds the lock. */
+    private boolean arm() {
+        if (armedRecord != null) return true;
+        long begin = System.nanoTime();
+        try {
+            if (enableNoiseSuppression) {
+                PROCESSOR_POOL.prewarm(channels);
+            }
+            IOException failure = createAudioRecord();
+            if (failure != null) {
+                Log.w(TAG, "Standby arming failed", failure);
+                return false;
+            }
+        } catch (RuntimeException e) { // SecurityException without the permission, engine load failures
+            safeReleaseAudioRecord();
+            Log.w(TAG, "Standby arming failed", e);
+            return false;
+        }
+        armedRecord = audioRecord;
+        audioRecord = null;
+        Log.i(TAG, "Armed in " + (System.nanoTime() - begin) / 1_000_000L + " ms");
+        return true;
+    }
+
+    private void releaseArmedRecord() {
+        if (armedRecord != null) {
+            try {
+                armedRecord.release();
+            } catch (Exception ignored) {
             }
+            armedRecord = null;
+        }
+    }
 
+    private long sinceStartMillis(long nanos) {
+        return nanos == 0L ? -1L : (nanos - startNanos) / 1_000_000L;
+    }
+
+    /** Capture thread: reads AudioRecord into the ring and owns the session lifecycle. */
+    private void doRecord(File file, int bufferSize, LatencyProfile profile, long segmentMillis, long segmentBytes,
+                          Listener listener) {
+        Process.setThreadPriority(Process.THREAD_PRIORITY_URGENT_AUDIO);
+        final FrameRing ring = frameRing;
+        final RecorderStats stats = this.stats;
+        final int frameBytes = ring.frameBytes();
+        // Read a quarter of the AudioRecord buffer at a time (one frame for low latency) so it is
+        // drained well before it fills
+        final int framesPerRead = profile.readFrames(bufferSize, frameBytes);
+
+        Exception failure = null;
+        final RecordingProgress progress = this.progress;
+        final boolean segmented = segmentMillis > 0 || segmentBytes > 0;
+        Thread writerThread = new Thread(() -> runWriter(file, ring, stats, progress, profile, segmentMillis, segmentBytes),
+                "PCMRecorder-writer");
+        writerThread.start();
+
+        ByteBuffer dropBuffer = null; // allocated only if the ring ever fills up
+        int pending = 0; // bytes of a partially captured frame at the ring head
+        // The first read asks for a single frame so it returns after 10 ms, not a quarter buffer
+        int readFrames = 1;
+        try {
             audioRecord.startRecording();
-            while (isRecording) {
-                int read = audioRecord.read(readBuffer, 0, readBuffer.length);
-                if (read > 0) {
-                    if (useRnnoise && rnnoiseProcessor != null) {
-                        int idx = 0;
-                        while (idx < read) {
-                            int toCopy = Math.min(RnnoiseProcessor.FRAME_SIZE - frameFill, read - idx);
-                            System.arraycopy(readBuffer, idx, frameBuffer, frameFill, toCopy);
-                            frameFill += toCopy;
-                            idx += toCopy;
-
-                            if (frameFill == RnnoiseProcessor.FRAME_SIZE) {
-                                if (denoisedFrame == null) denoisedFrame = new short[RnnoiseProcessor.FRAME_SIZE];
-                                if (decimatedOut == null) decimatedOut = new short[RnnoiseProcessor.DECIMATED_FRAME_SIZE];
-                                try {
-                                    rnnoiseProcessor.processFrame(frameBuffer, denoisedFrame, decimatedOut);
-                                    shortsToLittleEndianBytes(denoisedFrame, 0, RnnoiseProcessor.FRAME_SIZE, frameWriteBuffer);
-                                    bos.write(frameWriteBuffer, 0, frameWriteBuffer.length);
-                                } catch (Exception e) {
-                                    Log.e(TAG, "RNNoise processing failed, switching to raw audio", e);
-                                    // Fallback: write the unprocessed frame we accumulated
-                                    shortsToLittleEndianBytes(frameBuffer, 0, RnnoiseProcessor.FRAME_SIZE, frameWriteBuffer);
-                                    bos.write(frameWriteBuffer, 0, frameWriteBuffer.length);
-                                    // Disable RNNoise for the remainder of this recording
-                                    try { rnnoiseProcessor.close(); } catch (Throwable ignored) {}
-                                    rnnoiseProcessor = null;
-                                    useRnnoise = false;
-                                } finally {
-                                    frameFill = 0;
-                                }
-                            }
-                        }
-                    } else {
-                        // Passthrough: write captured shorts directly
-                        shortsToLittleEndianBytes(readBuffer, 0, read, rawWriteBuffer);
-                        bos.write(rawWriteBuffer, 0, read * 2);
+            while (isRecording && writerFailure == null) {
+                int read;
+                if (ring.writableFrames() == 0) {
+                    // Writer is behind: keep draining AudioRecord so it never overruns, drop the audio
+                    if (dropBuffer == null) {
+                        dropBuffer = ByteBuffer.allocateDirect(framesPerRead * frameBytes);
+                    }
+                    read = audioRecord.read(dropBuffer, dropBuffer.capacity());
+                    stats.recordRead(dropBuffer.capacity(), read);
+                    if (read > 0) {
+                        int dropped = (read + frameBytes - 1) / frameBytes;
+                        ring.recordOverrun(dropped);
+                        stats.recordOverrun(dropped);
                     }
-                } else if (read == 0) {
-                    continue;
-                } else if (read == AudioRecord.ERROR_INVALID_OPERATION || read == AudioRecord.ERROR_BAD_VALUE) {
-                    failure = new IOException("AudioRecord read failed: " + read);
-                    break;
                 } else {
-                    failure = new IOException("AudioRecord unknown error: " + read);
+                    ByteBuffer region = ring.writeRegion();
+                    int want = Math.min(region.limit(), readFrames * frameBytes) - pending;
+                    if (pending > 0) {
+                        region.position(pending);
+                        region = region.slice();
+                    }
+                    read = audioRecord.read(region, want);
+                    stats.recordRead(want, read);
+                    if (read > 0) {
+                        if (firstSampleNanos == 0L) {
+                            firstSampleNanos = System.nanoTime();
+                            readFrames = framesPerRead;
+                        }
+                        pending += read;
+                        int frames = pending / frameBytes;
+                        ring.publish(frames);
+                        // A partial remainder already sits at the start of the new head slot
+                        pending -= frames * frameBytes;
+                    }
+                }
+                if (read < 0) {
+                    failure = readFailure(read);
                     break;
                 }
             }
+        } catch (IllegalStateException e) {
+            failure = e;
+            Log.e(TAG, "Recording failed", e);
+        } finally {
+            safeStopAudioRecord();
+            safeReleaseAudioRecord();
+        }
+
+        // Hand a trailing partial frame to the writer zero-padded, with its real length
+        if (pending > 0) {
+            ByteBuffer region = ring.writeRegion();
+            for (int i = pending; i < frameBytes; i++) region.put(i, (byte) 0);
+            ring.publishLast(pending);
+        }
+        ring.finish();
+        try {
+            writerThread.join();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        if (failure == null) {
+            failure = writerFailure;
+        }
+
+        if (ring.overrunFrames() > 0) {
+            Log.w(TAG, "Capture overran the writer queue: " + ring.overrunFrames() + " frames dropped");
+        }
+        Log.i(TAG, "Writer queue high-water mark: " + ring.highWaterMark() + "/" + ring.capacityFrames() + " frames");
+        Log.i(TAG, "Start latency" + (startedArmed ? " (armed)" : "") + ": first sample "
+                + getTimeToFirstSampleMillis() + " ms, first written frame " + getTimeToFirstWriteMillis() + " ms");
+        synchronized (this) {
+            isRecording = false;
+            if (standby) {
+                arm();
+            }
+        }
+        notifyFinish(listener, segmented ? SegmentedPcmSink.manifestFor(file) : file, failure);
+    }
 
-            // Flush any partial frame on stop when RNNoise active by zero-padding
-            if (rnnoiseProcessor != null && frameFill > 0) {
-                for (int i = frameFill; i < RnnoiseProcessor.FRAME_SIZE; i++) frameBuffer[i] = 0;
-                if (denoisedFrame == null) denoisedFrame = new short[RnnoiseProcessor.FRAME_SIZE];
-                if (decimatedOut == null) decimatedOut = new short[RnnoiseProcessor.DECIMATED_FRAME_SIZE];
+    /** Writer thread: drains the ring, denoises in batches and writes the result to disk. */
+    private void runWriter(File file, FrameRing ring, RecorderStats stats, RecordingProgress progress,
+                           LatencyProfile profile, long segmentMillis, long segmentBytes) {
+        final int captureFrameBytes = ring.frameBytes();
+        final int captureRate = this.captureRate;
+        final int maxBatchFrames = profile.maxBatchFrames();
+        final int minBatchFrames = profile.minBatchFrames();
+        final ByteBuffer[] regions = new ByteBuffer[2];
+        final float[] vad = new float[maxBatchFrames];
+        final float[] vadSecond = new float[maxBatchFrames];
+        ByteBuffer denoisedBatch = null;
+        ByteBuffer decimatedOut = null; // required by the API; RECORDING_CHAIN never writes it
+        VoiceGate gate = null;
+        GatedOutput gated = null;
+        WaveformIndexWriter index = null;
+        try (PcmSink target = openSink(file, segmentMillis, segmentBytes)) {
+            SegmentedPcmSink segments = target instanceof SegmentedPcmSink ? (SegmentedPcmSink) target : null;
+            index = segments != null ? segments.currentIndex() : openIndex(file);
+            PcmSink sink = stats.timing(target);
+            // Initialize the denoiser if requested
+            if (enableNoiseSuppression) {
                 try {
-                    rnnoiseProcessor.processFrame(frameBuffer, denoisedFrame, decimatedOut);
-                    shortsToLittleEndianBytes(denoisedFrame, 0, RnnoiseProcessor.FRAME_SIZE, frameWriteBuffer);
-                    bos.write(frameWriteBuffer, 0, frameWriteBuffer.length);
-                } catch (Exception e) {
-                    Log.e(TAG, "RNNoise processing failed during flush; writing raw partial", e);
-                    shortsToLittleEndianBytes(frameBuffer, 0, frameFill, rawWriteBuffer);
-                    bos.write(rawWriteBuffer, 0, frameFill * 2);
+                    boolean nativeEngine;
+                    if (channels > 1 || captureRate != FrameProcessor.SAMPLE_RATE || sampleRate != FrameProcessor.SAMPLE_RATE) {
+                        channelDenoiser = new MultiChannelDenoiser(PROCESSOR_POOL, channels, floatSamples,
+                                captureRate, sampleRate, maxBatchFrames, DENOISE_THREADS);
+                        nativeEngine = RnnoiseProcessor.isNativeAvailable();
+                    } else {
+                        frameProcessor = PROCESSOR_POOL.acquire();
+                        nativeEngine = frameProcessor instanceof RnnoiseProcessor;
+                        decimatedOut = ByteBuffer.allocateDirect(FrameProcessor.maxDecimatedSamples(maxBatchFrames)
+                                * (floatSamples ? 4 : 2)).order(ByteOrder.nativeOrder());
+                    }
+                    Log.i(TAG, (nativeEngine ? "RNNoise" : "Java denoiser") + " enabled"
+                            + (channels > 1 ? " on " + channels + " channels in parallel" : "")
+                            + (captureRate != FrameProcessor.SAMPLE_RATE || sampleRate != FrameProcessor.SAMPLE_RATE
+                                    ? ", " + captureRate + " -> 48000 -> " + sampleRate + " Hz" : "")
+                            + ", " + minBatchFrames + "-" + maxBatchFrames + " frames per batch (" + profile + ")");
+                    SilenceMode mode = silenceMode;
+                    if (mode != SilenceMode.KEEP) {
+                        gate = new VoiceGate(frameBytes, VoiceGate.DEFAULT_THRESHOLD, hangoverFrames, preRollFrames);
+                        gated = new GatedOutput(sink, mode == SilenceMode.MARK);
+                        Log.i(TAG, "Voice gate enabled: " + mode);
+                    }
+                } catch (Throwable e) {
+                    closeDenoiser(false);
+                    Log.e(TAG, "Failed to initialize denoiser; falling back to raw audio", e);
                 }
-                frameFill = 0;
             }
+            if (frameProcessor == null && channelDenoiser == null && captureRate != sampleRate) {
+                channelDenoiser = openRateConverter(captureRate, maxBatchFrames);
+            }
+            if (frameProcessor != null || channelDenoiser != null) {
+                denoisedBatch = ByteBuffer.allocateDirect(maxBatchFrames * frameBytes).order(ByteOrder.nativeOrder());
+            }
+
+            while (true) {
+                if (ring.awaitReadable(WRITER_PARK_NANOS) == 0) {
+                    if (ring.isDrained()) break;
+                    continue;
+                }
+                if (ring.size() < minBatchFrames && !ring.isFinished()) {
+                    // Sleep through the rest of the batch rather than waking on every read
+                    LockSupport.parkNanos((minBatchFrames - ring.size()) * FRAME_NANOS);
+                    continue;
+                }
+                // Take the queued frames on both sides of the wrap point as one batch
+                int frames = ring.readRegions(regions, maxBatchFrames);
+                ByteBuffer first = regions[0];
+                ByteBuffer second = regions[1];
+                if (segments != null && segments.isDue()) {
+                    // The next segment is already open; the finished one is closed in the background
+                    index = segments.rotate();
+                }
 
-            bos.flush();
+                boolean written = false;
+                while (!written && (frameProcessor != null || channelDenoiser != null)) {
+                    try {
+                        int firstFrames = first.limit() / captureFrameBytes;
+                        long denoiseBefore = denoiseNanos();
+                        long begin = System.nanoTime();
+                        denoisedBatch.clear();
+                        denoise(first, firstFrames, denoisedBatch, 0, decimatedOut, vad);
+                        if (second.hasRemaining()) {
+                            denoise(second, frames - firstFrames, denoisedBatch, firstFrames, decimatedOut, vadSecond);
+                            System.arraycopy(vadSecond, 0, vad, firstFrames, frames - firstFrames);
+                        }
+                        stats.recordBatch(frames, System.nanoTime() - begin,
+                                denoiseNanos() - denoiseBefore);
+                        // Denoised output keeps a zero-padded trailing frame whole
+                        denoisedBatch.position(0);
+                        denoisedBatch.limit(frames * frameBytes);
+                        if (gate != null) {
+                            gated.index = index;
+                            gate.process(denoisedBatch, frames, vad, gated);
+                            index = gated.index;
+                        } else {
+                            sink.write(denoisedBatch);
+                            index = addToIndex(index, denoisedBatch, vad, 0);
+                        }
+                        written = true;
+                    } catch (RuntimeException e) {
+                        boolean denoising = frameProcessor != null || channelDenoiser.isDenoising();
+                        if (!denoising) {
+                            // Capture at another rate cannot be written raw
+                            throw new IllegalStateException("Resampling the capture failed", e);
+                        }
+                        Log.e(TAG, "Denoise processing failed, switching to raw audio", e);
+                        // Disable the denoiser (and with it the gate) for the remainder of this recording
+                        closeDenoiser(false);
+                        if (gate != null) {
+                            index = finishGate(gate, gated, index);
+                            gate = null;
+                        }
+                        if (captureRate != sampleRate) {
+                            // Retry this batch, resampled only
+                            channelDenoiser = openRateConverter(captureRate, maxBatchFrames);
+                        }
+                    }
+                }
+                if (!written) {
+                    if (ring.endsWithTrailingFrame(frames)) {
+                        // Raw audio keeps the exact captured length
+                        ByteBuffer last = second.hasRemaining() ? second : first;
+                        last.limit(last.limit() - (captureFrameBytes - ring.trailingBytes()));
+                    }
+                    sink.write(first, second);
+                    stats.recordRawFrames(frames);
+                    index = addToIndex(index, first, null, 0);
+                    index = addToIndex(index, second, null, 0);
+                }
+                ring.release(frames);
+                if (progress != null) {
+                    progress.commit(target.bytesWritten());
+                }
+                if (firstWriteNanos == 0L) {
+                    firstWriteNanos = System.nanoTime();
+                }
+            }
+            if (gate != null) {
+                index = finishGate(gate, gated, index);
+            }
+            // Closing writes the last compressed block; readers see it before the end
+            target.close();
+            if (progress != null) {
+                progress.commit(target.bytesWritten());
+            }
+            boolean unallocated = target instanceof PcmFileSink && !((PcmFileSink) target).isPreallocating();
+            Log.i(TAG, "Wrote " + sink.bytesWritten() + " bytes in " + sink.writeCalls() + " writes"
+                    + (unallocated ? " (no preallocation)" : ""));
+            Log.i(TAG, "Session stats: " + stats.snapshot());
         } catch (IOException | IllegalStateException e) {
-            failure = e;
-            Log.e(TAG, "Recording failed", e);
+            writerFailure = e;
+            Log.e(TAG, "Writing recording failed", e);
         } finally {
-            safeStopAudioRecord();
-            safeReleaseAudioRecord();
-            if (rnnoiseProcessor != null) {
-                try { rnnoiseProcessor.close(); } catch (Throwable ignored) {}
-                rnnoiseProcessor = null;
+            // Healthy processors go back reset, ready for the next recording
+            closeDenoiser(true);
+            if (progress != null) {
+                progress.finish();
             }
-            isRecording = false;
-            notifyFinish(listener, file, failure);
+            closeIndex(index);
+        }
+    }
+
+    /**
+     * Denoises {@code frames} frames from {@code in} into {@code out} from frame {@code atFrame}
+     * on, through float views of the buffers when capturing float.
+     */
+    private void denoise(ByteBuffer in, int frames, ByteBuffer out, int atFrame, ByteBuffer decimated, float[] vadOut) {
+        if (channelDenoiser != null) {
+            channelDenoiser.process(in, frames, out, atFrame, vadOut);
+        } else if (floatSamples) {
+            FloatBuffer outFloats = out.asFloatBuffer();
+            outFloats.position(atFrame * FrameProcessor.FRAME_SIZE);
+            frameProcessor.processFrames(in.asFloatBuffer(), frames, outFloats, decimated.asFloatBuffer(), null, vadOut);
+        } else {
+            out.position(atFrame * frameBytes);
+            frameProcessor.processFrames(in, frames, out, decimated, null, vadOut);
         }
     }
 
+    /** A {@link MultiChannelDenoiser} without processors, for recording at a rate the device cannot capture at. */
+    private MultiChannelDenoiser openRateConverter(int captureRate, int maxBatchFrames) {
+        if (!Resampler.isNativeAvailable()) {
+            throw new IllegalStateException("Cannot convert " + captureRate + " Hz capture to " + sampleRate
+                    + " Hz: the native resampler is unavailable");
+        }
+        Log.i(TAG, "Resampling " + captureRate + " Hz capture to " + sampleRate + " Hz");
+        return new MultiChannelDenoiser(null, channels, floatSamples, captureRate, sampleRate, maxBatchFrames,
+                DENOISE_THREADS);
+    }
+
+    private long denoiseNanos() {
+        return channelDenoiser != null ? channelDenoiser.denoiseNanos() : frameProcessor.denoiseNanos();
+    }
+
+    /**
+     * Drops the denoiser: its processors go back to the pool if {@code healthy}, otherwise they
+     * are closed (a multi-channel denoiser that failed closes them itself).
+     */
+    private void closeDenoiser(boolean healthy) {
+        if (channelDenoiser != null) {
+            try { channelDenoiser.close(); } catch (Throwable ignored) {}
+            channelDenoiser = null;
+        }
+        if (frameProcessor != null) {
+            if (healthy) {
+                PROCESSOR_POOL.release(frameProcessor);
+            } else {
+                try { frameProcessor.close(); } catch (Throwable ignored) {}
+            }
+            frameProcessor = null;
+        }
+    }
+
+    private PcmSink openSink(File file, long segmentMillis, long segmentBytes) throws IOException {
+        if (segmentMillis > 0 || segmentBytes > 0) {
+            SegmentListener listener = segmentListener;
+            return new SegmentedPcmSink(file, new SegmentFiles(), sampleRate, channels, floatSamples,
+                    segmentMillis, segmentBytes, SEGMENT_THREADS, listener == null ? null
+                    : (segment, info) -> post(() -> listener.onSegmentFinished(segment, info)));
+        }
+        return openFileSink(file);
+    }
+
+    private PcmSink openFileSink(File file) throws IOException {
+        if (!floatSamples && file.getName().endsWith(CompressedPcmSource.FILE_SUFFIX)) {
+            return new CompressedPcmSink(file, sampleRate, channels);
+        }
+        return new PcmFileSink(file, FALLOCATE, PcmFileSink.DEFAULT_CHUNK_BYTES, floatSamples ? 4 : 2);
+    }
+
+    /** Opens each segment of a segmented recording like a whole unsegmented one. */
+    private final class SegmentFiles implements SegmentedPcmSink.Opener {
+        @Override
+        public PcmSink openSink(File segment) throws IOException {
+            return openFileSink(segment);
+        }
+
+        @Override
+        public WaveformIndexWriter openIndex(File segment) {
+            return PCMRecorder.this.openIndex(segment);
+        }
+    }
+
+    /** Flushes the gate's held-back frames as silence and logs how much it kept. */
+    private WaveformIndexWriter finishGate(VoiceGate gate, GatedOutput gated, WaveformIndexWriter index)
+            throws IOException {
+        gated.index = index;
+        gate.finish(gated);
+        long total = gate.passedFrames() + gate.gatedFrames();
+        Log.i(TAG, "Voice gate kept " + gate.passedFrames() + " of " + total + " frames");
+        return gated.index;
+    }
+
+    private WaveformIndexWriter openIndex(File recording) {
+        try {
+            return new WaveformIndexWriter(WaveformIndex.sidecarFor(recording), sampleRate, channels);
+        } catch (IOException e) {
+            Log.w(TAG, "Waveform index disabled", e);
+            return null;
+        }
+    }
+
+    /**
+     * Feeds the frames in {@code region} (up to its limit; the last may be partial) to the index.
+     * Index failures never affect the recording: the index is dropped and null returned.
+     */
+    private WaveformIndexWriter addToIndex(WaveformIndexWriter index, ByteBuffer region,
+                                           float[] vad, int vadOffset) {
+        if (index == null) return null;
+        final int sampleBytes = floatSamples ? 4 : 2;
+        try {
+            int f = 0;
+            for (int offset = 0; offset < region.limit(); offset += frameBytes, f++) {
+                int samples = Math.min(frameBytes, region.limit() - offset) / sampleBytes;
+                float v = vad != null ? vad[vadOffset + f] : FrameProcessor.VAD_UNAVAILABLE;
+                if (floatSamples) {
+                    index.addFloat(region, offset, samples, v);
+                } else {
+                    index.add(region, offset, samples, v);
+                }
+            }
+            return index;
+        } catch (IOException e) {
+            Log.w(TAG, "Waveform index write failed; dropping the index", e);
+            closeIndex(index);
+            return null;
+        }
+    }
+
+    /**
+     * Writes what the voice gate passes; gated-out stretches are dropped or, when
+     * {@code mark} is set, written as silence and indexed as unvoiced.
+     */
+    private final class GatedOutput implements VoiceGate.Output {
+        private final PcmSink sink;
+        private final boolean mark;
+        private ByteBuffer zeroFrame; // index input for marked silence
+        private final float[] unvoiced = {0f};
+        WaveformIndexWriter index;
+
+        GatedOutput(PcmSink sink, boolean mark) {
+            this.sink = sink;
+            this.mark = mark;
+        }
+
+        @Override
+        public void frames(ByteBuffer frames, float[] vad, int vadOffset) throws IOException {
+            ByteBuffer region = frames.slice().order(frames.order());
+            sink.write(frames);
+            index = addToIndex(index, region, vad, vadOffset);
+        }
+
+        @Override
+        public void silence(int frameCount) throws IOException {
+            if (!mark) return;
+            sink.writeSilence((long) frameCount * frameBytes);
+            if (zeroFrame == null) {
+                zeroFrame = ByteBuffer.allocateDirect(frameBytes).order(ByteOrder.nativeOrder());
+            }
+            for (int f = 0; f < frameCount && index != null; f++) {
+                index = addToIndex(index, zeroFrame, unvoiced, 0);
+            }
+        }
+    }
+
+    private static void closeIndex(WaveformIndexWriter index) {
+        if (index == null) return;
+        try {
+            index.close();
+        } catch (IOException e) {
+            Log.w(TAG, "Failed to finalize waveform index", e);
+        }
+    }
+
+    private static IOException readFailure(int read) {
+        if (read == AudioRecord.ERROR_INVALID_OPERATION || read == AudioRecord.ERROR_BAD_VALUE) {
+            return new IOException("AudioRecord read failed: " + read);
+        }
+        return new IOException("AudioRecord unknown error: " + read);
+    }
+
     private void notifyFinish(Listener listener, File file, Exception error) {
         if (listener == null) return;
+        post(() -> listener.onFinished(file, error));
+    }
+
+    private void post(Runnable callback) {
         if (callbackHandler != null) {
-            callbackHandler.post(() -> listener.onFinished(file, error));
+            callbackHandler.post(callback);
         } else {
-            listener.onFinished(file, error);
+            callback.run();
         }
     }
 
@@ -243,13 +968,4 @@ public class PCMRecorder {
             audioRecord = null;
         }
     }
-
-    private static void shortsToLittleEndianBytes(short[] src, int srcOffset, int lengthInShorts, byte[] dest) {
-        int di = 0;
-        for (int i = 0; i < lengthInShorts; i++) {
-            short v = src[srcOffset + i];
-            dest[di++] = (byte) (v & 0xff);
-            dest[di++] = (byte) ((v >> 8) & 0xff);
-        }
-    }
 }
@@ -0,0 +1,278 @@
+package com.zgo.recordplayer.audio;
+
+import java.util.Arrays;
+
+/**
+ * Declares the stages a {@link FrameProcessor} runs on each 10 ms, 48 kHz frame, in order.
+ *
+ * <pre>
+ *   AudioProcessingChain chain = AudioProcessingChain.builder()
+ *           .highPass(80f)
+ *           .gain(6f)
+ *           .denoise()
+ *           .agc(-20f, 12f)
+ *           .limiter(-1f)
+ *           .output()        // denoisedOut is taken here
+ *           .decimate()      // 8 kHz stream in decimatedOut
+ *           .build();
+ *   FrameProcessor processor = FrameProcessors.create(chain);
+ * </pre>
+ *
+ * <p>Both engines compile the chain once into a flat stage list and run every stage in one pass
+ * over a single float frame buffer, converting from and to PCM16 only at the ends and at the
+ * output tap. Stages that are not declared are not in the list and cost nothing; without
+ * {@link Builder#decimate()} no 8 kHz samples are produced and {@code processFrames} returns 0.
+ * Filter and gain coefficients are computed here, so the native and Java engines use the same values.
+ */
+public final class AudioProcessingChain {
+
+    /** Most processing stages (output tap and decimator excluded) one chain may declare. */
+    public static final int MAX_STAGES = 16;
+
+    // Stage opcodes shared with rnnoise_jni.c; each is followed by its parameters in params()
+    static final int STAGE_HIGH_PASS = 1;  // b0, b1, b2, a1, a2 (normalized biquad)
+    static final int STAGE_GAIN = 2;       // linear gain
+    static final int STAGE_DENOISE = 3;
+    static final int STAGE_AGC = 4;        // target RMS, max gain, attack coefficient, release coefficient
+    static final int STAGE_LIMITER = 5;    // ceiling, release coefficient
+    static final int STAGE_OUTPUT = 6;
+    static final int STAGE_DECIMATE = 7;
+
+    private static final float SAMPLE_RATE = 48000f;
+    private static final float FULL_SCALE = 32768f;
+    private static final float FRAME_SECONDS = FrameProcessor.FRAME_SIZE / SAMPLE_RATE;
+    private static final float AGC_ATTACK_SECONDS = 0.05f;   // gain falls quickly on loud onsets
+    private static final float AGC_RELEASE_SECONDS = 1.5f;   // and rises slowly, so pauses don't pump
+    private static final float LIMITER_RELEASE_SECONDS = 0.1f;
+
+    private static final AudioProcessingChain STANDARD_DENOISED = builder().denoise().output().decimate().build();
+    private static final AudioProcessingChain STANDARD_PASSTHROUGH = builder().output().decimate().build();
+
+    private final int[] ops;
+    private final float[] params;
+    private final boolean denoise;
+    private final boolean decimate;
+
+    private AudioProcessingChain(int[] ops, float[] params, boolean denoise, boolean decimate) {
+        this.ops = ops;
+        this.params = params;
+        this.denoise = denoise;
+        this.decimate = decimate;
+    }
+
+    public static Builder builder() {
+        return new Builder();
+    }
+
+    /**
+     * The fixed chain this app has always run: optional denoise, then the 48 kHz output and
+     * the 8 kHz decimated stream. {@link FrameProcessors#create(boolean)} uses it.
+     */
+    public static AudioProcessingChain standard(boolean denoise) {
+        return denoise ? STANDARD_DENOISED : STANDARD_PASSTHROUGH;
+    }
+
+    public boolean hasDenoiser() {
+        return denoise;
+    }
+
+    public boolean hasDecimator() {
+        return decimate;
+    }
+
+    /** Stage opcodes in order; the output tap is always present and the decimator, if any, is last. */
+    int[] ops() {
+        return ops.clone();
+    }
+
+    /** Parameters of all stages, concatenated in stage order. */
+    float[] params() {
+        return params.clone();
+    }
+
+    /** Number of parameters stage {@code op} takes from {@link #params()}. */
+    static int paramCount(int op) {
+        switch (op) {
+            case STAGE_HIGH_PASS: return 5;
+            case STAGE_GAIN: return 1;
+            case STAGE_AGC: return 4;
+            case STAGE_LIMITER: return 2;
+            default: return 0;
+        }
+    }
+
+    @Override
+    public String toString() {
+        StringBuilder sb = new StringBuilder("AudioProcessingChain[");
+        for (int i = 0; i < ops.length; i++) {
+            if (i > 0) sb.append(" -> ");
+            sb.append(stageName(ops[i]));
+        }
+        return sb.append(']').toString();
+    }
+
+    private static String stageName(int op) {
+        switch (op) {
+            case STAGE_HIGH_PASS: return "highPass";
+            case STAGE_GAIN: return "gain";
+            case STAGE_DENOISE: return "denoise";
+            case STAGE_AGC: return "agc";
+            case STAGE_LIMITER: return "limiter";
+            case STAGE_OUTPUT: return "output";
+            default: return "decimate";
+        }
+    }
+
+    /** Stages are appended in call order. Not thread-safe. */
+    public static final class Builder {
+        private int[] ops = new int[8];
+        private float[] params = new float[16];
+        private int opCount;
+        private int paramCount;
+        private int stages;
+        private boolean denoise;
+        private boolean output;
+        private boolean decimate;
+
+        private Builder() {
+        }
+
+        /** Second-order Butterworth high-pass at {@code cutoffHz}; removes DC and rumble. */
+        public Builder highPass(float cutoffHz) {
+            if (!(cutoffHz > 0f && cutoffHz < SAMPLE_RATE / 2)) {
+                throw new IllegalArgumentException("cutoffHz must be in (0, 24000)");
+            }
+            double w0 = 2 * Math.PI * cutoffHz / SAMPLE_RATE;
+            double cos = Math.cos(w0);
+            double alpha = Math.sin(w0) / (2 * Math.sqrt(0.5)); // Q = 1/sqrt(2)
+            double a0 = 1 + alpha;
+            return stage(STAGE_HIGH_PASS,
+                    (float) ((1 + cos) / 2 / a0),
+                    (float) (-(1 + cos) / a0),
+                    (float) ((1 + cos) / 2 / a0),
+                    (float) (-2 * cos / a0),
+                    (float) ((1 - alpha) / a0));
+        }
+
+        /** Fixed gain of {@code db} decibels. */
+        public Builder gain(float db) {
+            checkFinite(db, "db");
+            return stage(STAGE_GAIN, dbToLinear(db));
+        }
+
+        /** RNNoise, or the Java spectral subtractor when the native library is unavailable. */
+        public Builder denoise() {
+            if (denoise) {
+                throw new IllegalStateException("denoise() already declared");
+            }
+            denoise = true;
+            return stage(STAGE_DENOISE);
+        }
+
+        /**
+         * Automatic gain control: per frame, steers the gain toward bringing the frame RMS to
+         * {@code targetDbfs}, boosting by at most {@code maxGainDb}. Gain drops within ~50 ms
+         * and recovers over ~1.5 s, ramped across each frame.
+         */
+        public Builder agc(float targetDbfs, float maxGainDb) {
+            checkFinite(targetDbfs, "targetDbfs");
+            if (targetDbfs > 0f) {
+                throw new IllegalArgumentException("targetDbfs must be <= 0");
+            }
+            if (!(maxGainDb >= 0f) || Float.isInfinite(maxGainDb)) {
+                throw new IllegalArgumentException("maxGainDb must be >= 0");
+            }
+            return stage(STAGE_AGC, FULL_SCALE * dbToLinear(targetDbfs), dbToLinear(maxGainDb),
+                    smoothing(AGC_ATTACK_SECONDS), smoothing(AGC_RELEASE_SECONDS));
+        }
+
+        /**
+         * Peak limiter: keeps every sample within {@code ceilingDbfs}. The whole frame is seen
+         * before its gain is chosen, so peaks are caught without added latency.
+         */
+        public Builder limiter(float ceilingDbfs) {
+            checkFinite(ceilingDbfs, "ceilingDbfs");
+            if (ceilingDbfs > 0f) {
+                throw new IllegalArgumentException("ceilingDbfs must be <= 0");
+            }
+            return stage(STAGE_LIMITER, (FULL_SCALE - 1) * dbToLinear(ceilingDbfs),
+                    smoothing(LIMITER_RELEASE_SECONDS));
+        }
+
+        /**
+         * Output tap: {@code denoisedOut} receives the signal at this point. Defaults to just
+         * before the decimator (or the end of the chain).
+         */
+        public Builder output() {
+            if (output) {
+                throw new IllegalStateException("output() already declared");
+            }
+            ensureNotDecimated();
+            output = true;
+            append(STAGE_OUTPUT);
+            return this;
+        }
+
+        /** Decimates to 8 kHz into {@code decimatedOut}; must be the last stage. */
+        public Builder decimate() {
+            ensureNotDecimated();
+            if (!output) {
+                output();
+            }
+            decimate = true;
+            append(STAGE_DECIMATE);
+            return this;
+        }
+
+        public AudioProcessingChain build() {
+            if (!output) {
+                output();
+            }
+            return new AudioProcessingChain(Arrays.copyOf(ops, opCount), Arrays.copyOf(params, paramCount),
+                    denoise, decimate);
+        }
+
+        private Builder stage(int op, float... values) {
+            ensureNotDecimated();
+            if (stages == MAX_STAGES) {
+                throw new IllegalStateException("A chain holds at most " + MAX_STAGES + " stages");
+            }
+            stages++;
+            append(op);
+            if (paramCount + values.length > params.length) {
+                params = Arrays.copyOf(params, Math.max(params.length * 2, paramCount + values.length));
+            }
+            System.arraycopy(values, 0, params, paramCount, values.length);
+            paramCount += values.length;
+            return this;
+        }
+
+        private void append(int op) {
+            if (opCount == ops.length) {
+                ops = Arrays.copyOf(ops, opCount * 2);
+            }
+            ops[opCount++] = op;
+        }
+
+        private void ensureNotDecimated() {
+            if (decimate) {
+                throw new IllegalStateException("decimate() must be the last stage");
+            }
+        }
+    }
+
+    private static float dbToLinear(float db) {
+        return (float) Math.pow(10.0, db / 20.0);
+    }
+
+    /** One-pole smoothing coefficient per frame for time constant {@code seconds}. */
+    private static float smoothing(float seconds) {
+        return (float) (1.0 - Math.exp(-FRAME_SECONDS / seconds));
+    }
+
+    private static void checkFinite(float value, String name) {
+        if (Float.isNaN(value) || Float.isInfinite(value)) {
+            throw new IllegalArgumentException(name + " must be finite");
+        }
+    }
+}
@@ -0,0 +1,345 @@
+package com.zgo.recordplayer.audio;
+
+import androidx.annotation.Nullable;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * Offline denoiser for existing headerless PCM16 recordings (48 kHz mono), spreading the work
+ * of a whole backlog over a {@link ForkJoinPool}.
+ *
+ * <p>Every file is cut into chunks of {@code chunkFrames} 10 ms frames, and each chunk is an
+ * independent task. The stages are stateful, so a chunk first runs the {@code warmupFrames}
+ * frames before it through the processor with the output discarded; by the time its own first
+ * frame arrives, the noise estimate and filter state have converged to what a sequential run
+ * would have at that point. The processor is {@link FrameProcessor#reset() reset} before every
+ * warm-up, so a chunk's output depends only on the input and never on which chunk the worker
+ * ran before; the first chunk of a file matches the sequential run exactly. Each pool worker keeps one
+ * {@link FrameProcessor} (one native handle) and its buffers for the whole run; chunks read and
+ * write their file ranges with positional I/O, so output files are filled in any order without
+ * locking.
+ *
+ * <pre>
+ *   BatchDenoiser.Run run = new BatchDenoiser(ForkJoinPool.commonPool())
+ *           .start(inputs, outputs, (done, total) -> progress.setProgress((int) (100 * done / total)));
+ *   ...
+ *   run.await(); // or run.cancel()
+ * </pre>
+ */
+public final class BatchDenoiser {
+
+    /** Called from worker threads as frames complete; must be thread-safe. */
+    public interface ProgressListener {
+        void onProgress(long framesDone, long totalFrames);
+    }
+
+    /** 30 s of audio per task. */
+    public static final int DEFAULT_CHUNK_FRAMES = 3000;
+    /** 1 s of warm-up ahead of each chunk. */
+    public static final int DEFAULT_WARMUP_FRAMES = 100;
+
+    // Frames read, processed and written per I/O round within a chunk
+    private static final int BATCH_FRAMES = 100;
+    private static final int FRAME_BYTES = FrameProcessor.FRAME_BYTES;
+
+    private final ForkJoinPool pool;
+    private final AudioProcessingChain chain;
+    private final int chunkFrames;
+    private final int warmupFrames;
+
+    /** Denoise only, with the default chunk and warm-up sizes. */
+    public BatchDenoiser(ForkJoinPool pool) {
+        this(pool, AudioProcessingChain.builder().denoise().build(), DEFAULT_CHUNK_FRAMES, DEFAULT_WARMUP_FRAMES);
+    }
+
+    /** Runs {@code chain} over each file; the chain's output tap is what gets written. */
+    public BatchDenoiser(ForkJoinPool pool, AudioProcessingChain chain, int chunkFrames, int warmupFrames) {
+        if (chunkFrames <= 0 || warmupFrames < 0) {
+            throw new IllegalArgumentException("chunkFrames must be > 0 and warmupFrames >= 0");
+        }
+        this.pool = pool;
+        this.chain = chain;
+        this.chunkFrames = chunkFrames;
+        this.warmupFrames = warmupFrames;
+    }
+
+    /**
+     * Starts denoising {@code inputs[i]} into {@code outputs[i]} (created or truncated, with the
+     * input's exact length; a trailing partial frame is processed zero-padded). Inputs are
+     * opened here, so missing files fail fast.
+     */
+    public Run start(List<File> inputs, List<File> outputs, @Nullable ProgressListener listener) throws IOException {
+        if (inputs.size() != outputs.size()) {
+            throw new IllegalArgumentException("inputs and outputs must have the same size");
+        }
+        List<FileJob> jobs = new ArrayList<>(inputs.size());
+        try {
+            for (int i = 0; i < inputs.size(); i++) {
+                jobs.add(new FileJob(inputs.get(i), outputs.get(i)));
+            }
+        } catch (IOException | RuntimeException e) {
+            for (FileJob job : jobs) {
+                job.close(true);
+            }
+            throw e;
+        }
+        Run run = new Run(jobs, listener);
+        pool.execute(run.root);
+        return run;
+    }
+
+    /** One batch in progress. */
+    public final class Run {
+        private final List<FileJob> jobs;
+        @Nullable
+        private final ProgressListener listener;
+        private final long totalFrames;
+        private final AtomicLong framesDone = new AtomicLong();
+        private final Map<Thread, Worker> workers = new ConcurrentHashMap<>();
+        private final RecursiveAction root;
+        private final AtomicReference<Throwable> failure = new AtomicReference<>();
+        private volatile boolean cancelled;
+
+        Run(List<FileJob> jobs, @Nullable ProgressListener listener) {
+            this.jobs = jobs;
+            this.listener = listener;
+            long total = 0;
+            for (FileJob job : jobs) {
+                total += job.frames;
+            }
+            this.totalFrames = total;
+            this.root = new RecursiveAction() {
+                @Override
+                protected void compute() {
+                    runAll();
+                }
+            };
+        }
+
+        /** Frames processed so far, warm-up not counted. */
+        public long framesDone() {
+            return framesDone.get();
+        }
+
+        public long totalFrames() {
+            return totalFrames;
+        }
+
+        /** Stops handing out chunks; chunks in flight stop at their next batch. Outputs are deleted. */
+        public void cancel() {
+            cancelled = true;
+        }
+
+        public boolean isCancelled() {
+            return cancelled;
+        }
+
+        public boolean isDone() {
+            return root.isDone();
+        }
+
+        /**
+         * Waits for every file to be written.
+         *
+         * @throws CancellationException if {@link #cancel()} was called first
+         * @throws IOException           if reading or writing any file failed; the other chunks stop at
+         *                               their next batch and all outputs are deleted
+         */
+        public void await() throws IOException, InterruptedException {
+            try {
+                root.get();
+            } catch (ExecutionException e) {
+                Throwable cause = e.getCause();
+                if (cause instanceof UncheckedIOException) {
+                    throw ((UncheckedIOException) cause).getCause();
+                }
+                if (cause instanceof RuntimeException) {
+                    throw (RuntimeException) cause;
+                }
+                throw new IOException(cause);
+            }
+            if (cancelled) {
+                throw new CancellationException("Batch denoise cancelled");
+            }
+        }
+
+        private void runAll() {
+            boolean failed = true;
+            try {
+                List<RecursiveAction> chunks = new ArrayList<>();
+                for (FileJob job : jobs) {
+                    for (long start = 0; start < job.frames; start += chunkFrames) {
+                        long from = start;
+                        long to = Math.min(job.frames, start + chunkFrames);
+                        chunks.add(new RecursiveAction() {
+                            @Override
+                            protected void compute() {
+                                processChunk(job, from, to);
+                            }
+                        });
+                    }
+                }
+                for (RecursiveAction chunk : chunks) {
+                    chunk.fork();
+                }
+                // Every chunk must have finished before the processors and files are closed below
+                for (RecursiveAction chunk : chunks) {
+                    chunk.quietlyJoin();
+                }
+                Throwable first = failure.get();
+                if (first instanceof RuntimeException) throw (RuntimeException) first;
+                if (first instanceof Error) throw (Error) first;
+                failed = false;
+            } finally {
+                for (Worker worker : workers.values()) {
+                    worker.processor.close();
+                }
+                workers.clear();
+                IOException closeFailure = null;
+                for (FileJob job : jobs) {
+                    try {
+                        job.close(failed || cancelled);
+                    } catch (IOException e) {
+                        closeFailure = e;
+                    }
+                }
+                if (closeFailure != null && !failed) {
+                    throw new UncheckedIOException(closeFailure);
+                }
+            }
+        }
+
+        /** Whether chunks should stop: cancelled, or another chunk failed. */
+        private boolean stopping() {
+            return cancelled || failure.get() != null;
+        }
+
+        private void processChunk(FileJob job, long from, long to) {
+            if (stopping()) return;
+            try {
+                Worker worker = workers.computeIfAbsent(Thread.currentThread(), t -> new Worker(chain));
+                // Start from a clean state, whatever chunk or file this worker ran last, then
+                // converge it on the audio just before the chunk; output discarded
+                worker.processor.reset();
+                long warmFrom = Math.max(0, from - warmupFrames);
+                for (long f = warmFrom; f < from && !stopping(); f += BATCH_FRAMES) {
+                    worker.run(job, f, (int) Math.min(BATCH_FRAMES, from - f), false);
+                }
+                for (long f = from; f < to && !stopping(); f += BATCH_FRAMES) {
+                    int frames = (int) Math.min(BATCH_FRAMES, to - f);
+                    worker.run(job, f, frames, true);
+                    long done = framesDone.addAndGet(frames);
+                    if (listener != null) {
+                        listener.onProgress(done, totalFrames);
+                    }
+                }
+            } catch (IOException e) {
+                failure.compareAndSet(null, new UncheckedIOException(e));
+            } catch (RuntimeException | Error e) {
+                failure.compareAndSet(null, e);
+            }
+        }
+    }
+
+    /** A pool worker's processor and buffers, reused for every chunk it runs. */
+    private static final class Worker {
+        final FrameProcessor processor;
+        final ByteBuffer in = ByteBuffer.allocateDirect(BATCH_FRAMES * FRAME_BYTES).order(ByteOrder.nativeOrder());
+        final ByteBuffer out = ByteBuffer.allocateDirect(BATCH_FRAMES * FRAME_BYTES).order(ByteOrder.nativeOrder());
+        final ByteBuffer decimated = ByteBuffer.allocateDirect(FrameProcessor.maxDecimatedSamples(BATCH_FRAMES) * 2)
+                .order(ByteOrder.nativeOrder());
+
+        Worker(AudioProcessingChain chain) {
+            this.processor = FrameProcessors.create(chain);
+        }
+
+        /** Processes {@code frames} frames of {@code job} from frame {@code first}, writing them if {@code write}. */
+        void run(FileJob job, long first, int frames, boolean write) throws IOException {
+            long offset = first * FRAME_BYTES;
+            int bytes = (int) Math.min((long) frames * FRAME_BYTES, job.bytes - offset);
+            in.clear();
+            in.limit(bytes);
+            while (in.hasRemaining()) {
+                if (job.input.read(in, offset + in.position()) < 0) {
+                    throw new IOException(job.source + " shrank while being denoised");
+                }
+            }
+            // Zero-pad a trailing partial frame
+            in.limit(frames * FRAME_BYTES);
+            while (in.hasRemaining()) {
+                in.put((byte) 0);
+            }
+            in.clear();
+            out.clear();
+            decimated.clear();
+            processor.processFrames(in, frames, write ? out : null, decimated, null);
+            if (!write) return;
+            out.limit(bytes);
+            while (out.hasRemaining()) {
+                job.output.write(out, offset + out.position());
+            }
+        }
+    }
+
+    /** An input file and its output, open for positional reads and writes from any thread. */
+    private static final class FileJob {
+        final File source;
+        final File target;
+        final RandomAccessFile inputFile;
+        final FileChannel input;
+        final RandomAccessFile outputFile;
+        final FileChannel output;
+        final long bytes;
+        final long frames;
+
+        FileJob(File source, File target) throws IOException {
+            this.source = source;
+            this.target = target;
+            this.inputFile = new RandomAccessFile(source, "r");
+            RandomAccessFile out = null;
+            try {
+                this.bytes = inputFile.length() & ~1L;
+                out = new RandomAccessFile(target, "rw");
+                out.setLength(0);
+            } catch (IOException e) {
+                try {
+                    if (out != null) out.close();
+                } finally {
+                    inputFile.close();
+                }
+                throw e;
+            }
+            this.input = inputFile.getChannel();
+            this.outputFile = out;
+            this.output = out.getChannel();
+            this.frames = (bytes + FRAME_BYTES - 1) / FRAME_BYTES;
+        }
+
+        void close(boolean discardOutput) throws IOException {
+            try {
+                inputFile.close();
+            } finally {
+                outputFile.close();
+                if (discardOutput) {
+                    target.delete();
+                }
+            }
+        }
+    }
+}
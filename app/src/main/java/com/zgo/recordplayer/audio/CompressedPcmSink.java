@@ -0,0 +1,211 @@
+package com.zgo.recordplayer.audio;
+
+import androidx.annotation.Nullable;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.util.Arrays;
+
+/**
+ * Streaming lossless encoder: takes the same native-order PCM16 batches as {@link PcmFileSink}
+ * and writes them as independently decodable {@link LosslessBlockCodec} blocks (the layout is
+ * described on {@link CompressedPcmSource}). Speech typically takes a half to a third of the
+ * raw size.
+ *
+ * <p>Samples are collected per channel until a block is full, then the block is encoded and
+ * written with one {@code write} call, so at most one block (85 ms at 48 kHz with the default
+ * size) is held in memory. The file header is written with the first block, so a take that
+ * captured nothing leaves an empty file. Silence becomes constant subframes of a few bytes per
+ * block. Not thread-safe; use it from the writer thread.
+ */
+public final class CompressedPcmSink implements PcmSink {
+
+    /** 4096 frames, about 85 ms at 48 kHz. */
+    public static final int DEFAULT_BLOCK_FRAMES = 4096;
+
+    private final FileOutputStream stream;
+    private final FileChannel channel;
+    private final int sampleRate;
+    private final int channels;
+    private final int blockFrames;
+    private final int[][] block;
+    private final LosslessBlockCodec codec;
+    private final LosslessBlockCodec.BitWriter bits;
+    private ByteBuffer out;
+
+    private int blockFill;  // frames collected in the current block
+    private int nextChannel; // channel of the next incoming sample
+    private boolean headerWritten;
+    private long framesWritten;
+    private long bytesWritten;
+    private long writeCalls;
+    private boolean closed;
+
+    /** Opens (and truncates) {@code file} for interleaved PCM16 with {@code channels} channels. */
+    public CompressedPcmSink(File file, int sampleRate, int channels) throws IOException {
+        this(file, sampleRate, channels, DEFAULT_BLOCK_FRAMES);
+    }
+
+    CompressedPcmSink(File file, int sampleRate, int channels, int blockFrames) throws IOException {
+        if (sampleRate <= 0 || channels < 1 || channels > CompressedPcmSource.MAX_CHANNELS
+                || blockFrames < 1 || blockFrames > CompressedPcmSource.MAX_BLOCK_FRAMES) {
+            throw new IllegalArgumentException("Unsupported format: " + sampleRate + " Hz, "
+                    + channels + " channels, " + blockFrames + " frames per block");
+        }
+        this.sampleRate = sampleRate;
+        this.channels = channels;
+        this.blockFrames = blockFrames;
+        this.block = new int[channels][blockFrames];
+        this.codec = new LosslessBlockCodec(blockFrames);
+        this.bits = new LosslessBlockCodec.BitWriter(blockFrames * channels * 2);
+        this.out = ByteBuffer.allocateDirect(CompressedPcmSource.FILE_HEADER_BYTES
+                + CompressedPcmSource.BLOCK_HEADER_BYTES + blockFrames * channels * 2 + 64)
+                .order(ByteOrder.LITTLE_ENDIAN);
+        this.stream = new FileOutputStream(file);
+        this.channel = stream.getChannel();
+    }
+
+    @Override
+    public void write(ByteBuffer src) throws IOException {
+        write(src, null);
+    }
+
+    /**
+     * Encodes the samples in {@code first} then {@code second} (each from position to limit),
+     * advancing their positions. Frames may span calls; a trailing odd byte is dropped.
+     */
+    @Override
+    public void write(ByteBuffer first, @Nullable ByteBuffer second) throws IOException {
+        ensureOpen();
+        append(first);
+        if (second != null) {
+            append(second);
+        }
+    }
+
+    /** Appends {@code bytes / 2} zero samples; a block of silence encodes to about a dozen bytes. */
+    @Override
+    public void writeSilence(long bytes) throws IOException {
+        ensureOpen();
+        if (bytes < 0) {
+            throw new IllegalArgumentException("bytes must be >= 0");
+        }
+        long samples = bytes / 2;
+        while (samples > 0) {
+            if (nextChannel == 0 && samples >= channels) {
+                // Whole frames: fill every channel's row at once
+                int frames = (int) Math.min(samples / channels, blockFrames - blockFill);
+                for (int ch = 0; ch < channels; ch++) {
+                    Arrays.fill(block[ch], blockFill, blockFill + frames, 0);
+                }
+                blockFill += frames;
+                samples -= (long) frames * channels;
+            } else {
+                block[nextChannel][blockFill] = 0;
+                samples--;
+                if (++nextChannel < channels) {
+                    continue;
+                }
+                nextChannel = 0;
+                blockFill++;
+            }
+            if (blockFill == blockFrames) {
+                flushBlock();
+            }
+        }
+    }
+
+    /** Frames encoded and written so far; frames still collecting in the current block are not counted. */
+    public long framesWritten() {
+        return framesWritten;
+    }
+
+    /** Compressed bytes written so far. */
+    @Override
+    public long bytesWritten() {
+        return bytesWritten;
+    }
+
+    @Override
+    public long writeCalls() {
+        return writeCalls;
+    }
+
+    /** Encodes the final, possibly short, block and closes the file. An incomplete last frame is dropped. */
+    @Override
+    public void close() throws IOException {
+        if (closed) return;
+        closed = true;
+        try {
+            flushBlock();
+        } finally {
+            stream.close();
+        }
+    }
+
+    private void append(ByteBuffer src) throws IOException {
+        ByteBuffer samples = src.order() == ByteOrder.nativeOrder()
+                ? src : src.duplicate().order(ByteOrder.nativeOrder());
+        int end = src.limit() - 1;
+        for (int i = src.position(); i < end; i += 2) {
+            block[nextChannel][blockFill] = samples.getShort(i);
+            if (++nextChannel == channels) {
+                nextChannel = 0;
+                if (++blockFill == blockFrames) {
+                    flushBlock();
+                }
+            }
+        }
+        src.position(src.limit());
+    }
+
+    private void flushBlock() throws IOException {
+        if (blockFill == 0) {
+            return;
+        }
+        bits.reset();
+        for (int ch = 0; ch < channels; ch++) {
+            codec.encode(block[ch], blockFill, bits);
+        }
+        bits.alignToByte();
+        int payload = bits.length();
+
+        int needed = CompressedPcmSource.FILE_HEADER_BYTES + CompressedPcmSource.BLOCK_HEADER_BYTES + payload;
+        if (out.capacity() < needed) {
+            out = ByteBuffer.allocateDirect(needed).order(ByteOrder.LITTLE_ENDIAN);
+        }
+        out.clear();
+        if (!headerWritten) {
+            out.putInt(CompressedPcmSource.MAGIC);
+            out.put((byte) CompressedPcmSource.VERSION);
+            out.put((byte) channels);
+            out.putShort((short) 16);
+            out.putInt(sampleRate);
+            out.putInt(blockFrames);
+        }
+        out.putShort((short) CompressedPcmSource.BLOCK_SYNC);
+        out.putShort((short) blockFill);
+        out.putInt(payload);
+        out.put(bits.array(), 0, payload);
+        out.flip();
+        int length = out.remaining();
+        while (out.hasRemaining()) {
+            channel.write(out);
+            writeCalls++;
+        }
+        headerWritten = true;
+        bytesWritten += length;
+        framesWritten += blockFill;
+        blockFill = 0;
+    }
+
+    private void ensureOpen() {
+        if (closed) {
+            throw new IllegalStateException("CompressedPcmSink already closed");
+        }
+    }
+}
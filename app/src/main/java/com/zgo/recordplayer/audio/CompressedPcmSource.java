@@ -0,0 +1,294 @@
+package com.zgo.recordplayer.audio;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+
+/**
+ * Streaming decoder for recordings written by {@link CompressedPcmSink}.
+ *
+ * <p>File layout (little-endian): a 16-byte header, then independent blocks back to back.
+ * <pre>
+ *   0  "ZLAC"
+ *   4  u8 version (1)         5  u8 channels
+ *   6  u16 bits per sample (16)
+ *   8  u32 sample rate       12  u32 frames per block
+ * </pre>
+ * Each block is a u16 sync word, u16 frame count and u32 payload length, followed by one
+ * {@link LosslessBlockCodec} subframe per channel, padded to a whole byte. Because blocks share
+ * no state, decoding can start at any block: {@link #seek(long)} only needs the block table
+ * built when the file is opened, and {@link #decodeAll} spreads blocks over several threads.
+ * A block cut short by a recorder that never closed its sink is ignored.
+ *
+ * <p>The file is mapped read-only. Playback reads ({@link #next(int)}) decode one block at a
+ * time into a reusable direct buffer; they are not thread-safe.
+ */
+public final class CompressedPcmSource implements PcmSource {
+
+    /** File name suffix of compressed recordings. */
+    public static final String FILE_SUFFIX = ".zlac";
+
+    static final int MAGIC = 'Z' | 'L' << 8 | 'A' << 16 | 'C' << 24;
+    static final int VERSION = 1;
+    static final int FILE_HEADER_BYTES = 16;
+    static final int BLOCK_HEADER_BYTES = 8;
+    static final int BLOCK_SYNC = 0xB10C;
+    static final int MAX_BLOCK_FRAMES = 0xFFFF;
+    static final int MAX_CHANNELS = 8;
+
+    private final RandomAccessFile file;
+    private final int sampleRate;
+    private final int channels;
+    private final int blockFrames;
+    private final int blockCount;
+    private final int[] blockOffsets;
+    private final long[] blockStarts; // first frame of each block, plus the total at the end
+    private ByteBuffer data;
+
+    private final Decoder decoder;
+    private final ByteBuffer decoded;
+    private final ByteBuffer view;
+    private int decodedBlock = -1;
+    private long positionFrames;
+
+    public CompressedPcmSource(File compressedFile) throws IOException {
+        this.file = new RandomAccessFile(compressedFile, "r");
+        try {
+            FileChannel channel = file.getChannel();
+            long size = channel.size();
+            if (size > Integer.MAX_VALUE) {
+                throw new IOException("Compressed recording too large to map: " + size + " bytes");
+            }
+            if (size < FILE_HEADER_BYTES) {
+                throw new IOException("Not a compressed recording");
+            }
+            data = channel.map(FileChannel.MapMode.READ_ONLY, 0, size).order(ByteOrder.LITTLE_ENDIAN);
+            if (data.getInt(0) != MAGIC) {
+                throw new IOException("Not a compressed recording");
+            }
+            int version = data.get(4) & 0xff;
+            if (version != VERSION) {
+                throw new IOException("Unsupported compressed recording version " + version);
+            }
+            this.channels = data.get(5) & 0xff;
+            int bits = data.getShort(6) & 0xffff;
+            this.sampleRate = data.getInt(8);
+            this.blockFrames = data.getInt(12);
+            if (channels < 1 || channels > MAX_CHANNELS || bits != 16 || sampleRate <= 0
+                    || blockFrames < 1 || blockFrames > MAX_BLOCK_FRAMES) {
+                throw new IOException("Invalid compressed recording header");
+            }
+
+            // Walk the block headers once; stop at the first one that is damaged or cut short
+            int[] offsets = new int[64];
+            long[] starts = new long[65];
+            int count = 0;
+            int offset = FILE_HEADER_BYTES;
+            int limit = (int) size;
+            while (limit - offset >= BLOCK_HEADER_BYTES) {
+                int sync = data.getShort(offset) & 0xffff;
+                int frames = data.getShort(offset + 2) & 0xffff;
+                long payload = data.getInt(offset + 4) & 0xFFFFFFFFL;
+                if (sync != BLOCK_SYNC || frames == 0 || frames > blockFrames
+                        || payload > limit - offset - BLOCK_HEADER_BYTES) {
+                    break;
+                }
+                if (count == offsets.length) {
+                    offsets = Arrays.copyOf(offsets, count * 2);
+                    starts = Arrays.copyOf(starts, count * 2 + 1);
+                }
+                offsets[count] = offset;
+                starts[count + 1] = starts[count] + frames;
+                count++;
+                offset += BLOCK_HEADER_BYTES + (int) payload;
+            }
+            this.blockCount = count;
+            this.blockOffsets = offsets;
+            this.blockStarts = starts;
+        } catch (IOException | RuntimeException e) {
+            file.close();
+            throw e;
+        }
+        this.decoder = new Decoder(channels, blockFrames);
+        this.decoded = ByteBuffer.allocateDirect(blockFrames * channels * 2).order(ByteOrder.LITTLE_ENDIAN);
+        this.view = decoded.duplicate();
+        view.limit(0);
+    }
+
+    public int sampleRate() {
+        return sampleRate;
+    }
+
+    public int channelCount() {
+        return channels;
+    }
+
+    public int blockCount() {
+        return blockCount;
+    }
+
+    @Override
+    public int frameBytes() {
+        return channels * 2;
+    }
+
+    @Override
+    public long totalFrames() {
+        return blockStarts[blockCount];
+    }
+
+    @Override
+    public long positionFrames() {
+        return positionFrames;
+    }
+
+    @Override
+    public boolean isAtEnd() {
+        return positionFrames >= totalFrames();
+    }
+
+    /** Moves to {@code frame}, clamped to {@code [0, totalFrames()]}; decoding resumes at its block. */
+    @Override
+    public void seek(long frame) {
+        positionFrames = Math.max(0L, Math.min(frame, totalFrames()));
+    }
+
+    /**
+     * Returns decoded frames from the current position, never crossing a block boundary, so
+     * {@code maxBytes} larger than one block still yields at most one block per call.
+     */
+    @Override
+    public ByteBuffer next(int maxBytes) throws IOException {
+        if (isAtEnd()) {
+            view.limit(view.position());
+            return view;
+        }
+        int block = decodedBlock >= 0 && positionFrames >= blockStarts[decodedBlock]
+                && positionFrames < blockStarts[decodedBlock + 1] ? decodedBlock : blockOf(positionFrames);
+        if (block != decodedBlock) {
+            decodedBlock = -1;
+            decoded.clear();
+            int frames = decoder.decode(block);
+            decoder.interleave(frames, decoded);
+            decodedBlock = block;
+        }
+        int frameBytes = frameBytes();
+        int first = (int) (positionFrames - blockStarts[block]);
+        int available = (int) (blockStarts[block + 1] - positionFrames);
+        int frames = Math.min(Math.max(1, maxBytes / frameBytes), available);
+        view.limit(decoded.capacity());
+        view.position(first * frameBytes);
+        view.limit((first + frames) * frameBytes);
+        positionFrames += frames;
+        return view;
+    }
+
+    /**
+     * Decodes the whole recording into {@code out} as interleaved samples, splitting the blocks
+     * into {@code tasks} contiguous runs decoded concurrently on {@code executor}. Independent of
+     * the playback position; the source must stay open until it returns.
+     */
+    public void decodeAll(short[] out, ExecutorService executor, int tasks) throws IOException {
+        long samples = totalFrames() * channels;
+        if (out.length < samples) {
+            throw new IllegalArgumentException("out holds " + out.length + " samples, need " + samples);
+        }
+        if (tasks <= 0) {
+            throw new IllegalArgumentException("tasks must be > 0");
+        }
+        tasks = Math.max(1, Math.min(tasks, blockCount));
+        List<Future<?>> futures = new ArrayList<>(tasks);
+        for (int t = 0; t < tasks; t++) {
+            final int from = (int) ((long) blockCount * t / tasks);
+            final int to = (int) ((long) blockCount * (t + 1) / tasks);
+            futures.add(executor.submit(() -> {
+                Decoder d = new Decoder(channels, blockFrames);
+                for (int b = from; b < to; b++) {
+                    int frames = d.decode(b);
+                    d.interleave(frames, out, (int) (blockStarts[b] * channels));
+                }
+                return null;
+            }));
+        }
+        try {
+            for (Future<?> f : futures) {
+                f.get();
+            }
+        } catch (InterruptedException e) {
+            for (Future<?> f : futures) f.cancel(true);
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted while decoding");
+        } catch (ExecutionException e) {
+            for (Future<?> f : futures) f.cancel(true);
+            Throwable cause = e.getCause();
+            if (cause instanceof IOException) throw (IOException) cause;
+            if (cause instanceof RuntimeException) throw (RuntimeException) cause;
+            throw new IOException(cause);
+        }
+    }
+
+    @Override
+    public void close() throws IOException {
+        data = null;
+        file.close();
+    }
+
+    private int blockOf(long frame) {
+        int index = Arrays.binarySearch(blockStarts, 0, blockCount, frame);
+        return index >= 0 ? index : -index - 2;
+    }
+
+    /** Per-thread decoding state. */
+    private final class Decoder {
+        final LosslessBlockCodec codec;
+        final LosslessBlockCodec.BitReader reader = new LosslessBlockCodec.BitReader();
+        final int[][] samples;
+
+        Decoder(int channels, int blockFrames) {
+            codec = new LosslessBlockCodec(blockFrames);
+            samples = new int[channels][blockFrames];
+        }
+
+        /** Decodes {@code block} into {@link #samples}; returns its frame count. */
+        int decode(int block) throws IOException {
+            ByteBuffer buffer = data;
+            if (buffer == null) {
+                throw new IllegalStateException("CompressedPcmSource already closed");
+            }
+            int offset = blockOffsets[block];
+            int frames = buffer.getShort(offset + 2) & 0xffff;
+            int payloadStart = offset + BLOCK_HEADER_BYTES;
+            reader.reset(buffer, payloadStart, payloadStart + buffer.getInt(offset + 4));
+            for (int ch = 0; ch < samples.length; ch++) {
+                codec.decode(reader, frames, samples[ch]);
+            }
+            return frames;
+        }
+
+        void interleave(int frames, ByteBuffer out) {
+            for (int i = 0; i < frames; i++) {
+                for (int[] channel : samples) {
+                    out.putShort((short) channel[i]);
+                }
+            }
+        }
+
+        void interleave(int frames, short[] out, int offset) {
+            for (int i = 0; i < frames; i++) {
+                for (int[] channel : samples) {
+                    out[offset++] = (short) channel[i];
+                }
+            }
+        }
+    }
+}
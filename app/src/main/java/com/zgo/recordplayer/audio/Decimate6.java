@@ -0,0 +1,84 @@
+package com.zgo.recordplayer.audio;
+
+import java.util.Arrays;
+
+/**
+ * Pure-Java port of the native {@code decimate6} filter: a 96-tap low-pass FIR followed by
+ * decimation by 6 (48 kHz to 8 kHz). Uses the same coefficients, linear history buffer and
+ * accumulation order as the scalar reference kernel of the C implementation, so the two produce
+ * identical output; native builds with the SIMD kernels agree with it within float rounding.
+ */
+public final class Decimate6 {
+
+    public static final int TAPS = 96;
+    public static final int FACTOR = 6;
+    private static final int BLOCK = 480;
+
+    private static final float[] TAP_COEFFS = {
+            2.988596105778e-05f, 6.171985885610e-05f, 9.387411113475e-05f, 1.095869039881e-04f,
+            8.898893390409e-05f, 1.571670715310e-05f, -1.149107902397e-04f, -2.885726038117e-04f,
+            -4.684358629961e-04f, -5.980834134565e-04f, -6.121933859307e-04f, -4.541413458873e-04f,
+            -9.719162021572e-05f, 4.362175081648e-04f, 1.063642242589e-03f, 1.646136120330e-03f,
+            2.009352761375e-03f, 1.981251662294e-03f, 1.440356313083e-03f, 3.639424248794e-04f,
+            -1.137146198074e-03f, -2.809976586415e-03f, -4.286227878608e-03f, -5.145761036039e-03f,
+            -5.009416444594e-03f, -3.644162457354e-03f, -1.056944477258e-03f, 2.448533781974e-03f,
+            6.273961296789e-03f, 9.599379650025e-03f, 1.152420731064e-02f, 1.125714132161e-02f,
+            8.321145324210e-03f, 2.730683813383e-03f, -4.902254211521e-03f, -1.336773673831e-02f,
+            -2.097959050310e-02f, -2.581203004017e-02f, -2.601911073861e-02f, -2.018413516301e-02f,
+            -7.634416578301e-03f, 1.134257561465e-02f, 3.543185036639e-02f, 6.239742938076e-02f,
+            8.935613980843e-02f, 1.131797379696e-01f, 1.309602327155e-01f, 1.404587482112e-01f,
+            1.404587482112e-01f, 1.309602327155e-01f, 1.131797379696e-01f, 8.935613980843e-02f,
+            6.239742938076e-02f, 3.543185036639e-02f, 1.134257561465e-02f, -7.634416578301e-03f,
+            -2.018413516301e-02f, -2.601911073861e-02f, -2.581203004017e-02f, -2.097959050310e-02f,
+            -1.336773673831e-02f, -4.902254211521e-03f, 2.730683813383e-03f, 8.321145324210e-03f,
+            1.125714132161e-02f, 1.152420731064e-02f, 9.599379650025e-03f, 6.273961296789e-03f,
+            2.448533781974e-03f, -1.056944477258e-03f, -3.644162457354e-03f, -5.009416444594e-03f,
+            -5.145761036039e-03f, -4.286227878608e-03f, -2.809976586415e-03f, -1.137146198074e-03f,
+            3.639424248794e-04f, 1.440356313083e-03f, 1.981251662294e-03f, 2.009352761375e-03f,
+            1.646136120330e-03f, 1.063642242589e-03f, 4.362175081648e-04f, -9.719162021572e-05f,
+            -4.541413458873e-04f, -6.121933859307e-04f, -5.980834134565e-04f, -4.684358629961e-04f,
+            -2.885726038117e-04f, -1.149107902397e-04f, 1.571670715310e-05f, 8.898893390409e-05f,
+            1.095869039881e-04f, 9.387411113475e-05f, 6.171985885610e-05f, 2.988596105778e-05f
+    };
+
+    // Last TAPS-1 input samples followed by room for one block of new input.
+    private final float[] history = new float[TAPS - 1 + BLOCK];
+    private int phase; // input samples consumed since the last output, 0..FACTOR-1
+
+    public void reset() {
+        Arrays.fill(history, 0f);
+        phase = 0;
+    }
+
+    /**
+     * Filters and decimates {@code length} samples.
+     *
+     * @return Number of samples written to {@code output} from {@code outOffset}
+     *         (at most {@code (length + FACTOR - 1) / FACTOR}).
+     */
+    public int process(float[] input, int offset, int length, float[] output, int outOffset) {
+        final int hist = TAPS - 1;
+        final float[] h = history;
+        final float[] taps = TAP_COEFFS;
+        int produced = 0;
+
+        while (length > 0) {
+            int chunk = Math.min(length, BLOCK);
+            System.arraycopy(input, offset, h, hist, chunk);
+
+            for (int n = hist + (FACTOR - 1 - phase); n < hist + chunk; n += FACTOR) {
+                float acc = 0.0f;
+                for (int tap = 0; tap < TAPS; tap++) {
+                    acc += taps[tap] * h[n - tap];
+                }
+                output[outOffset + produced++] = acc;
+            }
+
+            phase = (phase + chunk) % FACTOR;
+            System.arraycopy(h, chunk, h, 0, hist);
+            offset += chunk;
+            length -= chunk;
+        }
+        return produced;
+    }
+}
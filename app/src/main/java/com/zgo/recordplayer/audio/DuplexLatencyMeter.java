@@ -0,0 +1,120 @@
+package com.zgo.recordplayer.audio;
+
+/**
+ * Measures the end-to-end latency and the clock drift of a capture-to-playback loop from the
+ * two devices' frame clocks ({@code AudioRecord.getTimestamp} / {@code AudioTrack.getTimestamp}:
+ * a frame position and the monotonic time it was at the converter).
+ *
+ * <p>The loop reports which output frame each input frame was written to. Extrapolating both
+ * timestamps to that pair gives the time from the frame entering the ADC to it leaving the DAC,
+ * independent of scheduling jitter in the loop itself. Drift compares the rate of each clock
+ * since its first timestamp: with a nonzero drift the output queue slowly fills or drains, which
+ * the loop has to absorb by dropping or repeating audio.
+ *
+ * <p>Fed by the loop thread only; the results may be read from any thread.
+ */
+public final class DuplexLatencyMeter {
+
+    /** Clock spans shorter than this give no drift estimate. */
+    static final long MIN_DRIFT_SPAN_NANOS = 1_000_000_000L;
+
+    private final double nanosPerFrame;
+    private final LatencyHistogram latency = new LatencyHistogram();
+
+    private long inFrame0 = -1;
+    private long inNanos0;
+    private long inFrame;
+    private long inNanos;
+    private long outFrame0 = -1;
+    private long outNanos0;
+    private long outFrame;
+    private long outNanos;
+    private long routeOffset; // output frame - input frame of the latest routed pair
+    private boolean routed;
+
+    private volatile long lastLatencyNanos = -1;
+    private volatile double driftPpm = Double.NaN;
+
+    public DuplexLatencyMeter(int sampleRate) {
+        if (sampleRate <= 0) {
+            throw new IllegalArgumentException("sampleRate must be > 0");
+        }
+        this.nanosPerFrame = 1e9 / sampleRate;
+    }
+
+    /** A capture timestamp: input frame {@code framePosition} was sampled at {@code nanoTime}. */
+    public void onInputTimestamp(long framePosition, long nanoTime) {
+        if (inFrame0 < 0) {
+            inFrame0 = framePosition;
+            inNanos0 = nanoTime;
+        }
+        inFrame = framePosition;
+        inNanos = nanoTime;
+    }
+
+    /** A playback timestamp: output frame {@code framePosition} was presented at {@code nanoTime}. */
+    public void onOutputTimestamp(long framePosition, long nanoTime) {
+        if (outFrame0 < 0) {
+            outFrame0 = framePosition;
+            outNanos0 = nanoTime;
+        }
+        outFrame = framePosition;
+        outNanos = nanoTime;
+    }
+
+    /** Input frame {@code inputFrame} was written to the output as frame {@code outputFrame}. */
+    public void onRouted(long inputFrame, long outputFrame) {
+        routeOffset = outputFrame - inputFrame;
+        routed = true;
+    }
+
+    /**
+     * Computes the latency of the latest routed frame from the latest timestamps, records it in
+     * the histogram and updates the drift estimate.
+     *
+     * @return the latency in nanoseconds, or -1 while either clock or the routing is unknown
+     */
+    public long sample() {
+        if (inFrame0 < 0 || outFrame0 < 0 || !routed) {
+            return -1;
+        }
+        // T_out(in + offset) - T_in(in), which does not depend on which input frame it is
+        double nanos = (outNanos - inNanos) + (routeOffset - outFrame + inFrame) * nanosPerFrame;
+        long result = Math.round(nanos);
+        latency.record(result);
+        lastLatencyNanos = result;
+        driftPpm = estimateDrift();
+        return result;
+    }
+
+    /** Latest measured latency in nanoseconds, or -1. */
+    public long lastLatencyNanos() {
+        return lastLatencyNanos;
+    }
+
+    /**
+     * How much faster the output clock runs than the input clock, in parts per million; NaN until
+     * both clocks have been observed for a second.
+     */
+    public double driftPpm() {
+        return driftPpm;
+    }
+
+    public LatencyHistogram.Snapshot latency() {
+        return latency.snapshot();
+    }
+
+    private double estimateDrift() {
+        long inSpan = inNanos - inNanos0;
+        long outSpan = outNanos - outNanos0;
+        if (inSpan < MIN_DRIFT_SPAN_NANOS || outSpan < MIN_DRIFT_SPAN_NANOS) {
+            return Double.NaN;
+        }
+        double inRate = (double) (inFrame - inFrame0) / inSpan;
+        double outRate = (double) (outFrame - outFrame0) / outSpan;
+        if (inRate <= 0) {
+            return Double.NaN;
+        }
+        return (outRate / inRate - 1.0) * 1e6;
+    }
+}
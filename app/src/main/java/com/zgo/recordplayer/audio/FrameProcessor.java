@@ -0,0 +1,167 @@
+package com.zgo.recordplayer.audio;
+
+import androidx.annotation.Nullable;
+
+import java.nio.ByteBuffer;
+import java.nio.FloatBuffer;
+
+/**
+ * Common contract for the 10 ms frame processing chain: PCM16 in at 48 kHz, the stages of an
+ * {@link AudioProcessingChain} (by default just an optional denoise), processed PCM16 out at
+ * 48 kHz plus a decimated 8 kHz stream delivered in 160-sample blocks.
+ *
+ * <p>The float overloads take {@code AudioFormat.ENCODING_PCM_FLOAT} samples (nominally in
+ * [-1, 1]) and produce float outputs that are neither rounded nor clamped, so a float capture
+ * path converts nothing to int16 and keeps any level above full scale for later gain stages.
+ *
+ * <p>Implemented natively by {@link RnnoiseProcessor} and in pure Java by
+ * {@link JavaFrameProcessor}; use {@link FrameProcessors#create(AudioProcessingChain)} to pick
+ * one at runtime.
+ */
+public interface FrameProcessor extends AutoCloseable {
+
+    int SAMPLE_RATE = 48000; // the only rate RNNoise runs at
+    int FRAME_SIZE = 480; // samples @ 48 kHz => 10 ms
+    int DECIMATED_FRAME_SIZE = FRAME_SIZE * 2 / 6; // 160 samples @ 8 kHz (20 ms window)
+    int FRAME_BYTES = FRAME_SIZE * 2; // PCM16
+    int DECIMATED_FRAME_BYTES = DECIMATED_FRAME_SIZE * 2; // PCM16
+    int FLOAT_FRAME_BYTES = FRAME_SIZE * 4; // ENCODING_PCM_FLOAT
+
+    /** Written to {@code vadOut} when the engine has no voice estimate (denoiser disabled). */
+    float VAD_UNAVAILABLE = -1f;
+
+    /**
+     * Processes a single 10 ms frame of audio.
+     *
+     * @param inputFrame     480-sample PCM16 data captured at 48 kHz.
+     * @param denoisedOutput Optional array (length >= 480) that receives the denoised
+     *                       48 kHz PCM16 output. Pass {@code null} to skip.
+     * @param decimatedOut   Destination array (length >= 160) for the 8 kHz PCM16 output.
+     * @param vadOut         Optional array (length >= 1) whose first element receives the
+     *                       frame's voice activity probability in [0, 1], or
+     *                       {@link #VAD_UNAVAILABLE}. Pass {@code null} to skip.
+     * @return Number of 8 kHz samples written to {@code decimatedOut} (0 on the first call, 160 on the next).
+     */
+    int processFrame(short[] inputFrame, @Nullable short[] denoisedOutput, short[] decimatedOut,
+                     @Nullable float[] vadOut);
+
+    /** {@link #processFrame(short[], short[], short[], float[])} without VAD output. */
+    default int processFrame(short[] inputFrame, @Nullable short[] denoisedOutput, short[] decimatedOut) {
+        return processFrame(inputFrame, denoisedOutput, decimatedOut, null);
+    }
+
+    /**
+     * Processes {@code frameCount} consecutive 10 ms frames.
+     *
+     * @param in           PCM16 samples captured at 48 kHz; frames start at {@code offset}.
+     * @param offset       index of the first sample of the first frame in {@code in}.
+     * @param frameCount   number of 480-sample frames to process.
+     * @param denoisedOut  Optional array that receives the denoised 48 kHz output at the same
+     *                     offset as the input. May be {@code in} itself to denoise in place.
+     *                     Pass {@code null} to skip.
+     * @param decimatedOut Destination for the 8 kHz output, packed from index 0. Must hold at
+     *                     least {@link #maxDecimatedSamples(int)} samples.
+     * @param frameResults Optional array (length >= frameCount) receiving each frame's 8 kHz
+     *                     sample count (0 or 160). Pass {@code null} to skip.
+     * @param vadOut       Optional array (length >= frameCount) receiving each frame's voice
+     *                     activity probability in [0, 1], or {@link #VAD_UNAVAILABLE}. Pass
+     *                     {@code null} to skip.
+     * @return Total number of 8 kHz samples written to {@code decimatedOut}.
+     */
+    int processFrames(short[] in, int offset, int frameCount,
+                      @Nullable short[] denoisedOut, short[] decimatedOut,
+                      @Nullable int[] frameResults, @Nullable float[] vadOut);
+
+    /** {@link #processFrames(short[], int, int, short[], short[], int[], float[])} without VAD output. */
+    default int processFrames(short[] in, int offset, int frameCount,
+                              @Nullable short[] denoisedOut, short[] decimatedOut,
+                              @Nullable int[] frameResults) {
+        return processFrames(in, offset, frameCount, denoisedOut, decimatedOut, frameResults, null);
+    }
+
+    /**
+     * Buffer variant of {@link #processFrame(short[], short[], short[])}; equivalent to
+     * {@link #processFrames(ByteBuffer, int, ByteBuffer, ByteBuffer, int[])} with a single frame.
+     *
+     * @return Number of 8 kHz samples written to {@code decimatedOut} (0 or 160).
+     */
+    int processFrame(ByteBuffer in, @Nullable ByteBuffer denoisedOut, ByteBuffer decimatedOut);
+
+    /**
+     * Batch processing on byte buffers holding PCM16 in native byte order (little-endian on
+     * every Android ABI), which is what {@code AudioRecord.read(ByteBuffer, int)} produces.
+     * Data is read from and written to each buffer starting at its current position; like
+     * {@code AudioRecord}, the positions and limits are left unchanged.
+     *
+     * @param in           buffer with at least {@code frameCount * FRAME_BYTES} bytes remaining.
+     * @param frameCount   number of 480-sample frames to process.
+     * @param denoisedOut  optional buffer with as many bytes remaining as {@code in} needs,
+     *                     receiving the denoised 48 kHz output. May be {@code in} itself.
+     *                     Pass {@code null} to skip.
+     * @param decimatedOut buffer with room for {@link #maxDecimatedSamples(int)} samples
+     *                     of packed 8 kHz output.
+     * @param frameResults Optional array (length >= frameCount) receiving each frame's 8 kHz
+     *                     sample count. Pass {@code null} to skip.
+     * @param vadOut       Optional array (length >= frameCount) receiving each frame's voice
+     *                     activity probability in [0, 1], or {@link #VAD_UNAVAILABLE}. Pass
+     *                     {@code null} to skip.
+     * @return Total number of 8 kHz samples written to {@code decimatedOut}.
+     */
+    int processFrames(ByteBuffer in, int frameCount, @Nullable ByteBuffer denoisedOut,
+                      ByteBuffer decimatedOut, @Nullable int[] frameResults, @Nullable float[] vadOut);
+
+    /** {@link #processFrames(ByteBuffer, int, ByteBuffer, ByteBuffer, int[], float[])} without VAD output. */
+    default int processFrames(ByteBuffer in, int frameCount, @Nullable ByteBuffer denoisedOut,
+                              ByteBuffer decimatedOut, @Nullable int[] frameResults) {
+        return processFrames(in, frameCount, denoisedOut, decimatedOut, frameResults, null);
+    }
+
+    /**
+     * Float variant of {@link #processFrames(short[], int, int, short[], short[], int[], float[])}:
+     * {@code in}, {@code denoisedOut} and {@code decimatedOut} hold float samples nominally in
+     * [-1, 1]. Outputs are not clamped.
+     */
+    int processFrames(float[] in, int offset, int frameCount,
+                      @Nullable float[] denoisedOut, float[] decimatedOut,
+                      @Nullable int[] frameResults, @Nullable float[] vadOut);
+
+    /**
+     * Float variant of {@link #processFrames(ByteBuffer, int, ByteBuffer, ByteBuffer, int[], float[])}
+     * on native-order float buffers, such as a view of the buffer {@code AudioRecord.read(ByteBuffer, int)}
+     * fills with {@code ENCODING_PCM_FLOAT} audio. Data is read and written starting at each
+     * buffer's position; positions and limits are left unchanged. Outputs are not clamped.
+     *
+     * @param in           buffer with at least {@code frameCount * FRAME_SIZE} floats remaining.
+     * @param decimatedOut buffer with room for {@link #maxDecimatedSamples(int)} floats.
+     */
+    int processFrames(FloatBuffer in, int frameCount, @Nullable FloatBuffer denoisedOut,
+                      FloatBuffer decimatedOut, @Nullable int[] frameResults, @Nullable float[] vadOut);
+
+    boolean isDenoiserEnabled();
+
+    /**
+     * Total time this processor has spent in its denoise stage, in nanoseconds (0 without one).
+     * Not cleared by {@link #reset()}; time a span by subtracting two readings.
+     */
+    long denoiseNanos();
+
+    /**
+     * Clears all stream state (denoiser, stage filters and gains, decimator, 8 kHz accumulator)
+     * so the next frame starts a new stream exactly as on a newly created processor, without
+     * reallocating anything.
+     */
+    void reset();
+
+    boolean isReleased();
+
+    @Override
+    void close();
+
+    /**
+     * Upper bound on the 8 kHz samples a batch of {@code frameCount} frames can produce,
+     * i.e. the required capacity of a batch's {@code decimatedOut}.
+     */
+    static int maxDecimatedSamples(int frameCount) {
+        return ((frameCount + 1) / 2) * DECIMATED_FRAME_SIZE;
+    }
+}
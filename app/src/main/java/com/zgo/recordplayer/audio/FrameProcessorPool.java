@@ -0,0 +1,156 @@
+package com.zgo.recordplayer.audio;
+
+import java.util.ArrayDeque;
+import java.util.function.LongSupplier;
+
+/**
+ * Bounded pool of idle {@link FrameProcessor}s for one {@link AudioProcessingChain}, so that
+ * starting a stream takes a warm processor instead of loading the library and allocating
+ * RNNoise state on the spot.
+ *
+ * <p>Processors are {@link FrameProcessor#reset() reset} when they are returned, off the start
+ * path, and handed out most-recently-used first. At most {@code maxIdle} are kept; any idle
+ * longer than {@code idleTimeoutNanos} is closed the next time the pool is used, and
+ * {@link #trim()} closes them all (e.g. on {@code onTrimMemory}). Thread-safe.
+ */
+public final class FrameProcessorPool implements AutoCloseable {
+
+    private static final class Idle {
+        final FrameProcessor processor;
+        final long since;
+
+        Idle(FrameProcessor processor, long since) {
+            this.processor = processor;
+            this.since = since;
+        }
+    }
+
+    private final AudioProcessingChain chain;
+    private final int maxIdle;
+    private final long idleTimeoutNanos;
+    private final LongSupplier clock;
+    private final ArrayDeque<Idle> idle = new ArrayDeque<>(); // most recently returned first
+    private long created;
+    private long reused;
+    private boolean closed;
+
+    public FrameProcessorPool(AudioProcessingChain chain, int maxIdle, long idleTimeoutNanos) {
+        this(chain, maxIdle, idleTimeoutNanos, System::nanoTime);
+    }
+
+    FrameProcessorPool(AudioProcessingChain chain, int maxIdle, long idleTimeoutNanos, LongSupplier clock) {
+        if (maxIdle < 0 || idleTimeoutNanos <= 0) {
+            throw new IllegalArgumentException("maxIdle must be >= 0 and idleTimeoutNanos > 0");
+        }
+        this.chain = chain;
+        this.maxIdle = maxIdle;
+        this.idleTimeoutNanos = idleTimeoutNanos;
+        this.clock = clock;
+    }
+
+    public AudioProcessingChain chain() {
+        return chain;
+    }
+
+    /** Returns a processor in its initial state: a pooled one if available, otherwise a new one. */
+    public FrameProcessor acquire() {
+        synchronized (this) {
+            ensureOpen();
+            evictExpired();
+            Idle entry = idle.pollFirst();
+            if (entry != null) {
+                reused++;
+                return entry.processor;
+            }
+            created++;
+        }
+        // Creation (and the first library load) happens outside the lock
+        return FrameProcessors.create(chain);
+    }
+
+    /**
+     * Hands {@code processor} back. It is reset and kept if there is room, otherwise closed;
+     * released processors, or ones that fail to reset, are dropped.
+     */
+    public void release(FrameProcessor processor) {
+        if (processor.isReleased()) {
+            return;
+        }
+        try {
+            processor.reset();
+        } catch (RuntimeException e) {
+            processor.close();
+            return;
+        }
+        FrameProcessor evicted = null;
+        synchronized (this) {
+            if (closed) {
+                evicted = processor;
+            } else {
+                evictExpired();
+                idle.addFirst(new Idle(processor, clock.getAsLong()));
+                if (idle.size() > maxIdle) {
+                    evicted = idle.pollLast().processor;
+                }
+            }
+        }
+        if (evicted != null) {
+            evicted.close();
+        }
+    }
+
+    /** Creates processors until {@code count} are idle (capped at {@code maxIdle}), loading the library if needed. */
+    public void prewarm(int count) {
+        int target = Math.min(count, maxIdle);
+        while (true) {
+            synchronized (this) {
+                ensureOpen();
+                if (idle.size() >= target) return;
+                created++;
+            }
+            release(FrameProcessors.create(chain));
+        }
+    }
+
+    public synchronized int idleCount() {
+        return idle.size();
+    }
+
+    /** Processors created because none was idle (prewarming included). */
+    public synchronized long createdCount() {
+        return created;
+    }
+
+    /** Acquisitions served by an idle processor. */
+    public synchronized long reusedCount() {
+        return reused;
+    }
+
+    /** Closes every idle processor; the pool stays usable. */
+    public synchronized void trim() {
+        for (Idle entry : idle) {
+            entry.processor.close();
+        }
+        idle.clear();
+    }
+
+    /** Closes the idle processors; processors still out are closed when released. */
+    @Override
+    public synchronized void close() {
+        closed = true;
+        trim();
+    }
+
+    private void evictExpired() {
+        long now = clock.getAsLong();
+        while (!idle.isEmpty() && now - idle.peekLast().since > idleTimeoutNanos) {
+            idle.pollLast().processor.close();
+        }
+    }
+
+    private void ensureOpen() {
+        if (closed) {
+            throw new IllegalStateException("FrameProcessorPool already closed");
+        }
+    }
+}
@@ -0,0 +1,159 @@
+package com.zgo.recordplayer.audio;
+
+import androidx.annotation.Nullable;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.FloatBuffer;
+
+/**
+ * Picks a {@link FrameProcessor} implementation at runtime and holds the argument checks
+ * shared by all implementations.
+ */
+public final class FrameProcessors {
+
+    private FrameProcessors() {
+    }
+
+    /**
+     * Returns the native RNNoise engine when {@code librnnoise} is loadable and initializes,
+     * otherwise the pure-Java engine (spectral subtraction in place of RNNoise).
+     */
+    public static FrameProcessor create(boolean enableDenoiser) {
+        return create(AudioProcessingChain.standard(enableDenoiser));
+    }
+
+    /** Like {@link #create(boolean)}, running the stages declared by {@code chain}. */
+    public static FrameProcessor create(AudioProcessingChain chain) {
+        if (RnnoiseProcessor.isNativeAvailable()) {
+            try {
+                return new RnnoiseProcessor(chain);
+            } catch (IllegalStateException ignored) {
+                // nativeCreateChain failed; fall through to the Java engine
+            }
+        }
+        return new JavaFrameProcessor(chain);
+    }
+
+    static void checkFrames(@Nullable short[] in, int offset, int frameCount,
+                            @Nullable short[] denoisedOut, @Nullable short[] decimatedOut,
+                            @Nullable int[] frameResults, @Nullable float[] vadOut) {
+        if (frameCount < 0 || offset < 0) {
+            throw new IllegalArgumentException("offset and frameCount must be >= 0");
+        }
+        long samples = (long) frameCount * FrameProcessor.FRAME_SIZE;
+        if (in == null || in.length - offset < samples) {
+            throw new IllegalArgumentException("in must hold " + frameCount + " frames from offset " + offset);
+        }
+        if (denoisedOut != null && denoisedOut.length - offset < samples) {
+            throw new IllegalArgumentException("denoisedOut must hold " + frameCount + " frames from offset " + offset);
+        }
+        checkBatchOutputs(decimatedOut == null ? -1 : decimatedOut.length, frameCount, frameResults, vadOut);
+    }
+
+    static void checkFrames(@Nullable float[] in, int offset, int frameCount,
+                            @Nullable float[] denoisedOut, @Nullable float[] decimatedOut,
+                            @Nullable int[] frameResults, @Nullable float[] vadOut) {
+        if (frameCount < 0 || offset < 0) {
+            throw new IllegalArgumentException("offset and frameCount must be >= 0");
+        }
+        long samples = (long) frameCount * FrameProcessor.FRAME_SIZE;
+        if (in == null || in.length - offset < samples) {
+            throw new IllegalArgumentException("in must hold " + frameCount + " frames from offset " + offset);
+        }
+        if (denoisedOut != null && denoisedOut.length - offset < samples) {
+            throw new IllegalArgumentException("denoisedOut must hold " + frameCount + " frames from offset " + offset);
+        }
+        checkBatchOutputs(decimatedOut == null ? -1 : decimatedOut.length, frameCount, frameResults, vadOut);
+    }
+
+    static void checkFrames(@Nullable FloatBuffer in, int frameCount, @Nullable FloatBuffer denoisedOut,
+                            @Nullable FloatBuffer decimatedOut, @Nullable int[] frameResults,
+                            @Nullable float[] vadOut, boolean requireDirect) {
+        if (frameCount < 0) {
+            throw new IllegalArgumentException("frameCount must be >= 0");
+        }
+        long samples = (long) frameCount * FrameProcessor.FRAME_SIZE;
+        checkBuffer(in, samples, "in", requireDirect);
+        if (denoisedOut != null) {
+            checkBuffer(denoisedOut, samples, "denoisedOut", requireDirect);
+        }
+        checkBuffer(decimatedOut, 0, "decimatedOut", requireDirect);
+        checkBatchOutputs(decimatedOut.remaining(), frameCount, frameResults, vadOut);
+    }
+
+    static void checkFrames(@Nullable ByteBuffer in, int frameCount, @Nullable ByteBuffer denoisedOut,
+                            @Nullable ByteBuffer decimatedOut, @Nullable int[] frameResults,
+                            @Nullable float[] vadOut, boolean requireDirect) {
+        if (frameCount < 0) {
+            throw new IllegalArgumentException("frameCount must be >= 0");
+        }
+        long bytes = (long) frameCount * FrameProcessor.FRAME_BYTES;
+        checkBuffer(in, bytes, "in", requireDirect);
+        if (denoisedOut != null) {
+            checkBuffer(denoisedOut, bytes, "denoisedOut", requireDirect);
+        }
+        checkBuffer(decimatedOut, 0, "decimatedOut", requireDirect);
+        checkBatchOutputs(decimatedOut.remaining() / 2, frameCount, frameResults, vadOut);
+    }
+
+    static void checkSingleFrame(@Nullable short[] inputFrame, @Nullable short[] denoisedOutput,
+                                 @Nullable short[] decimatedOut, @Nullable float[] vadOut) {
+        if (inputFrame == null || inputFrame.length != FrameProcessor.FRAME_SIZE) {
+            throw new IllegalArgumentException("inputFrame must be exactly " + FrameProcessor.FRAME_SIZE + " samples");
+        }
+        if (decimatedOut == null || decimatedOut.length < FrameProcessor.DECIMATED_FRAME_SIZE) {
+            throw new IllegalArgumentException("decimatedOut must have length >= " + FrameProcessor.DECIMATED_FRAME_SIZE);
+        }
+        if (denoisedOutput != null && denoisedOutput.length < FrameProcessor.FRAME_SIZE) {
+            throw new IllegalArgumentException("denoisedOutput must have length >= " + FrameProcessor.FRAME_SIZE);
+        }
+        if (vadOut != null && vadOut.length < 1) {
+            throw new IllegalArgumentException("vadOut must have length >= 1");
+        }
+    }
+
+    private static void checkBatchOutputs(int decimatedCapacity, int frameCount,
+                                          @Nullable int[] frameResults, @Nullable float[] vadOut) {
+        if (decimatedCapacity < FrameProcessor.maxDecimatedSamples(frameCount)) {
+            throw new IllegalArgumentException("decimatedOut must hold >= "
+                    + FrameProcessor.maxDecimatedSamples(frameCount) + " samples");
+        }
+        if (frameResults != null && frameResults.length < frameCount) {
+            throw new IllegalArgumentException("frameResults must have length >= " + frameCount);
+        }
+        if (vadOut != null && vadOut.length < frameCount) {
+            throw new IllegalArgumentException("vadOut must have length >= " + frameCount);
+        }
+    }
+
+    private static void checkBuffer(@Nullable FloatBuffer buffer, long minSamples, String name, boolean requireDirect) {
+        if (buffer == null) {
+            throw new IllegalArgumentException(name + " must not be null");
+        }
+        if (requireDirect && !buffer.isDirect()) {
+            throw new IllegalArgumentException(name + " must be a direct FloatBuffer");
+        }
+        if (buffer.order() != ByteOrder.nativeOrder()) {
+            throw new IllegalArgumentException(name + " must be in native byte order");
+        }
+        if (buffer.remaining() < minSamples) {
+            throw new IllegalArgumentException(name + " must have >= " + minSamples + " floats remaining");
+        }
+    }
+
+    private static void checkBuffer(@Nullable ByteBuffer buffer, long minBytes, String name, boolean requireDirect) {
+        if (buffer == null) {
+            throw new IllegalArgumentException(name + " must not be null");
+        }
+        if (requireDirect && !buffer.isDirect()) {
+            throw new IllegalArgumentException(name + " must be a direct ByteBuffer");
+        }
+        if (buffer.remaining() < minBytes) {
+            throw new IllegalArgumentException(name + " must have >= " + minBytes + " bytes remaining");
+        }
+        if ((buffer.position() & 1) != 0) {
+            throw new IllegalArgumentException(name + " position must be 2-byte aligned");
+        }
+    }
+}
@@ -0,0 +1,267 @@
+package com.zgo.recordplayer.audio;
+
+import androidx.annotation.Nullable;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Preallocated, lock-free single-producer/single-consumer ring of fixed-size audio frames,
+ * backed by one direct native-order buffer.
+ *
+ * <p>Frames live back to back, so both sides see contiguous runs up to the wrap point: the
+ * producer can hand {@link #writeRegion()} straight to {@code AudioRecord.read(ByteBuffer, int)}
+ * and the consumer can process {@link #readRegion()} with one batched call. Regions are
+ * preallocated slices starting at position 0, one set per side, so the two threads never
+ * share a position or limit.
+ *
+ * <p>The producer never blocks; when the ring is full it counts the frames it had to drop
+ * as overruns. The consumer may park in {@link #awaitReadable(long)} and is unparked by
+ * {@link #publish(int)}.
+ */
+public final class FrameRing {
+
+    private final ByteBuffer buffer;
+    private final ByteBuffer[] producerSlices;
+    private final ByteBuffer[] consumerSlices;
+    private final ByteBuffer consumerWrapSlice;
+    private final int capacityFrames;
+    private final int frameBytes;
+
+    // Total frames ever published / released. Written by one side only, read by both.
+    private final AtomicLong head = new AtomicLong();
+    private final AtomicLong tail = new AtomicLong();
+
+    private final AtomicLong overrunFrames = new AtomicLong();
+    private volatile int highWaterMark;
+
+    private volatile boolean finished;
+    private volatile int trailingBytes;
+    // Head value once the partial last frame is published, or -1 while there is none
+    private volatile long trailingFrameEnd = -1L;
+    @Nullable
+    private volatile Thread waiter;
+
+    public FrameRing(int capacityFrames, int frameBytes) {
+        if (capacityFrames <= 0 || frameBytes <= 0) {
+            throw new IllegalArgumentException("capacityFrames and frameBytes must be > 0");
+        }
+        this.capacityFrames = capacityFrames;
+        this.frameBytes = frameBytes;
+        this.buffer = ByteBuffer.allocateDirect(capacityFrames * frameBytes).order(ByteOrder.nativeOrder());
+        this.producerSlices = new ByteBuffer[capacityFrames];
+        this.consumerSlices = new ByteBuffer[capacityFrames];
+        for (int i = 0; i < capacityFrames; i++) {
+            producerSlices[i] = sliceAt(i * frameBytes);
+            consumerSlices[i] = sliceAt(i * frameBytes);
+        }
+        this.consumerWrapSlice = sliceAt(0);
+    }
+
+    private ByteBuffer sliceAt(int offset) {
+        ByteBuffer view = buffer.duplicate();
+        view.position(offset);
+        return view.slice().order(ByteOrder.nativeOrder());
+    }
+
+    public int capacityFrames() {
+        return capacityFrames;
+    }
+
+    public int frameBytes() {
+        return frameBytes;
+    }
+
+    /** Frames currently queued. */
+    public int size() {
+        return (int) (head.get() - tail.get());
+    }
+
+    // ---------------------------------------------------------------------------------------
+    // Producer side
+    // ---------------------------------------------------------------------------------------
+
+    /** Free frames available contiguously at the head without wrapping. */
+    public int writableFrames() {
+        long h = head.get();
+        int free = capacityFrames - (int) (h - tail.get());
+        int untilWrap = capacityFrames - (int) (h % capacityFrames);
+        return Math.min(free, untilWrap);
+    }
+
+    /**
+     * Producer view of the free space at the head: position 0, limit covering the
+     * {@link #writableFrames()} contiguous free frames.
+     */
+    public ByteBuffer writeRegion() {
+        ByteBuffer region = producerSlices[(int) (head.get() % capacityFrames)];
+        region.clear();
+        region.limit(writableFrames() * frameBytes);
+        return region;
+    }
+
+    /** Makes {@code frames} frames written into {@link #writeRegion()} visible to the consumer. */
+    public void publish(int frames) {
+        if (frames <= 0) return;
+        advanceHead(head.get() + frames);
+    }
+
+    /**
+     * Publishes one last frame that was only partly filled (and zero-padded) with its real
+     * length {@code validBytes}. The length is stored before the frame becomes visible, so the
+     * consumer can trim it as soon as it reads it, even before {@link #finish()} runs.
+     */
+    public void publishLast(int validBytes) {
+        if (validBytes <= 0 || validBytes > frameBytes) {
+            throw new IllegalArgumentException("validBytes must be in 1.." + frameBytes);
+        }
+        long h = head.get() + 1;
+        trailingBytes = validBytes;
+        trailingFrameEnd = h;
+        advanceHead(h);
+    }
+
+    private void advanceHead(long h) {
+        // Volatile store, not lazySet: it must be ordered before the read of waiter in
+        // wakeConsumer(), or a consumer parking right now could miss its wakeup
+        head.set(h);
+        int occupied = (int) (h - tail.get());
+        if (occupied > highWaterMark) {
+            highWaterMark = occupied;
+        }
+        wakeConsumer();
+    }
+
+    /** Records frames captured while the ring was full and therefore dropped. */
+    public void recordOverrun(int frames) {
+        if (frames > 0) {
+            overrunFrames.addAndGet(frames);
+        }
+    }
+
+    /** Marks the end of the stream; nothing is published after this. */
+    public void finish() {
+        finished = true;
+        wakeConsumer();
+    }
+
+    // ---------------------------------------------------------------------------------------
+    // Consumer side
+    // ---------------------------------------------------------------------------------------
+
+    /** Queued frames available contiguously at the tail without wrapping. */
+    public int readableFrames() {
+        long t = tail.get();
+        int queued = (int) (head.get() - t);
+        int untilWrap = capacityFrames - (int) (t % capacityFrames);
+        return Math.min(queued, untilWrap);
+    }
+
+    /**
+     * Consumer view of the oldest queued frames: position 0, limit covering the
+     * {@link #readableFrames()} contiguous queued frames.
+     */
+    public ByteBuffer readRegion() {
+        ByteBuffer region = consumerSlices[(int) (tail.get() % capacityFrames)];
+        region.clear();
+        region.limit(readableFrames() * frameBytes);
+        return region;
+    }
+
+    /**
+     * Consumer views of up to {@code maxFrames} of the oldest queued frames, including frames
+     * past the wrap point: {@code regions[0]} starts at the tail and {@code regions[1]} continues
+     * at the start of the ring (limit 0 when the run doesn't wrap). Both are at position 0.
+     *
+     * @return Total frames covered by the two regions.
+     */
+    public int readRegions(ByteBuffer[] regions, int maxFrames) {
+        long t = tail.get();
+        int queued = Math.min((int) (head.get() - t), maxFrames);
+        int start = (int) (t % capacityFrames);
+        int first = Math.min(queued, capacityFrames - start);
+        ByteBuffer a = consumerSlices[start];
+        a.clear();
+        a.limit(first * frameBytes);
+        regions[0] = a;
+        ByteBuffer b = consumerWrapSlice;
+        b.clear();
+        b.limit((queued - first) * frameBytes);
+        regions[1] = b;
+        return queued;
+    }
+
+    /** Returns {@code frames} consumed frames to the producer. */
+    public void release(int frames) {
+        if (frames <= 0) return;
+        tail.lazySet(tail.get() + frames);
+    }
+
+    /** True once {@link #finish()} was called and every frame has been released. */
+    public boolean isDrained() {
+        return finished && head.get() == tail.get();
+    }
+
+    public boolean isFinished() {
+        return finished;
+    }
+
+    /** Valid bytes of the final frame when it was partial (see {@link #publishLast(int)}), else 0. */
+    public int trailingBytes() {
+        return trailingBytes;
+    }
+
+    /**
+     * True when the next {@code frames} frames to be released include the final, partial frame.
+     */
+    public boolean endsWithTrailingFrame(int frames) {
+        return tail.get() + frames == trailingFrameEnd;
+    }
+
+    /**
+     * Parks the calling consumer until frames are readable, the stream finishes or the timeout
+     * expires. Returns the readable frame count.
+     */
+    public int awaitReadable(long timeoutNanos) {
+        int readable = readableFrames();
+        if (readable > 0 || finished) {
+            return readable;
+        }
+        waiter = Thread.currentThread();
+        try {
+            // Re-check after publishing ourselves as waiter: publish() stores head before it
+            // reads waiter, so either we see the new frames here or it sees us and unparks
+            readable = readableFrames();
+            if (readable == 0 && !finished) {
+                LockSupport.parkNanos(this, timeoutNanos);
+                readable = readableFrames();
+            }
+        } finally {
+            waiter = null;
+        }
+        return readable;
+    }
+
+    // ---------------------------------------------------------------------------------------
+    // Counters
+    // ---------------------------------------------------------------------------------------
+
+    /** Frames dropped because the ring was full when they were captured. */
+    public long overrunFrames() {
+        return overrunFrames.get();
+    }
+
+    /** Highest number of frames ever queued at once. */
+    public int highWaterMark() {
+        return highWaterMark;
+    }
+
+    private void wakeConsumer() {
+        Thread w = waiter;
+        if (w != null) {
+            LockSupport.unpark(w);
+        }
+    }
+}
@@ -0,0 +1,192 @@
+package com.zgo.recordplayer.audio;
+
+/**
+ * Java versions of the in-place 48 kHz stages of an {@link AudioProcessingChain}, run by
+ * {@link JavaFrameProcessor}. Each mirrors its counterpart in {@code rnnoise_jni.c} operation
+ * for operation, on the same coefficients.
+ */
+final class FrameStages {
+
+    private FrameStages() {
+    }
+
+    /** One stage of the chain, processing a 480-sample float frame in place. */
+    interface Stage {
+        void process(float[] frame);
+
+        void reset();
+    }
+
+    /**
+     * Builds the stage for {@code op}, taking its parameters from {@code params} at
+     * {@code paramOffset}; returns null for the output tap and the decimator, which the
+     * processor handles itself.
+     */
+    static Stage create(int op, float[] params, int paramOffset) {
+        switch (op) {
+            case AudioProcessingChain.STAGE_HIGH_PASS:
+                return new HighPass(params[paramOffset], params[paramOffset + 1], params[paramOffset + 2],
+                        params[paramOffset + 3], params[paramOffset + 4]);
+            case AudioProcessingChain.STAGE_GAIN:
+                return new Gain(params[paramOffset]);
+            case AudioProcessingChain.STAGE_DENOISE:
+                return new Denoise();
+            case AudioProcessingChain.STAGE_AGC:
+                return new Agc(params[paramOffset], params[paramOffset + 1], params[paramOffset + 2],
+                        params[paramOffset + 3]);
+            case AudioProcessingChain.STAGE_LIMITER:
+                return new Limiter(params[paramOffset], params[paramOffset + 1]);
+            default:
+                return null;
+        }
+    }
+
+    /** Biquad in transposed direct form II. */
+    static final class HighPass implements Stage {
+        private final float b0, b1, b2, a1, a2;
+        private float z1, z2;
+
+        HighPass(float b0, float b1, float b2, float a1, float a2) {
+            this.b0 = b0;
+            this.b1 = b1;
+            this.b2 = b2;
+            this.a1 = a1;
+            this.a2 = a2;
+        }
+
+        @Override
+        public void process(float[] frame) {
+            float s1 = z1, s2 = z2;
+            for (int i = 0; i < frame.length; i++) {
+                float x = frame[i];
+                float y = b0 * x + s1;
+                s1 = b1 * x - a1 * y + s2;
+                s2 = b2 * x - a2 * y;
+                frame[i] = y;
+            }
+            z1 = s1;
+            z2 = s2;
+        }
+
+        @Override
+        public void reset() {
+            z1 = 0f;
+            z2 = 0f;
+        }
+    }
+
+    static final class Gain implements Stage {
+        private final float gain;
+
+        Gain(float gain) {
+            this.gain = gain;
+        }
+
+        @Override
+        public void process(float[] frame) {
+            for (int i = 0; i < frame.length; i++) {
+                frame[i] *= gain;
+            }
+        }
+
+        @Override
+        public void reset() {
+        }
+    }
+
+    static final class Denoise implements Stage {
+        final SpectralSubtractor denoiser = new SpectralSubtractor();
+        long nanos; // time spent in process(), kept across reset()
+
+        @Override
+        public void process(float[] frame) {
+            long begin = System.nanoTime();
+            denoiser.process(frame);
+            nanos += System.nanoTime() - begin;
+        }
+
+        @Override
+        public void reset() {
+            denoiser.reset();
+        }
+    }
+
+    /** Frame-RMS gain control, ramping linearly from the previous frame's gain to the new one. */
+    static final class Agc implements Stage {
+        private final float targetRms, maxGain, attack, release;
+        private float gain = 1f;
+
+        Agc(float targetRms, float maxGain, float attack, float release) {
+            this.targetRms = targetRms;
+            this.maxGain = maxGain;
+            this.attack = attack;
+            this.release = release;
+        }
+
+        @Override
+        public void process(float[] frame) {
+            int n = frame.length;
+            float sum = 0f;
+            for (int i = 0; i < n; i++) {
+                sum += frame[i] * frame[i];
+            }
+            float rms = (float) Math.sqrt(sum / n);
+            float desired = rms * maxGain > targetRms ? targetRms / rms : maxGain;
+            float next = gain + (desired < gain ? attack : release) * (desired - gain);
+            rampGain(frame, gain, next);
+            gain = next;
+        }
+
+        @Override
+        public void reset() {
+            gain = 1f;
+        }
+    }
+
+    /**
+     * Peak limiter: gain drops at once to what the frame's peak needs and recovers gradually,
+     * so no sample exceeds the ceiling.
+     */
+    static final class Limiter implements Stage {
+        private final float ceiling, release;
+        private float gain = 1f;
+
+        Limiter(float ceiling, float release) {
+            this.ceiling = ceiling;
+            this.release = release;
+        }
+
+        @Override
+        public void process(float[] frame) {
+            float peak = 0f;
+            for (float x : frame) {
+                peak = Math.max(peak, Math.abs(x));
+            }
+            float target = peak > ceiling ? ceiling / peak : 1f;
+            if (target < gain) {
+                gain = target;
+                rampGain(frame, target, target);
+            } else {
+                float next = gain + release * (target - gain);
+                rampGain(frame, gain, next);
+                gain = next;
+            }
+        }
+
+        @Override
+        public void reset() {
+            gain = 1f;
+        }
+    }
+
+    /** Multiplies {@code frame} by a gain moving linearly from {@code from} to reach {@code to} on the last sample. */
+    static void rampGain(float[] frame, float from, float to) {
+        int n = frame.length;
+        float step = (to - from) / n;
+        float g = from;
+        for (int i = 0; i < n; i++) {
+            g += step;
+            frame[i] *= g;
+        }
+    }
+}
@@ -0,0 +1,344 @@
+package com.zgo.recordplayer.audio;
+
+import androidx.annotation.Nullable;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.FloatBuffer;
+import java.util.Arrays;
+
+/**
+ * Pure-Java implementation of the frame processing chain, used when {@code librnnoise} cannot
+ * be loaded and in plain JVM unit tests and benchmarks.
+ *
+ * <p>Mirrors the native chain step for step (int16 to float, the declared
+ * {@link AudioProcessingChain} stages, decimate by 6, 160-sample accumulation, float to int16
+ * with clamping), with {@link SpectralSubtractor} standing in for RNNoise, including a cruder
+ * SNR-based voice probability. Without a denoise stage its output matches {@link RnnoiseProcessor}.
+ * Float input is scaled by {@link #FLOAT_SCALE} into the same int16 range, and float output
+ * scaled back without clamping. No allocation happens after construction.
+ */
+public final class JavaFrameProcessor implements FrameProcessor {
+
+    private static final boolean NATIVE_IS_BIG_ENDIAN = ByteOrder.nativeOrder() == ByteOrder.BIG_ENDIAN;
+    /** Full scale of an {@code ENCODING_PCM_FLOAT} sample in the chain's int16 range (PCM_FLOAT_SCALE natively). */
+    static final float FLOAT_SCALE = 32768.0f;
+    private static final float FLOAT_UNSCALE = 1.0f / FLOAT_SCALE;
+
+    private final AudioProcessingChain chain;
+    private final FrameStages.Stage[] stages;
+    private final int outputIndex; // denoisedOut is written before stages[outputIndex]
+    @Nullable
+    private final FrameStages.Denoise denoiseStage;
+    @Nullable
+    private final SpectralSubtractor denoiser;
+    @Nullable
+    private final Decimate6 decimator;
+
+    private final float[] frame = new float[FRAME_SIZE];
+    private final float[] decimTmp = new float[FRAME_SIZE / Decimate6.FACTOR];
+    private final float[] decimAccum = new float[DECIMATED_FRAME_SIZE];
+    private int decimCount;
+    private boolean released;
+
+    public JavaFrameProcessor(boolean enableDenoiser) {
+        this(AudioProcessingChain.standard(enableDenoiser));
+    }
+
+    public JavaFrameProcessor(AudioProcessingChain chain) {
+        this.chain = chain;
+        int[] ops = chain.ops();
+        float[] params = chain.params();
+        FrameStages.Stage[] compiled = new FrameStages.Stage[ops.length];
+        int count = 0;
+        int output = 0;
+        int paramOffset = 0;
+        FrameStages.Denoise denoise = null;
+        for (int op : ops) {
+            if (op == AudioProcessingChain.STAGE_OUTPUT) {
+                output = count;
+            }
+            FrameStages.Stage stage = FrameStages.create(op, params, paramOffset);
+            paramOffset += AudioProcessingChain.paramCount(op);
+            if (stage == null) continue;
+            if (stage instanceof FrameStages.Denoise) {
+                denoise = (FrameStages.Denoise) stage;
+            }
+            compiled[count++] = stage;
+        }
+        this.stages = Arrays.copyOf(compiled, count);
+        this.outputIndex = output;
+        this.denoiseStage = denoise;
+        this.denoiser = denoise != null ? denoise.denoiser : null;
+        this.decimator = chain.hasDecimator() ? new Decimate6() : null;
+    }
+
+    /** The stages this processor runs. */
+    public AudioProcessingChain chain() {
+        return chain;
+    }
+
+    @Override
+    public boolean isDenoiserEnabled() {
+        return chain.hasDenoiser();
+    }
+
+    @Override
+    public long denoiseNanos() {
+        return denoiseStage != null ? denoiseStage.nanos : 0L;
+    }
+
+    @Override
+    public boolean isReleased() {
+        return released;
+    }
+
+    @Override
+    public int processFrame(short[] inputFrame, @Nullable short[] denoisedOutput, short[] decimatedOut,
+                            @Nullable float[] vadOut) {
+        ensureOpen();
+        FrameProcessors.checkSingleFrame(inputFrame, denoisedOutput, decimatedOut, vadOut);
+        readFrame(inputFrame, 0);
+        int produced = finishFrame(denoisedOutput, 0, null, 0, decimatedOut, 0, null, 0);
+        if (vadOut != null) vadOut[0] = voiceProbability();
+        return produced;
+    }
+
+    @Override
+    public int processFrames(short[] in, int offset, int frameCount,
+                             @Nullable short[] denoisedOut, short[] decimatedOut,
+                             @Nullable int[] frameResults, @Nullable float[] vadOut) {
+        ensureOpen();
+        FrameProcessors.checkFrames(in, offset, frameCount, denoisedOut, decimatedOut, frameResults, vadOut);
+        int total = 0;
+        for (int f = 0; f < frameCount; f++) {
+            int frameOffset = offset + f * FRAME_SIZE;
+            readFrame(in, frameOffset);
+            int produced = finishFrame(denoisedOut, frameOffset, null, 0, decimatedOut, total, null, 0);
+            if (frameResults != null) frameResults[f] = produced;
+            if (vadOut != null) vadOut[f] = voiceProbability();
+            total += produced;
+        }
+        return total;
+    }
+
+    @Override
+    public int processFrame(ByteBuffer in, @Nullable ByteBuffer denoisedOut, ByteBuffer decimatedOut) {
+        return processFrames(in, 1, denoisedOut, decimatedOut, null);
+    }
+
+    @Override
+    public int processFrames(ByteBuffer in, int frameCount, @Nullable ByteBuffer denoisedOut,
+                             ByteBuffer decimatedOut, @Nullable int[] frameResults, @Nullable float[] vadOut) {
+        ensureOpen();
+        FrameProcessors.checkFrames(in, frameCount, denoisedOut, decimatedOut, frameResults, vadOut, false);
+        int inPos = in.position();
+        int denoisedPos = denoisedOut != null ? denoisedOut.position() : 0;
+        int decimatedPos = decimatedOut.position();
+        int total = 0;
+        for (int f = 0; f < frameCount; f++) {
+            int frameBytes = f * FRAME_BYTES;
+            readFrame(in, inPos + frameBytes);
+            int produced = finishFrame(null, 0, denoisedOut, denoisedPos + frameBytes,
+                    null, 0, decimatedOut, decimatedPos + total * 2);
+            if (frameResults != null) frameResults[f] = produced;
+            if (vadOut != null) vadOut[f] = voiceProbability();
+            total += produced;
+        }
+        return total;
+    }
+
+    @Override
+    public int processFrames(float[] in, int offset, int frameCount,
+                             @Nullable float[] denoisedOut, float[] decimatedOut,
+                             @Nullable int[] frameResults, @Nullable float[] vadOut) {
+        ensureOpen();
+        FrameProcessors.checkFrames(in, offset, frameCount, denoisedOut, decimatedOut, frameResults, vadOut);
+        int total = 0;
+        for (int f = 0; f < frameCount; f++) {
+            int frameOffset = offset + f * FRAME_SIZE;
+            final float[] fr = frame;
+            for (int i = 0; i < FRAME_SIZE; i++) {
+                fr[i] = in[frameOffset + i] * FLOAT_SCALE;
+            }
+            int produced = finishFloatFrame(denoisedOut, frameOffset, null, 0, decimatedOut, total, null, 0);
+            if (frameResults != null) frameResults[f] = produced;
+            if (vadOut != null) vadOut[f] = voiceProbability();
+            total += produced;
+        }
+        return total;
+    }
+
+    @Override
+    public int processFrames(FloatBuffer in, int frameCount, @Nullable FloatBuffer denoisedOut,
+                             FloatBuffer decimatedOut, @Nullable int[] frameResults, @Nullable float[] vadOut) {
+        ensureOpen();
+        FrameProcessors.checkFrames(in, frameCount, denoisedOut, decimatedOut, frameResults, vadOut, false);
+        int inPos = in.position();
+        int denoisedPos = denoisedOut != null ? denoisedOut.position() : 0;
+        int decimatedPos = decimatedOut.position();
+        int total = 0;
+        for (int f = 0; f < frameCount; f++) {
+            int frameIndex = f * FRAME_SIZE;
+            final float[] fr = frame;
+            for (int i = 0; i < FRAME_SIZE; i++) {
+                fr[i] = in.get(inPos + frameIndex + i) * FLOAT_SCALE;
+            }
+            int produced = finishFloatFrame(null, 0, denoisedOut, denoisedPos + frameIndex,
+                    null, 0, decimatedOut, decimatedPos + total);
+            if (frameResults != null) frameResults[f] = produced;
+            if (vadOut != null) vadOut[f] = voiceProbability();
+            total += produced;
+        }
+        return total;
+    }
+
+    private float voiceProbability() {
+        return denoiser != null ? denoiser.voiceProbability() : VAD_UNAVAILABLE;
+    }
+
+    @Override
+    public void reset() {
+        ensureOpen();
+        for (FrameStages.Stage stage : stages) stage.reset();
+        if (decimator != null) decimator.reset();
+        decimCount = 0;
+    }
+
+    @Override
+    public void close() {
+        released = true;
+    }
+
+    private void ensureOpen() {
+        if (released) {
+            throw new IllegalStateException("Java frame processor already released");
+        }
+    }
+
+    private void readFrame(short[] src, int offset) {
+        final float[] f = frame;
+        for (int i = 0; i < FRAME_SIZE; i++) {
+            f[i] = src[offset + i];
+        }
+    }
+
+    private void readFrame(ByteBuffer src, int byteOffset) {
+        final float[] f = frame;
+        final boolean swap = needsSwap(src);
+        for (int i = 0; i < FRAME_SIZE; i++) {
+            short s = src.getShort(byteOffset + i * 2);
+            f[i] = swap ? Short.reverseBytes(s) : s;
+        }
+    }
+
+    /**
+     * Runs the loaded frame through the chain's stages and decimation and writes the outputs to
+     * whichever of the array or buffer destinations is non-null.
+     */
+    private int finishFrame(@Nullable short[] denoisedArray, int denoisedOffset,
+                            @Nullable ByteBuffer denoisedBuffer, int denoisedByteOffset,
+                            @Nullable short[] decimatedArray, int decimatedOffset,
+                            @Nullable ByteBuffer decimatedBuffer, int decimatedByteOffset) {
+        final float[] f = frame;
+        runStages(0, outputIndex);
+
+        if (denoisedArray != null) {
+            int n = Math.min(FRAME_SIZE, denoisedArray.length - denoisedOffset);
+            for (int i = 0; i < n; i++) denoisedArray[denoisedOffset + i] = floatToPcm16(f[i]);
+        } else if (denoisedBuffer != null) {
+            writeSamples(denoisedBuffer, denoisedByteOffset, f, FRAME_SIZE);
+        }
+
+        runStages(outputIndex, stages.length);
+        if (!decimate()) {
+            return 0;
+        }
+        if (decimatedArray != null) {
+            for (int i = 0; i < DECIMATED_FRAME_SIZE; i++) {
+                decimatedArray[decimatedOffset + i] = floatToPcm16(decimAccum[i]);
+            }
+        } else if (decimatedBuffer != null) {
+            writeSamples(decimatedBuffer, decimatedByteOffset, decimAccum, DECIMATED_FRAME_SIZE);
+        }
+        return DECIMATED_FRAME_SIZE;
+    }
+
+    /** {@link #finishFrame} with float destinations, scaled back to [-1, 1] without clamping. */
+    private int finishFloatFrame(@Nullable float[] denoisedArray, int denoisedOffset,
+                                 @Nullable FloatBuffer denoisedBuffer, int denoisedIndex,
+                                 @Nullable float[] decimatedArray, int decimatedOffset,
+                                 @Nullable FloatBuffer decimatedBuffer, int decimatedIndex) {
+        final float[] f = frame;
+        runStages(0, outputIndex);
+
+        if (denoisedArray != null) {
+            int n = Math.min(FRAME_SIZE, denoisedArray.length - denoisedOffset);
+            for (int i = 0; i < n; i++) denoisedArray[denoisedOffset + i] = f[i] * FLOAT_UNSCALE;
+        } else if (denoisedBuffer != null) {
+            for (int i = 0; i < FRAME_SIZE; i++) denoisedBuffer.put(denoisedIndex + i, f[i] * FLOAT_UNSCALE);
+        }
+
+        runStages(outputIndex, stages.length);
+        if (!decimate()) {
+            return 0;
+        }
+        if (decimatedArray != null) {
+            for (int i = 0; i < DECIMATED_FRAME_SIZE; i++) {
+                decimatedArray[decimatedOffset + i] = decimAccum[i] * FLOAT_UNSCALE;
+            }
+        } else if (decimatedBuffer != null) {
+            for (int i = 0; i < DECIMATED_FRAME_SIZE; i++) {
+                decimatedBuffer.put(decimatedIndex + i, decimAccum[i] * FLOAT_UNSCALE);
+            }
+        }
+        return DECIMATED_FRAME_SIZE;
+    }
+
+    private void runStages(int from, int to) {
+        final float[] f = frame;
+        final FrameStages.Stage[] st = stages;
+        for (int i = from; i < to; i++) {
+            st[i].process(f);
+        }
+    }
+
+    /**
+     * Decimates the processed frame into the 8 kHz accumulator; returns true when it holds a
+     * full block, which stays readable until the next frame.
+     */
+    private boolean decimate() {
+        if (decimator == null) {
+            return false;
+        }
+        int produced = decimator.process(frame, 0, FRAME_SIZE, decimTmp, 0);
+        int toCopy = Math.min(produced, DECIMATED_FRAME_SIZE - decimCount);
+        System.arraycopy(decimTmp, 0, decimAccum, decimCount, toCopy);
+        decimCount += toCopy;
+        if (decimCount < DECIMATED_FRAME_SIZE) {
+            return false;
+        }
+        decimCount = 0;
+        return true;
+    }
+
+    private static void writeSamples(ByteBuffer dst, int byteOffset, float[] src, int count) {
+        final boolean swap = needsSwap(dst);
+        for (int i = 0; i < count; i++) {
+            short s = floatToPcm16(src[i]);
+            dst.putShort(byteOffset + i * 2, swap ? Short.reverseBytes(s) : s);
+        }
+    }
+
+    /** Buffers carry native-order samples; compensate when the view's order differs. */
+    private static boolean needsSwap(ByteBuffer buffer) {
+        return (buffer.order() == ByteOrder.BIG_ENDIAN) != NATIVE_IS_BIG_ENDIAN;
+    }
+
+    /** Same rounding (half to even) and clamping as the native float_to_pcm16. */
+    static short floatToPcm16(float v) {
+        if (v > 32767.0f) v = 32767.0f;
+        if (v < -32768.0f) v = -32768.0f;
+        return (short) Math.rint(v);
+    }
+}
@@ -0,0 +1,131 @@
+package com.zgo.recordplayer.audio;
+
+import java.util.Locale;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Log-linear histogram of durations in nanoseconds: 8 buckets per power of two, so any reported
+ * percentile is at most 12.5% above the true value. Values from 0 to about 18 minutes are kept;
+ * larger ones land in the last bucket.
+ *
+ * <p>Recording is allocation-free and lock-free but assumes a single writer thread (the audio
+ * thread timing itself); {@link #snapshot()} can be called from any thread at any rate. A
+ * snapshot taken while a value is being recorded may count it in some fields and not yet in
+ * others.
+ */
+public final class LatencyHistogram {
+
+    private static final int SUB_BITS = 3;
+    private static final int SUB_BUCKETS = 1 << SUB_BITS;
+    private static final int MAX_EXPONENT = 39; // 2^40 ns ~ 18 min
+    static final int BUCKETS = (MAX_EXPONENT - SUB_BITS + 2) * SUB_BUCKETS;
+
+    private final AtomicLongArray counts = new AtomicLongArray(BUCKETS);
+    private volatile long count;
+    private volatile long sum;
+    private volatile long max;
+
+    /** Records one duration; negative values count as 0. Single writer only. */
+    public void record(long nanos) {
+        long v = Math.max(0L, nanos);
+        int i = bucketOf(v);
+        counts.lazySet(i, counts.get(i) + 1);
+        sum += v;
+        if (v > max) max = v;
+        count++;
+    }
+
+    /** Clears all counts. Call from the writer thread, or while no one records. */
+    public void reset() {
+        for (int i = 0; i < BUCKETS; i++) {
+            counts.lazySet(i, 0L);
+        }
+        sum = 0L;
+        max = 0L;
+        count = 0L;
+    }
+
+    public Snapshot snapshot() {
+        long n = count;
+        long[] copy = new long[BUCKETS];
+        for (int i = 0; i < BUCKETS; i++) {
+            copy[i] = counts.get(i);
+        }
+        return new Snapshot(copy, n, sum, max);
+    }
+
+    static int bucketOf(long v) {
+        if (v < SUB_BUCKETS) return (int) v;
+        int exponent = 63 - Long.numberOfLeadingZeros(v);
+        if (exponent > MAX_EXPONENT) return BUCKETS - 1;
+        int mantissa = (int) (v >>> (exponent - SUB_BITS)) & (SUB_BUCKETS - 1);
+        return (exponent - SUB_BITS + 1) * SUB_BUCKETS + mantissa;
+    }
+
+    /** Largest value that falls into bucket {@code i}. */
+    static long upperBound(int i) {
+        if (i < SUB_BUCKETS) return i;
+        int exponent = i / SUB_BUCKETS - 1 + SUB_BITS;
+        int shift = exponent - SUB_BITS;
+        return ((long) (SUB_BUCKETS + i % SUB_BUCKETS) << shift) + (1L << shift) - 1;
+    }
+
+    /** Immutable copy of a histogram's state. */
+    public static final class Snapshot {
+        public static final Snapshot EMPTY = new Snapshot(new long[BUCKETS], 0L, 0L, 0L);
+
+        private final long[] counts;
+        private final long count;
+        private final long sum;
+        private final long max;
+
+        Snapshot(long[] counts, long count, long sum, long max) {
+            this.counts = counts;
+            this.count = count;
+            this.sum = sum;
+            this.max = max;
+        }
+
+        public long count() {
+            return count;
+        }
+
+        public long maxNanos() {
+            return max;
+        }
+
+        public double meanNanos() {
+            return count == 0 ? 0.0 : (double) sum / count;
+        }
+
+        /**
+         * Smallest bucket bound at or below which {@code percentile} percent of the values lie,
+         * capped at the maximum; 0 when empty.
+         *
+         * @param percentile in [0, 100]
+         */
+        public long percentileNanos(double percentile) {
+            if (percentile < 0 || percentile > 100) {
+                throw new IllegalArgumentException("percentile must be in [0, 100]: " + percentile);
+            }
+            long total = 0;
+            for (long c : counts) total += c;
+            if (total == 0) return 0L;
+            long rank = Math.max(1L, (long) Math.ceil(total * percentile / 100.0));
+            long seen = 0;
+            for (int i = 0; i < counts.length; i++) {
+                seen += counts[i];
+                if (seen >= rank) {
+                    return Math.min(upperBound(i), max);
+                }
+            }
+            return max;
+        }
+
+        @Override
+        public String toString() {
+            return String.format(Locale.ROOT, "n=%d mean=%.1fus p50=%.1fus p99=%.1fus max=%.1fus",
+                    count, meanNanos() / 1e3, percentileNanos(50) / 1e3, percentileNanos(99) / 1e3, max / 1e3);
+        }
+    }
+}
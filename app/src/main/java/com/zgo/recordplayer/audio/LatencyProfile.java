@@ -0,0 +1,82 @@
+package com.zgo.recordplayer.audio;
+
+/**
+ * Trade-off between latency and power for a recording or playback session: how large the
+ * AudioRecord / AudioTrack buffer is, how often the capture thread reads, and how many 10 ms
+ * frames the recorder's writer collects before waking up to process them.
+ */
+public enum LatencyProfile {
+
+    /**
+     * Real-time monitoring: device-minimum buffers, one-frame reads, tiny batches and a
+     * low-latency (fast mixer) track that grows only if it actually underruns.
+     */
+    LOW_LATENCY(1, 2, 4),
+
+    /** The historical sizing: about 250 ms of buffer and batches of up to 250 ms. */
+    BALANCED(1, 25, 2),
+
+    /**
+     * Long recordings on battery: about a second of buffer, and the writer wakes about twice a
+     * second to process at least 500 ms at once.
+     */
+    POWER_SAVING(50, 100, 2);
+
+    private final int minBatchFrames;
+    private final int maxBatchFrames;
+    private final int trackHeadroom;
+
+    LatencyProfile(int minBatchFrames, int maxBatchFrames, int trackHeadroom) {
+        this.minBatchFrames = minBatchFrames;
+        this.maxBatchFrames = maxBatchFrames;
+        this.trackHeadroom = trackHeadroom;
+    }
+
+    /**
+     * AudioRecord / AudioTrack buffer size in bytes, a whole number of PCM frames.
+     *
+     * @param minBufferBytes the device minimum from {@code getMinBufferSize}
+     * @param bytesPerFrame  bytes per PCM frame (all channels)
+     */
+    public int bufferBytes(int minBufferBytes, int sampleRate, int bytesPerFrame) {
+        if (minBufferBytes <= 0 || sampleRate <= 0 || bytesPerFrame <= 0) {
+            throw new IllegalArgumentException("minBufferBytes, sampleRate and bytesPerFrame must be > 0");
+        }
+        int bytes;
+        switch (this) {
+            case LOW_LATENCY:
+                bytes = minBufferBytes;
+                break;
+            case POWER_SAVING:
+                bytes = Math.max(minBufferBytes, sampleRate * bytesPerFrame);
+                break;
+            default:
+                bytes = Math.max(minBufferBytes, sampleRate / 2);
+                break;
+        }
+        return (bytes + bytesPerFrame - 1) / bytesPerFrame * bytesPerFrame;
+    }
+
+    /** 10 ms frames the capture thread asks AudioRecord for per read. */
+    public int readFrames(int bufferBytes, int frameBytes) {
+        return this == LOW_LATENCY ? 1 : Math.max(1, bufferBytes / 4 / frameBytes);
+    }
+
+    /** Frames the recorder's writer waits for before processing, unless the stream is ending. */
+    public int minBatchFrames() {
+        return minBatchFrames;
+    }
+
+    /** Most frames the recorder's writer processes in one batch. */
+    public int maxBatchFrames() {
+        return maxBatchFrames;
+    }
+
+    /**
+     * AudioTrack capacity as a multiple of {@link #bufferBytes}: the track starts with
+     * {@code bufferBytes} in use and the rest is room for {@link TrackBufferTuner} to grow into.
+     */
+    public int trackHeadroom() {
+        return trackHeadroom;
+    }
+}
@@ -0,0 +1,538 @@
+package com.zgo.recordplayer.audio;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+
+/**
+ * Lossless coder for one channel of one block of PCM16 samples: a linear predictor followed by
+ * partitioned Rice coding of the prediction residual, in the spirit of FLAC.
+ *
+ * <p>The encoder tries a constant block, the fixed polynomial predictors of order 0-4 and
+ * quantized LPC predictors (Levinson-Durbin on a Welch-windowed autocorrelation) of order
+ * 4, 8 and 12, estimates the coded size of each and keeps the smallest, falling back to
+ * verbatim samples for noise-like blocks. Blocks share no state, so any block decodes on its own.
+ *
+ * <p>Subframe bit layout (MSB first): 2-bit type, then
+ * <pre>
+ *   CONSTANT  s16 value
+ *   VERBATIM  n x s16
+ *   FIXED     u3 order, order x s16 warm-up, residual
+ *   LPC       u4 order-1, u5 shift, order x s14 coefficients, order x s16 warm-up, residual
+ * </pre>
+ * The residual is split into partitions of {@value #PARTITION_SAMPLES} values, each a u5 Rice
+ * parameter k followed by zig-zag mapped values: the quotient in unary (zeros ended by a one)
+ * and k low bits, or, for outliers, {@value #RICE_ESCAPE} zeros and the raw 32-bit value.
+ *
+ * <p>An instance holds scratch arrays for blocks up to {@code maxBlockSamples}; it is not
+ * thread-safe, use one per thread.
+ */
+final class LosslessBlockCodec {
+
+    private static final int TYPE_CONSTANT = 0;
+    private static final int TYPE_VERBATIM = 1;
+    private static final int TYPE_FIXED = 2;
+    private static final int TYPE_LPC = 3;
+
+    static final int MAX_FIXED_ORDER = 4;
+    static final int MAX_LPC_ORDER = 12;
+    private static final int[] LPC_ORDERS = {4, 8, MAX_LPC_ORDER};
+    private static final int LPC_PRECISION = 14;  // bits per quantized coefficient, sign included
+    private static final int MAX_LPC_SHIFT = 31;
+    // Residuals beyond this are left to another predictor so the zig-zag value fits 32 bits
+    private static final long MAX_RESIDUAL = 1L << 30;
+
+    static final int PARTITION_SAMPLES = 256;
+    private static final int RICE_PARAM_BITS = 5;
+    private static final int MAX_RICE_PARAM = 30;
+    static final int RICE_ESCAPE = 32;
+
+    private final int maxBlockSamples;
+    private final int[] residual;
+    private final int[] bestResidual;
+    private final int[] riceParams;
+    private final double[] windowed;
+    private final double[] autocorrelation = new double[MAX_LPC_ORDER + 1];
+    private final double[][] lpc = new double[MAX_LPC_ORDER + 1][];
+    private final double[] levinson = new double[MAX_LPC_ORDER + 1];
+    private final double[] levinsonPrevious = new double[MAX_LPC_ORDER + 1];
+    private final int[] quantized = new int[MAX_LPC_ORDER];
+    private final int[] bestQuantized = new int[MAX_LPC_ORDER];
+
+    LosslessBlockCodec(int maxBlockSamples) {
+        if (maxBlockSamples <= 0) {
+            throw new IllegalArgumentException("maxBlockSamples must be > 0");
+        }
+        this.maxBlockSamples = maxBlockSamples;
+        this.residual = new int[maxBlockSamples];
+        this.bestResidual = new int[maxBlockSamples];
+        this.riceParams = new int[(maxBlockSamples + PARTITION_SAMPLES - 1) / PARTITION_SAMPLES];
+        this.windowed = new double[maxBlockSamples];
+        for (int m = 1; m <= MAX_LPC_ORDER; m++) {
+            lpc[m] = new double[m];
+        }
+    }
+
+    /** Appends the subframe for samples {@code x[0, n)} (each within the short range) to {@code out}. */
+    void encode(int[] x, int n, BitWriter out) {
+        checkLength(n);
+        if (isConstant(x, n)) {
+            out.write(TYPE_CONSTANT, 2);
+            out.write(x[0], 16);
+            return;
+        }
+
+        long verbatimBits = 16L * n;
+
+        int fixedOrder = bestFixedOrder(x, n);
+        fixedResidual(x, n, fixedOrder, bestResidual);
+        long bestBits = 3 + 16L * fixedOrder + residualBits(bestResidual, fixedOrder, n);
+        int bestType = TYPE_FIXED;
+        int bestOrder = fixedOrder;
+        int bestShift = 0;
+
+        int maxLpcOrder = computeLpc(x, n);
+        for (int order : LPC_ORDERS) {
+            if (order > maxLpcOrder) break;
+            int shift = quantize(lpc[order], order, quantized);
+            if (shift < 0 || !lpcResidual(x, n, quantized, order, shift, residual)) continue;
+            long bits = 9 + (long) (LPC_PRECISION + 16) * order + residualBits(residual, order, n);
+            if (bits < bestBits) {
+                bestBits = bits;
+                bestType = TYPE_LPC;
+                bestOrder = order;
+                bestShift = shift;
+                System.arraycopy(quantized, 0, bestQuantized, 0, order);
+                System.arraycopy(residual, order, bestResidual, order, n - order);
+            }
+        }
+
+        if (verbatimBits <= bestBits) {
+            out.write(TYPE_VERBATIM, 2);
+            for (int i = 0; i < n; i++) out.write(x[i], 16);
+            return;
+        }
+        out.write(bestType, 2);
+        if (bestType == TYPE_FIXED) {
+            out.write(bestOrder, 3);
+        } else {
+            out.write(bestOrder - 1, 4);
+            out.write(bestShift, 5);
+            for (int j = 0; j < bestOrder; j++) out.write(bestQuantized[j], LPC_PRECISION);
+        }
+        for (int i = 0; i < bestOrder; i++) out.write(x[i], 16);
+        writeResidual(bestResidual, bestOrder, n, out);
+    }
+
+    /** Decodes one subframe of {@code n} samples from {@code in} into {@code x[0, n)}. */
+    void decode(BitReader in, int n, int[] x) throws IOException {
+        checkLength(n);
+        int type = in.read(2);
+        switch (type) {
+            case TYPE_CONSTANT:
+                Arrays.fill(x, 0, n, in.readSigned(16));
+                return;
+            case TYPE_VERBATIM:
+                for (int i = 0; i < n; i++) x[i] = in.readSigned(16);
+                return;
+            case TYPE_FIXED: {
+                int order = in.read(3);
+                if (order > MAX_FIXED_ORDER || order > n) throw corrupt("fixed order " + order);
+                for (int i = 0; i < order; i++) x[i] = in.readSigned(16);
+                readResidual(in, order, n, x);
+                restoreFixed(x, n, order);
+                return;
+            }
+            default: {
+                int order = in.read(4) + 1;
+                int shift = in.read(5);
+                if (order > MAX_LPC_ORDER || order > n) throw corrupt("LPC order " + order);
+                for (int j = 0; j < order; j++) quantized[j] = in.readSigned(LPC_PRECISION);
+                for (int i = 0; i < order; i++) x[i] = in.readSigned(16);
+                readResidual(in, order, n, x);
+                restoreLpc(x, n, quantized, order, shift);
+            }
+        }
+    }
+
+    // --- Prediction ---
+
+    private static boolean isConstant(int[] x, int n) {
+        int first = x[0];
+        for (int i = 1; i < n; i++) {
+            if (x[i] != first) return false;
+        }
+        return true;
+    }
+
+    /** Fixed order with the smallest absolute residual sum, all orders summed over the same samples. */
+    private static int bestFixedOrder(int[] x, int n) {
+        int maxOrder = Math.min(MAX_FIXED_ORDER, n);
+        if (maxOrder < MAX_FIXED_ORDER) {
+            return maxOrder;
+        }
+        long s0 = 0, s1 = 0, s2 = 0, s3 = 0, s4 = 0;
+        for (int i = MAX_FIXED_ORDER; i < n; i++) {
+            int e0 = x[i];
+            int e1 = e0 - x[i - 1];
+            int e2 = e1 - (x[i - 1] - x[i - 2]);
+            int e3 = e2 - (x[i - 1] - 2 * x[i - 2] + x[i - 3]);
+            int e4 = e3 - (x[i - 1] - 3 * x[i - 2] + 3 * x[i - 3] - x[i - 4]);
+            s0 += Math.abs(e0);
+            s1 += Math.abs(e1);
+            s2 += Math.abs(e2);
+            s3 += Math.abs(e3);
+            s4 += Math.abs(e4);
+        }
+        int order = 0;
+        long best = s0;
+        if (s1 < best) { best = s1; order = 1; }
+        if (s2 < best) { best = s2; order = 2; }
+        if (s3 < best) { best = s3; order = 3; }
+        if (s4 < best) { order = 4; }
+        return order;
+    }
+
+    private static void fixedResidual(int[] x, int n, int order, int[] res) {
+        for (int i = order; i < n; i++) {
+            res[i] = x[i] - fixedPrediction(x, i, order);
+        }
+    }
+
+    private static void restoreFixed(int[] x, int n, int order) throws IOException {
+        for (int i = order; i < n; i++) {
+            x[i] = checkSample(x[i] + fixedPrediction(x, i, order));
+        }
+    }
+
+    private static int fixedPrediction(int[] x, int i, int order) {
+        switch (order) {
+            case 0: return 0;
+            case 1: return x[i - 1];
+            case 2: return 2 * x[i - 1] - x[i - 2];
+            case 3: return 3 * x[i - 1] - 3 * x[i - 2] + x[i - 3];
+            default: return 4 * x[i - 1] - 6 * x[i - 2] + 4 * x[i - 3] - x[i - 4];
+        }
+    }
+
+    /**
+     * Fills {@link #lpc} with the predictor of every order up to the returned maximum (0 when the
+     * block is too short or silent for LPC to pay off).
+     */
+    private int computeLpc(int[] x, int n) {
+        if (n <= 2 * MAX_LPC_ORDER) {
+            return 0;
+        }
+        // Welch window: tapers the block edges so the autocorrelation isn't biased by the cut
+        double half = (n - 1) / 2.0;
+        double norm = (n + 1) / 2.0;
+        for (int i = 0; i < n; i++) {
+            double t = (i - half) / norm;
+            windowed[i] = x[i] * (1.0 - t * t);
+        }
+        for (int lag = 0; lag <= MAX_LPC_ORDER; lag++) {
+            double sum = 0;
+            for (int i = lag; i < n; i++) {
+                sum += windowed[i] * windowed[i - lag];
+            }
+            autocorrelation[lag] = sum;
+        }
+        double error = autocorrelation[0];
+        if (error <= 0) {
+            return 0;
+        }
+        // Slight lag-0 boost keeps the recursion stable on near-periodic blocks
+        error *= 1.0 + 1e-9;
+        double[] a = levinson;
+        double[] previous = levinsonPrevious;
+        Arrays.fill(a, 0);
+        for (int m = 1; m <= MAX_LPC_ORDER; m++) {
+            double acc = autocorrelation[m];
+            for (int j = 1; j < m; j++) {
+                acc -= a[j] * autocorrelation[m - j];
+            }
+            double k = acc / error;
+            System.arraycopy(a, 0, previous, 0, m);
+            a[m] = k;
+            for (int j = 1; j < m; j++) {
+                a[j] = previous[j] - k * previous[m - j];
+            }
+            System.arraycopy(a, 1, lpc[m], 0, m);
+            error *= 1.0 - k * k;
+            if (!(error > 0)) {
+                return m;
+            }
+        }
+        return MAX_LPC_ORDER;
+    }
+
+    /**
+     * Quantizes {@code coefficients} to {@link #LPC_PRECISION}-bit integers scaled by
+     * 2^shift, carrying the rounding error forward; returns the shift, or -1 if unusable.
+     */
+    private static int quantize(double[] coefficients, int order, int[] out) {
+        double max = 0;
+        for (int j = 0; j < order; j++) {
+            max = Math.max(max, Math.abs(coefficients[j]));
+        }
+        if (!(max > 0) || Double.isInfinite(max)) {
+            return -1;
+        }
+        int shift = LPC_PRECISION - 2 - Math.getExponent(max);
+        if (shift < 0) {
+            return -1;
+        }
+        shift = Math.min(shift, MAX_LPC_SHIFT);
+        int qmax = (1 << (LPC_PRECISION - 1)) - 1;
+        double scale = Math.scalb(1.0, shift);
+        double carry = 0;
+        for (int j = 0; j < order; j++) {
+            double v = coefficients[j] * scale + carry;
+            long q = Math.round(v);
+            q = Math.max(-qmax - 1, Math.min(qmax, q));
+            out[j] = (int) q;
+            carry = v - q;
+        }
+        return shift;
+    }
+
+    private static boolean lpcResidual(int[] x, int n, int[] q, int order, int shift, int[] res) {
+        for (int i = order; i < n; i++) {
+            long prediction = 0;
+            for (int j = 0; j < order; j++) {
+                prediction += (long) q[j] * x[i - 1 - j];
+            }
+            long r = x[i] - (prediction >> shift);
+            if (r >= MAX_RESIDUAL || r <= -MAX_RESIDUAL) {
+                return false;
+            }
+            res[i] = (int) r;
+        }
+        return true;
+    }
+
+    private static void restoreLpc(int[] x, int n, int[] q, int order, int shift) throws IOException {
+        for (int i = order; i < n; i++) {
+            long prediction = 0;
+            for (int j = 0; j < order; j++) {
+                prediction += (long) q[j] * x[i - 1 - j];
+            }
+            x[i] = checkSample(x[i] + (prediction >> shift));
+        }
+    }
+
+    // --- Residual coding ---
+
+    /** Bits the partitioned Rice coding of {@code res[order, n)} will take, choosing each k. */
+    private long residualBits(int[] res, int order, int n) {
+        long bits = 0;
+        int p = 0;
+        for (int start = order; start < n; start += PARTITION_SAMPLES, p++) {
+            int end = Math.min(n, start + PARTITION_SAMPLES);
+            long sum = 0;
+            for (int i = start; i < end; i++) {
+                sum += zigZag(res[i]) & 0xFFFFFFFFL;
+            }
+            int count = end - start;
+            int k = riceParameter(sum, count);
+            riceParams[p] = k;
+            bits += RICE_PARAM_BITS + (long) count * (k + 1) + (sum >>> k);
+        }
+        return bits;
+    }
+
+    private static int riceParameter(long sum, int count) {
+        int k = 0;
+        while (k < MAX_RICE_PARAM && ((long) count << (k + 1)) < sum) {
+            k++;
+        }
+        return k;
+    }
+
+    private void writeResidual(int[] res, int order, int n, BitWriter out) {
+        residualBits(res, order, n); // refresh riceParams for this residual
+        int p = 0;
+        for (int start = order; start < n; start += PARTITION_SAMPLES, p++) {
+            int end = Math.min(n, start + PARTITION_SAMPLES);
+            int k = riceParams[p];
+            out.write(k, RICE_PARAM_BITS);
+            int lowMask = (1 << k) - 1;
+            for (int i = start; i < end; i++) {
+                int u = zigZag(res[i]);
+                int quotient = u >>> k;
+                if (quotient >= RICE_ESCAPE || quotient < 0) {
+                    out.writeZeros(RICE_ESCAPE);
+                    out.write(u, 32);
+                } else {
+                    out.writeZeros(quotient);
+                    out.write((1 << k) | (u & lowMask), k + 1);
+                }
+            }
+        }
+    }
+
+    private static void readResidual(BitReader in, int order, int n, int[] x) throws IOException {
+        for (int start = order; start < n; start += PARTITION_SAMPLES) {
+            int end = Math.min(n, start + PARTITION_SAMPLES);
+            int k = in.read(RICE_PARAM_BITS);
+            if (k > MAX_RICE_PARAM) throw corrupt("Rice parameter " + k);
+            for (int i = start; i < end; i++) {
+                int quotient = in.readZeros(RICE_ESCAPE);
+                int u = quotient == RICE_ESCAPE ? in.read(32) : (quotient << k) | in.read(k);
+                x[i] = (u >>> 1) ^ -(u & 1);
+            }
+        }
+    }
+
+    private static int zigZag(int v) {
+        return (v << 1) ^ (v >> 31);
+    }
+
+    private static int checkSample(long v) throws IOException {
+        if (v < Short.MIN_VALUE || v > Short.MAX_VALUE) {
+            throw corrupt("sample out of range");
+        }
+        return (int) v;
+    }
+
+    private void checkLength(int n) {
+        if (n <= 0 || n > maxBlockSamples) {
+            throw new IllegalArgumentException("Block of " + n + " samples, expected 1.." + maxBlockSamples);
+        }
+    }
+
+    private static IOException corrupt(String what) {
+        return new IOException("Corrupt lossless block: " + what);
+    }
+
+    /** Growable MSB-first bit packer. */
+    static final class BitWriter {
+        private byte[] bytes;
+        private int length;
+        private long pending;
+        private int pendingBits;
+
+        BitWriter(int initialBytes) {
+            bytes = new byte[Math.max(16, initialBytes)];
+        }
+
+        /** Appends the low {@code bits} (0-32) bits of {@code value}. */
+        void write(int value, int bits) {
+            if (bits == 0) return;
+            pending = (pending << bits) | (value & (0xFFFFFFFFL >>> (32 - bits)));
+            pendingBits += bits;
+            while (pendingBits >= 8) {
+                pendingBits -= 8;
+                put((byte) (pending >>> pendingBits));
+            }
+        }
+
+        void writeZeros(int count) {
+            while (count > 0) {
+                int bits = Math.min(count, 32);
+                write(0, bits);
+                count -= bits;
+            }
+        }
+
+        /** Pads to a byte boundary. */
+        void alignToByte() {
+            if (pendingBits > 0) {
+                write(0, 8 - pendingBits);
+            }
+        }
+
+        /** Whole bytes written so far. */
+        int length() {
+            return length;
+        }
+
+        byte[] array() {
+            return bytes;
+        }
+
+        void reset() {
+            length = 0;
+            pending = 0;
+            pendingBits = 0;
+        }
+
+        private void put(byte b) {
+            if (length == bytes.length) {
+                bytes = Arrays.copyOf(bytes, bytes.length * 2);
+            }
+            bytes[length++] = b;
+        }
+    }
+
+    /** MSB-first bit reader over absolute positions of a buffer; the buffer itself is not modified. */
+    static final class BitReader {
+        private ByteBuffer buffer;
+        private int position;
+        private int end;
+        private long cache; // next bits, left-aligned
+        private int cacheBits;
+
+        void reset(ByteBuffer buffer, int start, int end) {
+            this.buffer = buffer;
+            this.position = start;
+            this.end = end;
+            this.cache = 0;
+            this.cacheBits = 0;
+        }
+
+        /** Reads {@code bits} (0-32) bits as an unsigned value (raw bits for 32). */
+        int read(int bits) throws IOException {
+            if (bits == 0) return 0;
+            if (cacheBits < bits) {
+                refill();
+                if (cacheBits < bits) throw corrupt("truncated");
+            }
+            int value = (int) (cache >>> (64 - bits));
+            cache <<= bits;
+            cacheBits -= bits;
+            return value;
+        }
+
+        int readSigned(int bits) throws IOException {
+            return (read(bits) << (32 - bits)) >> (32 - bits);
+        }
+
+        /**
+         * Counts zero bits up to the next one bit, which is consumed; stops after {@code limit}
+         * zeros without consuming anything further.
+         */
+        int readZeros(int limit) throws IOException {
+            int count = 0;
+            while (true) {
+                if (cacheBits == 0) {
+                    refill();
+                    if (cacheBits == 0) throw corrupt("truncated");
+                }
+                int zeros = Long.numberOfLeadingZeros(cache);
+                if (count + Math.min(zeros, cacheBits) >= limit) {
+                    int take = limit - count;
+                    cache <<= take;
+                    cacheBits -= take;
+                    return limit;
+                }
+                if (zeros >= cacheBits) {
+                    count += cacheBits;
+                    cache = 0;
+                    cacheBits = 0;
+                    continue;
+                }
+                cache <<= zeros + 1;
+                cacheBits -= zeros + 1;
+                return count + zeros;
+            }
+        }
+
+        private void refill() {
+            while (cacheBits <= 56 && position < end) {
+                cache |= (buffer.get(position++) & 0xFFL) << (56 - cacheBits);
+                cacheBits += 8;
+            }
+        }
+    }
+}
@@ -0,0 +1,130 @@
+package com.zgo.recordplayer.audio;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+
+/**
+ * Read-only, memory-mapped view of a headerless PCM file for playback.
+ *
+ * <p>{@link #next(int)} returns views straight into the mapping, so the bytes can go to
+ * {@code AudioTrack.write(ByteBuffer, int, int)} without being copied into the Java heap.
+ * Positions are counted in frames (one sample per channel), and {@link #seek(long)} jumps to
+ * any of them in O(1). The file is mapped in bounded windows, so multi-hour recordings never
+ * need one huge mapping. Not thread-safe; use it from the playback thread.
+ */
+public final class MappedPcmSource implements PcmSource {
+
+    /**
+     * File name suffix of raw float32 recordings: native-order floats at full scale 1.0, played
+     * with {@code ENCODING_PCM_FLOAT}. Anything else is taken to be PCM in the player's encoding.
+     */
+    public static final String FLOAT_FILE_SUFFIX = ".f32";
+
+    /** 64 MiB, about 11 minutes of 48 kHz mono PCM16 per window. */
+    static final int DEFAULT_WINDOW_BYTES = 1 << 26;
+
+    private final RandomAccessFile file;
+    private final FileChannel channel;
+    private final int frameBytes;
+    private final long totalFrames;
+    private final long windowBytes;
+
+    private MappedByteBuffer window;
+    private ByteBuffer view; // reusable slice handed out by next()
+    private long windowStart = -1;
+    private long positionFrames;
+
+    /**
+     * Maps {@code pcmFile}, where {@code frameBytes} is the size of one frame (channels
+     * multiplied by bytes per sample). A trailing partial frame is ignored.
+     */
+    public MappedPcmSource(File pcmFile, int frameBytes) throws IOException {
+        this(pcmFile, frameBytes, DEFAULT_WINDOW_BYTES);
+    }
+
+    MappedPcmSource(File pcmFile, int frameBytes, int windowBytes) throws IOException {
+        if (frameBytes <= 0 || windowBytes < frameBytes) {
+            throw new IllegalArgumentException("frameBytes must be > 0 and windowBytes >= frameBytes");
+        }
+        this.frameBytes = frameBytes;
+        this.windowBytes = (long) (windowBytes / frameBytes) * frameBytes;
+        this.file = new RandomAccessFile(pcmFile, "r");
+        this.channel = file.getChannel();
+        this.totalFrames = channel.size() / frameBytes;
+    }
+
+    @Override
+    public int frameBytes() {
+        return frameBytes;
+    }
+
+    @Override
+    public long totalFrames() {
+        return totalFrames;
+    }
+
+    /** Frame index that the next {@link #next(int)} call starts at. */
+    @Override
+    public long positionFrames() {
+        return positionFrames;
+    }
+
+    @Override
+    public boolean isAtEnd() {
+        return positionFrames >= totalFrames;
+    }
+
+    /** Moves to {@code frame}, clamped to {@code [0, totalFrames()]}. */
+    @Override
+    public void seek(long frame) {
+        positionFrames = Math.max(0L, Math.min(frame, totalFrames));
+    }
+
+    /**
+     * Returns a view of up to {@code maxBytes} bytes (whole frames, at least one) from the
+     * current position and advances past them. The view is reused by the next call and has
+     * nothing remaining at the end of the file.
+     */
+    @Override
+    public ByteBuffer next(int maxBytes) throws IOException {
+        long start = positionFrames * frameBytes;
+        long end = totalFrames * frameBytes;
+        if (start >= end) {
+            if (view != null) {
+                view.limit(view.position());
+                return view;
+            }
+            return ByteBuffer.allocate(0);
+        }
+        if (window == null || start < windowStart || start >= windowStart + window.capacity()) {
+            map(start - start % windowBytes);
+        }
+        int maxFrames = Math.max(1, maxBytes / frameBytes);
+        long windowEnd = windowStart + window.capacity();
+        long chunkEnd = Math.min(Math.min(start + (long) maxFrames * frameBytes, windowEnd), end);
+
+        view.clear();
+        view.position((int) (start - windowStart));
+        view.limit((int) (chunkEnd - windowStart));
+        positionFrames = chunkEnd / frameBytes;
+        return view;
+    }
+
+    @Override
+    public void close() throws IOException {
+        window = null;
+        view = null;
+        file.close();
+    }
+
+    private void map(long offset) throws IOException {
+        long length = Math.min(windowBytes, totalFrames * frameBytes - offset);
+        window = channel.map(FileChannel.MapMode.READ_ONLY, offset, length);
+        view = window.duplicate();
+        windowStart = offset;
+    }
+}
@@ -0,0 +1,414 @@
+package com.zgo.recordplayer.audio;
+
+import androidx.annotation.Nullable;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.FloatBuffer;
+import java.util.Arrays;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Runs a {@link FrameProcessor} per channel over interleaved multi-channel audio, one channel
+ * per thread, so stereo or array-mic capture is denoised channel by channel without the cost
+ * of every channel landing on one core.
+ *
+ * <p>A frame here is 10 ms of every channel, interleaved, PCM16 or float. For each batch,
+ * {@link #process} hands channels 1..n-1 to their worker threads and runs channel 0 itself;
+ * every lane deinterleaves its channel into a private buffer, runs its own processor over it
+ * and leaves the result there, and the calling thread interleaves the lanes' results once
+ * they are all done. Lanes only read shared memory, so they never write to the same cache
+ * lines. Each lane's processor is stateful and only ever sees its own channel.
+ *
+ * <p>Input and output may be at any rate that is a multiple of 100 Hz (8, 16, 44.1 kHz...),
+ * not necessarily the same. Each lane then resamples its channel to 48 kHz for the processor
+ * and from 48 kHz to the output rate in the same pass, with {@link Resampler}s that keep their
+ * state across batches, so every 10 ms input frame comes out as one 10 ms output frame; the
+ * filters delay the audio by a millisecond or two. Without a pool there is no processor and
+ * the lanes only convert the rate.
+ *
+ * <p>Workers park between batches and are unparked per batch; nothing is allocated per batch.
+ * Processors come from a {@link FrameProcessorPool} and go back to it on {@link #close()},
+ * unless a batch failed, in which case they are closed. Use it from one thread.
+ */
+public final class MultiChannelDenoiser implements AutoCloseable {
+
+    @Nullable
+    private final FrameProcessorPool pool;
+    private final boolean floatSamples;
+    private final int sampleBytes;
+    private final int channels;
+    private final int inputFrameSize;  // samples per channel in one input frame
+    private final int outputFrameSize; // samples per channel in one output frame
+    private final boolean converting;  // any stage runs on float arrays rather than the buffers
+    private final int maxFrames;
+    private final Lane[] lanes;
+
+    // The batch in progress, published to the workers by the volatile write of Lane.requested
+    private ByteBuffer batchIn;
+    private int batchOffset;
+    private int batchFrames;
+    private int sequence;
+    private volatile Thread caller;
+    private volatile boolean closed;
+    private boolean failed;
+
+    /**
+     * Takes {@code channels} processors from {@code pool} and starts {@code channels - 1}
+     * worker threads from {@code threads}, for 48 kHz batches of up to {@code maxFrames} frames.
+     */
+    public MultiChannelDenoiser(FrameProcessorPool pool, int channels, boolean floatSamples, int maxFrames,
+                                ThreadFactory threads) {
+        this(pool, channels, floatSamples, FrameProcessor.SAMPLE_RATE, FrameProcessor.SAMPLE_RATE, maxFrames, threads);
+    }
+
+    /**
+     * Like {@link #MultiChannelDenoiser(FrameProcessorPool, int, boolean, int, ThreadFactory)}
+     * for input at {@code inputRate} Hz and output at {@code outputRate} Hz. With a null
+     * {@code pool} nothing is denoised and the rate is only converted.
+     *
+     * @throws IllegalStateException if a rate has to be converted and the native resampler is unavailable
+     */
+    public MultiChannelDenoiser(@Nullable FrameProcessorPool pool, int channels, boolean floatSamples,
+                                int inputRate, int outputRate, int maxFrames, ThreadFactory threads) {
+        if (channels < 1 || maxFrames < 1) {
+            throw new IllegalArgumentException("channels and maxFrames must be >= 1");
+        }
+        if (inputRate <= 0 || outputRate <= 0 || inputRate % 100 != 0 || outputRate % 100 != 0) {
+            throw new IllegalArgumentException("Rates must be positive multiples of 100 Hz, got "
+                    + inputRate + " and " + outputRate);
+        }
+        this.pool = pool;
+        this.channels = channels;
+        this.floatSamples = floatSamples;
+        this.sampleBytes = floatSamples ? 4 : 2;
+        this.inputFrameSize = inputRate / 100;
+        this.outputFrameSize = outputRate / 100;
+        this.converting = pool == null || inputRate != FrameProcessor.SAMPLE_RATE
+                || outputRate != FrameProcessor.SAMPLE_RATE;
+        this.maxFrames = maxFrames;
+        boolean resampling = pool != null
+                ? inputRate != FrameProcessor.SAMPLE_RATE || outputRate != FrameProcessor.SAMPLE_RATE
+                : inputRate != outputRate;
+        if (resampling && !Resampler.isNativeAvailable()) {
+            throw new IllegalStateException("Resampler unavailable for " + inputRate + " -> " + outputRate + " Hz");
+        }
+        this.lanes = new Lane[channels];
+        try {
+            for (int c = 0; c < channels; c++) {
+                lanes[c] = new Lane(c, pool != null ? pool.acquire() : null, inputRate, outputRate);
+            }
+        } catch (RuntimeException | Error e) {
+            for (Lane lane : lanes) {
+                if (lane != null) lane.release(true);
+            }
+            throw e;
+        }
+        for (int c = 1; c < channels; c++) {
+            Thread thread = threads.newThread(lanes[c]);
+            thread.setDaemon(true);
+            lanes[c].thread = thread;
+            thread.start();
+        }
+    }
+
+    public int channels() {
+        return channels;
+    }
+
+    /** Whether the lanes run processors, as opposed to only converting the rate. */
+    public boolean isDenoising() {
+        return pool != null;
+    }
+
+    /** Bytes of one interleaved 10 ms input frame. */
+    public int inputFrameBytes() {
+        return channels * inputFrameSize * sampleBytes;
+    }
+
+    /** Bytes of one interleaved 10 ms output frame. */
+    public int outputFrameBytes() {
+        return channels * outputFrameSize * sampleBytes;
+    }
+
+    /** Total time the lanes' processors have spent denoising, in nanoseconds. */
+    public long denoiseNanos() {
+        long total = 0;
+        for (Lane lane : lanes) {
+            if (lane.processor != null) total += lane.processor.denoiseNanos();
+        }
+        return total;
+    }
+
+    /**
+     * Processes {@code frames} interleaved frames in {@code in}, from its position, and writes
+     * them interleaved to {@code out} from output frame {@code atFrame} (absolute; positions
+     * are left unchanged). Both buffers must be in native order. If {@code vadOut} is given, it
+     * receives the highest voice probability of any channel for each frame, or
+     * {@link FrameProcessor#VAD_UNAVAILABLE} when not denoising.
+     *
+     * @throws IllegalStateException if a lane's processor failed; the denoiser is unusable after it
+     */
+    public void process(ByteBuffer in, int frames, ByteBuffer out, int atFrame, @Nullable float[] vadOut) {
+        if (closed || failed) {
+            throw new IllegalStateException("MultiChannelDenoiser " + (closed ? "closed" : "failed"));
+        }
+        if (in.order() != ByteOrder.nativeOrder() || out.order() != ByteOrder.nativeOrder()) {
+            throw new IllegalArgumentException("Buffers must be in native byte order");
+        }
+        int outFrameBytes = outputFrameBytes();
+        if (frames < 0 || frames > maxFrames || in.remaining() < frames * inputFrameBytes()
+                || out.limit() < (atFrame + frames) * outFrameBytes || (vadOut != null && vadOut.length < frames)) {
+            throw new IllegalArgumentException(frames + " frames do not fit the buffers (max " + maxFrames + ")");
+        }
+        batchIn = in;
+        batchOffset = in.position();
+        batchFrames = frames;
+        int seq = ++sequence;
+        caller = Thread.currentThread();
+        for (int c = 1; c < channels; c++) {
+            lanes[c].requested = seq;
+            LockSupport.unpark(lanes[c].thread);
+        }
+        lanes[0].runBatch();
+        Throwable failure = lanes[0].failure;
+        for (int c = 1; c < channels; c++) {
+            Lane lane = lanes[c];
+            while (lane.completed != seq) {
+                LockSupport.park(this);
+            }
+            if (failure == null) failure = lane.failure;
+        }
+        batchIn = null;
+        if (failure != null) {
+            failed = true;
+            throw new IllegalStateException("Channel processing failed", failure);
+        }
+
+        interleave(out, atFrame * outFrameBytes, frames * outputFrameSize);
+        if (vadOut != null) {
+            for (int f = 0; f < frames; f++) {
+                float v = lanes[0].vad[f];
+                for (int c = 1; c < channels; c++) {
+                    v = Math.max(v, lanes[c].vad[f]);
+                }
+                vadOut[f] = v;
+            }
+        }
+    }
+
+    /** Stops the workers and returns the processors to the pool (closes them after a failure). */
+    @Override
+    public void close() {
+        if (closed) return;
+        closed = true;
+        for (int c = 1; c < channels; c++) {
+            LockSupport.unpark(lanes[c].thread);
+        }
+        boolean interrupted = false;
+        for (int c = 1; c < channels; c++) {
+            while (true) {
+                try {
+                    lanes[c].thread.join();
+                    break;
+                } catch (InterruptedException e) {
+                    interrupted = true;
+                }
+            }
+        }
+        for (Lane lane : lanes) {
+            lane.release(!failed);
+        }
+        if (interrupted) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private void interleave(ByteBuffer out, int byteOffset, int samplesPerChannel) {
+        final int stride = channels * sampleBytes;
+        for (int c = 0; c < channels; c++) {
+            ByteBuffer src = lanes[c].out;
+            int at = byteOffset + c * sampleBytes;
+            if (sampleBytes == 2) {
+                for (int i = 0; i < samplesPerChannel; i++, at += stride) {
+                    out.putShort(at, src.getShort(i * 2));
+                }
+            } else {
+                for (int i = 0; i < samplesPerChannel; i++, at += stride) {
+                    out.putInt(at, src.getInt(i * 4));
+                }
+            }
+        }
+    }
+
+    /**
+     * One channel: its processor, its resamplers, its private buffers and, for channels after
+     * the first, its thread.
+     */
+    private final class Lane implements Runnable {
+        final int channel;
+        @Nullable final FrameProcessor processor;
+        @Nullable final Resampler up;   // input rate to 48 kHz, or straight to the output rate without a processor
+        @Nullable final Resampler down; // 48 kHz to the output rate
+        final ByteBuffer in;
+        final ByteBuffer out;
+        final ByteBuffer decimated; // required by the processor API, not used
+        final FloatBuffer inFloats;
+        final FloatBuffer outFloats;
+        final FloatBuffer decimatedFloats;
+        final float[] vad = new float[maxFrames];
+        // Stages of the converting path, full scale at 1.0; one spare slot each for Resampler.maxOutputSize
+        final float[] samples;
+        final float[] at48k;
+        final float[] denoised;
+        final float[] decimatedArray;
+        final float[] resampled;
+        Thread thread;
+        volatile int requested;
+        volatile int completed;
+        Throwable failure;
+
+        Lane(int channel, @Nullable FrameProcessor processor, int inputRate, int outputRate) {
+            this.channel = channel;
+            this.processor = processor;
+            int inSamples = maxFrames * inputFrameSize;
+            int outSamples = maxFrames * outputFrameSize;
+            this.in = ByteBuffer.allocateDirect(inSamples * sampleBytes).order(ByteOrder.nativeOrder());
+            this.out = ByteBuffer.allocateDirect(outSamples * sampleBytes).order(ByteOrder.nativeOrder());
+            this.decimated = ByteBuffer.allocateDirect(FrameProcessor.maxDecimatedSamples(maxFrames) * sampleBytes)
+                    .order(ByteOrder.nativeOrder());
+            this.inFloats = in.asFloatBuffer();
+            this.outFloats = out.asFloatBuffer();
+            this.decimatedFloats = decimated.asFloatBuffer();
+            if (converting) {
+                int samples48k = maxFrames * FrameProcessor.FRAME_SIZE;
+                this.samples = new float[inSamples];
+                this.at48k = processor != null && inputRate != FrameProcessor.SAMPLE_RATE ? new float[samples48k + 1] : null;
+                this.denoised = processor != null ? new float[samples48k] : null;
+                this.decimatedArray = processor != null ? new float[FrameProcessor.maxDecimatedSamples(maxFrames)] : null;
+                this.resampled = new float[outSamples + 1];
+            } else {
+                this.samples = this.at48k = this.denoised = this.decimatedArray = this.resampled = null;
+            }
+            if (processor == null) {
+                Arrays.fill(vad, FrameProcessor.VAD_UNAVAILABLE);
+            }
+            int midRate = processor != null ? FrameProcessor.SAMPLE_RATE : outputRate;
+            Resampler upsampler = null;
+            Resampler downsampler = null;
+            try {
+                upsampler = inputRate != midRate ? Resampler.forRates(inputRate, midRate) : null;
+                downsampler = midRate != outputRate ? Resampler.forRates(midRate, outputRate) : null;
+            } catch (RuntimeException | Error e) {
+                if (upsampler != null) upsampler.close();
+                if (processor != null && pool != null) pool.release(processor);
+                throw e;
+            }
+            this.up = upsampler;
+            this.down = downsampler;
+        }
+
+        @Override
+        public void run() {
+            int seen = 0;
+            while (true) {
+                int seq;
+                while ((seq = requested) == seen && !closed) {
+                    LockSupport.park(MultiChannelDenoiser.this);
+                }
+                if (closed) return;
+                runBatch();
+                seen = seq;
+                completed = seq;
+                LockSupport.unpark(caller);
+            }
+        }
+
+        void runBatch() {
+            failure = null;
+            try {
+                int frames = batchFrames;
+                deinterleave(batchIn, batchOffset, frames * inputFrameSize);
+                if (converting) {
+                    convert(frames);
+                } else if (floatSamples) {
+                    processor.processFrames(inFloats, frames, outFloats, decimatedFloats, null, vad);
+                } else {
+                    processor.processFrames(in, frames, out, decimated, null, vad);
+                }
+            } catch (RuntimeException | Error e) {
+                // Reported by the calling thread; a worker must always complete its batch
+                failure = e;
+            }
+        }
+
+        /** Input rate -> 48 kHz -> processor -> output rate, through the float stages. */
+        private void convert(int frames) {
+            int inSamples = frames * inputFrameSize;
+            for (int i = 0; i < inSamples; i++) {
+                samples[i] = floatSamples ? in.getFloat(i * 4) : in.getShort(i * 2) / JavaFrameProcessor.FLOAT_SCALE;
+            }
+            float[] stage = samples;
+            int length = inSamples;
+            if (processor != null) {
+                if (up != null) {
+                    length = resample(up, stage, length, at48k, frames * FrameProcessor.FRAME_SIZE);
+                    stage = at48k;
+                }
+                processor.processFrames(stage, 0, frames, denoised, decimatedArray, null, vad);
+                stage = denoised;
+                if (down != null) {
+                    length = resample(down, stage, length, resampled, frames * outputFrameSize);
+                    stage = resampled;
+                }
+            } else if (up != null) {
+                length = resample(up, stage, length, resampled, frames * outputFrameSize);
+                stage = resampled;
+            }
+            for (int i = 0; i < length; i++) {
+                if (floatSamples) {
+                    out.putFloat(i * 4, stage[i]);
+                } else {
+                    out.putShort(i * 2, JavaFrameProcessor.floatToPcm16(stage[i] * JavaFrameProcessor.FLOAT_SCALE));
+                }
+            }
+        }
+
+        /** Whole 10 ms frames are whole resampler periods, so each one yields exactly {@code expected} samples. */
+        private int resample(Resampler resampler, float[] src, int length, float[] dst, int expected) {
+            int produced = resampler.process(src, 0, length, dst, 0);
+            if (produced != expected) {
+                throw new IllegalStateException("Resampler produced " + produced + " samples, expected " + expected);
+            }
+            return produced;
+        }
+
+        private void deinterleave(ByteBuffer src, int byteOffset, int samples) {
+            final int stride = channels * sampleBytes;
+            int at = byteOffset + channel * sampleBytes;
+            if (sampleBytes == 2) {
+                for (int i = 0; i < samples; i++, at += stride) {
+                    in.putShort(i * 2, src.getShort(at));
+                }
+            } else {
+                for (int i = 0; i < samples; i++, at += stride) {
+                    in.putInt(i * 4, src.getInt(at));
+                }
+            }
+        }
+
+        /** Returns the processor to the pool if {@code healthy}, otherwise closes it, and frees the resamplers. */
+        void release(boolean healthy) {
+            if (processor != null) {
+                if (healthy) {
+                    pool.release(processor);
+                } else {
+                    processor.close();
+                }
+            }
+            if (up != null) up.close();
+            if (down != null) down.close();
+        }
+    }
+}
@@ -0,0 +1,236 @@
+package com.zgo.recordplayer.audio;
+
+import androidx.annotation.Nullable;
+
+import java.io.File;
+import java.io.FileDescriptor;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+
+/**
+ * Append-only writer for headerless little-endian PCM files, built directly on a
+ * {@link FileChannel}.
+ *
+ * <p>Callers hand over direct buffers of native-order samples (what {@code AudioRecord.read(ByteBuffer, int)}
+ * and the frame processors produce); on little-endian devices they are written as-is with no
+ * copy, so a whole batch costs one {@code write}/{@code writev} syscall. Two-segment writes let
+ * a wrapped ring be flushed with a single gather write. File extents can be reserved ahead of
+ * the write position in large chunks; the file is truncated to the bytes actually written on
+ * {@link #close()}. Silence is skipped over rather than written, leaving a sparse hole.
+ */
+public final class PcmFileSink implements PcmSink {
+
+    /** Reserves disk space for {@code [offset, offset + length)} of an open file. */
+    public interface Preallocator {
+        void preallocate(FileDescriptor fd, long offset, long length) throws IOException;
+    }
+
+    /** 1 MiB, about 11 s of 48 kHz mono PCM16. */
+    public static final int DEFAULT_CHUNK_BYTES = 1 << 20;
+
+    private static final boolean NATIVE_IS_LITTLE_ENDIAN = ByteOrder.nativeOrder() == ByteOrder.LITTLE_ENDIAN;
+
+    private final FileOutputStream stream;
+    private final FileChannel channel;
+    private final long chunkBytes;
+    private final int sampleBytes;
+    private final ByteBuffer[] gather = new ByteBuffer[2];
+    @Nullable
+    private Preallocator preallocator;
+    @Nullable
+    private ByteBuffer swapBuffer; // big-endian hosts only
+
+    private long bytesWritten;
+    private long allocatedBytes;
+    private long writeCalls;
+    private boolean endsInHole;
+    private boolean closed;
+
+    /** Opens {@code file} for writing PCM16 without preallocation. */
+    public PcmFileSink(File file) throws IOException {
+        this(file, null, DEFAULT_CHUNK_BYTES);
+    }
+
+    /** Opens {@code file} for writing PCM16; see {@link #PcmFileSink(File, Preallocator, int, int)}. */
+    public PcmFileSink(File file, @Nullable Preallocator preallocator, int chunkBytes) throws IOException {
+        this(file, preallocator, chunkBytes, 2);
+    }
+
+    /**
+     * Opens (and truncates) {@code file}. When {@code preallocator} is non-null, extents are
+     * reserved {@code chunkBytes} at a time ahead of the write position; if it ever fails
+     * (e.g. the filesystem doesn't support it) preallocation is switched off for this file.
+     * {@code sampleBytes} is 2 for PCM16 and 4 for float32; big-endian hosts swap each sample
+     * at that width.
+     */
+    public PcmFileSink(File file, @Nullable Preallocator preallocator, int chunkBytes, int sampleBytes)
+            throws IOException {
+        if (chunkBytes <= 0) {
+            throw new IllegalArgumentException("chunkBytes must be > 0");
+        }
+        if (sampleBytes != 2 && sampleBytes != 4) {
+            throw new IllegalArgumentException("sampleBytes must be 2 or 4");
+        }
+        this.stream = new FileOutputStream(file);
+        this.channel = stream.getChannel();
+        this.preallocator = preallocator;
+        this.chunkBytes = chunkBytes;
+        this.sampleBytes = sampleBytes;
+    }
+
+    /** Writes {@code src} from its position to its limit and advances its position. */
+    @Override
+    public void write(ByteBuffer src) throws IOException {
+        write(src, null);
+    }
+
+    /**
+     * Writes {@code first} then {@code second} (each from position to limit) with one gather
+     * write, advancing their positions. {@code second} may be null or empty.
+     */
+    @Override
+    public void write(ByteBuffer first, @Nullable ByteBuffer second) throws IOException {
+        ensureOpen();
+        long length = first.remaining() + (second != null ? second.remaining() : 0);
+        if (length == 0) {
+            return;
+        }
+        reserve(bytesWritten + length);
+        if (!NATIVE_IS_LITTLE_ENDIAN) {
+            first = toLittleEndian(first, second);
+            second = null;
+        }
+        if (second == null || !second.hasRemaining()) {
+            while (first.hasRemaining()) {
+                channel.write(first);
+                writeCalls++;
+            }
+        } else {
+            gather[0] = first;
+            gather[1] = second;
+            long remaining = length;
+            while (remaining > 0) {
+                remaining -= channel.write(gather);
+                writeCalls++;
+            }
+            gather[0] = null;
+            gather[1] = null;
+        }
+        bytesWritten += length;
+        endsInHole = false;
+    }
+
+    /**
+     * Moves the write position {@code bytes} ahead without writing; the skipped range reads
+     * back as zeros and takes no disk space unless it was already preallocated.
+     */
+    @Override
+    public void writeSilence(long bytes) throws IOException {
+        ensureOpen();
+        if (bytes < 0) {
+            throw new IllegalArgumentException("bytes must be >= 0");
+        }
+        if (bytes == 0) {
+            return;
+        }
+        bytesWritten += bytes;
+        channel.position(bytesWritten);
+        // Preallocation resumes after the hole instead of filling it in
+        allocatedBytes = Math.max(allocatedBytes, bytesWritten);
+        endsInHole = true;
+    }
+
+    /** PCM bytes written so far; the file's final length. */
+    @Override
+    public long bytesWritten() {
+        return bytesWritten;
+    }
+
+    /** Write syscalls issued so far. */
+    @Override
+    public long writeCalls() {
+        return writeCalls;
+    }
+
+    public boolean isPreallocating() {
+        return preallocator != null;
+    }
+
+    /** Forces written data to storage. */
+    public void sync() throws IOException {
+        ensureOpen();
+        channel.force(false);
+    }
+
+    /** Drops any preallocated tail and closes the file. */
+    @Override
+    public void close() throws IOException {
+        if (closed) return;
+        closed = true;
+        try {
+            if (allocatedBytes > bytesWritten) {
+                channel.truncate(bytesWritten);
+            }
+            if (endsInHole && channel.size() < bytesWritten) {
+                // A hole at the end only counts toward the length once a byte is written after it
+                channel.write(ByteBuffer.allocate(1), bytesWritten - 1);
+                writeCalls++;
+            }
+        } finally {
+            stream.close();
+        }
+    }
+
+    private void reserve(long end) {
+        Preallocator p = preallocator;
+        if (p == null || end <= allocatedBytes) {
+            return;
+        }
+        long newEnd = (end + chunkBytes - 1) / chunkBytes * chunkBytes;
+        try {
+            p.preallocate(stream.getFD(), allocatedBytes, newEnd - allocatedBytes);
+            allocatedBytes = newEnd;
+        } catch (IOException e) {
+            // Best effort: plain writes still work, they just extend the file as they go
+            preallocator = null;
+        }
+    }
+
+    private ByteBuffer toLittleEndian(ByteBuffer first, @Nullable ByteBuffer second) {
+        int length = first.remaining() + (second != null ? second.remaining() : 0);
+        ByteBuffer swap = swapBuffer;
+        if (swap == null || swap.capacity() < length) {
+            swap = ByteBuffer.allocateDirect(length).order(ByteOrder.LITTLE_ENDIAN);
+            swapBuffer = swap;
+        }
+        swap.clear();
+        copySwapped(first, swap, sampleBytes);
+        if (second != null) {
+            copySwapped(second, swap, sampleBytes);
+        }
+        swap.flip();
+        return swap;
+    }
+
+    private static void copySwapped(ByteBuffer src, ByteBuffer dest, int sampleBytes) {
+        int bytes = src.remaining();
+        ByteBuffer from = src.duplicate().order(ByteOrder.nativeOrder());
+        // Swap whole samples: a float32 swapped as two shorts would have its halves exchanged
+        if (sampleBytes == 4) {
+            dest.asIntBuffer().put(from.asIntBuffer());
+        } else {
+            dest.asShortBuffer().put(from.asShortBuffer());
+        }
+        dest.position(dest.position() + bytes);
+        src.position(src.limit());
+    }
+
+    private void ensureOpen() {
+        if (closed) {
+            throw new IllegalStateException("PcmFileSink already closed");
+        }
+    }
+}
@@ -0,0 +1,32 @@
+package com.zgo.recordplayer.audio;
+
+import androidx.annotation.Nullable;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+
+/**
+ * Destination for recorded native-order PCM16 batches: raw ({@link PcmFileSink}) or
+ * compressed ({@link CompressedPcmSink}).
+ */
+public interface PcmSink extends Closeable {
+
+    /** Consumes {@code src} from its position to its limit and advances its position. */
+    void write(ByteBuffer src) throws IOException;
+
+    /** Consumes {@code first} then {@code second}; {@code second} may be null or empty. */
+    void write(ByteBuffer first, @Nullable ByteBuffer second) throws IOException;
+
+    /**
+     * Appends {@code bytes} of digital silence, stored as compactly as the format allows: a
+     * sparse hole in a raw file, constant blocks in a compressed one.
+     */
+    void writeSilence(long bytes) throws IOException;
+
+    /** Bytes written to the file so far. */
+    long bytesWritten();
+
+    /** Write syscalls issued so far. */
+    long writeCalls();
+}
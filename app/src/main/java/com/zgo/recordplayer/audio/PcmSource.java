@@ -0,0 +1,32 @@
+package com.zgo.recordplayer.audio;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+
+/**
+ * Seekable PCM16 reader for playback: a raw file ({@link MappedPcmSource}) or a compressed one
+ * ({@link CompressedPcmSource}). Positions are in frames (one sample per channel).
+ */
+public interface PcmSource extends Closeable {
+
+    /** Size of one frame in bytes. */
+    int frameBytes();
+
+    long totalFrames();
+
+    /** Frame index that the next {@link #next(int)} call starts at. */
+    long positionFrames();
+
+    boolean isAtEnd();
+
+    /** Moves to {@code frame}, clamped to {@code [0, totalFrames()]}. */
+    void seek(long frame);
+
+    /**
+     * Returns a view of up to {@code maxBytes} bytes of little-endian samples (whole frames, at
+     * least one) from the current position and advances past them. The view is reused by the
+     * next call and has nothing remaining at the end.
+     */
+    ByteBuffer next(int maxBytes) throws IOException;
+}
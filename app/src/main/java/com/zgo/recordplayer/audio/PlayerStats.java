@@ -0,0 +1,75 @@
+package com.zgo.recordplayer.audio;
+
+import java.util.Locale;
+
+/**
+ * Live counters and timing histograms of one playback session. Written by the playback thread
+ * only; {@link #snapshot()} is cheap enough to poll from a UI timer.
+ */
+public final class PlayerStats {
+
+    private volatile long bytesWritten;
+    private volatile long trackWrites;
+    private volatile int underruns;
+    private volatile int bufferFrames;
+    private final LatencyHistogram sourceReadLatency = new LatencyHistogram();
+    private final LatencyHistogram trackWriteLatency = new LatencyHistogram();
+
+    /** The source took {@code nanos} to produce the next chunk (a mapped slice or a decoded block). */
+    public void recordSourceRead(long nanos) {
+        sourceReadLatency.record(nanos);
+    }
+
+    /** A track write accepted {@code bytes} bytes after blocking for {@code nanos}. */
+    public void recordTrackWrite(int bytes, long nanos) {
+        trackWrites++;
+        if (bytes > 0) {
+            bytesWritten += bytes;
+        }
+        trackWriteLatency.record(nanos);
+    }
+
+    /** Latest {@code AudioTrack.getUnderrunCount()}: times the track ran dry since it was created. */
+    public void recordUnderrunCount(int count) {
+        underruns = count;
+    }
+
+    /** The track buffer now in use, in frames (changes when it is grown after underruns). */
+    public void recordBufferSize(int frames) {
+        bufferFrames = frames;
+    }
+
+    public Snapshot snapshot() {
+        return new Snapshot(this);
+    }
+
+    /** Point-in-time copy of a session's stats. */
+    public static final class Snapshot {
+        public static final Snapshot EMPTY = new Snapshot(new PlayerStats());
+
+        public final long bytesWritten;
+        public final long trackWrites;
+        /** Times the track starved, audible as glitches. */
+        public final int underruns;
+        /** Track buffer in use, in frames. */
+        public final int bufferFrames;
+        public final LatencyHistogram.Snapshot sourceReadLatency;
+        /** Time blocked in each track write; long waits are normal, they mean the track is full. */
+        public final LatencyHistogram.Snapshot trackWriteLatency;
+
+        private Snapshot(PlayerStats s) {
+            this.sourceReadLatency = s.sourceReadLatency.snapshot();
+            this.trackWriteLatency = s.trackWriteLatency.snapshot();
+            this.bytesWritten = s.bytesWritten;
+            this.trackWrites = s.trackWrites;
+            this.underruns = s.underruns;
+            this.bufferFrames = s.bufferFrames;
+        }
+
+        @Override
+        public String toString() {
+            return String.format(Locale.ROOT, "written=%d in %d writes underruns=%d buffer=%d read[%s] write[%s]",
+                    bytesWritten, trackWrites, underruns, bufferFrames, sourceReadLatency, trackWriteLatency);
+        }
+    }
+}
@@ -0,0 +1,191 @@
+package com.zgo.recordplayer.audio;
+
+import androidx.annotation.Nullable;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.Locale;
+
+/**
+ * Live counters and timing histograms of one recording session, for telling whether a device
+ * keeps up with real time.
+ *
+ * <p>The capture thread reports its AudioRecord reads and overruns, the writer thread its DSP
+ * batches and sink writes; each counter has a single writer, so recording costs a few plain
+ * stores and no locks. {@link #snapshot()} is cheap enough to poll from a UI timer.
+ */
+public final class RecorderStats {
+
+    private static final double FRAME_NANOS = 10_000_000.0;
+
+    // Capture thread
+    private volatile long readCalls;
+    private volatile long readShortfalls;
+    private volatile long bytesCaptured;
+    private volatile long overrunFrames;
+
+    // Writer thread
+    private volatile long framesProcessed;
+    private volatile long framesRaw;
+    private volatile long bytesWritten;
+    private final LatencyHistogram dspPerFrame = new LatencyHistogram();
+    private final LatencyHistogram denoisePerFrame = new LatencyHistogram();
+    private final LatencyHistogram writeLatency = new LatencyHistogram();
+
+    /** Capture thread: an AudioRecord read asked for {@code requestedBytes} and got {@code readBytes}. */
+    public void recordRead(int requestedBytes, int readBytes) {
+        readCalls++;
+        if (readBytes > 0) {
+            bytesCaptured += readBytes;
+        }
+        if (readBytes < requestedBytes) {
+            readShortfalls++;
+        }
+    }
+
+    /** Capture thread: {@code frames} captured frames were dropped because the writer was behind. */
+    public void recordOverrun(int frames) {
+        overrunFrames += frames;
+    }
+
+    /**
+     * Writer thread: a batch of {@code frames} frames went through the frame processor in
+     * {@code callNanos} (the whole JNI call), of which {@code denoiseNanos} were spent in the
+     * denoiser itself, or a negative value when not known.
+     */
+    public void recordBatch(int frames, long callNanos, long denoiseNanos) {
+        if (frames <= 0) return;
+        framesProcessed += frames;
+        dspPerFrame.record(callNanos / frames);
+        if (denoiseNanos >= 0) {
+            denoisePerFrame.record(denoiseNanos / frames);
+        }
+    }
+
+    /** Writer thread: {@code frames} frames were written without processing. */
+    public void recordRawFrames(int frames) {
+        framesRaw += frames;
+    }
+
+    /** Writer thread: a sink write of {@code bytes} bytes took {@code nanos}. */
+    public void recordWrite(long bytes, long nanos) {
+        bytesWritten += bytes;
+        writeLatency.record(nanos);
+    }
+
+    /** Wraps {@code sink} so every write and silence append is timed into this session. */
+    public PcmSink timing(PcmSink sink) {
+        return new TimedSink(sink);
+    }
+
+    public Snapshot snapshot() {
+        return new Snapshot(this);
+    }
+
+    /** Point-in-time copy of a session's stats. */
+    public static final class Snapshot {
+        public static final Snapshot EMPTY = new Snapshot(new RecorderStats());
+
+        /** AudioRecord reads issued. */
+        public final long readCalls;
+        /** Reads that returned fewer bytes than requested. */
+        public final long readShortfalls;
+        public final long bytesCaptured;
+        /** Captured frames dropped because the writer fell behind. */
+        public final long overrunFrames;
+        /** Frames that went through the frame processor. */
+        public final long framesProcessed;
+        /** Frames written without processing (denoiser off or failed). */
+        public final long framesRaw;
+        /** Bytes handed to the sink, silence included. */
+        public final long bytesWritten;
+        /** Frame processor call time per frame, JNI transitions included. */
+        public final LatencyHistogram.Snapshot dspPerFrame;
+        /** Time per frame spent inside the denoiser. */
+        public final LatencyHistogram.Snapshot denoisePerFrame;
+        /** Duration of each sink write. */
+        public final LatencyHistogram.Snapshot writeLatency;
+
+        private Snapshot(RecorderStats s) {
+            // Histograms first: counters are then at least as new as what the histograms hold
+            this.dspPerFrame = s.dspPerFrame.snapshot();
+            this.denoisePerFrame = s.denoisePerFrame.snapshot();
+            this.writeLatency = s.writeLatency.snapshot();
+            this.readCalls = s.readCalls;
+            this.readShortfalls = s.readShortfalls;
+            this.bytesCaptured = s.bytesCaptured;
+            this.overrunFrames = s.overrunFrames;
+            this.framesProcessed = s.framesProcessed;
+            this.framesRaw = s.framesRaw;
+            this.bytesWritten = s.bytesWritten;
+        }
+
+        /**
+         * Mean processing time as a fraction of real time (a frame every 10 ms); 1.0 or more
+         * means the device cannot keep up.
+         */
+        public double dspLoad() {
+            return dspPerFrame.meanNanos() / FRAME_NANOS;
+        }
+
+        /** Like {@link #dspLoad()} for the 99th percentile frame. */
+        public double dspLoadP99() {
+            return dspPerFrame.percentileNanos(99) / FRAME_NANOS;
+        }
+
+        @Override
+        public String toString() {
+            return String.format(Locale.ROOT,
+                    "frames=%d(+%d raw) load=%.3f(p99 %.3f) reads=%d short=%d overrun=%d written=%d"
+                            + " dsp[%s] denoise[%s] write[%s]",
+                    framesProcessed, framesRaw, dspLoad(), dspLoadP99(), readCalls, readShortfalls,
+                    overrunFrames, bytesWritten, dspPerFrame, denoisePerFrame, writeLatency);
+        }
+    }
+
+    private final class TimedSink implements PcmSink {
+        private final PcmSink sink;
+
+        TimedSink(PcmSink sink) {
+            this.sink = sink;
+        }
+
+        @Override
+        public void write(ByteBuffer src) throws IOException {
+            long bytes = src.remaining();
+            long begin = System.nanoTime();
+            sink.write(src);
+            recordWrite(bytes, System.nanoTime() - begin);
+        }
+
+        @Override
+        public void write(ByteBuffer first, @Nullable ByteBuffer second) throws IOException {
+            long bytes = first.remaining() + (second != null ? second.remaining() : 0);
+            long begin = System.nanoTime();
+            sink.write(first, second);
+            recordWrite(bytes, System.nanoTime() - begin);
+        }
+
+        @Override
+        public void writeSilence(long bytes) throws IOException {
+            long begin = System.nanoTime();
+            sink.writeSilence(bytes);
+            recordWrite(bytes, System.nanoTime() - begin);
+        }
+
+        @Override
+        public long bytesWritten() {
+            return sink.bytesWritten();
+        }
+
+        @Override
+        public long writeCalls() {
+            return sink.writeCalls();
+        }
+
+        @Override
+        public void close() throws IOException {
+            sink.close();
+        }
+    }
+}
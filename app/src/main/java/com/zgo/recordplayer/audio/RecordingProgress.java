@@ -0,0 +1,73 @@
+package com.zgo.recordplayer.audio;
+
+import java.io.InterruptedIOException;
+
+/**
+ * Write position of a recording in progress, published by the writer after each sink write so
+ * readers can follow the file while it grows ({@link TailingPcmSource},
+ * {@link TailingCompressedSource}).
+ *
+ * <p>The position counts bytes of the file that are complete: everything before it has been
+ * handed to the kernel and reads back as written (a raw sink's silence holes read as zeros), and
+ * a compressed file never ends mid-block there. Readers block in {@link #awaitBeyond} until the
+ * position passes theirs or the recording finishes; nothing polls the file system.
+ *
+ * <p>One writer, any number of readers on other threads.
+ */
+public final class RecordingProgress {
+
+    private volatile long committedBytes;
+    private volatile boolean finished;
+
+    /** The first {@code bytes} of the file are complete. Never moves backwards. */
+    public void commit(long bytes) {
+        if (bytes <= committedBytes) {
+            return;
+        }
+        synchronized (this) {
+            committedBytes = bytes;
+            notifyAll();
+        }
+    }
+
+    /** No more bytes will be committed: the sink is closed, or the recording failed. */
+    public void finish() {
+        synchronized (this) {
+            finished = true;
+            notifyAll();
+        }
+    }
+
+    public long committedBytes() {
+        return committedBytes;
+    }
+
+    public boolean isFinished() {
+        return finished;
+    }
+
+    /**
+     * Blocks until more than {@code bytes} are committed or the recording finishes.
+     *
+     * @return the committed position, {@code <= bytes} only once finished
+     * @throws InterruptedIOException if the thread is interrupted while waiting
+     */
+    public long awaitBeyond(long bytes) throws InterruptedIOException {
+        boolean done = finished; // read first: once finished, committedBytes is final
+        long committed = committedBytes;
+        if (committed > bytes || done) {
+            return committed;
+        }
+        synchronized (this) {
+            while ((committed = committedBytes) <= bytes && !finished) {
+                try {
+                    wait();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    throw new InterruptedIOException("Interrupted while waiting for the recording");
+                }
+            }
+            return committed;
+        }
+    }
+}
@@ -0,0 +1,162 @@
+package com.zgo.recordplayer.audio;
+
+/**
+ * Java wrapper around the native streaming rational resampler. Converts between any two
+ * sample rates whose ratio reduces to L/M (e.g. 48k to 8k, 16k, 24k or 44.1k and back)
+ * with a polyphase FIR, keeping filter state across calls so a stream can be fed in
+ * arbitrarily sized chunks.
+ *
+ * <p>The 48 kHz to 8 kHz case uses the same prototype filter as the decimator inside
+ * {@link RnnoiseProcessor} and produces identical output.
+ */
+public final class Resampler implements AutoCloseable {
+
+    private static final Throwable LOAD_ERROR;
+
+    static {
+        Throwable error = null;
+        try {
+            System.loadLibrary("rnnoise");
+        } catch (UnsatisfiedLinkError | SecurityException e) {
+            error = e;
+        }
+        LOAD_ERROR = error;
+    }
+
+    private long nativeHandle;
+    private final int upFactor;
+    private final int downFactor;
+
+    /**
+     * Creates a resampler for the ratio {@code upFactor / downFactor}, reduced by their gcd.
+     */
+    public Resampler(int upFactor, int downFactor) {
+        if (upFactor <= 0 || downFactor <= 0) {
+            throw new IllegalArgumentException("upFactor and downFactor must be > 0");
+        }
+        if (LOAD_ERROR != null) {
+            throw new IllegalStateException("librnnoise is not available", LOAD_ERROR);
+        }
+        int g = gcd(upFactor, downFactor);
+        this.upFactor = upFactor / g;
+        this.downFactor = downFactor / g;
+        this.nativeHandle = nativeCreate(this.upFactor, this.downFactor);
+        if (nativeHandle == 0L) {
+            throw new IllegalStateException("Failed to initialize resampler " + upFactor + ":" + downFactor);
+        }
+    }
+
+    /** Creates a resampler converting from {@code inputRate} Hz to {@code outputRate} Hz. */
+    public static Resampler forRates(int inputRate, int outputRate) {
+        return new Resampler(outputRate, inputRate);
+    }
+
+    /** Whether {@code librnnoise} was loaded; when false the constructor always throws. */
+    public static boolean isNativeAvailable() {
+        return LOAD_ERROR == null;
+    }
+
+    public int getUpFactor() {
+        return upFactor;
+    }
+
+    public int getDownFactor() {
+        return downFactor;
+    }
+
+    public boolean isReleased() {
+        return nativeHandle == 0L;
+    }
+
+    /**
+     * Upper bound on the number of samples a single {@code process} call with
+     * {@code inputLength} samples can produce; size output arrays with this.
+     */
+    public int maxOutputSize(int inputLength) {
+        return (int) ((long) inputLength * upFactor / downFactor) + 1;
+    }
+
+    /**
+     * Resamples {@code length} float samples.
+     *
+     * @return Number of samples written to {@code out} starting at {@code outOffset}.
+     */
+    public int process(float[] in, int inOffset, int length, float[] out, int outOffset) {
+        ensureOpen();
+        checkRange(in == null ? -1 : in.length, inOffset, length, "in");
+        checkRange(out == null ? -1 : out.length, outOffset, maxOutputSize(length), "out");
+        int result = nativeProcessFloat(nativeHandle, in, inOffset, length, out, outOffset);
+        if (result < 0) {
+            throw new IllegalStateException("Resampler native processing failed with code " + result);
+        }
+        return result;
+    }
+
+    /**
+     * Resamples {@code length} PCM16 samples; output is rounded and clamped to 16 bits.
+     *
+     * @return Number of samples written to {@code out} starting at {@code outOffset}.
+     */
+    public int process(short[] in, int inOffset, int length, short[] out, int outOffset) {
+        ensureOpen();
+        checkRange(in == null ? -1 : in.length, inOffset, length, "in");
+        checkRange(out == null ? -1 : out.length, outOffset, maxOutputSize(length), "out");
+        int result = nativeProcessShort(nativeHandle, in, inOffset, length, out, outOffset);
+        if (result < 0) {
+            throw new IllegalStateException("Resampler native processing failed with code " + result);
+        }
+        return result;
+    }
+
+    /** Clears the filter history so the next call starts a new stream. */
+    public void reset() {
+        ensureOpen();
+        nativeReset(nativeHandle);
+    }
+
+    @Override
+    public void close() {
+        release();
+    }
+
+    public void release() {
+        if (nativeHandle != 0L) {
+            nativeDestroy(nativeHandle);
+            nativeHandle = 0L;
+        }
+    }
+
+    private void ensureOpen() {
+        if (nativeHandle == 0L) {
+            throw new IllegalStateException("Resampler already released");
+        }
+    }
+
+    private static void checkRange(int arrayLength, int offset, int length, String name) {
+        if (arrayLength < 0) {
+            throw new IllegalArgumentException(name + " must not be null");
+        }
+        if (offset < 0 || length < 0 || arrayLength - offset < length) {
+            throw new IllegalArgumentException(name + " must hold " + length + " samples from offset " + offset);
+        }
+    }
+
+    private static int gcd(int a, int b) {
+        while (b != 0) {
+            int t = a % b;
+            a = b;
+            b = t;
+        }
+        return a;
+    }
+
+    private static native long nativeCreate(int up, int down);
+
+    private static native int nativeProcessFloat(long handle, float[] in, int inOffset, int length, float[] out, int outOffset);
+
+    private static native int nativeProcessShort(long handle, short[] in, int inOffset, int length, short[] out, int outOffset);
+
+    private static native void nativeReset(long handle);
+
+    private static native void nativeDestroy(long handle);
+}
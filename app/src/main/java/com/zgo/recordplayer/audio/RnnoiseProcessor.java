@@ -2,38 +2,74 @@ package com.zgo.recordplayer.audio;
 
 import androidx.annotation.Nullable;
 
+import java.nio.ByteBuffer;
+import java.nio.FloatBuffer;
+
 /**
  * Thin Java wrapper around the RNNoise JNI bridge that owns the native handle
- * and processes 10 ms (480-sample) frames of PCM16 audio.
+ * and processes 10 ms (480-sample) frames of PCM16 audio through an
+ * {@link AudioProcessingChain} compiled on the native side. PCM16 and float32
+ * ({@code ENCODING_PCM_FLOAT}) audio run through the same native frame loop; only the
+ * conversions at its edges differ.
  */
-public final class RnnoiseProcessor implements AutoCloseable {
-
-    public static final int FRAME_SIZE = 480; // samples @ 48 kHz => 10 ms
-    public static final int DECIMATED_FRAME_SIZE = FRAME_SIZE * 2 / 6; // 160 samples @ 8 kHz (20 ms window)
+public final class RnnoiseProcessor implements FrameProcessor {
 
+    @Nullable
+    private static final Throwable LOAD_ERROR;
 
     static {
-        System.loadLibrary("rnnoise");
+        Throwable error = null;
+        try {
+            System.loadLibrary("rnnoise");
+        } catch (UnsatisfiedLinkError | SecurityException e) {
+            error = e;
+        }
+        LOAD_ERROR = error;
     }
 
     private long nativeHandle;
-    private final boolean denoiserEnabled;
+    private final AudioProcessingChain chain;
 
 
     public RnnoiseProcessor(boolean enableDenoiser) {
-        this.denoiserEnabled = enableDenoiser;
-        this.nativeHandle = nativeCreate(enableDenoiser);
+        this(AudioProcessingChain.standard(enableDenoiser));
+    }
+
+    public RnnoiseProcessor(AudioProcessingChain chain) {
+        if (LOAD_ERROR != null) {
+            throw new IllegalStateException("librnnoise is not available", LOAD_ERROR);
+        }
+        this.chain = chain;
+        this.nativeHandle = nativeCreateChain(chain.ops(), chain.params());
         if (nativeHandle == 0L) {
-            throw new IllegalStateException("Failed to initialize RNNoise processor");
+            throw new IllegalStateException("Failed to initialize RNNoise processor for " + chain);
         }
     }
 
+    /** Whether {@code librnnoise} was loaded; when false the constructor always throws. */
+    public static boolean isNativeAvailable() {
+        return LOAD_ERROR == null;
+    }
+
+    @Override
     public boolean isReleased() {
         return nativeHandle == 0L;
     }
 
+    @Override
     public boolean isDenoiserEnabled() {
-        return denoiserEnabled;
+        return chain.hasDenoiser();
+    }
+
+    @Override
+    public long denoiseNanos() {
+        ensureOpen();
+        return nativeDenoiseNanos(nativeHandle);
+    }
+
+    /** The stages this processor runs. */
+    public AudioProcessingChain chain() {
+        return chain;
     }
 
 
@@ -44,28 +80,145 @@ public final class RnnoiseProcessor implements AutoCloseable {
      * @param denoisedOutput Optional array (length >= 480) that receives the denoised
      *                       48 kHz PCM16 output. Pass {@code null} to skip.
      * @param decimatedOut   Destination array (length >= 160) for the 8 kHz PCM16 output.
+     * @param vadOut         Optional array whose first element receives RNNoise's voice
+     *                       probability for this frame. Pass {@code null} to skip.
      * @return Number of 8 kHz samples written to {@code decimatedOut} (0 on the first call, 160 on the next).
      */
-    public int processFrame(short[] inputFrame, @Nullable short[] denoisedOutput, short[] decimatedOut) {
+    @Override
+    public int processFrame(short[] inputFrame, @Nullable short[] denoisedOutput, short[] decimatedOut,
+                            @Nullable float[] vadOut) {
         ensureOpen();
-        if (inputFrame == null || inputFrame.length != FRAME_SIZE) {
-            throw new IllegalArgumentException("inputFrame must be exactly " + FRAME_SIZE + " samples");
+        FrameProcessors.checkSingleFrame(inputFrame, denoisedOutput, decimatedOut, vadOut);
+        int result = nativeProcessFrame(nativeHandle, inputFrame, denoisedOutput, decimatedOut, vadOut);
+        if (result < 0) {
+            throw new IllegalStateException("RNNoise native processing failed with code " + result);
         }
-        if (decimatedOut == null || decimatedOut.length < DECIMATED_FRAME_SIZE) {
-            throw new IllegalArgumentException("decimatedOut must have length >= " + DECIMATED_FRAME_SIZE);
+        return result;
+    }
+
+    /**
+     * Processes {@code frameCount} consecutive 10 ms frames in a single JNI crossing; each
+     * frame is copied in and out of the arrays, which are never pinned across the processing.
+     *
+     * @see FrameProcessor#processFrames(short[], int, int, short[], short[], int[], float[])
+     */
+    @Override
+    public int processFrames(short[] in, int offset, int frameCount,
+                             @Nullable short[] denoisedOut, short[] decimatedOut,
+                             @Nullable int[] frameResults, @Nullable float[] vadOut) {
+        ensureOpen();
+        FrameProcessors.checkFrames(in, offset, frameCount, denoisedOut, decimatedOut, frameResults, vadOut);
+        if (frameCount == 0) {
+            return 0;
         }
-        if (denoisedOutput != null && denoisedOutput.length < FRAME_SIZE) {
-            throw new IllegalArgumentException("denoisedOutput must have length >= " + FRAME_SIZE);
+        int result = nativeProcessFrames(nativeHandle, in, offset, frameCount, denoisedOut, decimatedOut,
+                frameResults, vadOut);
+        if (result < 0) {
+            throw new IllegalStateException("RNNoise native processing failed with code " + result);
         }
-        int result = nativeProcessFrame(nativeHandle, inputFrame, denoisedOutput, decimatedOut);
+        return result;
+    }
+
+    /**
+     * Zero-copy variant of {@link #processFrame(short[], short[], short[])} operating on direct buffers.
+     * Equivalent to {@link #processFrames(ByteBuffer, int, ByteBuffer, ByteBuffer, int[], float[])}
+     * with a single frame.
+     *
+     * @return Number of 8 kHz samples written to {@code decimatedOut} (0 or 160).
+     */
+    @Override
+    public int processFrame(ByteBuffer in, @Nullable ByteBuffer denoisedOut, ByteBuffer decimatedOut) {
+        return processFrames(in, 1, denoisedOut, decimatedOut, null);
+    }
+
+    /**
+     * Zero-copy batch processing. All buffers must be direct: native code reads and writes
+     * their memory in place, so no sample data is copied across the JNI boundary.
+     *
+     * @see FrameProcessor#processFrames(ByteBuffer, int, ByteBuffer, ByteBuffer, int[], float[])
+     */
+    @Override
+    public int processFrames(ByteBuffer in, int frameCount, @Nullable ByteBuffer denoisedOut,
+                             ByteBuffer decimatedOut, @Nullable int[] frameResults, @Nullable float[] vadOut) {
+        ensureOpen();
+        FrameProcessors.checkFrames(in, frameCount, denoisedOut, decimatedOut, frameResults, vadOut, true);
+        if (frameCount == 0) {
+            return 0;
+        }
+        int result = nativeProcessFramesDirect(nativeHandle,
+                in, in.position(), frameCount,
+                denoisedOut, denoisedOut != null ? denoisedOut.position() : 0,
+                decimatedOut, decimatedOut.position(),
+                frameResults, vadOut);
+        if (result < 0) {
+            throw new IllegalStateException("RNNoise native processing failed with code " + result);
+        }
+        return result;
+    }
+
+    /**
+     * Float batch processing in a single JNI crossing, for {@code ENCODING_PCM_FLOAT} capture.
+     *
+     * @see FrameProcessor#processFrames(float[], int, int, float[], float[], int[], float[])
+     */
+    @Override
+    public int processFrames(float[] in, int offset, int frameCount,
+                             @Nullable float[] denoisedOut, float[] decimatedOut,
+                             @Nullable int[] frameResults, @Nullable float[] vadOut) {
+        ensureOpen();
+        FrameProcessors.checkFrames(in, offset, frameCount, denoisedOut, decimatedOut, frameResults, vadOut);
+        if (frameCount == 0) {
+            return 0;
+        }
+        int result = nativeProcessFramesFloat(nativeHandle, in, offset, frameCount, denoisedOut, decimatedOut,
+                frameResults, vadOut);
         if (result < 0) {
             throw new IllegalStateException("RNNoise native processing failed with code " + result);
         }
         return result;
     }
 
+    /**
+     * Zero-copy float batch processing. All buffers must be direct and in native byte order.
+     *
+     * @see FrameProcessor#processFrames(FloatBuffer, int, FloatBuffer, FloatBuffer, int[], float[])
+     */
+    @Override
+    public int processFrames(FloatBuffer in, int frameCount, @Nullable FloatBuffer denoisedOut,
+                             FloatBuffer decimatedOut, @Nullable int[] frameResults, @Nullable float[] vadOut) {
+        ensureOpen();
+        FrameProcessors.checkFrames(in, frameCount, denoisedOut, decimatedOut, frameResults, vadOut, true);
+        if (frameCount == 0) {
+            return 0;
+        }
+        int result = nativeProcessFramesFloatDirect(nativeHandle,
+                in, in.position() * 4, frameCount,
+                denoisedOut, denoisedOut != null ? denoisedOut.position() * 4 : 0,
+                decimatedOut, decimatedOut.position() * 4,
+                frameResults, vadOut);
+        if (result < 0) {
+            throw new IllegalStateException("RNNoise native processing failed with code " + result);
+        }
+        return result;
+    }
 
+    /**
+     * Upper bound on the 8 kHz samples a batch of {@code frameCount} frames can produce,
+     * i.e. the required capacity of a batch's {@code decimatedOut}.
+     */
+    public static int maxDecimatedSamples(int frameCount) {
+        return FrameProcessor.maxDecimatedSamples(frameCount);
+    }
 
+    /** Clears the native handle's stream state in place; much cheaper than a new processor. */
+    @Override
+    public void reset() {
+        ensureOpen();
+        int result = nativeReset(nativeHandle);
+        if (result < 0) {
+            throw new IllegalStateException("RNNoise native reset failed with code " + result);
+        }
+    }
 
     @Override
     public void close() {
@@ -85,9 +238,34 @@ public final class RnnoiseProcessor implements AutoCloseable {
         }
     }
 
-    private static native long nativeCreate(boolean enableDenoiser);
+    private static native long nativeCreateChain(int[] ops, float[] params);
+
+    private static native int nativeProcessFrame(long handle, short[] inputFrame, short[] denoisedOutput,
+                                                 short[] decimatedOutput, float[] vadOutput);
+
+    private static native int nativeProcessFrames(long handle, short[] in, int offset, int frameCount,
+                                                  short[] denoisedOut, short[] decimatedOut, int[] frameResults,
+                                                  float[] vadOut);
+
+    private static native int nativeProcessFramesDirect(long handle,
+                                                        ByteBuffer in, int inOffset, int frameCount,
+                                                        ByteBuffer denoisedOut, int denoisedOffset,
+                                                        ByteBuffer decimatedOut, int decimatedOffset,
+                                                        int[] frameResults, float[] vadOut);
+
+    private static native int nativeProcessFramesFloat(long handle, float[] in, int offset, int frameCount,
+                                                       float[] denoisedOut, float[] decimatedOut,
+                                                       int[] frameResults, float[] vadOut);
+
+    private static native int nativeProcessFramesFloatDirect(long handle,
+                                                             FloatBuffer in, int inOffset, int frameCount,
+                                                             FloatBuffer denoisedOut, int denoisedOffset,
+                                                             FloatBuffer decimatedOut, int decimatedOffset,
+                                                             int[] frameResults, float[] vadOut);
+
+    private static native int nativeReset(long handle);
 
-    private static native int nativeProcessFrame(long handle, short[] inputFrame, short[] denoisedOutput, short[] decimatedOutput);
+    private static native long nativeDenoiseNanos(long handle);
 
     private static native void nativeDestroy(long handle);
 }
@@ -0,0 +1,192 @@
+package com.zgo.recordplayer.audio;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * The ordered list of files a segmented recording ({@link SegmentedPcmSink}) was split into, so
+ * they can be listed, copied or processed one by one and joined back without gaps.
+ *
+ * <p>Stored as a few lines of text next to the segments:
+ * <pre>
+ * segments 1
+ * format 48000 1 pcm16
+ * segment 0 2880000 1843571 rec_1-0001.zlac
+ * segment 2880000 1120320 702113 rec_1-0002.zlac
+ * complete
+ * </pre>
+ * The format line gives the sample rate, channel count and sample type ({@code pcm16} or
+ * {@code float}); each segment line its first sample and sample count (per channel, counted
+ * from the start of the take), its size in bytes and its file name, relative to the manifest.
+ * The manifest is rewritten, by atomic rename, each time a segment is finished, so it only ever
+ * lists complete files; {@code complete} is added once the recording has ended.
+ */
+public final class SegmentManifest {
+
+    /** Suffix of manifest files. */
+    public static final String FILE_SUFFIX = ".segments";
+
+    private static final int VERSION = 1;
+
+    /** One finished segment. */
+    public static final class Segment {
+        public final String name;
+        public final long startSample;
+        public final long samples;
+        public final long bytes;
+
+        public Segment(String name, long startSample, long samples, long bytes) {
+            if (name.isEmpty() || name.indexOf('\n') >= 0 || startSample < 0 || samples < 0 || bytes < 0) {
+                throw new IllegalArgumentException("Invalid segment " + name + " at " + startSample);
+            }
+            this.name = name;
+            this.startSample = startSample;
+            this.samples = samples;
+            this.bytes = bytes;
+        }
+
+        /** The segment's file, which sits next to {@code manifest}. */
+        public File file(File manifest) {
+            return new File(manifest.getParentFile(), name);
+        }
+
+        @Override
+        public String toString() {
+            return name + " [" + startSample + ", +" + samples + ")";
+        }
+    }
+
+    private final int sampleRate;
+    private final int channels;
+    private final boolean floatSamples;
+    private final List<Segment> segments = new ArrayList<>();
+    private boolean complete;
+
+    public SegmentManifest(int sampleRate, int channels, boolean floatSamples) {
+        if (sampleRate <= 0 || channels <= 0) {
+            throw new IllegalArgumentException("sampleRate and channels must be > 0");
+        }
+        this.sampleRate = sampleRate;
+        this.channels = channels;
+        this.floatSamples = floatSamples;
+    }
+
+    /**
+     * Reads the manifest at {@code file}.
+     *
+     * @throws IOException if it cannot be read or is not a segment manifest
+     */
+    public static SegmentManifest read(File file) throws IOException {
+        try (BufferedReader reader = new BufferedReader(
+                new InputStreamReader(new FileInputStream(file), StandardCharsets.UTF_8))) {
+            String header = reader.readLine();
+            String[] format = split(reader.readLine(), 4);
+            if (header == null || !header.equals("segments " + VERSION) || format == null || !format[0].equals("format")
+                    || !(format[3].equals("pcm16") || format[3].equals("float"))) {
+                throw new IOException("Not a segment manifest: " + file);
+            }
+            SegmentManifest manifest;
+            try {
+                manifest = new SegmentManifest(Integer.parseInt(format[1]), Integer.parseInt(format[2]),
+                        format[3].equals("float"));
+                String line;
+                while ((line = reader.readLine()) != null) {
+                    String[] fields = split(line, 5);
+                    if (line.equals("complete")) {
+                        manifest.complete = true;
+                    } else if (fields != null && fields[0].equals("segment")) {
+                        manifest.add(new Segment(fields[4], Long.parseLong(fields[1]), Long.parseLong(fields[2]),
+                                Long.parseLong(fields[3])));
+                    } else if (!line.isEmpty()) {
+                        throw new IOException("Unexpected line in " + file + ": " + line);
+                    }
+                }
+            } catch (IllegalArgumentException e) { // NumberFormatException included
+                throw new IOException("Corrupt segment manifest: " + file, e);
+            }
+            return manifest;
+        }
+    }
+
+    /**
+     * Writes the manifest to {@code file} through a temporary file that replaces it, so a reader
+     * sees either the previous list or the new one.
+     */
+    public void write(File file) throws IOException {
+        File temp = new File(file.getParentFile(), file.getName() + ".tmp");
+        try (FileOutputStream out = new FileOutputStream(temp)) {
+            Writer writer = new OutputStreamWriter(out, StandardCharsets.UTF_8);
+            writer.write("segments " + VERSION + "\n");
+            writer.write("format " + sampleRate + " " + channels + " " + (floatSamples ? "float" : "pcm16") + "\n");
+            for (Segment s : segments) {
+                writer.write("segment " + s.startSample + " " + s.samples + " " + s.bytes + " " + s.name + "\n");
+            }
+            if (complete) {
+                writer.write("complete\n");
+            }
+            writer.flush();
+            out.getFD().sync();
+        }
+        if (!temp.renameTo(file)) {
+            temp.delete();
+            throw new IOException("Failed to replace " + file);
+        }
+    }
+
+    /** Appends {@code segment}, which must start where the previous one ended. */
+    public void add(Segment segment) {
+        long expected = totalSamples();
+        if (segment.startSample != expected) {
+            throw new IllegalArgumentException(segment + " does not start at sample " + expected);
+        }
+        segments.add(segment);
+    }
+
+    public void markComplete() {
+        complete = true;
+    }
+
+    /** Whether the recording has ended; until then more segments may follow. */
+    public boolean isComplete() {
+        return complete;
+    }
+
+    public List<Segment> segments() {
+        return Collections.unmodifiableList(segments);
+    }
+
+    /** Samples per channel in all listed segments. */
+    public long totalSamples() {
+        if (segments.isEmpty()) return 0;
+        Segment last = segments.get(segments.size() - 1);
+        return last.startSample + last.samples;
+    }
+
+    public int sampleRate() {
+        return sampleRate;
+    }
+
+    public int channels() {
+        return channels;
+    }
+
+    public boolean isFloat() {
+        return floatSamples;
+    }
+
+    private static String[] split(String line, int fields) {
+        if (line == null) return null;
+        String[] parts = line.split(" ", fields);
+        return parts.length == fields ? parts : null;
+    }
+}
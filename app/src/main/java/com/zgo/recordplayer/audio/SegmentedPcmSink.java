@@ -0,0 +1,337 @@
+package com.zgo.recordplayer.audio;
+
+import androidx.annotation.Nullable;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.nio.ByteBuffer;
+import java.util.Locale;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Splits one recording into a series of files of bounded duration or size, listed in order by
+ * a {@link SegmentManifest}, so an all-day take never becomes one multi-gigabyte file and
+ * finished segments can be copied or processed while the recording goes on.
+ *
+ * <p>The base file {@code rec.pcm} becomes {@code rec-0001.pcm}, {@code rec-0002.pcm}, ... and
+ * the manifest {@code rec.segments}. Each segment is a complete file of the base's format with
+ * its own waveform index, if the {@link Opener} provides one.
+ *
+ * <p>Writes go to the current segment. The caller checks {@link #isDue()} between batches and
+ * calls {@link #rotate} to move on; the next segment has already been opened by then, so
+ * rotating only swaps references and the writer never waits for the file system. Everything
+ * else happens on a background finalizer thread, in order: opening the segment after the next
+ * one, closing the finished segment and its index, adding it to the manifest and telling the
+ * {@link Listener}. Rotating at batch boundaries, a segment overshoots its limit by less than
+ * one batch. Use it from one thread.
+ */
+public final class SegmentedPcmSink implements PcmSink {
+
+    /** Opens the files of one segment; called on the finalizer thread, except for the first one. */
+    public interface Opener {
+        PcmSink openSink(File segment) throws IOException;
+
+        /** @return the segment's waveform index, or null to record it without one */
+        @Nullable
+        WaveformIndexWriter openIndex(File segment);
+    }
+
+    /** Told about every finished segment, in order, on the finalizer thread. */
+    public interface Listener {
+        void onSegmentFinished(File segment, SegmentManifest.Segment info);
+    }
+
+    private final File directory;
+    private final String stem;
+    private final String suffix;
+    private final File manifestFile;
+    private final Opener opener;
+    private final int bytesPerSample; // one sample of every channel
+    private final long maxPcmBytes;   // 0 = no duration limit
+    private final long maxFileBytes;  // 0 = no size limit
+    @Nullable
+    private final Listener listener;
+    private final ExecutorService finalizer;
+
+    // Finalizer thread only
+    private final SegmentManifest manifest;
+
+    private Open current;
+    private Future<Open> next;
+    private long segmentPcmBytes;
+    private long segmentStartSample;
+    private long finishedBytes;
+    private long finishedWriteCalls;
+    private volatile IOException failure;
+    private boolean closed;
+
+    /**
+     * Opens the first segment of the recording named by {@code base} and starts preparing the
+     * second. A segment ends once it holds {@code maxSegmentMillis} of audio or
+     * {@code maxSegmentBytes} on disk, whichever comes first; 0 disables either limit.
+     *
+     * @param threads creates the finalizer thread
+     */
+    public SegmentedPcmSink(File base, Opener opener, int sampleRate, int channels, boolean floatSamples,
+                            long maxSegmentMillis, long maxSegmentBytes, ThreadFactory threads,
+                            @Nullable Listener listener) throws IOException {
+        if (maxSegmentMillis < 0 || maxSegmentBytes < 0 || (maxSegmentMillis == 0 && maxSegmentBytes == 0)) {
+            throw new IllegalArgumentException("Need a segment duration or size limit, got "
+                    + maxSegmentMillis + " ms and " + maxSegmentBytes + " bytes");
+        }
+        this.directory = base.getAbsoluteFile().getParentFile();
+        String name = base.getName();
+        int dot = name.lastIndexOf('.');
+        this.stem = dot > 0 ? name.substring(0, dot) : name;
+        this.suffix = dot > 0 ? name.substring(dot) : "";
+        this.manifestFile = manifestFor(base);
+        this.opener = opener;
+        this.bytesPerSample = channels * (floatSamples ? 4 : 2);
+        this.maxPcmBytes = maxSegmentMillis * sampleRate / 1000 * bytesPerSample;
+        this.maxFileBytes = maxSegmentBytes;
+        this.listener = listener;
+        this.manifest = new SegmentManifest(sampleRate, channels, floatSamples);
+
+        this.current = open(1);
+        try {
+            manifest.write(manifestFile);
+        } catch (IOException e) {
+            discard(current);
+            throw e;
+        }
+        this.finalizer = Executors.newSingleThreadExecutor(threads);
+        this.next = finalizer.submit(() -> open(2));
+    }
+
+    /** The manifest of the recording named by {@code base}. */
+    public static File manifestFor(File base) {
+        String name = base.getName();
+        int dot = name.lastIndexOf('.');
+        return new File(base.getAbsoluteFile().getParentFile(),
+                (dot > 0 ? name.substring(0, dot) : name) + SegmentManifest.FILE_SUFFIX);
+    }
+
+    public File manifestFile() {
+        return manifestFile;
+    }
+
+    /** The current segment's waveform index, or null if it has none. */
+    @Nullable
+    public WaveformIndexWriter currentIndex() {
+        return current.index;
+    }
+
+    /** Whether the current segment has reached a limit; {@link #rotate} it before the next write. */
+    public boolean isDue() {
+        if (segmentPcmBytes == 0) return false;
+        return (maxPcmBytes > 0 && segmentPcmBytes >= maxPcmBytes)
+                || (maxFileBytes > 0 && current.sink.bytesWritten() >= maxFileBytes);
+    }
+
+    /**
+     * Hands the current segment and its index to the finalizer and continues in the next one.
+     * The caller stops using the old index; if it already closed it after a failure, that is fine.
+     *
+     * @return the new segment's waveform index, or null if it has none
+     * @throws IOException if the next segment could not be opened or an earlier segment failed to finish
+     */
+    @Nullable
+    public WaveformIndexWriter rotate() throws IOException {
+        ensureOpen();
+        Open following = await(next);
+        Open finished = current;
+        long samples = segmentPcmBytes / bytesPerSample;
+        long start = segmentStartSample;
+        finishedBytes += finished.sink.bytesWritten();
+        finishedWriteCalls += finished.sink.writeCalls();
+        current = following;
+        segmentStartSample += samples;
+        segmentPcmBytes = 0;
+        int number = following.number + 1;
+        finalizer.execute(() -> finalizeSegment(finished, start, samples));
+        next = finalizer.submit(() -> open(number));
+        return current.index;
+    }
+
+    /**
+     * Finishes the last segment and its index, discards the prepared next one and marks the
+     * manifest complete, waiting for the finalizer. A last segment without audio is dropped.
+     *
+     * @throws IOException if any segment failed to finish
+     */
+    @Override
+    public void close() throws IOException {
+        if (closed) return;
+        closed = true;
+        Open last = current;
+        long samples = segmentPcmBytes / bytesPerSample;
+        long start = segmentStartSample;
+        Future<Open> unused = next;
+        finalizer.execute(() -> {
+            if (samples > 0 || manifest.segments().isEmpty()) {
+                finalizeSegment(last, start, samples);
+            } else {
+                discard(last);
+            }
+            try {
+                discard(unused.get());
+            } catch (ExecutionException | InterruptedException ignored) {
+                // Never opened, nothing to remove
+            }
+            manifest.markComplete();
+            try {
+                manifest.write(manifestFile);
+            } catch (IOException e) {
+                fail(e);
+            }
+        });
+        finalizer.shutdown();
+        boolean interrupted = false;
+        while (true) {
+            try {
+                if (finalizer.awaitTermination(1, TimeUnit.MINUTES)) break;
+            } catch (InterruptedException e) {
+                interrupted = true;
+            }
+        }
+        if (interrupted) {
+            Thread.currentThread().interrupt();
+        }
+        if (failure != null) {
+            throw failure;
+        }
+    }
+
+    @Override
+    public void write(ByteBuffer src) throws IOException {
+        ensureOpen();
+        int bytes = src.remaining();
+        current.sink.write(src);
+        segmentPcmBytes += bytes;
+    }
+
+    @Override
+    public void write(ByteBuffer first, @Nullable ByteBuffer second) throws IOException {
+        ensureOpen();
+        int bytes = first.remaining() + (second != null ? second.remaining() : 0);
+        current.sink.write(first, second);
+        segmentPcmBytes += bytes;
+    }
+
+    @Override
+    public void writeSilence(long bytes) throws IOException {
+        ensureOpen();
+        current.sink.writeSilence(bytes);
+        segmentPcmBytes += bytes;
+    }
+
+    /** Bytes written to all segments so far. */
+    @Override
+    public long bytesWritten() {
+        return finishedBytes + current.sink.bytesWritten();
+    }
+
+    @Override
+    public long writeCalls() {
+        return finishedWriteCalls + current.sink.writeCalls();
+    }
+
+    private Open open(int number) throws IOException {
+        File file = new File(directory, String.format(Locale.ROOT, "%s-%04d%s", stem, number, suffix));
+        PcmSink sink = opener.openSink(file);
+        return new Open(number, file, sink, opener.openIndex(file));
+    }
+
+    /** Finalizer thread: closes a finished segment and lists it in the manifest. */
+    private void finalizeSegment(Open segment, long start, long samples) {
+        try {
+            segment.sink.close();
+        } catch (IOException e) {
+            fail(e);
+            return;
+        }
+        closeIndex(segment.index);
+        SegmentManifest.Segment info = new SegmentManifest.Segment(segment.file.getName(), start, samples,
+                segment.file.length());
+        manifest.add(info);
+        try {
+            manifest.write(manifestFile);
+        } catch (IOException e) {
+            fail(e);
+            return;
+        }
+        if (listener != null) {
+            listener.onSegmentFinished(segment.file, info);
+        }
+    }
+
+    /** Finalizer thread: closes and deletes a segment that never received audio. */
+    private static void discard(Open segment) {
+        try {
+            segment.sink.close();
+        } catch (IOException ignored) {
+        }
+        closeIndex(segment.index);
+        segment.file.delete();
+        WaveformIndex.sidecarFor(segment.file).delete();
+    }
+
+    private static void closeIndex(@Nullable WaveformIndexWriter index) {
+        if (index == null) return;
+        try {
+            index.close();
+        } catch (IOException ignored) {
+            // The index is optional; the segment itself is complete
+        }
+    }
+
+    private void fail(IOException e) {
+        if (failure == null) {
+            failure = e;
+        }
+    }
+
+    private Open await(Future<Open> future) throws IOException {
+        if (failure != null) {
+            throw failure;
+        }
+        try {
+            return future.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted while opening the next segment");
+        } catch (ExecutionException e) {
+            Throwable cause = e.getCause();
+            if (cause instanceof IOException) throw (IOException) cause;
+            throw new IOException("Failed to open the next segment", cause);
+        }
+    }
+
+    private void ensureOpen() {
+        if (closed) {
+            throw new IllegalStateException("SegmentedPcmSink already closed");
+        }
+    }
+
+    /** An opened segment: its number, file, sink and optional index. */
+    private static final class Open {
+        final int number;
+        final File file;
+        final PcmSink sink;
+        @Nullable
+        final WaveformIndexWriter index;
+
+        Open(int number, File file, PcmSink sink, @Nullable WaveformIndexWriter index) {
+            this.number = number;
+            this.file = file;
+            this.sink = sink;
+            this.index = index;
+        }
+    }
+}
@@ -0,0 +1,170 @@
+package com.zgo.recordplayer.audio;
+
+import java.util.Arrays;
+
+/**
+ * Lightweight spectral-subtraction denoiser used by {@link JavaFrameProcessor} when RNNoise is
+ * unavailable. Works on 480-sample hops with a 960-sample sqrt-Hann window (1024-point FFT,
+ * 50% overlap-add), tracks the noise floor per bin and applies an over-subtraction gain on
+ * the time-smoothed power. Like RNNoise it delays the signal by one frame. All buffers are preallocated.
+ */
+final class SpectralSubtractor {
+
+    private static final int HOP = FrameProcessor.FRAME_SIZE;
+    private static final int WINDOW = HOP * 2;
+    private static final int FFT_SIZE = 1024;
+    private static final int BINS = FFT_SIZE / 2 + 1;
+
+    private static final int NOISE_INIT_FRAMES = 10;   // frames assumed to be noise at start
+    private static final float NOISE_GATE = 4f;        // power above GATE * noise counts as signal
+    private static final float NOISE_ADAPT = 0.02f;    // noise tracking below the gate (~0.5 s)
+    private static final float NOISE_DRIFT = 0.001f;   // slow tracking above the gate (~10 s)
+    private static final float POWER_SMOOTHING = 0.5f;
+    private static final float OVER_SUBTRACTION = 2f;
+    private static final float GAIN_FLOOR = 0.12f;
+    private static final float GAIN_RELEASE = 0.7f;    // limits how fast the gain may fall
+    private static final float EPS = 1e-9f;
+
+    // Voice probability: logistic on the 300-3400 Hz SNR, 50% at VAD_MID_DB
+    private static final int SPEECH_LOW_BIN = 300 * FFT_SIZE / 48000;
+    private static final int SPEECH_HIGH_BIN = 3400 * FFT_SIZE / 48000;
+    private static final float VAD_MID_DB = 6f;
+    private static final float VAD_SLOPE_DB = 2f;
+
+    private final float[] window = new float[WINDOW];
+    private final float[] cos = new float[FFT_SIZE / 2];
+    private final float[] sin = new float[FFT_SIZE / 2];
+    private final int[] bitReverse = new int[FFT_SIZE];
+
+    private final float[] input = new float[WINDOW];   // previous hop followed by current hop
+    private final float[] overlap = new float[HOP];
+    private final float[] re = new float[FFT_SIZE];
+    private final float[] im = new float[FFT_SIZE];
+    private final float[] noise = new float[BINS];
+    private final float[] power = new float[BINS];  // per-bin power smoothed over time
+    private final float[] gain = new float[BINS];
+    private int frames;
+    private float voiceProbability;
+
+    SpectralSubtractor() {
+        for (int i = 0; i < WINDOW; i++) {
+            // Periodic sqrt-Hann: analysis * synthesis windows sum to 1 at 50% overlap
+            window[i] = (float) Math.sin(Math.PI * i / WINDOW);
+        }
+        for (int i = 0; i < FFT_SIZE / 2; i++) {
+            cos[i] = (float) Math.cos(2.0 * Math.PI * i / FFT_SIZE);
+            sin[i] = (float) Math.sin(2.0 * Math.PI * i / FFT_SIZE);
+        }
+        int bits = Integer.numberOfTrailingZeros(FFT_SIZE);
+        for (int i = 0; i < FFT_SIZE; i++) {
+            bitReverse[i] = Integer.reverse(i) >>> (32 - bits);
+        }
+        reset();
+    }
+
+    void reset() {
+        Arrays.fill(input, 0f);
+        Arrays.fill(overlap, 0f);
+        Arrays.fill(noise, 0f);
+        Arrays.fill(power, 0f);
+        Arrays.fill(gain, 1f);
+        frames = 0;
+        voiceProbability = 0f;
+    }
+
+    /** Voice activity estimate for the last processed hop, in [0, 1]; 0 while learning the noise. */
+    float voiceProbability() {
+        return voiceProbability;
+    }
+
+    /** Denoises one 480-sample hop in place (output is delayed by one hop). */
+    void process(float[] frame) {
+        System.arraycopy(input, HOP, input, 0, HOP);
+        System.arraycopy(frame, 0, input, HOP, HOP);
+
+        for (int i = 0; i < WINDOW; i++) {
+            re[i] = input[i] * window[i];
+        }
+        Arrays.fill(re, WINDOW, FFT_SIZE, 0f);
+        Arrays.fill(im, 0f);
+        fft(false);
+
+        boolean learning = frames < NOISE_INIT_FRAMES;
+        float speechPower = 0f;
+        float speechNoise = 0f;
+        for (int k = 0; k < BINS; k++) {
+            float p = re[k] * re[k] + im[k] * im[k];
+            float n = noise[k];
+            if (k >= SPEECH_LOW_BIN && k <= SPEECH_HIGH_BIN) {
+                speechPower += p;
+                speechNoise += n; // estimate before this hop's update
+            }
+            if (learning) {
+                n += (p - n) / (frames + 1);
+            } else if (p < NOISE_GATE * n) {
+                n += NOISE_ADAPT * (p - n);
+            } else {
+                n += NOISE_DRIFT * (p - n);
+            }
+            noise[k] = n;
+            float ps = power[k] + POWER_SMOOTHING * (p - power[k]);
+            power[k] = ps;
+
+            float g = 1f - OVER_SUBTRACTION * n / (ps + EPS);
+            if (g < GAIN_FLOOR) g = GAIN_FLOOR;
+            float released = gain[k] * GAIN_RELEASE;
+            if (g < released) g = released;
+            gain[k] = g;
+
+            re[k] *= g;
+            im[k] *= g;
+            if (k > 0 && k < FFT_SIZE / 2) {
+                re[FFT_SIZE - k] *= g;
+                im[FFT_SIZE - k] *= g;
+            }
+        }
+        frames++;
+        if (learning) {
+            voiceProbability = 0f;
+        } else {
+            float snrDb = 10f * (float) Math.log10((speechPower + EPS) / (speechNoise + EPS));
+            voiceProbability = 1f / (1f + (float) Math.exp((VAD_MID_DB - snrDb) / VAD_SLOPE_DB));
+        }
+
+        fft(true);
+        final float scale = 1f / FFT_SIZE;
+        for (int i = 0; i < HOP; i++) {
+            frame[i] = overlap[i] + re[i] * scale * window[i];
+            overlap[i] = re[HOP + i] * scale * window[HOP + i];
+        }
+    }
+
+    /** In-place iterative radix-2 FFT over {@link #re}/{@link #im}. */
+    private void fft(boolean inverse) {
+        for (int i = 0; i < FFT_SIZE; i++) {
+            int j = bitReverse[i];
+            if (i < j) {
+                float t = re[i]; re[i] = re[j]; re[j] = t;
+                t = im[i]; im[i] = im[j]; im[j] = t;
+            }
+        }
+        for (int size = 2; size <= FFT_SIZE; size <<= 1) {
+            int half = size >> 1;
+            int step = FFT_SIZE / size;
+            for (int start = 0; start < FFT_SIZE; start += size) {
+                for (int k = 0; k < half; k++) {
+                    float wr = cos[k * step];
+                    float wi = inverse ? sin[k * step] : -sin[k * step];
+                    int a = start + k;
+                    int b = a + half;
+                    float tr = wr * re[b] - wi * im[b];
+                    float ti = wr * im[b] + wi * re[b];
+                    re[b] = re[a] - tr;
+                    im[b] = im[a] - ti;
+                    re[a] += tr;
+                    im[a] += ti;
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,236 @@
+package com.zgo.recordplayer.audio;
+
+import java.io.EOFException;
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.util.Arrays;
+
+/**
+ * Reader for a compressed recording that a {@link CompressedPcmSink} is still writing: the
+ * counterpart of {@link TailingPcmSource} for the block format described on
+ * {@link CompressedPcmSource}.
+ *
+ * <p>The sink writes whole blocks, so the {@link RecordingProgress} it publishes always falls on
+ * a block boundary. Block headers are read as the position advances past them and kept in a
+ * table for seeking back; {@link #next(int)} waits for the recorder when playback reaches the
+ * last committed block, and reports the end once the recording has finished. Each block is read
+ * once when it is decoded, with positional reads; nothing is mapped, since the file keeps
+ * growing.
+ *
+ * <p>The file header is checked against the expected format when the first block arrives. Not
+ * thread-safe; use it from the playback thread.
+ */
+public final class TailingCompressedSource implements PcmSource {
+
+    private final RandomAccessFile file;
+    private final FileChannel channel;
+    private final int sampleRate;
+    private final int channels;
+    private final RecordingProgress progress;
+
+    // Block table, extended as headers are read
+    private long[] blockOffsets = new long[64];
+    private long[] blockStarts = new long[65]; // first frame of each block, plus the total at the end
+    private int blockCount;
+    private long scannedBytes; // file offset of the first block header not read yet
+    private long seenBytes;    // committed position that has been scanned up to
+    private int blockFrames;   // from the file header, 0 until it has been read
+
+    private final ByteBuffer header = ByteBuffer.allocate(CompressedPcmSource.FILE_HEADER_BYTES)
+            .order(ByteOrder.LITTLE_ENDIAN);
+    private ByteBuffer payload;
+    private LosslessBlockCodec codec;
+    private final LosslessBlockCodec.BitReader reader = new LosslessBlockCodec.BitReader();
+    private int[][] samples;
+    private ByteBuffer decoded;
+    private ByteBuffer view;
+    private int decodedBlock = -1;
+    private long positionFrames;
+
+    /** Opens {@code compressedFile}, which must already exist, for PCM16 at the given format. */
+    public TailingCompressedSource(File compressedFile, int sampleRate, int channels,
+                                   RecordingProgress progress) throws IOException {
+        if (sampleRate <= 0 || channels < 1 || channels > CompressedPcmSource.MAX_CHANNELS) {
+            throw new IllegalArgumentException("Unsupported format: " + sampleRate + " Hz, " + channels + " channels");
+        }
+        if (progress == null) {
+            throw new IllegalArgumentException("progress must be non-null");
+        }
+        this.sampleRate = sampleRate;
+        this.channels = channels;
+        this.progress = progress;
+        this.file = new RandomAccessFile(compressedFile, "r");
+        this.channel = file.getChannel();
+    }
+
+    @Override
+    public int frameBytes() {
+        return channels * 2;
+    }
+
+    /** Frames in the blocks read so far; grows as playback follows the recording. */
+    @Override
+    public long totalFrames() {
+        return blockStarts[blockCount];
+    }
+
+    @Override
+    public long positionFrames() {
+        return positionFrames;
+    }
+
+    /** True once the recording has finished and every committed block has been read. */
+    @Override
+    public boolean isAtEnd() {
+        return progress.isFinished() && seenBytes >= progress.committedBytes()
+                && positionFrames >= totalFrames();
+    }
+
+    /** Moves to {@code frame}, clamped to the blocks read so far. */
+    @Override
+    public void seek(long frame) {
+        positionFrames = Math.max(0L, Math.min(frame, totalFrames()));
+    }
+
+    /**
+     * Returns decoded frames from the current position, never crossing a block boundary, waiting
+     * for the recorder if the next block is not committed yet. The view is reused by the next
+     * call and has nothing remaining once the finished recording has been read to its end.
+     */
+    @Override
+    public ByteBuffer next(int maxBytes) throws IOException {
+        while (positionFrames >= totalFrames()) {
+            long committed = progress.awaitBeyond(seenBytes);
+            if (committed <= seenBytes) {
+                if (view == null) {
+                    return ByteBuffer.allocate(0);
+                }
+                view.limit(view.position());
+                return view;
+            }
+            scan(committed);
+            seenBytes = committed;
+        }
+        int block = decodedBlock >= 0 && positionFrames >= blockStarts[decodedBlock]
+                && positionFrames < blockStarts[decodedBlock + 1] ? decodedBlock : blockOf(positionFrames);
+        if (block != decodedBlock) {
+            decodedBlock = -1;
+            decode(block);
+            decodedBlock = block;
+        }
+        int frameBytes = frameBytes();
+        int first = (int) (positionFrames - blockStarts[block]);
+        int available = (int) (blockStarts[block + 1] - positionFrames);
+        int frames = Math.min(Math.max(1, maxBytes / frameBytes), available);
+        view.limit(decoded.capacity());
+        view.position(first * frameBytes);
+        view.limit((first + frames) * frameBytes);
+        positionFrames += frames;
+        return view;
+    }
+
+    @Override
+    public void close() throws IOException {
+        file.close();
+    }
+
+    /** Reads the file header if needed, then every block header before {@code committed}. */
+    private void scan(long committed) throws IOException {
+        if (blockFrames == 0) {
+            if (committed < CompressedPcmSource.FILE_HEADER_BYTES) {
+                return;
+            }
+            readHeader();
+            scannedBytes = CompressedPcmSource.FILE_HEADER_BYTES;
+        }
+        ByteBuffer blockHeader = header;
+        while (committed - scannedBytes >= CompressedPcmSource.BLOCK_HEADER_BYTES) {
+            blockHeader.clear().limit(CompressedPcmSource.BLOCK_HEADER_BYTES);
+            readFully(blockHeader, scannedBytes);
+            int sync = blockHeader.getShort(0) & 0xffff;
+            int frames = blockHeader.getShort(2) & 0xffff;
+            long length = blockHeader.getInt(4) & 0xFFFFFFFFL;
+            if (sync != CompressedPcmSource.BLOCK_SYNC || frames == 0 || frames > blockFrames
+                    || length > committed - scannedBytes - CompressedPcmSource.BLOCK_HEADER_BYTES) {
+                throw new IOException("Damaged block at offset " + scannedBytes);
+            }
+            if (blockCount == blockOffsets.length) {
+                blockOffsets = Arrays.copyOf(blockOffsets, blockCount * 2);
+                blockStarts = Arrays.copyOf(blockStarts, blockCount * 2 + 1);
+            }
+            blockOffsets[blockCount] = scannedBytes;
+            blockStarts[blockCount + 1] = blockStarts[blockCount] + frames;
+            blockCount++;
+            scannedBytes += CompressedPcmSource.BLOCK_HEADER_BYTES + length;
+        }
+    }
+
+    private void readHeader() throws IOException {
+        header.clear();
+        readFully(header, 0);
+        if (header.getInt(0) != CompressedPcmSource.MAGIC) {
+            throw new IOException("Not a compressed recording");
+        }
+        int version = header.get(4) & 0xff;
+        if (version != CompressedPcmSource.VERSION) {
+            throw new IOException("Unsupported compressed recording version " + version);
+        }
+        int fileChannels = header.get(5) & 0xff;
+        int bits = header.getShort(6) & 0xffff;
+        int rate = header.getInt(8);
+        int frames = header.getInt(12);
+        if (fileChannels != channels || bits != 16 || rate != sampleRate
+                || frames < 1 || frames > CompressedPcmSource.MAX_BLOCK_FRAMES) {
+            throw new IOException("Recording is " + fileChannels + " ch at " + rate + " Hz, expected "
+                    + channels + " ch at " + sampleRate + " Hz");
+        }
+        blockFrames = frames;
+        codec = new LosslessBlockCodec(frames);
+        samples = new int[channels][frames];
+        payload = ByteBuffer.allocate(frames * channels * 2 + 64);
+        decoded = ByteBuffer.allocateDirect(frames * channels * 2).order(ByteOrder.LITTLE_ENDIAN);
+        view = decoded.duplicate();
+        view.limit(0);
+    }
+
+    private void decode(int block) throws IOException {
+        long offset = blockOffsets[block] + CompressedPcmSource.BLOCK_HEADER_BYTES;
+        long end = block + 1 < blockCount ? blockOffsets[block + 1] : scannedBytes;
+        int length = (int) (end - offset);
+        if (payload.capacity() < length) {
+            payload = ByteBuffer.allocate(length);
+        }
+        payload.clear().limit(length);
+        readFully(payload, offset);
+        int frames = (int) (blockStarts[block + 1] - blockStarts[block]);
+        reader.reset(payload, 0, length);
+        for (int[] channel : samples) {
+            codec.decode(reader, frames, channel);
+        }
+        decoded.clear();
+        for (int i = 0; i < frames; i++) {
+            for (int[] channel : samples) {
+                decoded.putShort((short) channel[i]);
+            }
+        }
+    }
+
+    private void readFully(ByteBuffer dst, long offset) throws IOException {
+        while (dst.hasRemaining()) {
+            int read = channel.read(dst, offset);
+            if (read < 0) {
+                throw new EOFException("Recording shorter than its committed position");
+            }
+            offset += read;
+        }
+    }
+
+    private int blockOf(long frame) {
+        int index = Arrays.binarySearch(blockStarts, 0, blockCount, frame);
+        return index >= 0 ? index : -index - 2;
+    }
+}
@@ -0,0 +1,122 @@
+package com.zgo.recordplayer.audio;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+
+/**
+ * Reader for a headerless PCM file that a {@link PcmFileSink} is still writing, for playing the
+ * start of a recording while the rest is captured.
+ *
+ * <p>It never looks past the {@link RecordingProgress} published by the writer: the file's own
+ * size means nothing while the sink preallocates ahead of the write position. {@link #next(int)}
+ * blocks until at least one frame beyond the current position is committed, so playback simply
+ * waits for the recorder when it catches up with it, and reports the end once the recording has
+ * finished and everything committed has been read. Each byte is read once, with a positional
+ * read into a reusable direct buffer; a silence hole past the current end of the file reads as
+ * zeros.
+ *
+ * <p>{@link #totalFrames()} grows with the recording. Not thread-safe; use it from the playback
+ * thread. Interrupting that thread makes a waiting {@link #next(int)} throw
+ * {@link java.io.InterruptedIOException}.
+ */
+public final class TailingPcmSource implements PcmSource {
+
+    private final RandomAccessFile file;
+    private final FileChannel channel;
+    private final int frameBytes;
+    private final RecordingProgress progress;
+
+    private ByteBuffer buffer; // reused by next(), grown to the largest request
+    private long positionFrames;
+
+    /**
+     * Opens {@code pcmFile}, which must already exist, where {@code frameBytes} is the size of one
+     * frame (channels multiplied by bytes per sample).
+     */
+    public TailingPcmSource(File pcmFile, int frameBytes, RecordingProgress progress) throws IOException {
+        if (frameBytes <= 0) {
+            throw new IllegalArgumentException("frameBytes must be > 0");
+        }
+        if (progress == null) {
+            throw new IllegalArgumentException("progress must be non-null");
+        }
+        this.frameBytes = frameBytes;
+        this.progress = progress;
+        this.file = new RandomAccessFile(pcmFile, "r");
+        this.channel = file.getChannel();
+    }
+
+    @Override
+    public int frameBytes() {
+        return frameBytes;
+    }
+
+    /** Frames committed so far; final once the recording has finished. */
+    @Override
+    public long totalFrames() {
+        return progress.committedBytes() / frameBytes;
+    }
+
+    @Override
+    public long positionFrames() {
+        return positionFrames;
+    }
+
+    /** True once the recording has finished and every committed frame has been read. */
+    @Override
+    public boolean isAtEnd() {
+        return progress.isFinished() && positionFrames >= totalFrames();
+    }
+
+    /** Moves to {@code frame}, clamped to the frames committed so far. */
+    @Override
+    public void seek(long frame) {
+        positionFrames = Math.max(0L, Math.min(frame, totalFrames()));
+    }
+
+    /**
+     * Returns up to {@code maxBytes} bytes (whole frames, at least one) from the current position,
+     * waiting for the recorder if it has not committed them yet. The buffer is reused by the next
+     * call and has nothing remaining once the finished recording has been read to its end.
+     */
+    @Override
+    public ByteBuffer next(int maxBytes) throws IOException {
+        long start = positionFrames * frameBytes;
+        long committed = progress.awaitBeyond(start + frameBytes - 1);
+        long end = committed / frameBytes * frameBytes;
+        int maxFrames = Math.max(1, maxBytes / frameBytes);
+        if (buffer == null || buffer.capacity() < maxFrames * frameBytes) {
+            buffer = ByteBuffer.allocateDirect(maxFrames * frameBytes);
+        }
+        buffer.clear();
+        if (end <= start) {
+            buffer.limit(0);
+            return buffer;
+        }
+        buffer.limit((int) Math.min(end - start, (long) maxFrames * frameBytes));
+        long offset = start;
+        while (buffer.hasRemaining()) {
+            int read = channel.read(buffer, offset);
+            if (read < 0) {
+                // Silence the sink skipped at the end of the file; it is only extended on close
+                while (buffer.hasRemaining()) {
+                    buffer.put((byte) 0);
+                }
+                break;
+            }
+            offset += read;
+        }
+        buffer.flip();
+        positionFrames += buffer.remaining() / frameBytes;
+        return buffer;
+    }
+
+    @Override
+    public void close() throws IOException {
+        buffer = null;
+        file.close();
+    }
+}
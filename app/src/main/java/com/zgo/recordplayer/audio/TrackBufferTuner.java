@@ -0,0 +1,71 @@
+package com.zgo.recordplayer.audio;
+
+/**
+ * Grows an AudioTrack's buffer (via {@code setBufferSizeInFrames}) when it underruns: each time
+ * the track's cumulative underrun count goes up, the size grows by one step, up to the track's
+ * capacity. A track that keeps up stays at its initial, lowest-latency size.
+ *
+ * <p>Fed from the playback thread after every write; not thread-safe.
+ */
+public final class TrackBufferTuner {
+
+    /** Returned by {@link #onUnderrunCount(int)} when the size should stay as it is. */
+    public static final int UNCHANGED = -1;
+
+    private final int stepFrames;
+    private final int capacityFrames;
+    private int sizeFrames;
+    private int lastUnderruns;
+    private int growths;
+
+    /**
+     * @param initialFrames  the size the track starts with
+     * @param stepFrames     growth per underrun episode
+     * @param capacityFrames upper bound, the track's {@code getBufferCapacityInFrames()}
+     */
+    public TrackBufferTuner(int initialFrames, int stepFrames, int capacityFrames) {
+        if (initialFrames <= 0 || stepFrames <= 0 || capacityFrames < initialFrames) {
+            throw new IllegalArgumentException("need 0 < initialFrames <= capacityFrames and stepFrames > 0");
+        }
+        this.sizeFrames = initialFrames;
+        this.stepFrames = stepFrames;
+        this.capacityFrames = capacityFrames;
+    }
+
+    /**
+     * Reports the track's current {@code getUnderrunCount()}.
+     *
+     * @return the new buffer size to set in frames, or {@link #UNCHANGED}
+     */
+    public int onUnderrunCount(int underruns) {
+        if (underruns <= lastUnderruns) {
+            return UNCHANGED;
+        }
+        lastUnderruns = underruns;
+        if (sizeFrames >= capacityFrames) {
+            return UNCHANGED;
+        }
+        sizeFrames = Math.min(capacityFrames, sizeFrames + stepFrames);
+        growths++;
+        return sizeFrames;
+    }
+
+    /**
+     * Takes the size the track actually applied, which {@code setBufferSizeInFrames} may round;
+     * the next growth starts from there.
+     */
+    public void onSizeApplied(int frames) {
+        if (frames > 0) {
+            sizeFrames = Math.min(capacityFrames, frames);
+        }
+    }
+
+    public int sizeFrames() {
+        return sizeFrames;
+    }
+
+    /** Times the buffer was grown. */
+    public int growths() {
+        return growths;
+    }
+}
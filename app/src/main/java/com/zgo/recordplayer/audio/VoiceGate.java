@@ -0,0 +1,183 @@
+package com.zgo.recordplayer.audio;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+
+/**
+ * Voice-activity gate for recordings: passes speech frames through and holds back the
+ * stretches between them, so a take that is mostly silence is mostly not written.
+ *
+ * <p>A frame whose voice probability reaches the threshold opens the gate. It stays open for
+ * {@code hangoverFrames} after the last voiced frame, so word endings and short pauses survive,
+ * and on reopening it first releases the {@code preRollFrames} frames that preceded the onset,
+ * so the first syllable is not clipped. Every other frame is reported to
+ * {@link Output#silence(int)} as a run length, where the caller drops it or writes a marker.
+ * Frames without a voice estimate ({@link FrameProcessor#VAD_UNAVAILABLE}) always pass.
+ *
+ * <p>Passing frames are handed on as slices of the caller's batch; only frames held while
+ * the gate is closed are copied, into a preallocated pre-roll ring. Not thread-safe; use it
+ * from the writer thread.
+ */
+public final class VoiceGate {
+
+    /** Receives the gate's decisions in stream order. */
+    public interface Output {
+        /**
+         * Frames that passed: {@code frames} from position to limit holds whole frames, whose
+         * voice probabilities start at {@code vad[vadOffset]}.
+         */
+        void frames(ByteBuffer frames, float[] vad, int vadOffset) throws IOException;
+
+        /** {@code frameCount} frames were gated out at this point in the stream. */
+        void silence(int frameCount) throws IOException;
+    }
+
+    /** RNNoise's usual speech/non-speech split. */
+    public static final float DEFAULT_THRESHOLD = 0.5f;
+
+    private final int frameBytes;
+    private final float threshold;
+    private final int hangoverFrames;
+    private final int preRollFrames;
+    private final ByteBuffer preRoll;
+    private final float[] preRollVad;
+
+    private int preRollStart;   // oldest held frame
+    private int preRollCount;
+    private int silentRun;      // frames gated out and not yet reported
+    private int hangoverLeft;
+    private boolean open;
+    private long passedFrames;
+    private long gatedFrames;
+
+    public VoiceGate(int frameBytes, float threshold, int hangoverFrames, int preRollFrames) {
+        if (frameBytes <= 0 || hangoverFrames < 0 || preRollFrames < 0) {
+            throw new IllegalArgumentException("frameBytes must be > 0, hangover and pre-roll >= 0");
+        }
+        if (!(threshold >= 0f && threshold <= 1f)) {
+            throw new IllegalArgumentException("threshold must be in [0, 1]");
+        }
+        this.frameBytes = frameBytes;
+        this.threshold = threshold;
+        this.hangoverFrames = hangoverFrames;
+        this.preRollFrames = preRollFrames;
+        this.preRoll = ByteBuffer.allocateDirect(preRollFrames * frameBytes).order(ByteOrder.nativeOrder());
+        this.preRollVad = new float[preRollFrames];
+    }
+
+    /**
+     * Gates {@code frameCount} whole frames of {@code batch} starting at its position, with
+     * voice probabilities from {@code vad[0]}. The batch's position and limit are left unchanged.
+     */
+    public void process(ByteBuffer batch, int frameCount, float[] vad, Output out) throws IOException {
+        if (batch.remaining() < frameCount * frameBytes || vad.length < frameCount) {
+            throw new IllegalArgumentException("batch and vad must hold " + frameCount + " frames");
+        }
+        final int base = batch.position();
+        int runStart = -1; // first frame of the current passing run in this batch
+        for (int f = 0; f < frameCount; f++) {
+            float p = vad[f];
+            boolean voiced = p == FrameProcessor.VAD_UNAVAILABLE || p >= threshold;
+            if (voiced) {
+                if (!open) {
+                    reopen(out);
+                }
+                hangoverLeft = hangoverFrames;
+            } else if (open && hangoverLeft > 0) {
+                hangoverLeft--;
+            } else {
+                open = false;
+                if (runStart >= 0) {
+                    out.frames(slice(batch, base + runStart * frameBytes, base + f * frameBytes), vad, runStart);
+                    runStart = -1;
+                }
+                hold(batch, base + f * frameBytes, p);
+                continue;
+            }
+            if (runStart < 0) {
+                runStart = f;
+            }
+            passedFrames++;
+        }
+        if (runStart >= 0) {
+            out.frames(slice(batch, base + runStart * frameBytes, base + frameCount * frameBytes), vad, runStart);
+        }
+    }
+
+    /** Reports the frames still held back at the end of the stream as silence. */
+    public void finish(Output out) throws IOException {
+        int pending = silentRun + preRollCount;
+        gatedFrames += preRollCount;
+        silentRun = 0;
+        preRollCount = 0;
+        preRollStart = 0;
+        if (pending > 0) {
+            out.silence(pending);
+        }
+    }
+
+    public boolean isOpen() {
+        return open;
+    }
+
+    /** Frames passed so far, pre-roll included. */
+    public long passedFrames() {
+        return passedFrames;
+    }
+
+    /** Frames reported as silence so far. */
+    public long gatedFrames() {
+        return gatedFrames;
+    }
+
+    /** Keeps a closed-gate frame in the pre-roll ring, evicting the oldest into the silent run. */
+    private void hold(ByteBuffer batch, int offset, float p) {
+        if (preRollFrames == 0) {
+            silentRun++;
+            gatedFrames++;
+            return;
+        }
+        int slot;
+        if (preRollCount == preRollFrames) {
+            slot = preRollStart;
+            preRollStart = (preRollStart + 1) % preRollFrames;
+            silentRun++;
+            gatedFrames++;
+        } else {
+            slot = (preRollStart + preRollCount) % preRollFrames;
+            preRollCount++;
+        }
+        ByteBuffer dest = preRoll.duplicate();
+        dest.position(slot * frameBytes);
+        dest.put(slice(batch, offset, offset + frameBytes));
+        preRollVad[slot] = p;
+    }
+
+    /** Speech onset: reports the silence before it, then releases the pre-roll oldest first. */
+    private void reopen(Output out) throws IOException {
+        open = true;
+        if (silentRun > 0) {
+            out.silence(silentRun);
+            silentRun = 0;
+        }
+        if (preRollCount > 0) {
+            int firstEnd = Math.min(preRollFrames, preRollStart + preRollCount);
+            out.frames(slice(preRoll, preRollStart * frameBytes, firstEnd * frameBytes), preRollVad, preRollStart);
+            int wrapped = preRollCount - (firstEnd - preRollStart);
+            if (wrapped > 0) {
+                out.frames(slice(preRoll, 0, wrapped * frameBytes), preRollVad, 0);
+            }
+            passedFrames += preRollCount;
+            preRollCount = 0;
+            preRollStart = 0;
+        }
+    }
+
+    private static ByteBuffer slice(ByteBuffer buffer, int from, int to) {
+        ByteBuffer dup = buffer.duplicate().order(buffer.order());
+        dup.limit(to);
+        dup.position(from);
+        return dup;
+    }
+}
@@ -0,0 +1,217 @@
+package com.zgo.recordplayer.audio;
+
+import java.io.Closeable;
+import java.io.EOFException;
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+
+/**
+ * Reader for the multi-resolution peak/RMS sidecar that {@link WaveformIndexWriter} produces
+ * next to a recording, so a waveform or a loudness/voice overview of a long file can be drawn
+ * from a few kilobytes instead of scanning the raw PCM.
+ *
+ * <p>File layout (little-endian): a header, then each level's blocks back to back.
+ * <pre>
+ *   0  "WFIX"
+ *   4  u16 version (1)        6  u16 level count
+ *   8  u32 sample rate       12  u32 flags (bit 0: complete)
+ *  16  u64 total samples
+ *  24  per level: u32 samples per block, u32 block count, u64 data offset
+ * </pre>
+ * Each block is 8 bytes: s16 min, s16 max, s16 RMS (0-32767), u8 peak voice probability
+ * (0-254 scaled to [0, 1], 255 unknown) and one reserved byte. Level 0 is streamed while
+ * recording; coarser levels are appended when the writer is closed. If the recorder died
+ * before that, the file is reported as incomplete and only level 0 (sized from the file
+ * length) is available.
+ */
+public final class WaveformIndex implements Closeable {
+
+    /** Appended to the recording's file name to form the sidecar's name. */
+    public static final String FILE_SUFFIX = ".idx";
+
+    static final int MAGIC = 'W' | 'F' << 8 | 'I' << 16 | 'X' << 24;
+    static final int VERSION = 1;
+    static final int FIXED_HEADER_BYTES = 24;
+    static final int LEVEL_HEADER_BYTES = 16;
+    static final int BLOCK_BYTES = 8;
+    static final int FLAG_COMPLETE = 1;
+    static final int VAD_UNKNOWN = 255;
+    static final int VAD_SCALE = 254;
+
+    private final RandomAccessFile file;
+    private final FileChannel channel;
+    private final int sampleRate;
+    private final long totalSamples;
+    private final boolean complete;
+    private final int[] blockSamples;
+    private final int[] blockCounts;
+    private final long[] offsets;
+
+    /** The sidecar path for {@code recording}. */
+    public static File sidecarFor(File recording) {
+        return new File(recording.getPath() + FILE_SUFFIX);
+    }
+
+    /** Opens and validates an index written by {@link WaveformIndexWriter}. */
+    public static WaveformIndex open(File indexFile) throws IOException {
+        RandomAccessFile raf = new RandomAccessFile(indexFile, "r");
+        try {
+            return new WaveformIndex(raf);
+        } catch (IOException | RuntimeException e) {
+            raf.close();
+            throw e;
+        }
+    }
+
+    private WaveformIndex(RandomAccessFile raf) throws IOException {
+        this.file = raf;
+        this.channel = raf.getChannel();
+        ByteBuffer fixed = readFully(0, FIXED_HEADER_BYTES);
+        if (fixed.getInt(0) != MAGIC) {
+            throw new IOException("Not a waveform index");
+        }
+        int version = fixed.getShort(4) & 0xffff;
+        if (version != VERSION) {
+            throw new IOException("Unsupported waveform index version " + version);
+        }
+        int levels = fixed.getShort(6) & 0xffff;
+        this.sampleRate = fixed.getInt(8);
+        this.complete = (fixed.getInt(12) & FLAG_COMPLETE) != 0;
+
+        ByteBuffer levelHeader = readFully(FIXED_HEADER_BYTES, levels * LEVEL_HEADER_BYTES);
+        blockSamples = new int[levels];
+        blockCounts = new int[levels];
+        offsets = new long[levels];
+        for (int i = 0; i < levels; i++) {
+            int base = i * LEVEL_HEADER_BYTES;
+            blockSamples[i] = levelHeader.getInt(base);
+            blockCounts[i] = levelHeader.getInt(base + 4);
+            offsets[i] = levelHeader.getLong(base + 8);
+        }
+        if (complete) {
+            this.totalSamples = fixed.getLong(16);
+        } else if (levels > 0) {
+            // Unfinished recording: level 0 is everything streamed so far, coarser levels are missing
+            blockCounts[0] = (int) ((channel.size() - offsets[0]) / BLOCK_BYTES);
+            for (int i = 1; i < levels; i++) blockCounts[i] = 0;
+            this.totalSamples = (long) blockCounts[0] * blockSamples[0];
+        } else {
+            this.totalSamples = 0;
+        }
+    }
+
+    public int sampleRate() {
+        return sampleRate;
+    }
+
+    public long totalSamples() {
+        return totalSamples;
+    }
+
+    /** False when the recorder stopped before finalizing the index; see the class comment. */
+    public boolean isComplete() {
+        return complete;
+    }
+
+    public int levelCount() {
+        return blockSamples.length;
+    }
+
+    public int blockSamples(int level) {
+        return blockSamples[level];
+    }
+
+    public int blockCount(int level) {
+        return blockCounts[level];
+    }
+
+    /**
+     * Coarsest available level whose blocks are no longer than {@code samplesPerPoint}, i.e.
+     * the cheapest one that still resolves one value per drawn point.
+     */
+    public int levelFor(long samplesPerPoint) {
+        int best = 0;
+        for (int i = 1; i < blockSamples.length; i++) {
+            if (blockCounts[i] > 0 && blockSamples[i] <= samplesPerPoint) {
+                best = i;
+            }
+        }
+        return best;
+    }
+
+    /** Reads blocks {@code [first, first + count)} of {@code level}, clamped to what exists. */
+    public Blocks read(int level, int first, int count) throws IOException {
+        if (level < 0 || level >= blockSamples.length) {
+            throw new IllegalArgumentException("No level " + level);
+        }
+        if (first < 0 || count < 0) {
+            throw new IllegalArgumentException("first and count must be >= 0");
+        }
+        int n = Math.max(0, Math.min(count, blockCounts[level] - first));
+        ByteBuffer data = readFully(offsets[level] + (long) first * BLOCK_BYTES, n * BLOCK_BYTES);
+        Blocks blocks = new Blocks(n);
+        for (int i = 0; i < n; i++) {
+            int base = i * BLOCK_BYTES;
+            blocks.min[i] = data.getShort(base);
+            blocks.max[i] = data.getShort(base + 2);
+            blocks.rms[i] = data.getShort(base + 4);
+            blocks.vad[i] = data.get(base + 6);
+        }
+        return blocks;
+    }
+
+    @Override
+    public void close() throws IOException {
+        file.close();
+    }
+
+    private ByteBuffer readFully(long position, int length) throws IOException {
+        ByteBuffer buffer = ByteBuffer.allocate(length).order(ByteOrder.LITTLE_ENDIAN);
+        while (buffer.hasRemaining()) {
+            if (channel.read(buffer, position + buffer.position()) < 0) {
+                throw new EOFException("Truncated waveform index");
+            }
+        }
+        return buffer;
+    }
+
+    /** Quantizes a probability in [0, 1] (or {@link FrameProcessor#VAD_UNAVAILABLE}) to a stored byte. */
+    static int quantizeVad(float probability) {
+        if (!(probability >= 0f)) {
+            return VAD_UNKNOWN;
+        }
+        return Math.round(Math.min(probability, 1f) * VAD_SCALE);
+    }
+
+    /** A run of index blocks. */
+    public static final class Blocks {
+        public final short[] min;
+        public final short[] max;
+        public final short[] rms;
+        private final byte[] vad;
+
+        Blocks(int count) {
+            min = new short[count];
+            max = new short[count];
+            rms = new short[count];
+            vad = new byte[count];
+        }
+
+        public int size() {
+            return min.length;
+        }
+
+        /**
+         * Highest voice probability within block {@code i}, or {@link FrameProcessor#VAD_UNAVAILABLE}
+         * when the recording had no VAD.
+         */
+        public float vad(int i) {
+            int q = vad[i] & 0xff;
+            return q == VAD_UNKNOWN ? FrameProcessor.VAD_UNAVAILABLE : q / (float) VAD_SCALE;
+        }
+    }
+}
@@ -0,0 +1,303 @@
+package com.zgo.recordplayer.audio;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+
+/**
+ * Builds a {@link WaveformIndex} incrementally from the PCM16 stream as it is recorded, so no
+ * second pass over the file is needed.
+ *
+ * <p>Level 0 blocks (10 ms by default) are streamed to disk in small batches as they
+ * complete; each coarser level (10x the previous) is folded from its children's exact
+ * min/max/sum of squares and kept in memory, about 11% of level 0, until {@link #close()}
+ * appends it and finalizes the header. Per block it keeps the lowest and highest sample,
+ * the RMS and the highest voice probability seen. Not thread-safe; feed it from one thread.
+ *
+ * <p>Multi-channel recordings are indexed as one waveform: a block covers its span of
+ * interleaved frames and its levels are taken over every channel, so block sizes and the
+ * total stay in frames, the unit playback seeks in.
+ */
+public final class WaveformIndexWriter implements Closeable {
+
+    /** Fan-out between adjacent levels: 10 ms, 100 ms, 1 s and 10 s with the defaults. */
+    static final int LEVEL_FACTOR = 10;
+    // An hour of 10 s blocks is under 3 KiB, enough for a full-width overview
+    private static final int DEFAULT_LEVELS = 4;
+    private static final int LEVEL0_BUFFER_BLOCKS = 512; // 4 KiB, about 5 s at 10 ms per block
+
+    private final RandomAccessFile file;
+    private final FileChannel channel;
+    private final int sampleRate;
+    private final int channels;
+    private final Level[] levels;
+    private final ByteBuffer level0Buffer;
+    private final ByteBuffer[] coarse; // levels 1..n, grown as needed
+    private final int headerBytes;
+
+    private long level0End;
+    private long totalSamples; // interleaved, over every channel
+    private boolean closed;
+
+    /** Creates the index for a mono recording at {@code sampleRate} with 10 ms / 100 ms / 1 s / 10 s levels. */
+    public WaveformIndexWriter(File indexFile, int sampleRate) throws IOException {
+        this(indexFile, sampleRate, 1);
+    }
+
+    /** Like {@link #WaveformIndexWriter(File, int)} for a recording of {@code channels} interleaved channels. */
+    public WaveformIndexWriter(File indexFile, int sampleRate, int channels) throws IOException {
+        this(indexFile, sampleRate, channels, Math.max(1, sampleRate / 100), DEFAULT_LEVELS);
+    }
+
+    WaveformIndexWriter(File indexFile, int sampleRate, int baseBlockSamples, int levelCount) throws IOException {
+        this(indexFile, sampleRate, 1, baseBlockSamples, levelCount);
+    }
+
+    WaveformIndexWriter(File indexFile, int sampleRate, int channels, int baseBlockSamples, int levelCount)
+            throws IOException {
+        if (sampleRate <= 0 || channels <= 0 || baseBlockSamples <= 0 || levelCount <= 0) {
+            throw new IllegalArgumentException("sampleRate, channels, baseBlockSamples and levelCount must be > 0");
+        }
+        this.sampleRate = sampleRate;
+        this.channels = channels;
+        this.levels = new Level[levelCount];
+        long blockSamples = baseBlockSamples;
+        for (int i = 0; i < levelCount; i++) {
+            levels[i] = new Level((int) blockSamples, (int) blockSamples * channels);
+            blockSamples *= LEVEL_FACTOR;
+        }
+        this.coarse = new ByteBuffer[levelCount];
+        for (int i = 1; i < levelCount; i++) {
+            coarse[i] = ByteBuffer.allocate(64 * WaveformIndex.BLOCK_BYTES).order(ByteOrder.LITTLE_ENDIAN);
+        }
+        this.level0Buffer = ByteBuffer.allocateDirect(LEVEL0_BUFFER_BLOCKS * WaveformIndex.BLOCK_BYTES)
+                .order(ByteOrder.LITTLE_ENDIAN);
+        this.headerBytes = WaveformIndex.FIXED_HEADER_BYTES + levelCount * WaveformIndex.LEVEL_HEADER_BYTES;
+        this.level0End = headerBytes;
+
+        this.file = new RandomAccessFile(indexFile, "rw");
+        this.channel = file.getChannel();
+        try {
+            file.setLength(0);
+            writeHeader(false);
+        } catch (IOException e) {
+            file.close();
+            throw e;
+        }
+    }
+
+    /**
+     * Adds {@code sampleCount} native-order PCM16 samples (interleaved, counting every channel) read from {@code samples} at
+     * {@code byteOffset} (absolute; the position is ignored and left unchanged), all sharing
+     * the voice probability {@code vad} (pass {@link FrameProcessor#VAD_UNAVAILABLE} when unknown).
+     */
+    public void add(ByteBuffer samples, int byteOffset, int sampleCount, float vad) throws IOException {
+        add(samples, byteOffset, sampleCount, vad, false);
+    }
+
+    /**
+     * Like {@link #add(ByteBuffer, int, int, float)} for native-order float samples
+     * ({@code ENCODING_PCM_FLOAT}, full scale at 1.0). The index keeps 16-bit levels, so samples
+     * beyond full scale are clamped here, and only here.
+     */
+    public void addFloat(ByteBuffer samples, int byteOffset, int sampleCount, float vad) throws IOException {
+        add(samples, byteOffset, sampleCount, vad, true);
+    }
+
+    private void add(ByteBuffer samples, int byteOffset, int sampleCount, float vad, boolean floats)
+            throws IOException {
+        ensureOpen();
+        final int sampleBytes = floats ? 4 : 2;
+        if (byteOffset < 0 || sampleCount < 0 || samples.limit() - byteOffset < sampleCount * sampleBytes) {
+            throw new IllegalArgumentException("samples must hold " + sampleCount + " samples from " + byteOffset);
+        }
+        final boolean swap = samples.order() != ByteOrder.nativeOrder();
+        final int q = WaveformIndex.quantizeVad(vad);
+        final Level level0 = levels[0];
+        int offset = byteOffset;
+        int remaining = sampleCount;
+        while (remaining > 0) {
+            int take = Math.min(remaining, level0.capacity - level0.samples);
+            int min = level0.min;
+            int max = level0.max;
+            long sumSquares = 0;
+            for (int i = 0; i < take; i++) {
+                int v;
+                if (floats) {
+                    int bits = samples.getInt(offset + i * 4);
+                    v = JavaFrameProcessor.floatToPcm16(
+                            Float.intBitsToFloat(swap ? Integer.reverseBytes(bits) : bits) * JavaFrameProcessor.FLOAT_SCALE);
+                } else {
+                    short s = samples.getShort(offset + i * 2);
+                    v = swap ? Short.reverseBytes(s) : s;
+                }
+                if (v < min) min = v;
+                if (v > max) max = v;
+                sumSquares += v * v;
+            }
+            level0.min = min;
+            level0.max = max;
+            level0.sumSquares += sumSquares;
+            level0.samples += take;
+            level0.mergeVad(q);
+            offset += take * sampleBytes;
+            remaining -= take;
+            if (level0.samples == level0.capacity) {
+                emit(0);
+            }
+        }
+        totalSamples += sampleCount;
+    }
+
+    /** Samples added so far per channel, that is, frames. */
+    public long totalSamples() {
+        return totalSamples / channels;
+    }
+
+    /** Flushes partial blocks, appends the coarse levels and marks the index complete. */
+    @Override
+    public void close() throws IOException {
+        if (closed) return;
+        closed = true;
+        try {
+            for (int i = 0; i < levels.length; i++) {
+                if (levels[i].samples > 0) {
+                    emit(i);
+                }
+            }
+            flushLevel0();
+            long offset = level0End;
+            for (int i = 1; i < levels.length; i++) {
+                levels[i].offset = offset;
+                ByteBuffer data = coarse[i];
+                data.flip();
+                offset = writeFully(data, offset);
+            }
+            writeHeader(true);
+        } finally {
+            file.close();
+        }
+    }
+
+    /** Writes the finished block of {@code level} and folds it into the next level up. */
+    private void emit(int level) throws IOException {
+        Level l = levels[level];
+        int rms = (int) Math.min(Math.round(Math.sqrt(l.sumSquares / l.samples)), Short.MAX_VALUE);
+        ByteBuffer out;
+        if (level == 0) {
+            if (!level0Buffer.hasRemaining()) {
+                flushLevel0();
+            }
+            out = level0Buffer;
+        } else {
+            out = ensureCoarseRoom(level);
+        }
+        out.putShort((short) l.min);
+        out.putShort((short) l.max);
+        out.putShort((short) rms);
+        out.put((byte) (l.vad < 0 ? WaveformIndex.VAD_UNKNOWN : l.vad));
+        out.put((byte) 0);
+        l.count++;
+
+        if (level + 1 < levels.length) {
+            Level parent = levels[level + 1];
+            if (l.min < parent.min) parent.min = l.min;
+            if (l.max > parent.max) parent.max = l.max;
+            parent.sumSquares += l.sumSquares;
+            parent.samples += l.samples;
+            parent.mergeVad(l.vad < 0 ? WaveformIndex.VAD_UNKNOWN : l.vad);
+            l.reset();
+            if (parent.samples == parent.capacity) {
+                emit(level + 1);
+            }
+        } else {
+            l.reset();
+        }
+    }
+
+    private ByteBuffer ensureCoarseRoom(int level) {
+        ByteBuffer data = coarse[level];
+        if (data.remaining() < WaveformIndex.BLOCK_BYTES) {
+            ByteBuffer grown = ByteBuffer.allocate(data.capacity() * 2).order(ByteOrder.LITTLE_ENDIAN);
+            data.flip();
+            grown.put(data);
+            coarse[level] = grown;
+            data = grown;
+        }
+        return data;
+    }
+
+    private void flushLevel0() throws IOException {
+        level0Buffer.flip();
+        level0End = writeFully(level0Buffer, level0End);
+        level0Buffer.clear();
+    }
+
+    private void writeHeader(boolean complete) throws IOException {
+        ByteBuffer header = ByteBuffer.allocate(headerBytes).order(ByteOrder.LITTLE_ENDIAN);
+        header.putInt(WaveformIndex.MAGIC);
+        header.putShort((short) WaveformIndex.VERSION);
+        header.putShort((short) levels.length);
+        header.putInt(sampleRate);
+        header.putInt(complete ? WaveformIndex.FLAG_COMPLETE : 0);
+        header.putLong(complete ? totalSamples() : 0L);
+        levels[0].offset = headerBytes;
+        for (Level l : levels) {
+            header.putInt(l.blockSamples);
+            header.putInt(complete ? l.count : 0);
+            header.putLong(l.offset);
+        }
+        header.flip();
+        writeFully(header, 0);
+    }
+
+    private long writeFully(ByteBuffer buffer, long position) throws IOException {
+        while (buffer.hasRemaining()) {
+            position += channel.write(buffer, position);
+        }
+        return position;
+    }
+
+    private void ensureOpen() {
+        if (closed) {
+            throw new IllegalStateException("WaveformIndexWriter already closed");
+        }
+    }
+
+    /** Running statistics of the block currently being filled at one level. */
+    private static final class Level {
+        final int blockSamples; // frames per block
+        final int capacity;     // interleaved samples per block
+        int min;
+        int max;
+        double sumSquares;
+        int samples;
+        int vad; // highest quantized probability, -1 when none known
+        int count;
+        long offset;
+
+        Level(int blockSamples, int capacity) {
+            this.blockSamples = blockSamples;
+            this.capacity = capacity;
+            reset();
+        }
+
+        void mergeVad(int q) {
+            if (q != WaveformIndex.VAD_UNKNOWN && q > vad) {
+                vad = q;
+            }
+        }
+
+        void reset() {
+            min = Integer.MAX_VALUE;
+            max = Integer.MIN_VALUE;
+            sumSquares = 0;
+            samples = 0;
+            vad = -1;
+        }
+    }
+}
@@ -0,0 +1,39 @@
+/*
+ * Host stand-in for the NDK's <android/log.h>, used by the Linux build in this directory so the
+ * JNI sources compile unchanged. Messages go to stderr as "<level>/<tag>: <message>"; warnings
+ * and errors are always printed, lower levels only when RNNOISE_JNI_VERBOSE is set.
+ */
+#ifndef HOST_ANDROID_LOG_H
+#define HOST_ANDROID_LOG_H
+
+#include <stdarg.h>
+#include <stdio.h>
+#include <stdlib.h>
+
+typedef enum android_LogPriority {
+    ANDROID_LOG_UNKNOWN = 0,
+    ANDROID_LOG_DEFAULT,
+    ANDROID_LOG_VERBOSE,
+    ANDROID_LOG_DEBUG,
+    ANDROID_LOG_INFO,
+    ANDROID_LOG_WARN,
+    ANDROID_LOG_ERROR,
+    ANDROID_LOG_FATAL,
+    ANDROID_LOG_SILENT
+} android_LogPriority;
+
+static inline int __android_log_print(int prio, const char *tag, const char *fmt, ...) {
+    static const char levels[] = "??VDIWEFS";
+    if (prio < ANDROID_LOG_WARN && getenv("RNNOISE_JNI_VERBOSE") == NULL) {
+        return 0;
+    }
+    va_list args;
+    va_start(args, fmt);
+    fprintf(stderr, "%c/%s: ", (prio >= 0 && prio <= ANDROID_LOG_SILENT) ? levels[prio] : '?', tag);
+    int written = vfprintf(stderr, fmt, args);
+    fputc('\n', stderr);
+    va_end(args);
+    return written;
+}
+
+#endif /* HOST_ANDROID_LOG_H */
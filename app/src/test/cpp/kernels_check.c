@@ -0,0 +1,231 @@
+/*
+ * Checks every SIMD kernel this CPU supports against the scalar reference, then times them
+ * per 10 ms frame at 48 kHz. Run it with `make check-kernels`; it exits non-zero on the first
+ * mismatch.
+ *
+ * Conversions must match exactly, including ties, clamping and infinities. Dot products and
+ * the filters built on them must agree within float rounding: the SIMD versions sum in
+ * another order, so the bound scales with the sum of the magnitudes of the products.
+ */
+
+#include <math.h>
+#include <stdio.h>
+#include <stdlib.h>
+#include <string.h>
+#include <time.h>
+
+#include "kernels/pcm_kernels.h"
+#include "resample/decimate6.h"
+#include "resample/resampler.h"
+
+#define FRAME 480
+#define FRAME_BUDGET_NS 10000000.0
+#define MAX_N 1024
+
+static int failures;
+
+static void fail(const char *kernels, const char *what, size_t at) {
+    fprintf(stderr, "FAIL %s: %s at %zu\n", kernels, what, at);
+    ++failures;
+}
+
+static float random_float(float range) {
+    return ((float)rand() / (float)RAND_MAX * 2.0f - 1.0f) * range;
+}
+
+static void check_conversions(const PcmKernels *ref, const PcmKernels *k) {
+    static int16_t pcm[65536 + 16];
+    static float f_ref[65536 + 16], f_k[65536 + 16];
+    for (size_t i = 0; i < 65536; ++i) pcm[i] = (int16_t)(i - 32768);
+    ref->s16_to_f32(pcm, f_ref, 65536);
+    k->s16_to_f32(pcm, f_k, 65536);
+    for (size_t i = 0; i < 65536; ++i) {
+        if (f_ref[i] != f_k[i]) {
+            fail(k->name, "s16_to_f32", i);
+            return;
+        }
+    }
+
+    /* Ties round to even, out-of-range values and infinities clamp */
+    static const float special[] = {
+        0.5f, 1.5f, 2.5f, -0.5f, -1.5f, -2.5f, 32766.5f, 32767.49f, 32767.5f, 32768.0f, 1e9f,
+        -32767.5f, -32768.5f, -1e9f, INFINITY, -INFINITY, 0.0f, -0.0f, 1e-30f, 123.456f
+    };
+    size_t n = sizeof(special) / sizeof(special[0]);
+    memcpy(f_ref, special, sizeof(special));
+    for (size_t i = n; i < 4096; ++i) f_ref[i] = random_float(40000.0f);
+    int16_t out_ref[4096], out_k[4096];
+    /* Every length and start offset, so the vector bodies and scalar tails all get covered */
+    for (size_t offset = 0; offset < 8; ++offset) {
+        for (size_t len = 0; len + offset <= 64; ++len) {
+            memset(out_ref, 0x55, sizeof(out_ref));
+            memset(out_k, 0x55, sizeof(out_k));
+            ref->f32_to_s16(f_ref + offset, out_ref + offset, len);
+            k->f32_to_s16(f_ref + offset, out_k + offset, len);
+            if (memcmp(out_ref, out_k, sizeof(out_ref)) != 0) {
+                fail(k->name, "f32_to_s16 (short runs)", offset * 100 + len);
+                return;
+            }
+            float *a = f_ref + 4096, *b = f_k + 4096;
+            memset(a, 0, 80 * sizeof(float));
+            memset(b, 0, 80 * sizeof(float));
+            ref->s16_to_f32(pcm + 30000 + offset, a + offset, len);
+            k->s16_to_f32(pcm + 30000 + offset, b + offset, len);
+            if (memcmp(a, b, 80 * sizeof(float)) != 0) {
+                fail(k->name, "s16_to_f32 (short runs)", offset * 100 + len);
+                return;
+            }
+        }
+    }
+    ref->f32_to_s16(f_ref, out_ref, 4096);
+    k->f32_to_s16(f_ref, out_k, 4096);
+    for (size_t i = 0; i < 4096; ++i) {
+        if (out_ref[i] != out_k[i]) {
+            fail(k->name, "f32_to_s16", i);
+            return;
+        }
+    }
+}
+
+static void check_dot(const PcmKernels *ref, const PcmKernels *k) {
+    static float h[MAX_N], x[MAX_N];
+    for (size_t i = 0; i < MAX_N; ++i) {
+        h[i] = random_float(0.2f);
+        x[i] = random_float(32768.0f);
+    }
+    for (size_t n = 0; n <= 200; ++n) {
+        for (size_t offset = 0; offset < 4; ++offset) {
+            float expected = ref->dot(h + offset, x + 3 * offset, n);
+            float actual = k->dot(h + offset, x + 3 * offset, n);
+            double magnitude = 0.0;
+            for (size_t i = 0; i < n; ++i) magnitude += fabs((double)h[offset + i] * x[3 * offset + i]);
+            if (fabs((double)expected - actual) > 2.0 * (double)n * 6e-8 * magnitude + 1e-6) {
+                fail(k->name, "dot", n);
+                return;
+            }
+        }
+    }
+}
+
+/* Runs the same noise through a filter on both kernel tables and compares the outputs. */
+static void check_filters(const PcmKernels *ref, const PcmKernels *k) {
+    const size_t total = 48000;
+    float *input = (float *)malloc(total * sizeof(float));
+    float *out_ref = (float *)malloc((total * 2 + 16) * sizeof(float));
+    float *out_k = (float *)malloc((total * 2 + 16) * sizeof(float));
+    if (!input || !out_ref || !out_k) {
+        fail(k->name, "allocation", 0);
+        free(input);
+        free(out_ref);
+        free(out_k);
+        return;
+    }
+    for (size_t i = 0; i < total; ++i) input[i] = random_float(32768.0f);
+
+    Decimate6State a, b;
+    decimate6_init(&a);
+    decimate6_init(&b);
+    decimate6_set_kernels(&a, ref);
+    decimate6_set_kernels(&b, k);
+    size_t na = 0, nb = 0;
+    for (size_t i = 0; i < total; i += FRAME) {
+        na += decimate6_process(&a, input + i, FRAME, out_ref + na);
+        nb += decimate6_process(&b, input + i, FRAME, out_k + nb);
+    }
+    if (na != nb) fail(k->name, "decimate6 output count", nb);
+    for (size_t i = 0; i < na && i < nb; ++i) {
+        if (fabsf(out_ref[i] - out_k[i]) > 0.25f) {
+            fail(k->name, "decimate6", i);
+            break;
+        }
+    }
+
+    static const int ratios[][2] = { {1, 6}, {160, 147}, {147, 160}, {1, 3} };
+    for (size_t r = 0; r < sizeof(ratios) / sizeof(ratios[0]); ++r) {
+        Resampler *ra = resampler_create(ratios[r][0], ratios[r][1], NULL, 0);
+        Resampler *rb = resampler_create(ratios[r][0], ratios[r][1], NULL, 0);
+        if (!ra || !rb) {
+            fail(k->name, "resampler_create", r);
+            resampler_destroy(ra);
+            resampler_destroy(rb);
+            continue;
+        }
+        resampler_set_kernels(ra, ref);
+        resampler_set_kernels(rb, k);
+        na = nb = 0;
+        for (size_t i = 0; i < total; i += FRAME) {
+            na += resampler_process(ra, input + i, FRAME, out_ref + na);
+            nb += resampler_process(rb, input + i, FRAME, out_k + nb);
+        }
+        if (na != nb) fail(k->name, "resampler output count", r);
+        for (size_t i = 0; i < na && i < nb; ++i) {
+            if (fabsf(out_ref[i] - out_k[i]) > 0.25f) {
+                fail(k->name, "resampler", r);
+                break;
+            }
+        }
+        resampler_destroy(ra);
+        resampler_destroy(rb);
+    }
+    free(input);
+    free(out_ref);
+    free(out_k);
+}
+
+static double now_ns(void) {
+    struct timespec ts;
+    clock_gettime(CLOCK_MONOTONIC, &ts);
+    return (double)ts.tv_sec * 1e9 + (double)ts.tv_nsec;
+}
+
+/* One 10 ms frame as the JNI bridge handles it: int16 in, decimate, int16 out. */
+static void report_timing(const PcmKernels *k) {
+    enum { FRAMES = 20000 };
+    static int16_t pcm[FRAME];
+    static float frame[FRAME], decimated[FRAME];
+    static int16_t decimated_pcm[FRAME];
+    for (size_t i = 0; i < FRAME; ++i) pcm[i] = (int16_t)random_float(20000.0f);
+    Decimate6State state;
+    decimate6_init(&state);
+    decimate6_set_kernels(&state, k);
+
+    double t0 = now_ns();
+    for (int f = 0; f < FRAMES; ++f) {
+        k->s16_to_f32(pcm, frame, FRAME);
+        k->f32_to_s16(frame, pcm, FRAME);
+    }
+    double t1 = now_ns();
+    size_t produced = 0;
+    for (int f = 0; f < FRAMES; ++f) {
+        size_t n = decimate6_process(&state, frame, FRAME, decimated);
+        k->f32_to_s16(decimated, decimated_pcm, n);
+        produced += n;
+    }
+    double t2 = now_ns();
+    double convert = (t1 - t0) / FRAMES;
+    double filter = (t2 - t1) / FRAMES;
+    printf("%-8s convert %7.0f ns/frame (%.3f%%)   decimate %7.0f ns/frame (%.3f%%)   [%zu]\n",
+           k->name, convert, 100.0 * convert / FRAME_BUDGET_NS, filter, 100.0 * filter / FRAME_BUDGET_NS,
+           produced);
+}
+
+int main(void) {
+    srand(1);
+    const PcmKernels *all[8];
+    size_t count = pcm_kernels_available(all, sizeof(all) / sizeof(all[0]));
+    const PcmKernels *ref = pcm_kernels_scalar();
+    if (count == 0 || all[0] != ref || all[count - 1] != pcm_kernels()) {
+        fail("dispatch", "available list does not start with scalar and end with the selection", count);
+    }
+    printf("selected kernels: %s\n", pcm_kernels()->name);
+    for (size_t i = 1; i < count; ++i) {
+        check_conversions(ref, all[i]);
+        check_dot(ref, all[i]);
+        check_filters(ref, all[i]);
+        printf("%-8s matches scalar: %s\n", all[i]->name, failures ? "NO" : "yes");
+    }
+    for (size_t i = 0; i < count; ++i) {
+        report_timing(all[i]);
+    }
+    return failures ? 1 : 0;
+}
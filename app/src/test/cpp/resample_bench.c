@@ -0,0 +1,116 @@
+/*
+ * Host-side equivalence check and throughput comparison for the resampling kernels.
+ *
+ *   cc -O2 -I app/src/main/cpp app/src/test/cpp/resample_bench.c \
+ *      app/src/main/cpp/resample/decimate6.c app/src/main/cpp/resample/resampler.c \
+ *      app/src/main/cpp/kernels/pcm_kernels*.c -lm -lpthread
+ *
+ * Compares the original ring-buffer decimate6 (reproduced below) against the linear-buffer
+ * version and the generic resampler at 1:6, both on the scalar reference kernels, then
+ * reports throughput for the other ratios on the kernels selected for this CPU.
+ */
+
+#include <stdio.h>
+#include <stdlib.h>
+#include <string.h>
+#include <time.h>
+
+#include "resample/decimate6.h"
+#include "resample/resampler.h"
+
+#define SECONDS 60
+#define IN_RATE 48000
+#define CHUNK 480
+
+typedef struct {
+    float history[DECIMATE6_TAPS];
+    size_t index;
+    size_t phase;
+} LegacyState;
+
+static size_t legacy_process(LegacyState *state, const float *taps, const float *input, size_t input_len, float *output) {
+    size_t produced = 0;
+    for (size_t i = 0; i < input_len; ++i) {
+        state->history[state->index] = input[i];
+        state->index = (state->index + 1) % DECIMATE6_TAPS;
+        state->phase = (state->phase + 1) % DECIMATE6_FACTOR;
+
+        if (state->phase == 0) {
+            float acc = 0.0f;
+            size_t idx = state->index;
+            for (size_t tap = 0; tap < DECIMATE6_TAPS; ++tap) {
+                idx = (idx == 0) ? (DECIMATE6_TAPS - 1) : (idx - 1);
+                acc += taps[tap] * state->history[idx];
+            }
+            output[produced++] = acc;
+        }
+    }
+    return produced;
+}
+
+static double now_sec(void) {
+    struct timespec ts;
+    clock_gettime(CLOCK_MONOTONIC, &ts);
+    return (double)ts.tv_sec + (double)ts.tv_nsec * 1e-9;
+}
+
+static void report(const char *name, double elapsed, size_t samples) {
+    double audio_sec = (double)samples / IN_RATE;
+    printf("%-28s %8.2f ms for %ds audio  (%7.0fx real time, %6.1f ns/input sample)\n",
+           name, elapsed * 1e3, SECONDS, audio_sec / elapsed, elapsed * 1e9 / (double)samples);
+}
+
+int main(void) {
+    const size_t total = (size_t)IN_RATE * SECONDS;
+    float *input = (float *)malloc(total * sizeof(float));
+    float *out_a = (float *)malloc((total / 2 + 16) * sizeof(float));
+    float *out_b = (float *)malloc((total / 2 + 16) * sizeof(float));
+    float *out_c = (float *)malloc((total * 2 + 16) * sizeof(float));
+    if (!input || !out_a || !out_b || !out_c) return 1;
+
+    srand(1);
+    for (size_t i = 0; i < total; ++i) input[i] = (float)((rand() % 65536) - 32768);
+
+    LegacyState legacy;
+    memset(&legacy, 0, sizeof(legacy));
+    Decimate6State linear;
+    decimate6_init(&linear);
+    decimate6_set_kernels(&linear, pcm_kernels_scalar());
+    Resampler *rs = resampler_create(1, 6, NULL, 0);
+    resampler_set_kernels(rs, pcm_kernels_scalar());
+
+    size_t na = 0, nb = 0, nc = 0;
+    double t0 = now_sec();
+    for (size_t i = 0; i < total; i += CHUNK) na += legacy_process(&legacy, decimate6_taps(), input + i, CHUNK, out_a + na);
+    double t1 = now_sec();
+    for (size_t i = 0; i < total; i += CHUNK) nb += decimate6_process(&linear, input + i, CHUNK, out_b + nb);
+    double t2 = now_sec();
+    for (size_t i = 0; i < total; i += CHUNK) nc += resampler_process(rs, input + i, CHUNK, out_c + nc);
+    double t3 = now_sec();
+
+    int exact = (na == nb && na == nc
+                 && memcmp(out_a, out_b, na * sizeof(float)) == 0
+                 && memcmp(out_a, out_c, na * sizeof(float)) == 0);
+    printf("48k->8k bit-exact vs ring buffer: %s (%zu samples)\n", exact ? "yes" : "NO", na);
+    report("decimate6 ring buffer", t1 - t0, total);
+    report("decimate6 linear buffer", t2 - t1, total);
+    report("resampler 1:6", t3 - t2, total);
+    resampler_destroy(rs);
+
+    static const int ratios[][2] = { {1, 3}, {1, 2}, {147, 160}, {160, 147} };
+    for (size_t r = 0; r < sizeof(ratios) / sizeof(ratios[0]); ++r) {
+        Resampler *x = resampler_create(ratios[r][0], ratios[r][1], NULL, 0);
+        double s = now_sec();
+        for (size_t i = 0; i < total; i += CHUNK) resampler_process(x, input + i, CHUNK, out_c);
+        char name[64];
+        snprintf(name, sizeof(name), "resampler %d:%d", ratios[r][0], ratios[r][1]);
+        report(name, now_sec() - s, total);
+        resampler_destroy(x);
+    }
+
+    free(input);
+    free(out_a);
+    free(out_b);
+    free(out_c);
+    return exact ? 0 : 1;
+}
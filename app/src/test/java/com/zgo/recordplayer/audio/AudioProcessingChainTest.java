@@ -0,0 +1,139 @@
+package com.zgo.recordplayer.audio;
+
+import org.junit.Test;
+
+import java.util.Arrays;
+
+import static org.junit.Assert.*;
+
+public class AudioProcessingChainTest {
+
+    private static final int FRAME = FrameProcessor.FRAME_SIZE;
+
+    @Test
+    public void highPassRemovesDcAndKeepsSpeechBand() {
+        AudioProcessingChain chain = AudioProcessingChain.builder().highPass(80f).build();
+        short[] dc = new short[FRAME * 50];
+        Arrays.fill(dc, (short) 8000);
+        short[] out = run(chain, dc);
+        for (int i = out.length - FRAME; i < out.length; i++) {
+            assertEquals(0, out[i], 2);
+        }
+
+        short[] tone = tone(FRAME * 50, 1000, 10000);
+        out = run(chain, tone);
+        assertEquals(rms(tone, tone.length - FRAME * 10), rms(out, out.length - FRAME * 10), 200);
+    }
+
+    @Test
+    public void limiterKeepsPeaksUnderTheCeilingAfterGain() {
+        AudioProcessingChain chain = AudioProcessingChain.builder().gain(12f).limiter(-1f).build();
+        short[] out = run(chain, tone(FRAME * 30, 440, 20000));
+        int ceiling = (int) (32767 * Math.pow(10, -1 / 20.0)) + 1;
+        for (short s : out) {
+            assertTrue("sample " + s, Math.abs(s) <= ceiling);
+        }
+        assertTrue(peak(out) > ceiling - 200);
+    }
+
+    @Test
+    public void agcBringsQuietSpeechTowardTheTarget() {
+        AudioProcessingChain chain = AudioProcessingChain.builder().agc(-20f, 20f).build();
+        short[] in = tone(FRAME * 600, 300, 600); // about -38 dBFS RMS
+        short[] out = run(chain, in);
+        double target = 32768 * Math.pow(10, -20 / 20.0);
+        double settled = rms(out, out.length - FRAME * 10);
+        assertEquals(target, settled, target * 0.1);
+        assertTrue(rms(out, 0, FRAME) < 2 * rms(in, 0, FRAME)); // ramps up, no jump on the first frame
+    }
+
+    @Test
+    public void chainWithoutDecimatorProducesNo8kHzSamples() {
+        AudioProcessingChain chain = AudioProcessingChain.builder().denoise().build();
+        assertFalse(chain.hasDecimator());
+        short[] in = JavaFrameProcessorTest.noise(FRAME * 4, 1000, 5);
+        short[] decimated = new short[FrameProcessor.maxDecimatedSamples(4)];
+        int[] results = new int[4];
+        try (JavaFrameProcessor p = new JavaFrameProcessor(chain)) {
+            assertTrue(p.isDenoiserEnabled());
+            assertEquals(0, p.processFrames(in, 0, 4, new short[in.length], decimated, results));
+        }
+        assertArrayEquals(new int[4], results);
+        assertArrayEquals(new short[decimated.length], decimated);
+    }
+
+    @Test
+    public void outputTapTakesTheSignalBeforeLaterStages() {
+        AudioProcessingChain chain = AudioProcessingChain.builder().output().gain(-6f).decimate().build();
+        short[] in = new short[FRAME * 6];
+        Arrays.fill(in, (short) 4000);
+        short[] denoised = new short[in.length];
+        short[] decimated = new short[FrameProcessor.maxDecimatedSamples(6)];
+        try (JavaFrameProcessor p = new JavaFrameProcessor(chain)) {
+            assertEquals(3 * FrameProcessor.DECIMATED_FRAME_SIZE, p.processFrames(in, 0, 6, denoised, decimated, null));
+        }
+        assertArrayEquals(in, denoised);
+        assertEquals(2005, decimated[decimated.length - 1], 5);
+    }
+
+    @Test
+    public void builderEnforcesStageOrder() {
+        AudioProcessingChain.Builder builder = AudioProcessingChain.builder().denoise();
+        try {
+            builder.denoise();
+            fail();
+        } catch (IllegalStateException expected) {
+        }
+        builder.decimate();
+        try {
+            builder.gain(1f);
+            fail();
+        } catch (IllegalStateException expected) {
+        }
+        try {
+            AudioProcessingChain.builder().limiter(3f);
+            fail();
+        } catch (IllegalArgumentException expected) {
+        }
+        assertEquals("AudioProcessingChain[highPass -> denoise -> output -> decimate]",
+                AudioProcessingChain.builder().highPass(100f).denoise().decimate().build().toString());
+        assertEquals("AudioProcessingChain[denoise -> output -> decimate]", AudioProcessingChain.standard(true).toString());
+    }
+
+    private static short[] run(AudioProcessingChain chain, short[] in) {
+        int frames = in.length / FRAME;
+        short[] out = new short[in.length];
+        try (JavaFrameProcessor p = new JavaFrameProcessor(chain)) {
+            p.processFrames(in, 0, frames, out, new short[FrameProcessor.maxDecimatedSamples(frames)], null);
+        }
+        return out;
+    }
+
+    private static short[] tone(int length, double hz, double amplitude) {
+        short[] out = new short[length];
+        for (int i = 0; i < length; i++) {
+            out[i] = (short) (amplitude * Math.sin(2 * Math.PI * hz * i / 48000.0));
+        }
+        return out;
+    }
+
+    private static double rms(short[] samples, int from) {
+        return rms(samples, from, samples.length - from);
+    }
+
+    private static double rms(short[] samples, int from, int length) {
+        double sum = 0;
+        for (int i = from; i < from + length; i++) {
+            sum += (double) samples[i] * samples[i];
+        }
+        return Math.sqrt(sum / length);
+    }
+
+    private static int peak(short[] samples) {
+        int peak = 0;
+        for (short s : samples) {
+            peak = Math.max(peak, Math.abs(s));
+        }
+        return peak;
+    }
+}
@@ -0,0 +1,225 @@
+package com.zgo.recordplayer.audio;
+
+import org.junit.Test;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.junit.Assert.*;
+
+public class BatchDenoiserTest {
+
+    private static final int FRAME = FrameProcessor.FRAME_SIZE;
+
+    @Test
+    public void chunkedParallelRunMatchesSequentialRun() throws Exception {
+        short[] samples = speechOverNoise(FRAME * 1500 + 123, 11); // trailing partial frame
+        File input = write(samples);
+        File output = File.createTempFile("denoised", ".pcm");
+        ForkJoinPool pool = new ForkJoinPool(4);
+        try {
+            AtomicLong lastProgress = new AtomicLong();
+            BatchDenoiser.Run run = new BatchDenoiser(pool, AudioProcessingChain.builder().denoise().build(), 200, 100)
+                    .start(Arrays.asList(input), Arrays.asList(output),
+                            (done, total) -> lastProgress.accumulateAndGet(done, Math::max));
+            run.await();
+            assertEquals(1501, run.totalFrames());
+            assertEquals(1501, lastProgress.get());
+            assertEquals(samples.length * 2L, output.length());
+
+            short[] expected = sequential(samples);
+            short[] actual = read(output);
+            double error = 0;
+            double signal = 0;
+            for (int i = 0; i < samples.length; i++) {
+                double d = actual[i] - expected[i];
+                error += d * d;
+                signal += (double) expected[i] * expected[i];
+            }
+            assertTrue("chunk boundaries add " + 10 * Math.log10(error / signal) + " dB of error",
+                    error < signal * 1e-3);
+            // The first chunk has nothing before it and starts from a fresh processor
+            for (int i = 0; i < FRAME * 200; i++) {
+                assertEquals(expected[i], actual[i]);
+            }
+        } finally {
+            pool.shutdownNow();
+            input.delete();
+            output.delete();
+        }
+    }
+
+    @Test
+    public void outputDoesNotDependOnChunkScheduling() throws Exception {
+        short[] samples = speechOverNoise(FRAME * 1200, 5);
+        File input = write(samples);
+        File other = write(speechOverNoise(FRAME * 1200, 6));
+        File alone = File.createTempFile("denoised", ".pcm");
+        File batched = File.createTempFile("denoised", ".pcm");
+        File otherOut = File.createTempFile("denoised", ".pcm");
+        AudioProcessingChain chain = AudioProcessingChain.builder().denoise().build();
+        ForkJoinPool single = new ForkJoinPool(1);
+        ForkJoinPool pool = new ForkJoinPool(4);
+        try {
+            // One worker runs every chunk of one file in turn; four workers interleave two files
+            new BatchDenoiser(single, chain, 100, 50).start(Arrays.asList(input), Arrays.asList(alone), null).await();
+            new BatchDenoiser(pool, chain, 100, 50)
+                    .start(Arrays.asList(other, input), Arrays.asList(otherOut, batched), null).await();
+            assertArrayEquals(Files.readAllBytes(alone.toPath()), Files.readAllBytes(batched.toPath()));
+        } finally {
+            single.shutdownNow();
+            pool.shutdownNow();
+            input.delete();
+            other.delete();
+            alone.delete();
+            batched.delete();
+            otherOut.delete();
+        }
+    }
+
+    @Test
+    public void cancelStopsTheRunAndDeletesOutputs() throws Exception {
+        List<File> inputs = new ArrayList<>();
+        List<File> outputs = new ArrayList<>();
+        for (int i = 0; i < 3; i++) {
+            inputs.add(write(speechOverNoise(FRAME * 2000, i)));
+            outputs.add(File.createTempFile("denoised", ".pcm"));
+        }
+        ForkJoinPool pool = new ForkJoinPool(2);
+        CountDownLatch started = new CountDownLatch(1);
+        CountDownLatch cancelled = new CountDownLatch(1);
+        try {
+            // Progress waits for the cancel, so the run can't finish first on a busy machine
+            BatchDenoiser.Run run = new BatchDenoiser(pool, AudioProcessingChain.builder().denoise().build(), 100, 20)
+                    .start(inputs, outputs, (done, total) -> {
+                        started.countDown();
+                        try {
+                            cancelled.await();
+                        } catch (InterruptedException e) {
+                            Thread.currentThread().interrupt();
+                        }
+                    });
+            started.await();
+            run.cancel();
+            cancelled.countDown();
+            try {
+                run.await();
+                fail("expected cancellation");
+            } catch (CancellationException expected) {
+            }
+            assertTrue(run.isDone());
+            assertTrue(run.framesDone() < run.totalFrames());
+            for (File output : outputs) {
+                assertFalse(output.exists());
+            }
+        } finally {
+            pool.shutdownNow();
+            for (File input : inputs) input.delete();
+            for (File output : outputs) output.delete();
+        }
+    }
+
+    @Test
+    public void anInputFailingMidRunStopsEveryChunkBeforeCleanup() throws Exception {
+        List<File> inputs = new ArrayList<>();
+        List<File> outputs = new ArrayList<>();
+        for (int i = 0; i < 4; i++) {
+            inputs.add(write(speechOverNoise(FRAME * 2000, 20 + i)));
+            outputs.add(File.createTempFile("denoised", ".pcm"));
+        }
+        ForkJoinPool pool = new ForkJoinPool(4);
+        AtomicBoolean truncated = new AtomicBoolean();
+        AtomicInteger inFlight = new AtomicInteger();
+        try {
+            // Cutting the first input short once work is under way makes its remaining chunks fail,
+            // while the other chunks linger in the progress callback
+            BatchDenoiser.Run run = new BatchDenoiser(pool, AudioProcessingChain.builder().denoise().build(), 100, 20)
+                    .start(inputs, outputs, (done, total) -> {
+                        inFlight.incrementAndGet();
+                        try {
+                            if (truncated.compareAndSet(false, true)) {
+                                try (RandomAccessFile file = new RandomAccessFile(inputs.get(0), "rw")) {
+                                    file.setLength(FRAME * 2);
+                                }
+                            } else {
+                                Thread.sleep(50);
+                            }
+                        } catch (IOException e) {
+                            throw new UncheckedIOException(e);
+                        } catch (InterruptedException e) {
+                            Thread.currentThread().interrupt();
+                        } finally {
+                            inFlight.decrementAndGet();
+                        }
+                    });
+            try {
+                run.await();
+                fail("expected IOException");
+            } catch (IOException expected) {
+                assertTrue(expected.getMessage(), expected.getMessage().contains("shrank"));
+            }
+            // Processors and files are only closed once no chunk is running any more
+            assertEquals(0, inFlight.get());
+            assertTrue(run.isDone());
+            assertTrue(run.framesDone() < run.totalFrames());
+            for (File output : outputs) {
+                assertFalse(output.exists());
+            }
+        } finally {
+            pool.shutdownNow();
+            for (File input : inputs) input.delete();
+            for (File output : outputs) output.delete();
+        }
+    }
+
+    private static short[] sequential(short[] samples) {
+        int frames = (samples.length + FRAME - 1) / FRAME;
+        short[] padded = Arrays.copyOf(samples, frames * FRAME);
+        short[] out = new short[padded.length];
+        // Same engine the batch run picks: native when librnnoise is loadable
+        try (FrameProcessor p = FrameProcessors.create(AudioProcessingChain.builder().denoise().build())) {
+            p.processFrames(padded, 0, frames, out, new short[FrameProcessor.maxDecimatedSamples(frames)], null);
+        }
+        return out;
+    }
+
+    /** A 300 Hz tone switching on and off every half second over steady noise. */
+    private static short[] speechOverNoise(int length, long seed) {
+        short[] noise = JavaFrameProcessorTest.noise(length, 800, seed);
+        for (int i = 0; i < length; i++) {
+            if ((i / 24000) % 2 == 1) {
+                noise[i] += (short) (8000 * Math.sin(2 * Math.PI * 300 * i / 48000.0));
+            }
+        }
+        return noise;
+    }
+
+    private static File write(short[] samples) throws IOException {
+        File file = File.createTempFile("noisy", ".pcm");
+        ByteBuffer bytes = ByteBuffer.allocate(samples.length * 2).order(ByteOrder.LITTLE_ENDIAN);
+        bytes.asShortBuffer().put(samples);
+        Files.write(file.toPath(), bytes.array());
+        return file;
+    }
+
+    private static short[] read(File file) throws IOException {
+        ByteBuffer bytes = ByteBuffer.wrap(Files.readAllBytes(file.toPath())).order(ByteOrder.LITTLE_ENDIAN);
+        short[] out = new short[bytes.remaining() / 2];
+        bytes.asShortBuffer().get(out);
+        return out;
+    }
+}
@@ -0,0 +1,256 @@
+package com.zgo.recordplayer.audio;
+
+import org.junit.Test;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.Random;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicReference;
+
+import static org.junit.Assert.*;
+
+public class CompressedPcmTest {
+
+    @Test
+    public void speechLikeSignalRoundTripsAtLessThanHalfTheSize() throws IOException {
+        short[] samples = speechLike(3 * 48000, new Random(1));
+        File file = File.createTempFile("compressed", CompressedPcmSource.FILE_SUFFIX);
+        try {
+            try (CompressedPcmSink sink = new CompressedPcmSink(file, 48000, 1)) {
+                // Uneven batches, the second written as a gather pair, as the recorder's ring hands them over
+                ByteBuffer pcm = nativeBytes(samples);
+                int offset = 0;
+                for (int batch = 778; offset < pcm.capacity(); batch += 1000) {
+                    int end = Math.min(pcm.capacity(), offset + batch);
+                    int split = Math.min(end, offset + batch / 3 * 2);
+                    sink.write(slice(pcm, offset, split), slice(pcm, split, end));
+                    offset = end;
+                }
+                assertEquals(0, sink.framesWritten() % CompressedPcmSink.DEFAULT_BLOCK_FRAMES);
+            }
+            assertTrue("compressed to " + file.length(), file.length() < samples.length * 2L / 2);
+
+            try (CompressedPcmSource source = new CompressedPcmSource(file)) {
+                assertEquals(48000, source.sampleRate());
+                assertEquals(samples.length, source.totalFrames());
+                int expected = 0;
+                ByteBuffer chunk;
+                while ((chunk = source.next(10_000)).hasRemaining()) {
+                    assertTrue(chunk.remaining() <= 10_000);
+                    ByteBuffer le = chunk.slice().order(ByteOrder.LITTLE_ENDIAN);
+                    while (le.hasRemaining()) {
+                        assertEquals("sample " + expected, samples[expected++], le.getShort());
+                    }
+                }
+                assertEquals(samples.length, expected);
+                assertTrue(source.isAtEnd());
+            }
+        } finally {
+            file.delete();
+        }
+    }
+
+    @Test
+    public void hardSignalsRoundTripInStereoAndSeek() throws IOException {
+        Random random = new Random(7);
+        int frames = 3 * 1000 + 123; // short final block
+        short[] samples = new short[frames * 2];
+        for (int i = 0; i < frames; i++) {
+            short left;
+            if (i < 1000) left = (short) random.nextInt();              // white noise: verbatim
+            else if (i < 2000) left = (i & 1) == 0 ? Short.MAX_VALUE : Short.MIN_VALUE;
+            else left = (short) -123;                                    // constant
+            samples[2 * i] = left;
+            samples[2 * i + 1] = (short) (20000 * Math.sin(i * 0.05) + random.nextInt(7));
+        }
+        File file = File.createTempFile("compressed", CompressedPcmSource.FILE_SUFFIX);
+        try {
+            try (CompressedPcmSink sink = new CompressedPcmSink(file, 16000, 2, 1000)) {
+                sink.write(nativeBytes(samples));
+            }
+            try (CompressedPcmSource source = new CompressedPcmSource(file)) {
+                assertEquals(2, source.channelCount());
+                assertEquals(4, source.frameBytes());
+                assertEquals(4, source.blockCount());
+                assertEquals(frames, source.totalFrames());
+
+                short[] all = new short[samples.length];
+                int n = 0;
+                ByteBuffer chunk;
+                while ((chunk = source.next(4096)).hasRemaining()) {
+                    ByteBuffer le = chunk.slice().order(ByteOrder.LITTLE_ENDIAN);
+                    while (le.hasRemaining()) all[n++] = le.getShort();
+                }
+                assertArrayEquals(samples, all);
+
+                source.seek(2999);
+                ByteBuffer frame = source.next(4).slice().order(ByteOrder.LITTLE_ENDIAN);
+                assertEquals(4, frame.remaining());
+                assertEquals(samples[2 * 2999], frame.getShort());
+                assertEquals(samples[2 * 2999 + 1], frame.getShort());
+                frame = source.next(8).slice().order(ByteOrder.LITTLE_ENDIAN); // crosses into the last block
+                assertEquals(8, frame.remaining());
+                assertEquals(samples[2 * 3000], frame.getShort());
+
+                source.seek(Long.MAX_VALUE);
+                assertFalse(source.next(4).hasRemaining());
+            }
+        } finally {
+            file.delete();
+        }
+    }
+
+    @Test
+    public void silenceEncodesToConstantBlocksAndKeepsChannelAlignment() throws IOException {
+        File file = File.createTempFile("compressed", CompressedPcmSource.FILE_SUFFIX);
+        try {
+            try (CompressedPcmSink sink = new CompressedPcmSink(file, 48000, 2, 1000)) {
+                sink.write(nativeBytes(new short[]{1, 2, 3}));   // ends mid-frame
+                sink.writeSilence(2L * 2 * 10_000 + 2);           // completes it, then 10000 frames
+                sink.write(nativeBytes(new short[]{4, 5}));
+            }
+            assertTrue("compressed to " + file.length(), file.length() < 1000); // 40 kB raw
+            try (CompressedPcmSource source = new CompressedPcmSource(file)) {
+                assertEquals(10_003, source.totalFrames());
+                short[] all = new short[2 * 10_003];
+                int n = 0;
+                ByteBuffer chunk;
+                while ((chunk = source.next(4096)).hasRemaining()) {
+                    ByteBuffer le = chunk.slice().order(ByteOrder.LITTLE_ENDIAN);
+                    while (le.hasRemaining()) all[n++] = le.getShort();
+                }
+                short[] expected = new short[all.length];
+                expected[0] = 1;
+                expected[1] = 2;
+                expected[2] = 3;
+                expected[all.length - 2] = 4;
+                expected[all.length - 1] = 5;
+                assertArrayEquals(expected, all);
+            }
+        } finally {
+            file.delete();
+        }
+    }
+
+    @Test
+    public void blocksDecodeInParallelAndATruncatedTailIsIgnored() throws Exception {
+        short[] samples = speechLike(20 * 4096, new Random(3));
+        File file = File.createTempFile("compressed", CompressedPcmSource.FILE_SUFFIX);
+        ExecutorService executor = Executors.newFixedThreadPool(4);
+        try {
+            try (CompressedPcmSink sink = new CompressedPcmSink(file, 48000, 1)) {
+                sink.write(nativeBytes(samples));
+            }
+            try (CompressedPcmSource source = new CompressedPcmSource(file)) {
+                short[] decoded = new short[samples.length];
+                source.decodeAll(decoded, executor, 4);
+                assertArrayEquals(samples, decoded);
+            }
+
+            // A recorder killed mid-write leaves a partial last block
+            try (RandomAccessFile raf = new RandomAccessFile(file, "rw")) {
+                raf.setLength(raf.length() - 10);
+            }
+            try (CompressedPcmSource source = new CompressedPcmSource(file)) {
+                assertEquals(19, source.blockCount());
+                assertEquals(19 * 4096, source.totalFrames());
+                short[] decoded = new short[19 * 4096];
+                source.decodeAll(decoded, executor, 3);
+                for (int i = 0; i < decoded.length; i++) {
+                    assertEquals(samples[i], decoded[i]);
+                }
+            }
+        } finally {
+            executor.shutdownNow();
+            file.delete();
+        }
+    }
+
+    @Test
+    public void tailingSourceDecodesBlocksAsTheyAreCommitted() throws Exception {
+        short[] samples = speechLike(10 * 1000 + 321, new Random(5));
+        File file = File.createTempFile("compressed", CompressedPcmSource.FILE_SUFFIX);
+        RecordingProgress progress = new RecordingProgress();
+        AtomicReference<Throwable> writerFailure = new AtomicReference<>();
+        Thread writer = new Thread(() -> {
+            try {
+                CompressedPcmSink sink = new CompressedPcmSink(file, 48000, 1, 1000);
+                try {
+                    ByteBuffer pcm = nativeBytes(samples);
+                    for (int offset = 0; offset < pcm.capacity(); offset += 960) {
+                        sink.write(slice(pcm, offset, Math.min(pcm.capacity(), offset + 960)));
+                        progress.commit(sink.bytesWritten());
+                        Thread.sleep(1);
+                    }
+                } finally {
+                    sink.close(); // the short last block
+                }
+                progress.commit(sink.bytesWritten());
+            } catch (Throwable e) {
+                writerFailure.set(e);
+            } finally {
+                progress.finish();
+            }
+        });
+        try (TailingCompressedSource source = new TailingCompressedSource(file, 48000, 1, progress)) {
+            writer.start();
+            int expected = 0;
+            ByteBuffer chunk;
+            while ((chunk = source.next(3000)).hasRemaining()) {
+                ByteBuffer le = chunk.slice().order(ByteOrder.LITTLE_ENDIAN);
+                while (le.hasRemaining()) {
+                    assertEquals("sample " + expected, samples[expected++], le.getShort());
+                }
+                assertTrue(source.totalFrames() >= expected);
+            }
+            writer.join();
+            if (writerFailure.get() != null) {
+                throw new AssertionError("writer failed", writerFailure.get());
+            }
+            assertEquals(samples.length, expected);
+            assertTrue(source.isAtEnd());
+
+            source.seek(4999);
+            ByteBuffer back = source.next(100).slice().order(ByteOrder.LITTLE_ENDIAN);
+            assertEquals(2, back.remaining()); // never crosses a block
+            assertEquals(samples[4999], back.getShort());
+        } finally {
+            file.delete();
+        }
+    }
+
+    /** Voiced harmonics with a syllable-rate envelope over a quiet noise floor. */
+    private static short[] speechLike(int n, Random random) {
+        short[] out = new short[n];
+        double phase = 0;
+        for (int i = 0; i < n; i++) {
+            double t = i / 48000.0;
+            phase += 2 * Math.PI * (140 + 30 * Math.sin(2 * Math.PI * 0.7 * t)) / 48000.0;
+            double envelope = Math.max(0, Math.sin(2 * Math.PI * 4 * t));
+            double voiced = 0;
+            for (int h = 1; h <= 8; h++) {
+                voiced += Math.sin(h * phase) / h;
+            }
+            out[i] = (short) (6000 * envelope * voiced + 20 * random.nextGaussian());
+        }
+        return out;
+    }
+
+    private static ByteBuffer nativeBytes(short[] samples) {
+        ByteBuffer bytes = ByteBuffer.allocateDirect(samples.length * 2).order(ByteOrder.nativeOrder());
+        bytes.asShortBuffer().put(samples);
+        return bytes;
+    }
+
+    private static ByteBuffer slice(ByteBuffer buffer, int from, int to) {
+        ByteBuffer dup = buffer.duplicate().order(buffer.order());
+        dup.limit(to);
+        dup.position(from);
+        return dup;
+    }
+}
@@ -0,0 +1,53 @@
+package com.zgo.recordplayer.audio;
+
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+public class DuplexLatencyMeterTest {
+
+    private static final int RATE = 48000;
+
+    @Test
+    public void latencyIsTheTimeFromCaptureToPresentation() {
+        DuplexLatencyMeter meter = new DuplexLatencyMeter(RATE);
+        assertEquals(-1, meter.sample());
+        // Input frame 4800 was at the ADC at t = 1.100 s
+        meter.onInputTimestamp(4800, 1_100_000_000L);
+        // Output frame 1000 leaves the DAC at t = 1.150 s
+        meter.onOutputTimestamp(1000, 1_150_000_000L);
+        assertEquals(-1, meter.sample());
+        // Input frame 9600 (at the ADC at 1.200 s) is written as output frame 3400 (plays at 1.200 s)
+        meter.onRouted(9600, 3400);
+        assertEquals(0L, meter.sample(), 1);
+        // One 10 ms frame dropped from the output side: everything after plays 10 ms earlier
+        meter.onRouted(9600 + 480, 3400);
+        assertEquals(-10_000_000L, meter.sample(), 1);
+        // Two frames more queued ahead of it in the track: 20 ms later than the first
+        meter.onRouted(9600, 3400 + 960);
+        assertEquals(20_000_000L, meter.sample(), 1);
+        assertEquals(20_000_000L, meter.lastLatencyNanos());
+        assertEquals(3, meter.latency().count());
+    }
+
+    @Test
+    public void driftComparesTheTwoFrameClocks() {
+        DuplexLatencyMeter meter = new DuplexLatencyMeter(RATE);
+        double outRate = RATE * (1 + 200e-6); // DAC 200 ppm fast
+        meter.onRouted(0, 0);
+        for (int s = 0; s <= 4; s++) {
+            long t = s * 1_000_000_000L;
+            meter.onInputTimestamp((long) RATE * s, t + 3_000_000L);
+            meter.onOutputTimestamp(Math.round(outRate * s), t + 7_000_000L);
+            meter.sample();
+            if (s == 0) {
+                assertTrue(Double.isNaN(meter.driftPpm()));
+            }
+        }
+        assertEquals(200.0, meter.driftPpm(), 3.0); // timestamps are whole frames: ~2 ppm over 4 s
+        // The fast DAC eats into the queue: latency shrinks by ~200 us per second
+        LatencyHistogram.Snapshot latency = meter.latency();
+        assertEquals(5, latency.count());
+        assertTrue(latency.maxNanos() - meter.lastLatencyNanos() > 700_000L);
+    }
+}
@@ -0,0 +1,94 @@
+package com.zgo.recordplayer.audio;
+
+import org.junit.Test;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.junit.Assert.*;
+
+public class FrameProcessorPoolTest {
+
+    private static final int FRAME = FrameProcessor.FRAME_SIZE;
+    private static final AudioProcessingChain CHAIN = AudioProcessingChain.builder().denoise().highPass(80f).decimate().build();
+
+    @Test
+    public void releasedProcessorIsReusedInItsInitialState() {
+        int frames = 50;
+        short[] first = JavaFrameProcessorTest.noise(FRAME * frames, 3000, 31);
+        short[] second = JavaFrameProcessorTest.noise(FRAME * frames, 3000, 32);
+        short[] expected = new short[second.length];
+        short[] expectedDecimated = new short[FrameProcessor.maxDecimatedSamples(frames)];
+        try (FrameProcessor fresh = FrameProcessors.create(CHAIN)) {
+            fresh.processFrames(second, 0, frames, expected, expectedDecimated, null);
+        }
+
+        try (FrameProcessorPool pool = new FrameProcessorPool(CHAIN, 2, Long.MAX_VALUE)) {
+            FrameProcessor p = pool.acquire();
+            p.processFrames(first, 0, frames, new short[first.length], new short[expectedDecimated.length], null);
+            pool.release(p);
+            assertEquals(1, pool.idleCount());
+
+            FrameProcessor again = pool.acquire();
+            assertSame(p, again);
+            assertEquals(1, pool.createdCount());
+            assertEquals(1, pool.reusedCount());
+            short[] out = new short[second.length];
+            short[] decimated = new short[expectedDecimated.length];
+            again.processFrames(second, 0, frames, out, decimated, null);
+            assertArrayEquals(expected, out);
+            assertArrayEquals(expectedDecimated, decimated);
+            pool.release(again);
+        }
+    }
+
+    @Test
+    public void keepsAtMostMaxIdleAndDropsClosedProcessors() {
+        try (FrameProcessorPool pool = new FrameProcessorPool(CHAIN, 2, Long.MAX_VALUE)) {
+            FrameProcessor a = pool.acquire();
+            FrameProcessor b = pool.acquire();
+            FrameProcessor c = pool.acquire();
+            pool.release(a);
+            pool.release(b);
+            pool.release(c);
+            assertEquals(2, pool.idleCount());
+            assertTrue("least recently returned is closed", a.isReleased());
+            assertFalse(c.isReleased());
+
+            FrameProcessor d = pool.acquire();
+            assertSame(c, d);
+            d.close();
+            pool.release(d);
+            assertEquals(1, pool.idleCount());
+
+            pool.trim();
+            assertEquals(0, pool.idleCount());
+            assertTrue(b.isReleased());
+        }
+    }
+
+    @Test
+    public void idleProcessorsExpireAndPrewarmFillsThePool() {
+        AtomicLong now = new AtomicLong();
+        FrameProcessorPool pool = new FrameProcessorPool(CHAIN, 3, 1000, now::get);
+        pool.prewarm(5);
+        assertEquals(3, pool.idleCount());
+        assertEquals(3, pool.createdCount());
+
+        FrameProcessor held = pool.acquire();
+        now.set(600);
+        pool.release(held); // returned at 600, the other two idle since 0
+        now.set(1500);
+        FrameProcessor p = pool.acquire();
+        assertSame(held, p);
+        assertEquals(0, pool.idleCount());
+
+        pool.close();
+        pool.release(p);
+        assertTrue(p.isReleased());
+        try {
+            pool.acquire();
+            fail("expected IllegalStateException");
+        } catch (IllegalStateException expected) {
+        }
+    }
+}
@@ -0,0 +1,126 @@
+package com.zgo.recordplayer.audio;
+
+import org.junit.Test;
+
+import java.nio.ByteBuffer;
+import java.util.concurrent.atomic.AtomicReference;
+
+import static org.junit.Assert.*;
+
+public class FrameRingTest {
+
+    @Test
+    public void regionsStopAtTheWrapPoint() {
+        FrameRing ring = new FrameRing(4, 8);
+        assertEquals(4, ring.writableFrames());
+        ring.publish(3);
+        ring.release(2);
+        // Head is at slot 3: one frame until the wrap even though three are free
+        assertEquals(1, ring.writableFrames());
+        assertEquals(8, ring.writeRegion().limit());
+        ring.publish(1);
+        assertEquals(2, ring.writableFrames());
+        assertEquals(2, ring.readableFrames());
+        assertEquals(3, ring.highWaterMark());
+    }
+
+    @Test
+    public void readRegionsSpanTheWrapPoint() {
+        FrameRing ring = new FrameRing(4, 8);
+        ring.publish(3);
+        ring.release(3);
+        ring.publish(1);
+        ring.writeRegion().putLong(0, 42L); // slot 0, after the wrap
+        ring.publish(2);
+
+        ByteBuffer[] regions = new ByteBuffer[2];
+        assertEquals(3, ring.readRegions(regions, 10));
+        assertEquals(8, regions[0].limit());
+        assertEquals(16, regions[1].limit());
+        assertEquals(42L, regions[1].getLong(0));
+
+        assertEquals(1, ring.readRegions(regions, 1));
+        assertEquals(0, regions[1].limit());
+    }
+
+    @Test
+    public void trailingFrameIsReportedOnce() {
+        FrameRing ring = new FrameRing(4, 8);
+        ring.publish(1);
+        ring.publishLast(3);
+        ring.finish();
+        assertFalse(ring.endsWithTrailingFrame(1));
+        assertTrue(ring.endsWithTrailingFrame(2));
+        assertEquals(3, ring.trailingBytes());
+        ring.release(2);
+        assertTrue(ring.isDrained());
+    }
+
+    @Test
+    public void trailingFrameIsVisibleBeforeFinish() {
+        FrameRing ring = new FrameRing(4, 8);
+        ring.publish(1);
+        assertFalse(ring.endsWithTrailingFrame(1));
+        ring.publishLast(5);
+        // A consumer woken by the publish sees the real length before the stream is finished
+        assertFalse(ring.isFinished());
+        assertTrue(ring.endsWithTrailingFrame(2));
+        assertEquals(5, ring.trailingBytes());
+        ring.release(1);
+        assertTrue(ring.endsWithTrailingFrame(1));
+        ring.release(1);
+        assertFalse(ring.isDrained());
+        ring.finish();
+        assertTrue(ring.isDrained());
+    }
+
+    @Test
+    public void framesSurviveConcurrentProducerAndConsumer() throws Exception {
+        final FrameRing ring = new FrameRing(7, 8);
+        final long total = 200_000;
+        final AtomicReference<Throwable> failure = new AtomicReference<>();
+        final long[] consumed = new long[1];
+        Thread consumer = new Thread(() -> {
+            try {
+                long expected = 0;
+                while (true) {
+                    int n = ring.awaitReadable(1_000_000L);
+                    if (n == 0) {
+                        if (ring.isDrained()) break;
+                        continue;
+                    }
+                    ByteBuffer region = ring.readRegion();
+                    for (int i = 0; i < n; i++) {
+                        assertEquals(expected++, region.getLong(i * 8));
+                    }
+                    ring.release(n);
+                }
+                consumed[0] = expected;
+            } catch (Throwable t) {
+                failure.set(t);
+            }
+        });
+        consumer.start();
+
+        long next = 0;
+        while (next < total) {
+            int writable = ring.writableFrames();
+            if (writable == 0) {
+                Thread.yield();
+                continue;
+            }
+            ByteBuffer region = ring.writeRegion();
+            int n = (int) Math.min(writable, total - next);
+            for (int i = 0; i < n; i++) {
+                region.putLong(i * 8, next++);
+            }
+            ring.publish(n);
+        }
+        ring.finish();
+        consumer.join(10_000L);
+
+        assertNull(failure.get());
+        assertEquals(total, consumed[0]);
+        assertEquals(0L, ring.overrunFrames());
+    }
+}
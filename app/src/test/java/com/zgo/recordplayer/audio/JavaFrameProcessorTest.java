@@ -0,0 +1,237 @@
+package com.zgo.recordplayer.audio;
+
+import org.junit.Test;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.Arrays;
+import java.util.Random;
+
+import static org.junit.Assert.*;
+
+/**
+ * Exercises the pure-Java processing chain on the host JVM, without librnnoise.
+ */
+public class JavaFrameProcessorTest {
+
+    private static final int FRAME = FrameProcessor.FRAME_SIZE;
+
+    @Test
+    public void decimatedBlocksArriveEveryOtherFrame() {
+        try (JavaFrameProcessor p = new JavaFrameProcessor(false)) {
+            short[] in = new short[FRAME];
+            short[] decimated = new short[FrameProcessor.DECIMATED_FRAME_SIZE];
+            assertEquals(0, p.processFrame(in, null, decimated));
+            assertEquals(FrameProcessor.DECIMATED_FRAME_SIZE, p.processFrame(in, null, decimated));
+            assertEquals(0, p.processFrame(in, null, decimated));
+        }
+    }
+
+    @Test
+    public void passthroughKeepsSamplesAndDcLevel() {
+        try (JavaFrameProcessor p = new JavaFrameProcessor(false)) {
+            short[] in = new short[FRAME];
+            Arrays.fill(in, (short) 1000);
+            short[] denoised = new short[FRAME];
+            short[] decimated = new short[FrameProcessor.DECIMATED_FRAME_SIZE];
+            for (int i = 0; i < 4; i++) {
+                p.processFrame(in, denoised, decimated);
+            }
+            assertArrayEquals(in, denoised);
+            assertEquals(1000, decimated[FrameProcessor.DECIMATED_FRAME_SIZE - 1], 1);
+        }
+    }
+
+    @Test
+    public void batchMatchesFrameByFrame() {
+        short[] in = noise(FRAME * 7, 2000, 1);
+        short[] denoisedBatch = new short[in.length];
+        short[] decimatedBatch = new short[FrameProcessor.maxDecimatedSamples(7)];
+        int[] results = new int[7];
+        int total;
+        try (JavaFrameProcessor p = new JavaFrameProcessor(true)) {
+            total = p.processFrames(in, 0, 7, denoisedBatch, decimatedBatch, results);
+        }
+
+        short[] frame = new short[FRAME];
+        short[] denoised = new short[FRAME];
+        short[] decimated = new short[FrameProcessor.DECIMATED_FRAME_SIZE];
+        int expectedTotal = 0;
+        try (JavaFrameProcessor p = new JavaFrameProcessor(true)) {
+            for (int f = 0; f < 7; f++) {
+                System.arraycopy(in, f * FRAME, frame, 0, FRAME);
+                int produced = p.processFrame(frame, denoised, decimated);
+                assertEquals(produced, results[f]);
+                for (int i = 0; i < FRAME; i++) {
+                    assertEquals(denoised[i], denoisedBatch[f * FRAME + i]);
+                }
+                for (int i = 0; i < produced; i++) {
+                    assertEquals(decimated[i], decimatedBatch[expectedTotal + i]);
+                }
+                expectedTotal += produced;
+            }
+        }
+        assertEquals(expectedTotal, total);
+    }
+
+    @Test
+    public void bufferPathMatchesArrayPath() {
+        int frames = 4;
+        short[] in = noise(FRAME * frames, 3000, 2);
+        short[] denoised = new short[in.length];
+        short[] decimated = new short[FrameProcessor.maxDecimatedSamples(frames)];
+        try (JavaFrameProcessor p = new JavaFrameProcessor(true)) {
+            p.processFrames(in, 0, frames, denoised, decimated, null);
+        }
+
+        ByteBuffer inBuf = ByteBuffer.allocateDirect(in.length * 2).order(ByteOrder.nativeOrder());
+        inBuf.asShortBuffer().put(in);
+        ByteBuffer denoisedBuf = ByteBuffer.allocateDirect(in.length * 2).order(ByteOrder.nativeOrder());
+        ByteBuffer decimatedBuf = ByteBuffer.allocate(decimated.length * 2).order(ByteOrder.nativeOrder());
+        int total;
+        try (JavaFrameProcessor p = new JavaFrameProcessor(true)) {
+            total = p.processFrames(inBuf, frames, denoisedBuf, decimatedBuf, null);
+        }
+        assertEquals(0, inBuf.position());
+        for (int i = 0; i < in.length; i++) {
+            assertEquals(denoised[i], denoisedBuf.getShort(i * 2));
+        }
+        for (int i = 0; i < total; i++) {
+            assertEquals(decimated[i], decimatedBuf.getShort(i * 2));
+        }
+    }
+
+    @Test
+    public void floatPathMatchesPcm16PathAndKeepsHeadroom() {
+        int frames = 4;
+        short[] in = noise(FRAME * frames, 3000, 3);
+        short[] denoised = new short[in.length];
+        short[] decimated = new short[FrameProcessor.maxDecimatedSamples(frames)];
+        float[] vad = new float[frames];
+        try (JavaFrameProcessor p = new JavaFrameProcessor(true)) {
+            p.processFrames(in, 0, frames, denoised, decimated, null, vad);
+        }
+
+        float[] floats = new float[in.length];
+        for (int i = 0; i < in.length; i++) floats[i] = in[i] / JavaFrameProcessor.FLOAT_SCALE;
+        float[] denoisedFloats = new float[in.length];
+        float[] decimatedFloats = new float[decimated.length];
+        float[] vadFloats = new float[frames];
+        int total;
+        try (JavaFrameProcessor p = new JavaFrameProcessor(true)) {
+            total = p.processFrames(floats, 0, frames, denoisedFloats, decimatedFloats, null, vadFloats);
+        }
+        assertEquals(decimated.length, total);
+        for (int i = 0; i < in.length; i++) {
+            assertEquals(denoised[i], denoisedFloats[i] * JavaFrameProcessor.FLOAT_SCALE, 1f);
+        }
+        for (int i = 0; i < total; i++) {
+            assertEquals(decimated[i], decimatedFloats[i] * JavaFrameProcessor.FLOAT_SCALE, 1f);
+        }
+        assertArrayEquals(vad, vadFloats, 1e-4f);
+
+        // Above full scale: the PCM16 path clips, the float path passes it through
+        ByteBuffer loud = ByteBuffer.allocateDirect(FRAME * 4).order(ByteOrder.nativeOrder());
+        for (int i = 0; i < FRAME; i++) loud.putFloat(i * 4, 1.5f);
+        ByteBuffer out = ByteBuffer.allocateDirect(FRAME * 4).order(ByteOrder.nativeOrder());
+        ByteBuffer decimatedOut = ByteBuffer.allocateDirect(FrameProcessor.DECIMATED_FRAME_SIZE * 4)
+                .order(ByteOrder.nativeOrder());
+        try (JavaFrameProcessor p = new JavaFrameProcessor(false)) {
+            p.processFrames(loud.asFloatBuffer(), 1, out.asFloatBuffer(), decimatedOut.asFloatBuffer(), null, null);
+        }
+        assertEquals(1.5f, out.getFloat((FRAME - 1) * 4), 1e-6f);
+    }
+
+    @Test
+    public void spectralSubtractionAttenuatesStationaryNoise() {
+        int frames = 200;
+        short[] in = noise(FRAME * frames, 1500, 3);
+        short[] out = new short[in.length];
+        short[] decimated = new short[FrameProcessor.maxDecimatedSamples(frames)];
+        try (JavaFrameProcessor p = new JavaFrameProcessor(true)) {
+            p.processFrames(in, 0, frames, out, decimated, null);
+        }
+        int tail = FRAME * 100;
+        double inEnergy = energy(in, in.length - tail, tail);
+        double outEnergy = energy(out, out.length - tail, tail);
+        assertTrue("expected >10 dB attenuation, got " + 10 * Math.log10(inEnergy / outEnergy) + " dB",
+                outEnergy * 10 < inEnergy);
+    }
+
+    @Test
+    public void voiceProbabilityRisesOnToneOverNoise() {
+        int frames = 40;
+        short[] in = noise(FRAME * frames, 300, 3);
+        for (int i = FRAME * 30; i < in.length; i++) {
+            in[i] += (short) (6000 * Math.sin(2 * Math.PI * 440 * i / 48000.0));
+        }
+        float[] vad = new float[frames];
+        try (JavaFrameProcessor p = new JavaFrameProcessor(true)) {
+            p.processFrames(in, 0, frames, null, new short[FrameProcessor.maxDecimatedSamples(frames)], null, vad);
+        }
+        assertTrue("noise vad " + vad[25], vad[25] < 0.5f);
+        assertTrue("tone vad " + vad[35], vad[35] > 0.9f);
+
+        float[] single = new float[1];
+        try (JavaFrameProcessor p = new JavaFrameProcessor(true)) {
+            short[] frame = new short[FRAME];
+            for (int f = 0; f < frames; f++) {
+                System.arraycopy(in, f * FRAME, frame, 0, FRAME);
+                p.processFrame(frame, null, new short[FrameProcessor.DECIMATED_FRAME_SIZE], single);
+                assertEquals("frame " + f, vad[f], single[0], 0f);
+            }
+        }
+
+        try (JavaFrameProcessor p = new JavaFrameProcessor(false)) {
+            p.processFrames(in, 0, 1, null, new short[FrameProcessor.DECIMATED_FRAME_SIZE], null, vad);
+        }
+        assertEquals(FrameProcessor.VAD_UNAVAILABLE, vad[0], 0f);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void rejectsShortDecimatedBuffer() {
+        try (JavaFrameProcessor p = new JavaFrameProcessor(false)) {
+            p.processFrames(new short[FRAME * 3], 0, 3, null, new short[FrameProcessor.DECIMATED_FRAME_SIZE], null);
+        }
+    }
+
+    @Test
+    public void rejectsFrameCountsWhoseSampleCountOverflowsAnInt() {
+        // 8947849 * 480 wraps to 224 in int arithmetic, which one frame would appear to cover
+        int frameCount = 8947849;
+        try (JavaFrameProcessor p = new JavaFrameProcessor(false)) {
+            p.processFrames(new short[FRAME], 0, frameCount, null, new short[FrameProcessor.DECIMATED_FRAME_SIZE], null);
+            fail("expected IllegalArgumentException");
+        } catch (IllegalArgumentException expected) {
+            assertTrue(expected.getMessage(), expected.getMessage().startsWith("in must hold"));
+        }
+    }
+
+    @Test
+    public void factoryFallsBackToJavaEngineWithoutNativeLibrary() {
+        try (FrameProcessor p = FrameProcessors.create(true)) {
+            assertTrue(p.isDenoiserEnabled());
+            if (!RnnoiseProcessor.isNativeAvailable()) {
+                assertTrue(p instanceof JavaFrameProcessor);
+            }
+        }
+    }
+
+    static short[] noise(int length, int amplitude, long seed) {
+        Random random = new Random(seed);
+        short[] out = new short[length];
+        for (int i = 0; i < length; i++) {
+            out[i] = (short) (random.nextGaussian() * amplitude);
+        }
+        return out;
+    }
+
+    private static double energy(short[] samples, int offset, int length) {
+        double sum = 0;
+        for (int i = 0; i < length; i++) {
+            double v = samples[offset + i];
+            sum += v * v;
+        }
+        return sum;
+    }
+}
@@ -0,0 +1,111 @@
+package com.zgo.recordplayer.audio;
+
+import org.junit.Test;
+
+import java.io.File;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+
+import static org.junit.Assert.*;
+
+public class LatencyHistogramTest {
+
+    @Test
+    public void bucketsCoverEveryValueWithinTheirBounds() {
+        long previousUpper = -1;
+        for (int i = 0; i < LatencyHistogram.BUCKETS - 1; i++) {
+            long upper = LatencyHistogram.upperBound(i);
+            assertEquals("buckets are contiguous", previousUpper + 1, lowerBound(i));
+            assertEquals(i, LatencyHistogram.bucketOf(lowerBound(i)));
+            assertEquals(i, LatencyHistogram.bucketOf(upper));
+            assertTrue("bucket " + i + " wider than 12.5%", upper - lowerBound(i) <= Math.max(0, lowerBound(i) / 8));
+            previousUpper = upper;
+        }
+        assertEquals(LatencyHistogram.BUCKETS - 1, LatencyHistogram.bucketOf(Long.MAX_VALUE));
+    }
+
+    @Test
+    public void percentilesAreWithinOneBucketOfTheTruth() {
+        LatencyHistogram h = new LatencyHistogram();
+        for (int i = 1; i <= 1000; i++) {
+            h.record(i * 1000L); // 1 us .. 1 ms
+        }
+        h.record(-5); // clamped to 0
+        LatencyHistogram.Snapshot s = h.snapshot();
+        assertEquals(1001, s.count());
+        assertEquals(1_000_000L, s.maxNanos());
+        assertEquals(500_500_000.0 / 1001, s.meanNanos(), 1e-6);
+        assertEquals(0L, s.percentileNanos(0));
+        assertInBucket(500_000L, s.percentileNanos(50));
+        assertInBucket(990_000L, s.percentileNanos(99));
+        assertEquals(1_000_000L, s.percentileNanos(100));
+
+        h.reset();
+        assertEquals(0, h.snapshot().count());
+        assertEquals(0L, h.snapshot().percentileNanos(99));
+        assertEquals(0L, LatencyHistogram.Snapshot.EMPTY.percentileNanos(50));
+    }
+
+    @Test
+    public void recorderStatsCountReadsBatchesAndTimedWrites() throws Exception {
+        RecorderStats stats = new RecorderStats();
+        stats.recordRead(960, 960);
+        stats.recordRead(960, 480);
+        stats.recordRead(960, -3);
+        stats.recordOverrun(2);
+        stats.recordBatch(10, 5_000_000L, 3_000_000L); // 0.5 ms per frame
+        stats.recordBatch(10, 5_000_000L, 3_000_000L);
+        stats.recordRawFrames(4);
+
+        File file = File.createTempFile("stats", ".pcm");
+        try (PcmSink sink = stats.timing(new PcmFileSink(file))) {
+            ByteBuffer frame = ByteBuffer.allocateDirect(FrameProcessor.FRAME_BYTES).order(ByteOrder.nativeOrder());
+            sink.write(frame);
+            sink.writeSilence(FrameProcessor.FRAME_BYTES);
+            assertEquals(2L * FrameProcessor.FRAME_BYTES, sink.bytesWritten());
+        } finally {
+            file.delete();
+        }
+
+        RecorderStats.Snapshot s = stats.snapshot();
+        assertEquals(3, s.readCalls);
+        assertEquals(2, s.readShortfalls);
+        assertEquals(1440, s.bytesCaptured);
+        assertEquals(2, s.overrunFrames);
+        assertEquals(20, s.framesProcessed);
+        assertEquals(4, s.framesRaw);
+        assertEquals(2L * FrameProcessor.FRAME_BYTES, s.bytesWritten);
+        assertEquals(2, s.writeLatency.count());
+        assertEquals(2, s.dspPerFrame.count());
+        assertEquals(300_000.0, s.denoisePerFrame.meanNanos(), 0.0);
+        assertEquals(0.05, s.dspLoad(), 1e-9);
+        assertTrue(s.dspLoadP99() >= 0.05 && s.dspLoadP99() <= 0.05 * 1.125);
+        assertNotNull(s.toString());
+    }
+
+    @Test
+    public void processorsAccumulateDenoiseTimeAcrossReset() {
+        short[] in = JavaFrameProcessorTest.noise(FrameProcessor.FRAME_SIZE * 20, 3000, 41);
+        try (FrameProcessor p = FrameProcessors.create(AudioProcessingChain.builder().denoise().build())) {
+            assertEquals(0L, p.denoiseNanos());
+            p.processFrames(in, 0, 20, null, new short[FrameProcessor.maxDecimatedSamples(20)], null);
+            long spent = p.denoiseNanos();
+            assertTrue(spent > 0);
+            p.reset();
+            assertEquals(spent, p.denoiseNanos());
+        }
+        try (FrameProcessor p = FrameProcessors.create(AudioProcessingChain.builder().highPass(80f).build())) {
+            p.processFrames(in, 0, 20, null, new short[FrameProcessor.maxDecimatedSamples(20)], null);
+            assertEquals(0L, p.denoiseNanos());
+        }
+    }
+
+    private static void assertInBucket(long expected, long actual) {
+        assertTrue(actual + " not within a bucket above " + expected,
+                actual >= expected && actual <= expected + expected / 8);
+    }
+
+    private static long lowerBound(int i) {
+        return i == 0 ? 0 : LatencyHistogram.upperBound(i - 1) + 1;
+    }
+}
@@ -0,0 +1,82 @@
+package com.zgo.recordplayer.audio;
+
+import org.junit.Test;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+
+import static org.junit.Assert.*;
+
+public class MappedPcmSourceTest {
+
+    @Test
+    public void chunksCoverTheFileAcrossWindows() throws IOException {
+        File file = pcmFile(1000);
+        try (MappedPcmSource source = new MappedPcmSource(file, 2, 300)) {
+            assertEquals(1000, source.totalFrames());
+            int expected = 0;
+            ByteBuffer chunk;
+            while ((chunk = source.next(256)).hasRemaining()) {
+                assertTrue(chunk.remaining() <= 256);
+                assertEquals(0, chunk.remaining() % 2);
+                ByteBuffer samples = chunk.slice().order(ByteOrder.LITTLE_ENDIAN);
+                while (samples.hasRemaining()) {
+                    assertEquals((short) expected++, samples.getShort());
+                }
+            }
+            assertEquals(1000, expected);
+            assertTrue(source.isAtEnd());
+        } finally {
+            file.delete();
+        }
+    }
+
+    @Test
+    public void seekJumpsToAnyFrameAndClamps() throws IOException {
+        File file = pcmFile(500);
+        try (MappedPcmSource source = new MappedPcmSource(file, 4, 64)) { // stereo frames
+            assertEquals(250, source.totalFrames());
+            source.seek(123);
+            ByteBuffer chunk = source.next(4).slice().order(ByteOrder.LITTLE_ENDIAN);
+            assertEquals(246, chunk.getShort());
+            assertEquals(247, chunk.getShort());
+            assertEquals(124, source.positionFrames());
+
+            source.seek(10_000);
+            assertFalse(source.next(4).hasRemaining());
+            source.seek(-5);
+            assertEquals(0, source.positionFrames());
+        } finally {
+            file.delete();
+        }
+    }
+
+    @Test
+    public void trailingPartialFrameIsIgnored() throws IOException {
+        File file = pcmFile(3);
+        try (FileOutputStream out = new FileOutputStream(file, true)) {
+            out.write(7);
+        }
+        try (MappedPcmSource source = new MappedPcmSource(file, 2)) {
+            assertEquals(3, source.totalFrames());
+            assertEquals(6, source.next(1024).remaining());
+        } finally {
+            file.delete();
+        }
+    }
+
+    private static File pcmFile(int samples) throws IOException {
+        File file = File.createTempFile("mapped", ".pcm");
+        ByteBuffer bytes = ByteBuffer.allocate(samples * 2).order(ByteOrder.LITTLE_ENDIAN);
+        for (int i = 0; i < samples; i++) {
+            bytes.putShort((short) i);
+        }
+        try (FileOutputStream out = new FileOutputStream(file)) {
+            out.write(bytes.array());
+        }
+        return file;
+    }
+}
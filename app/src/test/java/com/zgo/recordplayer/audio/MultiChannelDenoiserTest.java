@@ -0,0 +1,195 @@
+package com.zgo.recordplayer.audio;
+
+import org.junit.Assume;
+import org.junit.Test;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+
+import static org.junit.Assert.*;
+
+public class MultiChannelDenoiserTest {
+
+    private static final int FRAME = FrameProcessor.FRAME_SIZE;
+    private static final AudioProcessingChain CHAIN = AudioProcessingChain.builder().highPass(80f).denoise().build();
+
+    @Test
+    public void eachChannelMatchesItsOwnMonoProcessor() {
+        int channels = 3;
+        int frames = 40;
+        int batch = 7;
+        short[][] mono = new short[channels][];
+        short[][] expected = new short[channels][];
+        float[][] expectedVad = new float[channels][frames];
+        for (int c = 0; c < channels; c++) {
+            mono[c] = JavaFrameProcessorTest.noise(FRAME * frames, 1000 + 2000 * c, 50 + c);
+            expected[c] = new short[mono[c].length];
+            try (FrameProcessor p = FrameProcessors.create(CHAIN)) {
+                p.processFrames(mono[c], 0, frames, expected[c], new short[FrameProcessor.maxDecimatedSamples(frames)],
+                        null, expectedVad[c]);
+            }
+        }
+        ByteBuffer in = ByteBuffer.allocateDirect(frames * FRAME * channels * 2).order(ByteOrder.nativeOrder());
+        for (int i = 0; i < FRAME * frames; i++) {
+            for (int c = 0; c < channels; c++) {
+                in.putShort(mono[c][i]);
+            }
+        }
+        in.clear();
+        ByteBuffer out = ByteBuffer.allocateDirect(in.capacity()).order(ByteOrder.nativeOrder());
+        float[] vad = new float[frames];
+        float[] batchVad = new float[batch];
+
+        try (FrameProcessorPool pool = new FrameProcessorPool(CHAIN, channels, Long.MAX_VALUE)) {
+            try (MultiChannelDenoiser denoiser = new MultiChannelDenoiser(pool, channels, false, batch, Thread::new)) {
+                assertEquals(channels * FrameProcessor.FRAME_BYTES, denoiser.inputFrameBytes());
+                // Uneven batches, written at an offset the way the recorder fills its output
+                for (int done = 0; done < frames; ) {
+                    int n = Math.min(batch, frames - done);
+                    in.position(done * denoiser.inputFrameBytes());
+                    denoiser.process(in, n, out, done, batchVad);
+                    System.arraycopy(batchVad, 0, vad, done, n);
+                    done += n;
+                }
+            }
+            assertEquals("processors go back to the pool", channels, pool.idleCount());
+        }
+
+        for (int i = 0; i < FRAME * frames; i++) {
+            for (int c = 0; c < channels; c++) {
+                assertEquals("sample " + i + " of channel " + c, expected[c][i], out.getShort((i * channels + c) * 2));
+            }
+        }
+        for (int f = 0; f < frames; f++) {
+            float max = Math.max(expectedVad[0][f], Math.max(expectedVad[1][f], expectedVad[2][f]));
+            assertEquals(max, vad[f], 0f);
+        }
+    }
+
+    @Test
+    public void floatStereoMatchesMonoFloatProcessing() {
+        int frames = 12;
+        float[][] mono = new float[2][FRAME * frames];
+        float[][] expected = new float[2][FRAME * frames];
+        for (int c = 0; c < 2; c++) {
+            short[] pcm = JavaFrameProcessorTest.noise(FRAME * frames, 4000, 70 + c);
+            for (int i = 0; i < pcm.length; i++) {
+                mono[c][i] = pcm[i] / 32768f;
+            }
+            try (FrameProcessor p = FrameProcessors.create(CHAIN)) {
+                p.processFrames(mono[c], 0, frames, expected[c], new float[FrameProcessor.maxDecimatedSamples(frames)],
+                        null, null);
+            }
+        }
+        ByteBuffer in = ByteBuffer.allocateDirect(frames * FRAME * 2 * 4).order(ByteOrder.nativeOrder());
+        for (int i = 0; i < FRAME * frames; i++) {
+            in.putFloat(mono[0][i]).putFloat(mono[1][i]);
+        }
+        in.clear();
+        ByteBuffer out = ByteBuffer.allocateDirect(in.capacity()).order(ByteOrder.nativeOrder());
+
+        try (FrameProcessorPool pool = new FrameProcessorPool(CHAIN, 2, Long.MAX_VALUE);
+             MultiChannelDenoiser denoiser = new MultiChannelDenoiser(pool, 2, true, frames, Thread::new)) {
+            denoiser.process(in, frames, out, 0, null);
+        }
+        for (int i = 0; i < FRAME * frames; i++) {
+            assertEquals(expected[0][i], out.getFloat(i * 8), 0f);
+            assertEquals(expected[1][i], out.getFloat(i * 8 + 4), 0f);
+        }
+    }
+
+    @Test
+    public void ratesAreConvertedAroundEachChannelsProcessor() {
+        Assume.assumeTrue("the resampler needs librnnoise", Resampler.isNativeAvailable());
+        int frames = 30;
+        int inFrame = 80;   // 8 kHz capture
+        int outFrame = 441; // 44.1 kHz recording
+        short[][] mono = new short[2][];
+        short[][] expected = new short[2][FRAME * frames];
+        for (int c = 0; c < 2; c++) {
+            mono[c] = JavaFrameProcessorTest.noise(inFrame * frames, 3000, 90 + c);
+            float[] in = new float[mono[c].length];
+            for (int i = 0; i < in.length; i++) in[i] = mono[c][i] / 32768f;
+            float[] up = new float[FRAME * frames + 1];
+            float[] denoised = new float[FRAME * frames];
+            float[] down = new float[outFrame * frames + 1];
+            try (Resampler toDenoiser = Resampler.forRates(8000, 48000);
+                 Resampler toOutput = Resampler.forRates(48000, 44100);
+                 FrameProcessor p = FrameProcessors.create(CHAIN)) {
+                assertEquals(FRAME * frames, toDenoiser.process(in, 0, in.length, up, 0));
+                p.processFrames(up, 0, frames, denoised, new float[FrameProcessor.maxDecimatedSamples(frames)], null, null);
+                assertEquals(outFrame * frames, toOutput.process(denoised, 0, denoised.length, down, 0));
+            }
+            for (int i = 0; i < outFrame * frames; i++) {
+                expected[c][i] = JavaFrameProcessor.floatToPcm16(down[i] * 32768f);
+            }
+        }
+        ByteBuffer in = ByteBuffer.allocateDirect(frames * inFrame * 4).order(ByteOrder.nativeOrder());
+        for (int i = 0; i < inFrame * frames; i++) {
+            in.putShort(mono[0][i]).putShort(mono[1][i]);
+        }
+        in.clear();
+        ByteBuffer out = ByteBuffer.allocateDirect(frames * outFrame * 4).order(ByteOrder.nativeOrder());
+
+        try (FrameProcessorPool pool = new FrameProcessorPool(CHAIN, 2, Long.MAX_VALUE);
+             MultiChannelDenoiser denoiser = new MultiChannelDenoiser(pool, 2, false, 8000, 44100, 4, Thread::new)) {
+            assertEquals(2 * inFrame * 2, denoiser.inputFrameBytes());
+            assertEquals(2 * outFrame * 2, denoiser.outputFrameBytes());
+            // Batches of every size up to the maximum, so the resamplers carry state across all of them
+            for (int done = 0, n = 1; done < frames; n = n % 4 + 1) {
+                n = Math.min(n, frames - done);
+                in.position(done * denoiser.inputFrameBytes());
+                denoiser.process(in, n, out, done, null);
+                done += n;
+            }
+        }
+        for (int i = 0; i < outFrame * frames; i++) {
+            assertEquals("left " + i, expected[0][i], out.getShort(i * 4));
+            assertEquals("right " + i, expected[1][i], out.getShort(i * 4 + 2));
+        }
+    }
+
+    @Test
+    public void withoutAPoolOnlyTheRateIsConverted() {
+        Assume.assumeTrue("the resampler needs librnnoise", Resampler.isNativeAvailable());
+        int frames = 10;
+        float[] mono = new float[441 * frames];
+        for (int i = 0; i < mono.length; i++) mono[i] = (float) Math.sin(i * 0.05) * 0.5f;
+        float[] expected = new float[160 * frames + 1];
+        try (Resampler r = Resampler.forRates(44100, 16000)) {
+            assertEquals(160 * frames, r.process(mono, 0, mono.length, expected, 0));
+        }
+        ByteBuffer in = ByteBuffer.allocateDirect(mono.length * 4).order(ByteOrder.nativeOrder());
+        for (float v : mono) in.putFloat(v);
+        in.clear();
+        ByteBuffer out = ByteBuffer.allocateDirect(160 * frames * 4).order(ByteOrder.nativeOrder());
+        float[] vad = new float[frames];
+
+        try (MultiChannelDenoiser converter = new MultiChannelDenoiser(null, 1, true, 44100, 16000, frames, Thread::new)) {
+            assertFalse(converter.isDenoising());
+            converter.process(in, frames, out, 0, vad);
+            assertEquals(0, converter.denoiseNanos());
+        }
+        for (int i = 0; i < 160 * frames; i++) {
+            assertEquals(expected[i], out.getFloat(i * 4), 0f);
+        }
+        for (float v : vad) {
+            assertEquals(FrameProcessor.VAD_UNAVAILABLE, v, 0f);
+        }
+    }
+
+    @Test
+    public void rejectsBatchesLargerThanConfigured() {
+        try (FrameProcessorPool pool = new FrameProcessorPool(CHAIN, 2, Long.MAX_VALUE);
+             MultiChannelDenoiser denoiser = new MultiChannelDenoiser(pool, 2, false, 2, Thread::new)) {
+            ByteBuffer buffer = ByteBuffer.allocateDirect(3 * denoiser.inputFrameBytes()).order(ByteOrder.nativeOrder());
+            try {
+                denoiser.process(buffer, 3, buffer, 0, null);
+                fail("expected IllegalArgumentException");
+            } catch (IllegalArgumentException expected) {
+                // the denoiser stays usable
+            }
+            denoiser.process(buffer, 2, buffer, 0, null);
+        }
+    }
+}
@@ -0,0 +1,115 @@
+package com.zgo.recordplayer.audio;
+
+import org.junit.Test;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.file.Files;
+
+import static org.junit.Assert.*;
+
+public class PcmFileSinkTest {
+
+    @Test
+    public void gatherWriteProducesLittleEndianSamplesInOrder() throws IOException {
+        File file = File.createTempFile("sink", ".pcm");
+        try {
+            ByteBuffer first = samples(1, 2, -3);
+            ByteBuffer second = samples(0x1234);
+            try (PcmFileSink sink = new PcmFileSink(file)) {
+                sink.write(first, second);
+                assertFalse(first.hasRemaining());
+                assertFalse(second.hasRemaining());
+                sink.write(samples(-32768));
+                assertEquals(10, sink.bytesWritten());
+            }
+            ByteBuffer content = ByteBuffer.wrap(Files.readAllBytes(file.toPath())).order(ByteOrder.LITTLE_ENDIAN);
+            assertEquals(10, content.remaining());
+            short[] expected = {1, 2, -3, 0x1234, -32768};
+            for (short s : expected) {
+                assertEquals(s, content.getShort());
+            }
+        } finally {
+            file.delete();
+        }
+    }
+
+    @Test
+    public void preallocatedTailIsTruncatedOnClose() throws IOException {
+        File file = File.createTempFile("sink", ".pcm");
+        long[] reserved = new long[2];
+        PcmFileSink.Preallocator extendFile = (fd, offset, length) -> {
+            reserved[0]++;
+            reserved[1] = offset + length;
+            try (java.io.RandomAccessFile raf = new java.io.RandomAccessFile(file, "rw")) {
+                raf.setLength(offset + length);
+            }
+        };
+        try {
+            try (PcmFileSink sink = new PcmFileSink(file, extendFile, 64)) {
+                sink.write(samples(new short[40])); // 80 bytes: reserves two chunks at once
+                sink.write(samples(new short[4]));  // still inside the reservation
+                assertEquals(1, reserved[0]);
+                sink.write(samples(new short[30])); // 148 bytes: one more chunk
+                assertTrue(sink.isPreallocating());
+            }
+            assertEquals(2, reserved[0]);
+            assertEquals(192, reserved[1]);
+            assertEquals(148, file.length());
+        } finally {
+            file.delete();
+        }
+    }
+
+    @Test
+    public void silenceIsSkippedAndReadsBackAsZeros() throws IOException {
+        File file = File.createTempFile("sink", ".pcm");
+        try {
+            try (PcmFileSink sink = new PcmFileSink(file)) {
+                sink.write(samples(5));
+                sink.writeSilence(6);
+                sink.write(samples(6));
+                sink.writeSilence(4); // a trailing hole still counts toward the length
+                assertEquals(14, sink.bytesWritten());
+            }
+            ByteBuffer content = ByteBuffer.wrap(Files.readAllBytes(file.toPath())).order(ByteOrder.LITTLE_ENDIAN);
+            assertEquals(14, content.remaining());
+            short[] expected = {5, 0, 0, 0, 6, 0, 0};
+            for (short s : expected) {
+                assertEquals(s, content.getShort());
+            }
+        } finally {
+            file.delete();
+        }
+    }
+
+    @Test
+    public void failingPreallocatorIsDisabled() throws IOException {
+        File file = File.createTempFile("sink", ".pcm");
+        try (PcmFileSink sink = new PcmFileSink(file, (fd, offset, length) -> {
+            throw new IOException("unsupported");
+        }, 64)) {
+            sink.write(samples(7, 8));
+            assertFalse(sink.isPreallocating());
+            assertEquals(4, sink.bytesWritten());
+        } finally {
+            file.delete();
+        }
+    }
+
+    private static ByteBuffer samples(int... values) {
+        short[] shorts = new short[values.length];
+        for (int i = 0; i < values.length; i++) {
+            shorts[i] = (short) values[i];
+        }
+        return samples(shorts);
+    }
+
+    private static ByteBuffer samples(short[] values) {
+        ByteBuffer buffer = ByteBuffer.allocateDirect(values.length * 2).order(ByteOrder.nativeOrder());
+        buffer.asShortBuffer().put(values);
+        return buffer;
+    }
+}
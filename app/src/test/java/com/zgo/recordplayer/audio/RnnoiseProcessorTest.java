@@ -0,0 +1,196 @@
+package com.zgo.recordplayer.audio;
+
+import org.junit.Assume;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.FloatBuffer;
+
+import static org.junit.Assert.*;
+
+/**
+ * Runs the native engine on the host JVM. Needs the host build of librnnoise
+ * ({@code -PrnnoiseSrc=...}); without it these tests are skipped, unless
+ * {@code -Drnnoise.requireNative=true} asks for a failure instead.
+ */
+public class RnnoiseProcessorTest {
+
+    private static final int FRAME = FrameProcessor.FRAME_SIZE;
+
+    @Before
+    public void requireNativeLibrary() {
+        if (Boolean.getBoolean("rnnoise.requireNative")) {
+            assertTrue("librnnoise did not load from java.library.path", RnnoiseProcessor.isNativeAvailable());
+        }
+        Assume.assumeTrue("librnnoise not built for this host", RnnoiseProcessor.isNativeAvailable());
+    }
+
+    @Test
+    public void nonDenoisingStagesMatchTheJavaEngine() {
+        AudioProcessingChain chain = AudioProcessingChain.builder()
+                .highPass(100f).gain(6f).agc(-20f, 12f).limiter(-1f).decimate().build();
+        int frames = 200;
+        short[] in = JavaFrameProcessorTest.noise(FRAME * frames, 4000, 21);
+        short[] nativeOut = new short[in.length];
+        short[] javaOut = new short[in.length];
+        short[] nativeDecimated = new short[FrameProcessor.maxDecimatedSamples(frames)];
+        short[] javaDecimated = new short[nativeDecimated.length];
+        int nativeTotal;
+        int javaTotal;
+        try (RnnoiseProcessor p = new RnnoiseProcessor(chain)) {
+            nativeTotal = p.processFrames(in, 0, frames, nativeOut, nativeDecimated, null);
+        }
+        try (JavaFrameProcessor p = new JavaFrameProcessor(chain)) {
+            javaTotal = p.processFrames(in, 0, frames, javaOut, javaDecimated, null);
+        }
+        assertEquals(javaTotal, nativeTotal);
+        for (int i = 0; i < in.length; i++) {
+            assertEquals("sample " + i, javaOut[i], nativeOut[i], 1);
+        }
+        for (int i = 0; i < nativeTotal; i++) {
+            assertEquals("decimated " + i, javaDecimated[i], nativeDecimated[i], 1);
+        }
+    }
+
+    @Test
+    public void singleFrameBatchAndDirectPathsAgree() {
+        int frames = 6;
+        short[] in = JavaFrameProcessorTest.noise(FRAME * frames, 3000, 22);
+        short[] batchOut = new short[in.length];
+        short[] batchDecimated = new short[FrameProcessor.maxDecimatedSamples(frames)];
+        float[] batchVad = new float[frames];
+        try (RnnoiseProcessor p = new RnnoiseProcessor(true)) {
+            p.processFrames(in, 0, frames, batchOut, batchDecimated, null, batchVad);
+        }
+
+        short[] frame = new short[FRAME];
+        short[] out = new short[FRAME];
+        short[] decimated = new short[FrameProcessor.DECIMATED_FRAME_SIZE];
+        float[] vad = new float[1];
+        int total = 0;
+        try (RnnoiseProcessor p = new RnnoiseProcessor(true)) {
+            for (int f = 0; f < frames; f++) {
+                System.arraycopy(in, f * FRAME, frame, 0, FRAME);
+                int produced = p.processFrame(frame, out, decimated, vad);
+                assertEquals(batchVad[f], vad[0], 0f);
+                assertTrue(vad[0] >= 0f && vad[0] <= 1f);
+                for (int i = 0; i < FRAME; i++) {
+                    assertEquals(batchOut[f * FRAME + i], out[i]);
+                }
+                for (int i = 0; i < produced; i++) {
+                    assertEquals(batchDecimated[total + i], decimated[i]);
+                }
+                total += produced;
+            }
+        }
+
+        ByteBuffer inBuf = ByteBuffer.allocateDirect(in.length * 2).order(ByteOrder.nativeOrder());
+        inBuf.asShortBuffer().put(in);
+        ByteBuffer outBuf = ByteBuffer.allocateDirect(in.length * 2).order(ByteOrder.nativeOrder());
+        ByteBuffer decimatedBuf = ByteBuffer.allocateDirect(batchDecimated.length * 2).order(ByteOrder.nativeOrder());
+        float[] directVad = new float[frames];
+        try (RnnoiseProcessor p = new RnnoiseProcessor(true)) {
+            assertEquals(total, p.processFrames(inBuf, frames, outBuf, decimatedBuf, null, directVad));
+        }
+        for (int i = 0; i < in.length; i++) {
+            assertEquals(batchOut[i], outBuf.getShort(i * 2));
+        }
+        assertArrayEquals(batchVad, directVad, 0f);
+    }
+
+    @Test
+    public void floatPathsMatchTheJavaEngineWithoutClipping() {
+        AudioProcessingChain chain = AudioProcessingChain.builder().highPass(100f).gain(6f).decimate().build();
+        int frames = 20;
+        float[] in = new float[FRAME * frames];
+        short[] noise = JavaFrameProcessorTest.noise(in.length, 12000, 23);
+        for (int i = 0; i < in.length; i++) in[i] = noise[i] / JavaFrameProcessor.FLOAT_SCALE;
+        float[] javaOut = new float[in.length];
+        float[] javaDecimated = new float[FrameProcessor.maxDecimatedSamples(frames)];
+        float[] nativeOut = new float[in.length];
+        float[] nativeDecimated = new float[javaDecimated.length];
+        try (JavaFrameProcessor p = new JavaFrameProcessor(chain)) {
+            p.processFrames(in, 0, frames, javaOut, javaDecimated, null, null);
+        }
+        try (RnnoiseProcessor p = new RnnoiseProcessor(chain)) {
+            p.processFrames(in, 0, frames, nativeOut, nativeDecimated, null, null);
+        }
+        assertArrayEquals(javaOut, nativeOut, 1e-4f);
+        assertArrayEquals(javaDecimated, nativeDecimated, 1e-4f);
+        float peak = 0f;
+        for (float v : nativeOut) peak = Math.max(peak, Math.abs(v));
+        assertTrue("6 dB over loud noise exceeds full scale, got " + peak, peak > 1f);
+
+        // The direct path reads and writes at the buffers' positions
+        ByteBuffer inBytes = ByteBuffer.allocateDirect(in.length * 4).order(ByteOrder.nativeOrder());
+        inBytes.asFloatBuffer().put(in);
+        ByteBuffer outBytes = ByteBuffer.allocateDirect((in.length + FRAME) * 4).order(ByteOrder.nativeOrder());
+        ByteBuffer decimatedBytes = ByteBuffer.allocateDirect(nativeDecimated.length * 4).order(ByteOrder.nativeOrder());
+        FloatBuffer out = outBytes.asFloatBuffer();
+        out.position(FRAME);
+        try (RnnoiseProcessor p = new RnnoiseProcessor(chain)) {
+            p.processFrames(inBytes.asFloatBuffer(), frames, out, decimatedBytes.asFloatBuffer(), null, null);
+        }
+        for (int i = 0; i < in.length; i++) {
+            assertEquals("sample " + i, nativeOut[i], outBytes.getFloat((FRAME + i) * 4), 0f);
+        }
+    }
+
+    @Test
+    public void decimatorMatchesTheStandaloneResampler() {
+        int frames = 10;
+        short[] in = JavaFrameProcessorTest.noise(FRAME * frames, 5000, 23);
+        short[] decimated = new short[FrameProcessor.maxDecimatedSamples(frames)];
+        int total;
+        try (RnnoiseProcessor p = new RnnoiseProcessor(false)) {
+            total = p.processFrames(in, 0, frames, null, decimated, null);
+        }
+        short[] resampled;
+        int produced;
+        try (Resampler r = Resampler.forRates(48000, 8000)) {
+            resampled = new short[r.maxOutputSize(in.length)];
+            produced = r.process(in, 0, in.length, resampled, 0);
+        }
+        assertEquals(total, produced);
+        for (int i = 0; i < total; i++) {
+            assertEquals("sample " + i, resampled[i], decimated[i], 1);
+        }
+    }
+
+    @Test
+    public void resetRestoresTheInitialState() {
+        AudioProcessingChain chain = AudioProcessingChain.builder()
+                .denoise().highPass(100f).agc(-20f, 12f).limiter(-1f).decimate().build();
+        int frames = 41; // odd, so the 8 kHz accumulator holds a half block at reset
+        short[] first = JavaFrameProcessorTest.noise(FRAME * frames, 4000, 24);
+        short[] second = JavaFrameProcessorTest.noise(FRAME * frames, 4000, 25);
+        short[] expected = new short[second.length];
+        short[] expectedDecimated = new short[FrameProcessor.maxDecimatedSamples(frames)];
+        float[] expectedVad = new float[frames];
+        int expectedTotal;
+        try (RnnoiseProcessor p = new RnnoiseProcessor(chain)) {
+            expectedTotal = p.processFrames(second, 0, frames, expected, expectedDecimated, null, expectedVad);
+        }
+        try (RnnoiseProcessor p = new RnnoiseProcessor(chain)) {
+            p.processFrames(first, 0, frames, new short[first.length], new short[expectedDecimated.length], null);
+            p.reset();
+            short[] out = new short[second.length];
+            short[] decimated = new short[expectedDecimated.length];
+            float[] vad = new float[frames];
+            assertEquals(expectedTotal, p.processFrames(second, 0, frames, out, decimated, null, vad));
+            assertArrayEquals(expected, out);
+            assertArrayEquals(expectedDecimated, decimated);
+            assertArrayEquals(expectedVad, vad, 0f);
+        }
+    }
+
+    @Test(expected = IllegalStateException.class)
+    public void releasedProcessorRejectsFrames() {
+        RnnoiseProcessor p = new RnnoiseProcessor(true);
+        p.close();
+        assertTrue(p.isReleased());
+        p.processFrame(new short[FRAME], null, new short[FrameProcessor.DECIMATED_FRAME_SIZE]);
+    }
+}
@@ -0,0 +1,167 @@
+package com.zgo.recordplayer.audio;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+public class SegmentedPcmSinkTest {
+
+    private static final int RATE = 1000; // 10 samples per 10 ms frame
+
+    private File dir;
+
+    @Before
+    public void createDirectory() throws IOException {
+        dir = Files.createTempDirectory("segments").toFile();
+    }
+
+    @After
+    public void deleteDirectory() {
+        File[] files = dir.listFiles();
+        if (files != null) {
+            for (File f : files) f.delete();
+        }
+        dir.delete();
+    }
+
+    @Test
+    public void rollsOverByDurationAndListsEverySegmentInOrder() throws IOException {
+        List<String> finished = Collections.synchronizedList(new ArrayList<>());
+        List<String> openedOn = Collections.synchronizedList(new ArrayList<>());
+        ByteArrayOutputStream expected = new ByteArrayOutputStream();
+        SegmentedPcmSink sink = new SegmentedPcmSink(new File(dir, "rec.pcm"), opener(openedOn), RATE, 1, false,
+                100, 0, Thread::new, (segment, info) -> finished.add(info.name));
+        WaveformIndexWriter index = sink.currentIndex();
+        assertNotNull(index);
+        int rotations = 0;
+        // 13 batches of 3 frames: 30 samples each, 390 in all, at most 100 ms (100 samples) a segment
+        for (int batch = 0; batch < 13; batch++) {
+            if (sink.isDue()) {
+                index = sink.rotate();
+                rotations++;
+            }
+            ByteBuffer samples = ramp(batch * 30, 30);
+            index.add(samples, 0, 30, 0.5f);
+            expected.write(toArray(samples));
+            sink.write(samples);
+        }
+        sink.close();
+
+        assertEquals(3, rotations);
+        assertEquals(Collections.singletonList("main"), openedOn.subList(0, 1));
+        assertFalse("segments after the first are opened ahead, off the writer", openedOn.subList(1, openedOn.size())
+                .contains("main"));
+        SegmentManifest manifest = SegmentManifest.read(SegmentedPcmSink.manifestFor(new File(dir, "rec.pcm")));
+        assertTrue(manifest.isComplete());
+        assertEquals(RATE, manifest.sampleRate());
+        assertEquals(390, manifest.totalSamples());
+        List<SegmentManifest.Segment> segments = manifest.segments();
+        assertEquals(4, segments.size());
+        assertEquals(120, segments.get(0).samples); // rolled over at the first batch boundary past 100
+        assertEquals("rec-0001.pcm", segments.get(0).name);
+        assertEquals("rec-0004.pcm", segments.get(3).name);
+        assertEquals(Arrays.asList("rec-0001.pcm", "rec-0002.pcm", "rec-0003.pcm", "rec-0004.pcm"), finished);
+
+        ByteArrayOutputStream joined = new ByteArrayOutputStream();
+        for (SegmentManifest.Segment s : segments) {
+            File file = s.file(sink.manifestFile());
+            assertEquals(s.bytes, file.length());
+            joined.write(Files.readAllBytes(file.toPath()));
+            try (WaveformIndex segmentIndex = WaveformIndex.open(WaveformIndex.sidecarFor(file))) {
+                assertTrue(segmentIndex.isComplete());
+                assertEquals(s.samples, segmentIndex.totalSamples());
+            }
+        }
+        assertArrayEquals(expected.toByteArray(), joined.toByteArray());
+        assertFalse("the prepared fifth segment is removed", new File(dir, "rec-0005.pcm").exists());
+        assertEquals(780, sink.bytesWritten());
+    }
+
+    @Test
+    public void sizeLimitCountsTheBytesOnDiskAndSilenceCountsAsAudio() throws IOException {
+        SegmentedPcmSink sink = new SegmentedPcmSink(new File(dir, "take.pcm"), opener(null), RATE, 2, false,
+                0, 100, Thread::new, null);
+        sink.writeSilence(80);
+        assertFalse(sink.isDue());
+        sink.write(ramp(0, 20));
+        assertTrue(sink.isDue());
+        sink.rotate();
+        assertFalse(sink.isDue());
+        sink.close();
+
+        SegmentManifest manifest = SegmentManifest.read(sink.manifestFile());
+        assertEquals(1, manifest.segments().size()); // the empty last segment is dropped
+        assertEquals(30, manifest.segments().get(0).samples); // 120 bytes of 2-channel PCM16
+        assertFalse(new File(dir, "take-0002.pcm").exists());
+    }
+
+    @Test
+    public void manifestRejectsGapsAndRoundTrips() throws IOException {
+        SegmentManifest manifest = new SegmentManifest(48000, 2, true);
+        manifest.add(new SegmentManifest.Segment("a b.f32", 0, 480, 3840));
+        try {
+            manifest.add(new SegmentManifest.Segment("c.f32", 400, 480, 3840));
+            fail("expected IllegalArgumentException");
+        } catch (IllegalArgumentException expected) {
+            // segments must be contiguous
+        }
+        File file = new File(dir, "m" + SegmentManifest.FILE_SUFFIX);
+        manifest.write(file);
+        SegmentManifest read = SegmentManifest.read(file);
+        assertFalse(read.isComplete());
+        assertTrue(read.isFloat());
+        assertEquals(2, read.channels());
+        assertEquals("a b.f32", read.segments().get(0).name);
+        assertEquals(480, read.totalSamples());
+    }
+
+    /** Opens raw segments with an index, recording which thread opened each. */
+    private static SegmentedPcmSink.Opener opener(List<String> openedOn) {
+        String main = Thread.currentThread().getName();
+        return new SegmentedPcmSink.Opener() {
+            @Override
+            public PcmSink openSink(File segment) throws IOException {
+                if (openedOn != null) {
+                    openedOn.add(Thread.currentThread().getName().equals(main) ? "main" : "finalizer");
+                }
+                return new PcmFileSink(segment);
+            }
+
+            @Override
+            public WaveformIndexWriter openIndex(File segment) {
+                try {
+                    return new WaveformIndexWriter(WaveformIndex.sidecarFor(segment), RATE);
+                } catch (IOException e) {
+                    return null;
+                }
+            }
+        };
+    }
+
+    private static ByteBuffer ramp(int start, int count) {
+        ByteBuffer buffer = ByteBuffer.allocateDirect(count * 2).order(ByteOrder.nativeOrder());
+        for (int i = 0; i < count; i++) {
+            buffer.putShort(i * 2, (short) (start + i));
+        }
+        return buffer;
+    }
+
+    private static byte[] toArray(ByteBuffer buffer) {
+        byte[] bytes = new byte[buffer.remaining()];
+        buffer.duplicate().get(bytes);
+        return bytes;
+    }
+}
@@ -0,0 +1,114 @@
+package com.zgo.recordplayer.audio;
+
+import org.junit.Test;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.concurrent.atomic.AtomicReference;
+
+import static org.junit.Assert.*;
+
+public class TailingPcmSourceTest {
+
+    @Test
+    public void followsTheWriterThroughThePreallocatedTail() throws Exception {
+        File file = File.createTempFile("tail", ".pcm");
+        PcmFileSink.Preallocator extendFile = (fd, offset, length) -> {
+            try (RandomAccessFile raf = new RandomAccessFile(file, "rw")) {
+                raf.setLength(offset + length);
+            }
+        };
+        RecordingProgress progress = new RecordingProgress();
+        int total = 20_000;
+        AtomicReference<Exception> writerFailure = new AtomicReference<>();
+        Thread writer = new Thread(() -> {
+            try (PcmFileSink sink = new PcmFileSink(file, extendFile, 1 << 16)) {
+                for (int s = 0; s < total; s += 480) {
+                    sink.write(ramp(s, Math.min(480, total - s)));
+                    progress.commit(sink.bytesWritten());
+                    Thread.sleep(1);
+                }
+            } catch (Exception e) {
+                writerFailure.set(e);
+            } finally {
+                progress.finish();
+            }
+        });
+        try (TailingPcmSource source = new TailingPcmSource(file, 2, progress)) {
+            writer.start();
+            int expected = 0;
+            ByteBuffer chunk;
+            while ((chunk = source.next(1000)).hasRemaining()) {
+                assertTrue(chunk.remaining() <= 1000);
+                assertEquals(0, chunk.remaining() % 2);
+                // Never the zeros of the preallocated tail
+                ByteBuffer samples = chunk.order(ByteOrder.nativeOrder());
+                while (samples.hasRemaining()) {
+                    assertEquals("sample " + expected, (short) expected, samples.getShort());
+                    expected++;
+                }
+            }
+            writer.join();
+            assertNull(writerFailure.get());
+            assertEquals(total, expected);
+            assertTrue(source.isAtEnd());
+            assertEquals(total, source.totalFrames());
+
+            source.seek(100);
+            assertEquals(100, source.next(2).order(ByteOrder.nativeOrder()).getShort());
+        } finally {
+            file.delete();
+        }
+    }
+
+    @Test
+    public void waitsForCommittedFramesAndReadsATrailingHoleAsZeros() throws Exception {
+        File file = File.createTempFile("tail", ".pcm");
+        RecordingProgress progress = new RecordingProgress();
+        try (PcmFileSink sink = new PcmFileSink(file);
+             TailingPcmSource source = new TailingPcmSource(file, 2, progress)) {
+            sink.write(ramp(1, 3));
+            // Written but not committed: the reader must not see it yet
+            Thread reader = new Thread(() -> {
+                try {
+                    source.next(100);
+                } catch (IOException ignored) {
+                }
+            });
+            reader.start();
+            reader.join(50);
+            assertTrue(reader.isAlive());
+            assertEquals(0, source.positionFrames());
+            reader.interrupt();
+            reader.join();
+
+            progress.commit(sink.bytesWritten());
+            assertEquals(3, source.next(100).remaining() / 2);
+            sink.writeSilence(8); // a hole past the end of the file until the sink closes
+            progress.commit(sink.bytesWritten());
+            ByteBuffer silence = source.next(100);
+            assertEquals(8, silence.remaining());
+            while (silence.hasRemaining()) {
+                assertEquals(0, silence.get());
+            }
+            assertFalse(source.isAtEnd());
+            progress.finish();
+            assertFalse(source.next(100).hasRemaining());
+            assertTrue(source.isAtEnd());
+        } finally {
+            file.delete();
+        }
+    }
+
+    private static ByteBuffer ramp(int first, int count) {
+        ByteBuffer buffer = ByteBuffer.allocateDirect(count * 2).order(ByteOrder.nativeOrder());
+        for (int i = 0; i < count; i++) {
+            buffer.putShort((short) (first + i));
+        }
+        buffer.flip();
+        return buffer;
+    }
+}
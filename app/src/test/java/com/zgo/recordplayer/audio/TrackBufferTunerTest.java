@@ -0,0 +1,42 @@
+package com.zgo.recordplayer.audio;
+
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+public class TrackBufferTunerTest {
+
+    @Test
+    public void growsOneStepPerUnderrunEpisodeUpToCapacity() {
+        TrackBufferTuner tuner = new TrackBufferTuner(480, 480, 1600);
+        assertEquals(TrackBufferTuner.UNCHANGED, tuner.onUnderrunCount(0));
+        assertEquals(960, tuner.onUnderrunCount(1));
+        assertEquals(TrackBufferTuner.UNCHANGED, tuner.onUnderrunCount(1));
+        assertEquals(1440, tuner.onUnderrunCount(5)); // several underruns since the last write: one step
+        assertEquals(1600, tuner.onUnderrunCount(6));
+        assertEquals(TrackBufferTuner.UNCHANGED, tuner.onUnderrunCount(7));
+        assertEquals(3, tuner.growths());
+    }
+
+    @Test
+    public void followsTheSizeTheTrackApplied() {
+        TrackBufferTuner tuner = new TrackBufferTuner(192, 192, 1920);
+        assertEquals(384, tuner.onUnderrunCount(1));
+        tuner.onSizeApplied(400); // rounded up to the mixer burst
+        assertEquals(400, tuner.sizeFrames());
+        assertEquals(592, tuner.onUnderrunCount(2));
+        tuner.onSizeApplied(-38); // error codes are ignored
+        assertEquals(592, tuner.sizeFrames());
+    }
+
+    @Test
+    public void profilesSizeBuffersInWholeFrames() {
+        assertEquals(3844, LatencyProfile.LOW_LATENCY.bufferBytes(3842, 48000, 4));
+        assertEquals(24000, LatencyProfile.BALANCED.bufferBytes(3840, 48000, 2));
+        assertEquals(96000, LatencyProfile.POWER_SAVING.bufferBytes(3840, 48000, 2));
+        assertEquals(200000, LatencyProfile.POWER_SAVING.bufferBytes(200000, 48000, 2));
+        assertEquals(1, LatencyProfile.LOW_LATENCY.readFrames(3840, FrameProcessor.FRAME_BYTES));
+        assertEquals(6, LatencyProfile.BALANCED.readFrames(24000, FrameProcessor.FRAME_BYTES));
+        assertTrue(LatencyProfile.POWER_SAVING.minBatchFrames() <= LatencyProfile.POWER_SAVING.maxBatchFrames());
+    }
+}
@@ -0,0 +1,96 @@
+package com.zgo.recordplayer.audio;
+
+import org.junit.Test;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+public class VoiceGateTest {
+
+    private static final int FRAME_BYTES = 4; // two samples per frame keeps the bookkeeping readable
+
+    @Test
+    public void keepsSpeechWithPreRollAndHangoverAndReportsTheRest() throws Exception {
+        // 10 silent, 3 voiced, 8 silent, 2 voiced, 5 silent; frame i carries sample value i
+        float[] vad = new float[28];
+        for (int i = 10; i < 13; i++) vad[i] = 0.9f;
+        for (int i = 21; i < 23; i++) vad[i] = 0.8f;
+        Recorder out = new Recorder();
+        VoiceGate gate = new VoiceGate(FRAME_BYTES, 0.5f, 2, 3);
+
+        // Uneven batches so runs, pre-roll and hangover cross batch boundaries
+        int[] batches = {4, 7, 1, 9, 7};
+        int start = 0;
+        for (int n : batches) {
+            float[] batchVad = new float[n];
+            System.arraycopy(vad, start, batchVad, 0, n);
+            gate.process(frames(start, n), n, batchVad, out);
+            start += n;
+        }
+        gate.finish(out);
+
+        // 7 silent frames, pre-roll 7-9, speech 10-12, hangover 13-14, 3 silent, pre-roll 18-20,
+        // speech 21-22, hangover 23-24, the remaining 3 held back at the end
+        assertEquals("S7 7 8 9 10 11 12 13 14 S3 18 19 20 21 22 23 24 S3", out.log());
+        assertEquals(15, gate.passedFrames());
+        assertEquals(13, gate.gatedFrames());
+    }
+
+    @Test
+    public void framesWithoutVoiceEstimateAlwaysPass() throws Exception {
+        float[] vad = {FrameProcessor.VAD_UNAVAILABLE, FrameProcessor.VAD_UNAVAILABLE, 0f};
+        Recorder out = new Recorder();
+        VoiceGate gate = new VoiceGate(FRAME_BYTES, 0.5f, 0, 0);
+        gate.process(frames(0, 3), 3, vad, out);
+        gate.finish(out);
+        assertEquals("0 1 S1", out.log());
+    }
+
+    @Test
+    public void preRollWrapsAroundTheRing() throws Exception {
+        float[] vad = new float[12];
+        vad[11] = 1f;
+        Recorder out = new Recorder();
+        VoiceGate gate = new VoiceGate(FRAME_BYTES, 0.5f, 0, 4);
+        gate.process(frames(0, 12), 12, vad, out);
+        assertEquals("S7 7 8 9 10 11", out.log());
+        assertTrue(gate.isOpen());
+    }
+
+    /** Frames whose samples both hold the frame number. */
+    private static ByteBuffer frames(int first, int count) {
+        ByteBuffer buffer = ByteBuffer.allocateDirect(count * FRAME_BYTES).order(ByteOrder.nativeOrder());
+        for (int i = 0; i < count; i++) {
+            buffer.putShort((short) (first + i)).putShort((short) (first + i));
+        }
+        buffer.flip();
+        return buffer;
+    }
+
+    private static final class Recorder implements VoiceGate.Output {
+        private final List<String> events = new ArrayList<>();
+
+        @Override
+        public void frames(ByteBuffer frames, float[] vad, int vadOffset) {
+            assertEquals(0, frames.remaining() % FRAME_BYTES);
+            int n = frames.remaining() / FRAME_BYTES;
+            for (int i = 0; i < n; i++) {
+                short value = frames.getShort(frames.position() + i * FRAME_BYTES);
+                events.add(Short.toString(value));
+            }
+        }
+
+        @Override
+        public void silence(int frameCount) {
+            events.add("S" + frameCount);
+        }
+
+        String log() {
+            return String.join(" ", events);
+        }
+    }
+}
@@ -0,0 +1,150 @@
+package com.zgo.recordplayer.audio;
+
+import org.junit.Test;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+
+import static org.junit.Assert.*;
+
+public class WaveformIndexTest {
+
+    @Test
+    public void levelsSummarizeTheStream() throws IOException {
+        File file = File.createTempFile("wave", WaveformIndex.FILE_SUFFIX);
+        try {
+            // 4 samples per level-0 block, 40 per level-1 block; 100 samples => 25 / 3 blocks
+            try (WaveformIndexWriter writer = new WaveformIndexWriter(file, 400, 4, 2)) {
+                for (int i = 0; i < 100; i += 10) {
+                    ByteBuffer chunk = ramp(i, 10);
+                    writer.add(chunk, 0, 10, i < 50 ? 0.25f : 0.75f);
+                }
+            }
+            try (WaveformIndex index = WaveformIndex.open(file)) {
+                assertTrue(index.isComplete());
+                assertEquals(100, index.totalSamples());
+                assertEquals(400, index.sampleRate());
+                assertEquals(25, index.blockCount(0));
+                assertEquals(3, index.blockCount(1)); // the last one partial
+
+                WaveformIndex.Blocks fine = index.read(0, 0, 25);
+                assertEquals(0, fine.min[0]);
+                assertEquals(3, fine.max[0]);
+                assertEquals(Math.round(Math.sqrt((0 + 1 + 4 + 9) / 4.0)), fine.rms[0]);
+                assertEquals(0.25f, fine.vad(0), 0.01f);
+                assertEquals(0.75f, fine.vad(24), 0.01f);
+
+                WaveformIndex.Blocks coarse = index.read(1, 0, 10);
+                assertEquals(3, coarse.size());
+                assertEquals(40, coarse.min[1]);
+                assertEquals(79, coarse.max[1]);
+                assertEquals(0.75f, coarse.vad(1), 0.01f); // highest probability within the block
+                assertEquals(99, coarse.max[2]);
+
+                assertEquals(0, index.levelFor(10));
+                assertEquals(1, index.levelFor(40));
+            }
+        } finally {
+            file.delete();
+        }
+    }
+
+    @Test
+    public void unknownVadRoundTrips() throws IOException {
+        File file = File.createTempFile("wave", WaveformIndex.FILE_SUFFIX);
+        try {
+            try (WaveformIndexWriter writer = new WaveformIndexWriter(file, 48000)) {
+                writer.add(ramp(-240, 480), 0, 480, FrameProcessor.VAD_UNAVAILABLE);
+            }
+            try (WaveformIndex index = WaveformIndex.open(file)) {
+                assertEquals(4, index.levelCount());
+                assertEquals(480, index.blockSamples(0));
+                assertEquals(48000, index.blockSamples(2));
+                WaveformIndex.Blocks blocks = index.read(2, 0, 1);
+                assertEquals(-240, blocks.min[0]);
+                assertEquals(239, blocks.max[0]);
+                assertEquals(FrameProcessor.VAD_UNAVAILABLE, blocks.vad(0), 0f);
+            }
+        } finally {
+            file.delete();
+        }
+    }
+
+    @Test
+    public void unfinishedIndexExposesStreamedLevelZero() throws IOException {
+        File file = File.createTempFile("wave", WaveformIndex.FILE_SUFFIX);
+        try {
+            WaveformIndexWriter writer = new WaveformIndexWriter(file, 400, 1, 3);
+            writer.add(ramp(0, 1200), 0, 1200, 0.5f); // flushes two 512-block batches, never closed
+            try (WaveformIndex index = WaveformIndex.open(file)) {
+                assertFalse(index.isComplete());
+                assertEquals(1024, index.blockCount(0));
+                assertEquals(0, index.blockCount(1));
+                assertEquals(0, index.levelFor(100));
+                assertEquals(1023, index.read(0, 1023, 5).max[0]);
+            }
+            writer.close();
+        } finally {
+            file.delete();
+        }
+    }
+
+    @Test
+    public void floatSamplesIndexLikePcm16AndClampAboveFullScale() throws IOException {
+        File file = File.createTempFile("wave", WaveformIndex.FILE_SUFFIX);
+        try {
+            ByteBuffer floats = ByteBuffer.allocateDirect(8 * 4).order(ByteOrder.nativeOrder());
+            float[] values = {0f, 0.5f, -0.5f, 0.25f, 1.5f, -2f, 0f, 0f};
+            for (int i = 0; i < values.length; i++) floats.putFloat(i * 4, values[i]);
+            try (WaveformIndexWriter writer = new WaveformIndexWriter(file, 400, 4, 1)) {
+                writer.addFloat(floats, 0, 8, 0.5f);
+            }
+            try (WaveformIndex index = WaveformIndex.open(file)) {
+                WaveformIndex.Blocks blocks = index.read(0, 0, 2);
+                assertEquals(-16384, blocks.min[0]);
+                assertEquals(16384, blocks.max[0]);
+                assertEquals(Short.MIN_VALUE, blocks.min[1]);
+                assertEquals(Short.MAX_VALUE, blocks.max[1]);
+            }
+        } finally {
+            file.delete();
+        }
+    }
+
+    @Test
+    public void stereoBlocksSpanFramesAcrossBothChannels() throws IOException {
+        File file = File.createTempFile("wave", WaveformIndex.FILE_SUFFIX);
+        try {
+            // 8 frames, left a ramp and right its negation
+            ByteBuffer stereo = ByteBuffer.allocateDirect(16 * 2).order(ByteOrder.nativeOrder());
+            for (int i = 0; i < 8; i++) {
+                stereo.putShort(i * 4, (short) i).putShort(i * 4 + 2, (short) -i);
+            }
+            try (WaveformIndexWriter writer = new WaveformIndexWriter(file, 400, 2, 4, 1)) {
+                writer.add(stereo, 0, 16, 0.5f);
+                assertEquals(8, writer.totalSamples());
+            }
+            try (WaveformIndex index = WaveformIndex.open(file)) {
+                assertEquals(8, index.totalSamples());
+                assertEquals(2, index.blockCount(0));
+                WaveformIndex.Blocks blocks = index.read(0, 0, 2);
+                assertEquals(-3, blocks.min[0]);
+                assertEquals(3, blocks.max[0]);
+                assertEquals(-7, blocks.min[1]);
+                assertEquals(7, blocks.max[1]);
+            }
+        } finally {
+            file.delete();
+        }
+    }
+
+    private static ByteBuffer ramp(int start, int count) {
+        ByteBuffer buffer = ByteBuffer.allocateDirect(count * 2).order(ByteOrder.nativeOrder());
+        for (int i = 0; i < count; i++) {
+            buffer.putShort(i * 2, (short) (start + i));
+        }
+        return buffer;
+    }
+}
@@ -0,0 +1,52 @@
+// JMH benchmarks for the record/denoise/write and playback hot paths.
+//
+//   ./gradlew :benchmarks:jmh                                  synthetic input
+//   ./gradlew :benchmarks:jmh -PbenchRecording=/path/rec.pcm   also a recorded 48 kHz mono PCM16 file
+//   ./gradlew :benchmarks:jmh -PbenchTag=1.2.0                 results/jmh-1.2.0.json
+//
+// Results are written as JSON under benchmarks/results/ so runs can be diffed release to release.
+plugins {
+    java
+    alias(libs.plugins.jmh)
+}
+
+java {
+    sourceCompatibility = JavaVersion.VERSION_11
+    targetCompatibility = JavaVersion.VERSION_11
+}
+
+// The pure-Java audio package of :app is compiled here directly; the app module is an
+// Android application and cannot be consumed by a JVM project.
+sourceSets {
+    main {
+        java {
+            srcDir("../app/src/main/java")
+            include("com/zgo/recordplayer/audio/**")
+        }
+    }
+}
+
+dependencies {
+    compileOnly(libs.androidx.annotation)
+    jmh(libs.jmh.core)
+    jmhAnnotationProcessor(libs.jmh.generator.annprocess)
+}
+
+val benchTag = providers.gradleProperty("benchTag").getOrElse("local")
+val benchRecording = providers.gradleProperty("benchRecording").orNull
+
+jmh {
+    jmhVersion.set(libs.versions.jmh)
+    benchmarkMode.set(listOf("avgt"))
+    timeUnit.set("ns")
+    fork.set(1)
+    warmupIterations.set(3)
+    iterations.set(5)
+    profilers.set(listOf("gc"))
+    resultFormat.set("JSON")
+    resultsFile.set(layout.projectDirectory.file("results/jmh-$benchTag.json"))
+    if (benchRecording != null) {
+        benchmarkParameters.put("input", objects.listProperty<String>().value(listOf("synthetic", "recorded")))
+        jvmArgsAppend.add("-Dbench.recording=$benchRecording")
+    }
+}
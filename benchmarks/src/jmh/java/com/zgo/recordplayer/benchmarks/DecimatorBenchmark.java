@@ -0,0 +1,71 @@
+package com.zgo.recordplayer.benchmarks;
+
+import com.zgo.recordplayer.audio.Decimate6;
+import com.zgo.recordplayer.audio.FrameProcessor;
+import com.zgo.recordplayer.audio.JavaFrameProcessor;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.io.IOException;
+
+/** The 48 kHz to 8 kHz decimator alone, and the whole Java frame chain with and without denoise. */
+@State(Scope.Thread)
+public class DecimatorBenchmark {
+
+    @Param({PcmInputs.SYNTHETIC})
+    public String input;
+
+    private short[] samples;
+    private float[] floats;
+    private final float[] decimated = new float[FrameProcessor.FRAME_SIZE / Decimate6.FACTOR];
+    private final Decimate6 decimator = new Decimate6();
+
+    private JavaFrameProcessor passthrough;
+    private JavaFrameProcessor denoising;
+    private short[] denoisedOut;
+    private short[] decimatedOut;
+
+    @Setup
+    public void setUp() throws IOException {
+        samples = PcmInputs.load(input, PcmInputs.FRAMES);
+        floats = new float[samples.length];
+        for (int i = 0; i < samples.length; i++) floats[i] = samples[i];
+        passthrough = new JavaFrameProcessor(false);
+        denoising = new JavaFrameProcessor(true);
+        denoisedOut = new short[samples.length];
+        decimatedOut = new short[FrameProcessor.maxDecimatedSamples(PcmInputs.FRAMES)];
+    }
+
+    @TearDown
+    public void tearDown() {
+        passthrough.close();
+        denoising.close();
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(PcmInputs.FRAMES)
+    public void decimate6(Blackhole bh) {
+        for (int f = 0; f < PcmInputs.FRAMES; f++) {
+            bh.consume(decimator.process(floats, f * FrameProcessor.FRAME_SIZE, FrameProcessor.FRAME_SIZE, decimated, 0));
+        }
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(PcmInputs.FRAMES)
+    public int javaChainPassthrough() {
+        return passthrough.processFrames(samples, 0, PcmInputs.FRAMES, denoisedOut, decimatedOut, null);
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(PcmInputs.FRAMES)
+    public int javaChainSpectralSubtraction() {
+        return denoising.processFrames(samples, 0, PcmInputs.FRAMES, denoisedOut, decimatedOut, null);
+    }
+}
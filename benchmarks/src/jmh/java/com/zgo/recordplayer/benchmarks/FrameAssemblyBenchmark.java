@@ -0,0 +1,83 @@
+package com.zgo.recordplayer.benchmarks;
+
+import com.zgo.recordplayer.audio.FrameProcessor;
+import com.zgo.recordplayer.audio.FrameRing;
+import com.zgo.recordplayer.audio.JavaFrameProcessor;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+
+/**
+ * The capture-to-writer path of {@code PCMRecorder}, run on one thread: captured chunks of
+ * {@code readBytes} are written into the {@link FrameRing} with partial-frame carry-over, then
+ * drained through the batch API of the Java engine with the denoiser off (isolating the ring
+ * and the int16/float/decimate chain).
+ */
+@State(Scope.Thread)
+public class FrameAssemblyBenchmark {
+
+    @Param({PcmInputs.SYNTHETIC})
+    public String input;
+
+    /** 24000 = one AudioRecord buffer at 48 kHz; 4410 exercises partial-frame carry-over. */
+    @Param({"24000", "4410"})
+    public int readBytes;
+
+    private byte[] captured;
+    private FrameRing ring;
+    private ByteBuffer denoised;
+    private ByteBuffer decimated;
+    private JavaFrameProcessor processor;
+
+    @Setup
+    public void setUp() throws IOException {
+        captured = PcmInputs.toLittleEndianBytes(PcmInputs.load(input, PcmInputs.FRAMES));
+        int framesPerBatch = Math.max(1, readBytes / FrameProcessor.FRAME_BYTES) + 1;
+        ring = new FrameRing(framesPerBatch * 4, FrameProcessor.FRAME_BYTES);
+        denoised = ByteBuffer.allocateDirect(framesPerBatch * FrameProcessor.FRAME_BYTES).order(ByteOrder.nativeOrder());
+        decimated = ByteBuffer.allocateDirect(FrameProcessor.maxDecimatedSamples(framesPerBatch) * 2)
+                .order(ByteOrder.nativeOrder());
+        processor = new JavaFrameProcessor(false);
+    }
+
+    @TearDown
+    public void tearDown() {
+        processor.close();
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(PcmInputs.FRAMES)
+    public int assembleAndProcess() {
+        final int frameBytes = ring.frameBytes();
+        int decimatedSamples = 0;
+        int offset = 0;
+        int pending = 0;
+        while (offset < captured.length) {
+            ByteBuffer region = ring.writeRegion();
+            int n = Math.min(Math.min(readBytes, region.limit() - pending), captured.length - offset);
+            region.position(pending);
+            region.put(captured, offset, n);
+            offset += n;
+            pending += n;
+            int frames = pending / frameBytes;
+            ring.publish(frames);
+            pending -= frames * frameBytes;
+
+            int readable;
+            while ((readable = ring.readableFrames()) > 0) {
+                decimatedSamples += processor.processFrames(ring.readRegion(), readable, denoised, decimated, null);
+                ring.release(readable);
+            }
+        }
+        return decimatedSamples;
+    }
+}
@@ -0,0 +1,77 @@
+package com.zgo.recordplayer.benchmarks;
+
+import com.zgo.recordplayer.audio.FrameProcessor;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.util.Random;
+
+/**
+ * Benchmark inputs: a deterministic synthetic speech-like signal, or a recorded 48 kHz mono
+ * PCM16 little-endian file given with {@code -Dbench.recording=path}.
+ */
+final class PcmInputs {
+
+    static final String SYNTHETIC = "synthetic";
+    static final String RECORDED = "recorded";
+
+    /** Frames per benchmark invocation (1 s of 48 kHz audio). */
+    static final int FRAMES = 100;
+
+    private PcmInputs() {
+    }
+
+    static short[] load(String input, int frames) throws IOException {
+        int samples = frames * FrameProcessor.FRAME_SIZE;
+        if (RECORDED.equals(input)) {
+            return recorded(samples);
+        }
+        return synthetic(samples);
+    }
+
+    static byte[] toLittleEndianBytes(short[] samples) {
+        ByteBuffer bytes = ByteBuffer.allocate(samples.length * 2).order(ByteOrder.LITTLE_ENDIAN);
+        bytes.asShortBuffer().put(samples);
+        return bytes.array();
+    }
+
+    /** Voiced harmonics with a wandering pitch and syllable-rate envelope, over background noise. */
+    private static short[] synthetic(int samples) {
+        Random random = new Random(42);
+        short[] out = new short[samples];
+        double phase = 0;
+        for (int i = 0; i < samples; i++) {
+            double t = i / 48000.0;
+            double pitch = 140 + 30 * Math.sin(2 * Math.PI * 0.7 * t);
+            phase += 2 * Math.PI * pitch / 48000.0;
+            double envelope = Math.max(0, Math.sin(2 * Math.PI * 4 * t));
+            double voiced = 0;
+            for (int h = 1; h <= 8; h++) {
+                voiced += Math.sin(h * phase) / h;
+            }
+            out[i] = (short) (6000 * envelope * voiced + 300 * random.nextGaussian());
+        }
+        return out;
+    }
+
+    private static short[] recorded(int samples) throws IOException {
+        String path = System.getProperty("bench.recording");
+        if (path == null) {
+            throw new IllegalStateException("input=recorded needs -Dbench.recording=<file.pcm>");
+        }
+        byte[] bytes = Files.readAllBytes(Paths.get(path));
+        int available = bytes.length / 2;
+        if (available == 0) {
+            throw new IOException("Recording is empty: " + path);
+        }
+        ByteBuffer le = ByteBuffer.wrap(bytes).order(ByteOrder.LITTLE_ENDIAN);
+        short[] out = new short[samples];
+        for (int i = 0; i < samples; i++) {
+            out[i] = le.getShort((i % available) * 2); // loop short recordings
+        }
+        return out;
+    }
+}
@@ -0,0 +1,122 @@
+package com.zgo.recordplayer.benchmarks;
+
+import com.zgo.recordplayer.audio.CompressedPcmSink;
+import com.zgo.recordplayer.audio.CompressedPcmSource;
+import com.zgo.recordplayer.audio.FrameProcessor;
+import com.zgo.recordplayer.audio.MappedPcmSource;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.io.BufferedInputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+
+/**
+ * The read loop of {@code PCMPlayer.doPlayback}: a {@code .pcm} file streamed through a
+ * {@link BufferedInputStream} into a {@code bufferSize} chunk that would go to
+ * {@code AudioTrack.write} (the former path), against mapped slices from
+ * {@link MappedPcmSource}, and blocks decoded by {@link CompressedPcmSource}; the Blackhole
+ * stands in for the track.
+ */
+@State(Scope.Thread)
+public class PlaybackReadBenchmark {
+
+    @Param({PcmInputs.SYNTHETIC})
+    public String input;
+
+    /** max(minBufferSize, sampleRate / 2) at 48 kHz, as PCMPlayer sizes it. */
+    @Param({"24000"})
+    public int bufferSize;
+
+    private File file;
+    private File compressedFile;
+    private byte[] buffer;
+
+    @Setup
+    public void setUp() throws IOException {
+        file = File.createTempFile("bench_", ".pcm");
+        try (FileOutputStream out = new FileOutputStream(file)) {
+            out.write(PcmInputs.toLittleEndianBytes(PcmInputs.load(input, PcmInputs.FRAMES)));
+        }
+        buffer = new byte[bufferSize];
+        compressedFile = File.createTempFile("bench_", CompressedPcmSource.FILE_SUFFIX);
+        try (CompressedPcmSink sink = new CompressedPcmSink(compressedFile, 48000, 1)) {
+            short[] samples = PcmInputs.load(input, PcmInputs.FRAMES);
+            ByteBuffer pcm = ByteBuffer.allocateDirect(samples.length * 2).order(ByteOrder.nativeOrder());
+            pcm.asShortBuffer().put(samples);
+            sink.write(pcm);
+        }
+    }
+
+    @TearDown
+    public void tearDown() {
+        if (!file.delete()) {
+            file.deleteOnExit();
+        }
+        if (!compressedFile.delete()) {
+            compressedFile.deleteOnExit();
+        }
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(PcmInputs.FRAMES)
+    public long bufferedStreamRead(Blackhole bh) throws IOException {
+        long total = 0;
+        try (BufferedInputStream bis = new BufferedInputStream(new FileInputStream(file))) {
+            int read;
+            while ((read = bis.read(buffer)) != -1) {
+                bh.consume(buffer);
+                total += read;
+            }
+        }
+        if (total != (long) PcmInputs.FRAMES * FrameProcessor.FRAME_BYTES) {
+            throw new IllegalStateException("short read: " + total);
+        }
+        return total;
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(PcmInputs.FRAMES)
+    public long mappedSource(Blackhole bh) throws IOException {
+        long total = 0;
+        try (MappedPcmSource source = new MappedPcmSource(file, 2)) {
+            ByteBuffer chunk;
+            while ((chunk = source.next(bufferSize)).hasRemaining()) {
+                bh.consume(chunk);
+                total += chunk.remaining();
+            }
+        }
+        if (total != (long) PcmInputs.FRAMES * FrameProcessor.FRAME_BYTES) {
+            throw new IllegalStateException("short read: " + total);
+        }
+        return total;
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(PcmInputs.FRAMES)
+    public long compressedSource(Blackhole bh) throws IOException {
+        long total = 0;
+        try (CompressedPcmSource source = new CompressedPcmSource(compressedFile)) {
+            ByteBuffer chunk;
+            while ((chunk = source.next(bufferSize)).hasRemaining()) {
+                bh.consume(chunk);
+                total += chunk.remaining();
+            }
+        }
+        if (total != (long) PcmInputs.FRAMES * FrameProcessor.FRAME_BYTES) {
+            throw new IllegalStateException("short read: " + total);
+        }
+        return total;
+    }
+}
@@ -0,0 +1,114 @@
+package com.zgo.recordplayer.benchmarks;
+
+import com.zgo.recordplayer.audio.CompressedPcmSink;
+import com.zgo.recordplayer.audio.CompressedPcmSource;
+import com.zgo.recordplayer.audio.FrameProcessor;
+import com.zgo.recordplayer.audio.PcmFileSink;
+import com.zgo.recordplayer.audio.PcmSink;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+
+import java.io.BufferedOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+
+/**
+ * Passthrough recording writes, ns per 10 ms frame: the former short[] to little-endian byte[]
+ * shuffle through a {@link BufferedOutputStream}, against {@link PcmFileSink} writing the
+ * captured direct buffer in batches of {@code batchFrames}, split across a ring wrap, and
+ * {@link CompressedPcmSink} encoding the same batches losslessly (the encoder's CPU cost).
+ */
+@State(Scope.Thread)
+public class RecordingSinkBenchmark {
+
+    @Param({PcmInputs.SYNTHETIC})
+    public String input;
+
+    @Param({"10", "25"})
+    public int batchFrames;
+
+    private short[] samples;
+    private ByteBuffer captured;
+    private final byte[] bytes = new byte[FrameProcessor.FRAME_BYTES];
+
+    private File file;
+    private BufferedOutputStream stream;
+    private PcmFileSink sink;
+    private File compressedFile;
+    private CompressedPcmSink compressed;
+
+    @Setup
+    public void setUp() throws IOException {
+        samples = PcmInputs.load(input, PcmInputs.FRAMES);
+        captured = ByteBuffer.allocateDirect(samples.length * 2).order(ByteOrder.nativeOrder());
+        captured.asShortBuffer().put(samples);
+    }
+
+    @Setup(Level.Iteration)
+    public void open() throws IOException {
+        file = File.createTempFile("bench", ".pcm");
+        stream = new BufferedOutputStream(new FileOutputStream(file));
+        sink = new PcmFileSink(file);
+        compressedFile = File.createTempFile("bench", CompressedPcmSource.FILE_SUFFIX);
+        compressed = new CompressedPcmSink(compressedFile, 48000, 1);
+    }
+
+    @TearDown(Level.Iteration)
+    public void close() throws IOException {
+        stream.close();
+        sink.close();
+        file.delete();
+        compressed.close();
+        compressedFile.delete();
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(PcmInputs.FRAMES)
+    public void bufferedStreamWithByteShuffle() throws IOException {
+        for (int f = 0; f < PcmInputs.FRAMES; f++) {
+            int base = f * FrameProcessor.FRAME_SIZE;
+            int di = 0;
+            for (int i = 0; i < FrameProcessor.FRAME_SIZE; i++) {
+                short v = samples[base + i];
+                bytes[di++] = (byte) (v & 0xff);
+                bytes[di++] = (byte) ((v >> 8) & 0xff);
+            }
+            stream.write(bytes, 0, bytes.length);
+        }
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(PcmInputs.FRAMES)
+    public void fileSinkGatherWrite() throws IOException {
+        writeBatches(sink);
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(PcmInputs.FRAMES)
+    public void compressedSinkWrite() throws IOException {
+        writeBatches(compressed);
+    }
+
+    private void writeBatches(PcmSink target) throws IOException {
+        int batchBytes = batchFrames * FrameProcessor.FRAME_BYTES;
+        for (int offset = 0; offset < captured.capacity(); offset += batchBytes) {
+            int end = Math.min(offset + batchBytes, captured.capacity());
+            int split = offset + (end - offset) / 2; // as if the batch straddled the ring's wrap point
+            ByteBuffer first = captured.duplicate();
+            first.limit(split).position(offset);
+            ByteBuffer second = captured.duplicate();
+            second.limit(end).position(split);
+            target.write(first, second);
+        }
+    }
+}